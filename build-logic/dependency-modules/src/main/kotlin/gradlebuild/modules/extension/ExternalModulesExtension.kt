@@ -182,6 +182,7 @@ abstract class ExternalModulesExtension(isBundleGroovy4: Boolean) {
     val jacksonKotlin = "com.fasterxml.jackson.module:jackson-module-kotlin"
     val javaParser = "com.github.javaparser:javaparser-core"
     val jetty = "org.eclipse.jetty:jetty-http"
+    val jettyHttp2Server = "org.eclipse.jetty.http2:http2-server"
     val jettySecurity = "org.eclipse.jetty:jetty-security"
     val jettyServer = "org.eclipse.jetty:jetty-server"
     val jettyServlet = "org.eclipse.jetty:jetty-servlet"
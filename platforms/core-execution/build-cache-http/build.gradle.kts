@@ -1,10 +1,16 @@
 plugins {
     id("gradlebuild.distribution.api-java")
     id("gradlebuild.instrumented-java-project")
+    id("gradlebuild.jmh")
 }
 
 description = "Implementation for interacting with HTTP build caches"
 
+gradlebuildJava {
+    // The HTTP/2 client of the JDK is only used when running on Java 11 or later
+    usesFutureStdlib = true
+}
+
 dependencies {
     api(projects.stdlibJavaExtensions)
     api(projects.serviceProvider)
@@ -14,10 +20,12 @@ dependencies {
     api(libs.jsr305)
 
     api(projects.baseServices)
+    api(projects.buildCache)
     api(projects.buildCacheSpi)
     api(projects.coreApi)
     api(projects.resourcesHttp)
 
+    implementation(projects.buildOption)
     implementation(projects.core)
     implementation(projects.logging)
     implementation(projects.resources)
@@ -26,6 +34,11 @@ dependencies {
     implementation(libs.guava)
     implementation(libs.slf4jApi)
 
+    jmhImplementation(platform(projects.distributionsDependencies))
+    jmhImplementation(libs.jettyHttp2Server)
+    jmhImplementation(libs.jettyServer)
+    jmhImplementation(libs.servletApi)
+
     testImplementation(testFixtures(projects.core))
     testImplementation(libs.servletApi)
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal
+
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheServiceFactory
+import org.gradle.caching.http.HttpBuildCache
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService
+import org.gradle.caching.internal.TestBuildCacheKey
+import org.gradle.internal.buildoption.DefaultInternalOptions
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
+import org.gradle.internal.resource.transport.http.HttpClientHelper
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.test.fixtures.server.http.HttpBuildCacheServer
+import org.gradle.test.precondition.Requires
+import org.gradle.test.preconditions.UnitTestPreconditions
+import org.gradle.util.SetSystemProperties
+import org.gradle.util.TestUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+@Requires(UnitTestPreconditions.Jdk11OrLater)
+class Http2BuildCacheServiceTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider(getClass())
+    @Rule
+    HttpBuildCacheServer server = new HttpBuildCacheServer(tempDir)
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties((DefaultHttpBuildCacheServiceFactory.HTTP2.systemPropertyName): "true")
+
+    def headers = []
+    def config = TestUtil.newInstance(HttpBuildCache.class)
+    def factory = new DefaultHttpBuildCacheServiceFactory(TestUtil.objectFactory(), new DefaultSslContextFactory(), { it.addHeader("X-Gradle-Version", "3.0") }, HttpClientHelper.Factory.createFactory(new DocumentationRegistry()), new DefaultInternalOptions([:]))
+    def cache
+
+    def setup() {
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            headers << request.getHeader("X-Gradle-Version")
+            true
+        }
+        server.start()
+        config.url = server.uri.resolve("/cache/")
+    }
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "stores and loads entries"() {
+        cache = createService()
+        def key = new TestBuildCacheKey(1)
+        def otherKey = new TestBuildCacheKey(2)
+
+        when:
+        cache.store(key, writer("entry"))
+        String loaded = null
+        def found = cache.load(key, { input -> loaded = input.text } as BuildCacheEntryReader)
+
+        then:
+        cache instanceof Http2BuildCacheService
+        found
+        loaded == "entry"
+        !cache.load(otherKey, { assert false } as BuildCacheEntryReader)
+        cache.contains(key)
+        !cache.contains(otherKey)
+        cache.containsAll([otherKey, key]) == [key] as Set
+        !headers.empty && headers.every { it == "3.0" }
+    }
+
+    def "reports recoverable error when server fails"() {
+        cache = createService()
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            response.sendError(500)
+            false
+        }
+
+        when:
+        cache.load(new TestBuildCacheKey(1), { assert false } as BuildCacheEntryReader)
+
+        then:
+        def e = thrown(BuildCacheException)
+        e.message == "Loading entry from '${server.uri}/cache/${new TestBuildCacheKey(1).hashCode}' response status 500: Internal Server Error"
+    }
+
+    def "follows redirects"() {
+        config.url = server.uri.resolve("/moved/")
+        cache = createService()
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            if (!request.requestURI.startsWith("/moved/")) {
+                return true
+            }
+            response.status = request.method == "PUT" ? 307 : 302
+            response.setHeader("Location", "/cache/" + request.requestURI.substring("/moved/".length()))
+            false
+        }
+        def key = new TestBuildCacheKey(1)
+
+        when:
+        cache.store(key, writer("entry"))
+        String loaded = null
+        def found = cache.load(key, { input -> loaded = input.text } as BuildCacheEntryReader)
+
+        then:
+        found
+        loaded == "entry"
+        cache.contains(key)
+    }
+
+    def "does not follow redirects rejected by the redirect verifier"() {
+        cache = createService()
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            response.status = 302
+            response.setHeader("Location", "http://example.com/cache/")
+            false
+        }
+
+        when:
+        cache.load(new TestBuildCacheKey(1), { assert false } as BuildCacheEntryReader)
+
+        then:
+        thrown(InsecureProtocolException)
+    }
+
+    def "limits the number of redirects"() {
+        cache = createService()
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            response.status = 302
+            response.setHeader("Location", request.requestURI)
+            false
+        }
+
+        when:
+        cache.load(new TestBuildCacheKey(1), { assert false } as BuildCacheEntryReader)
+
+        then:
+        def e = thrown(BuildCacheException)
+        e.message.startsWith("Maximum redirects (10) exceeded")
+    }
+
+    def "uses HTTP/1.1 client for untrusted servers"() {
+        config.allowUntrustedServer = true
+
+        expect:
+        createService() instanceof HttpBuildCacheService
+    }
+
+    def "uses HTTP/1.1 client unless enabled"() {
+        System.clearProperty(DefaultHttpBuildCacheServiceFactory.HTTP2.systemPropertyName)
+
+        expect:
+        createService() instanceof HttpBuildCacheService
+    }
+
+    private StatefulNextGenBuildCacheService createService() {
+        factory.createBuildCacheService(config, Stub(BuildCacheServiceFactory.Describer)) as StatefulNextGenBuildCacheService
+    }
+
+    private static StatefulNextGenBuildCacheService.NextGenWriter writer(String content) {
+        new StatefulNextGenBuildCacheService.NextGenWriter() {
+            @Override
+            InputStream openStream() {
+                new ByteArrayInputStream(content.bytes)
+            }
+
+            @Override
+            void writeTo(OutputStream output) {
+                output.write(content.bytes)
+            }
+
+            @Override
+            long getSize() {
+                content.bytes.length
+            }
+        }
+    }
+}
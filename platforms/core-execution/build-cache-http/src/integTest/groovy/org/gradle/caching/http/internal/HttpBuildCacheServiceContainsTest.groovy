@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal
+
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheServiceFactory
+import org.gradle.caching.http.HttpBuildCache
+import org.gradle.caching.internal.TestBuildCacheKey
+import org.gradle.internal.buildoption.DefaultInternalOptions
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
+import org.gradle.internal.resource.transport.http.HttpClientHelper
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.test.fixtures.server.http.HttpBuildCacheServer
+import org.gradle.util.TestUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+class HttpBuildCacheServiceContainsTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider(getClass())
+    @Rule
+    HttpBuildCacheServer server = new HttpBuildCacheServer(tempDir)
+
+    def requests = []
+    def config = TestUtil.newInstance(HttpBuildCache.class)
+    HttpBuildCacheService cache
+
+    def setup() {
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            requests << request.method
+            true
+        }
+        server.start()
+        config.url = server.uri.resolve("/")
+        cache = new DefaultHttpBuildCacheServiceFactory(TestUtil.objectFactory(), new DefaultSslContextFactory(), {}, HttpClientHelper.Factory.createFactory(new DocumentationRegistry()), new DefaultInternalOptions([:]))
+            .createBuildCacheService(config, Stub(BuildCacheServiceFactory.Describer)) as HttpBuildCacheService
+    }
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "checks existence of multiple entries with a single request"() {
+        def keys = (1..20).collect { new TestBuildCacheKey(it) }
+        def stored = [keys[0], keys[7], keys[8], keys[19]]
+        stored.each { cache.store(it, writer("entry")) }
+        requests.clear()
+
+        expect:
+        cache.containsAll(keys) == stored as Set
+        requests == ["POST"]
+    }
+
+    def "does not accept a response to an existence check without the bitmap content type"() {
+        server.addResponder { HttpServletRequest request, HttpServletResponse response ->
+            if (request.method != "POST") {
+                return true
+            }
+            // A server which does not support checking multiple entries, but responds with success
+            response.contentType = "text/html"
+            response.outputStream.write([0xff, 0xff, 0xff] as byte[])
+            false
+        }
+
+        when:
+        cache.containsAll((1..3).collect { new TestBuildCacheKey(it) })
+
+        then:
+        def e = thrown(BuildCacheException)
+        e.message.contains("is not supported")
+    }
+
+    def "checks existence of no entries"() {
+        expect:
+        cache.containsAll([]).empty
+    }
+
+    def "checks existence of single entry"() {
+        def key = new TestBuildCacheKey(1)
+        def otherKey = new TestBuildCacheKey(2)
+        cache.store(key, writer("entry"))
+
+        expect:
+        cache.contains(key)
+        !cache.contains(otherKey)
+    }
+
+    private static BuildCacheEntryWriter writer(String content) {
+        new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output.write(content.bytes)
+            }
+
+            @Override
+            long getSize() {
+                content.bytes.length
+            }
+        }
+    }
+}
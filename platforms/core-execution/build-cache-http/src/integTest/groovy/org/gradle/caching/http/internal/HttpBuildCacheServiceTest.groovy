@@ -25,6 +25,7 @@ import org.gradle.caching.BuildCacheException
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.http.HttpBuildCache
 import org.gradle.caching.internal.TestBuildCacheKey
+import org.gradle.internal.buildoption.DefaultInternalOptions
 import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
 import org.gradle.internal.resource.transport.http.HttpClientHelper
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -67,7 +68,7 @@ class HttpBuildCacheServiceTest extends Specification {
     HttpBuildCacheService getCache() {
         if (cacheRef == null) {
             buildCacheDescriber = new NoopBuildCacheDescriber()
-            cacheRef = new DefaultHttpBuildCacheServiceFactory(objectFactory, new DefaultSslContextFactory(), { it.addHeader("X-Gradle-Version", "3.0") }, httpClientHelperFactory)
+            cacheRef = new DefaultHttpBuildCacheServiceFactory(objectFactory, new DefaultSslContextFactory(), { it.addHeader("X-Gradle-Version", "3.0") }, httpClientHelperFactory, new DefaultInternalOptions([:]))
                 .createBuildCacheService(this.config, buildCacheDescriber) as HttpBuildCacheService
         }
         cacheRef
@@ -336,6 +337,22 @@ class HttpBuildCacheServiceTest extends Specification {
         server.authenticationAttempts == ['Basic'] as Set
     }
 
+    def "checking multiple entries reports recoverable error when not supported by the server"() {
+        server.expect("/cache/", false, ['POST'], new HttpServer.ActionSupport("return 404 not found") {
+            @Override
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                response.sendError(HttpStatus.SC_NOT_FOUND)
+            }
+        })
+
+        when:
+        cache.containsAll([key])
+
+        then:
+        BuildCacheException exception = thrown()
+        exception.message == "Checking 1 entries at '${server.uri}/cache/' response status 404: Not Found"
+    }
+
     private HttpResourceInteraction expectError(int httpCode, String method) {
         server.expect("/cache/${key.hashCode}", false, [method], new HttpServer.ActionSupport("return ${httpCode} broken") {
             @Override
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.api.internal.DocumentationRegistry;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
+import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory;
+import org.gradle.internal.resource.transport.http.HttpClientHelper;
+import org.gradle.internal.resource.transport.http.HttpSettings;
+import org.gradle.internal.verifier.HttpRedirectVerifierFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares loading and storing entries concurrently via HTTP/1.1 and HTTP/2, as done by a build with many workers.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(16)
+@State(Scope.Benchmark)
+public class HttpBuildCacheServiceBenchmark {
+    private static final int ENTRY_COUNT = 256;
+
+    @Param({"http1", "http2"})
+    String transport;
+
+    @Param({"4096", "1048576"})
+    int entrySize;
+
+    LocalHttpBuildCacheServer server;
+    StatefulNextGenBuildCacheService service;
+    byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalHttpBuildCacheServer();
+        server.start();
+        content = new byte[entrySize];
+        new Random(1234).nextBytes(content);
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            server.put(key(i).getHashCode(), content);
+        }
+        URI uri = server.getUri();
+        HttpSettings settings = DefaultHttpSettings.builder()
+            .withAuthenticationSettings(Collections.emptyList())
+            .withSslContextFactory(new DefaultSslContextFactory())
+            .withRedirectVerifier(HttpRedirectVerifierFactory.create(uri, true, () -> {}, redirect -> {}))
+            .build();
+        HttpBuildCacheRequestCustomizer requestCustomizer = request -> {};
+        switch (transport) {
+            case "http1":
+                HttpClientHelper httpClientHelper = HttpClientHelper.Factory.createFactory(new DocumentationRegistry()).create(settings);
+                service = new HttpBuildCacheService(httpClientHelper, uri, requestCustomizer, false);
+                break;
+            case "http2":
+                service = new Http2BuildCacheService(settings, uri, null, requestCustomizer, false);
+                break;
+            default:
+                throw new IllegalArgumentException(transport);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        BuildCacheKey key = key(ThreadLocalRandom.current().nextInt(ENTRY_COUNT));
+        blackhole.consume(service.load(key, input -> blackhole.consume(ByteStreams.exhaust(input))));
+    }
+
+    @Benchmark
+    public void store() {
+        BuildCacheKey key = key(ENTRY_COUNT + ThreadLocalRandom.current().nextInt(ENTRY_COUNT));
+        service.store(key, new StatefulNextGenBuildCacheService.NextGenWriter() {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(content);
+            }
+
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                output.write(content);
+            }
+
+            @Override
+            public long getSize() {
+                return content.length;
+            }
+        });
+    }
+
+    private static BuildCacheKey key(int index) {
+        String hashCode = String.format("%032x", index);
+        return new BuildCacheKey() {
+            @Override
+            public String getHashCode() {
+                return hashCode;
+            }
+
+            @Override
+            public byte[] toByteArray() {
+                return hashCode.getBytes(StandardCharsets.US_ASCII);
+            }
+
+            @Override
+            @Deprecated
+            public String getDisplayName() {
+                return hashCode;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory HTTP build cache server, talking both HTTP/1.1 and HTTP/2 over cleartext.
+ */
+class LocalHttpBuildCacheServer {
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    private final Server server = new Server();
+    private final ServerConnector connector;
+
+    LocalHttpBuildCacheServer() {
+        HttpConfiguration configuration = new HttpConfiguration();
+        connector = new ServerConnector(server, new HttpConnectionFactory(configuration), new HTTP2CServerConnectionFactory(configuration));
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                String key = target.substring(target.lastIndexOf('/') + 1);
+                switch (request.getMethod()) {
+                    case "PUT":
+                        entries.put(key, ByteStreams.toByteArray(request.getInputStream()));
+                        response.setStatus(HttpServletResponse.SC_OK);
+                        break;
+                    case "GET":
+                    case "HEAD":
+                        byte[] entry = entries.get(key);
+                        if (entry == null) {
+                            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                        } else {
+                            response.setStatus(HttpServletResponse.SC_OK);
+                            response.setContentLength(entry.length);
+                            if (request.getMethod().equals("GET")) {
+                                response.getOutputStream().write(entry);
+                            }
+                        }
+                        break;
+                    default:
+                        response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                }
+            }
+        });
+    }
+
+    void start() throws Exception {
+        server.start();
+    }
+
+    void stop() throws Exception {
+        server.stop();
+    }
+
+    URI getUri() {
+        return URI.create("http://localhost:" + connector.getLocalPort() + "/cache/");
+    }
+
+    void put(String key, byte[] entry) {
+        entries.put(key, entry);
+    }
+}
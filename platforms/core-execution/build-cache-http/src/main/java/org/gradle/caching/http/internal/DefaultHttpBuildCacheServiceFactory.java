@@ -25,6 +25,8 @@
 import org.gradle.caching.http.HttpBuildCache;
 import org.gradle.caching.http.HttpBuildCacheCredentials;
 import org.gradle.internal.authentication.DefaultBasicAuthentication;
+import org.gradle.internal.buildoption.InternalFlag;
+import org.gradle.internal.buildoption.InternalOptions;
 import org.gradle.internal.deprecation.Documentation;
 import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
@@ -32,6 +34,8 @@
 import org.gradle.internal.resource.transport.http.SslContextFactory;
 import org.gradle.internal.verifier.HttpRedirectVerifier;
 import org.gradle.internal.verifier.HttpRedirectVerifierFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.net.URI;
@@ -44,19 +48,28 @@
  */
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultHttpBuildCacheServiceFactory.class);
+
     private static final int MAX_REDIRECTS = Integer.getInteger("org.gradle.cache.http.max-redirects", 10);
 
+    /**
+     * Talk to the cache via HTTP/2 when the server supports it, multiplexing concurrent requests over a single connection.
+     */
+    public static final InternalFlag HTTP2 = new InternalFlag("org.gradle.cache.http.http2");
+
     private final SslContextFactory sslContextFactory;
     private final HttpBuildCacheRequestCustomizer requestCustomizer;
     private final HttpClientHelper.Factory httpClientHelperFactory;
     private final ObjectFactory objectFactory;
+    private final InternalOptions internalOptions;
 
     @Inject
-    public DefaultHttpBuildCacheServiceFactory(ObjectFactory objectFactory, SslContextFactory sslContextFactory, HttpBuildCacheRequestCustomizer requestCustomizer, HttpClientHelper.Factory httpClientHelperFactory) {
+    public DefaultHttpBuildCacheServiceFactory(ObjectFactory objectFactory, SslContextFactory sslContextFactory, HttpBuildCacheRequestCustomizer requestCustomizer, HttpClientHelper.Factory httpClientHelperFactory, InternalOptions internalOptions) {
         this.sslContextFactory = sslContextFactory;
         this.requestCustomizer = requestCustomizer;
         this.httpClientHelperFactory = httpClientHelperFactory;
         this.objectFactory = objectFactory;
+        this.internalOptions = internalOptions;
     }
 
     @Override
@@ -99,7 +112,7 @@ public BuildCacheService createBuildCacheService(HttpBuildCache configuration, D
             builder.withSslContextFactory(sslContextFactory);
         }
 
-        HttpClientHelper httpClientHelper = httpClientHelperFactory.create(builder.build());
+        HttpSettings httpSettings = builder.build();
 
         describer.type("HTTP")
             .config("url", noUserInfoUrl.toASCIIString())
@@ -108,6 +121,13 @@ public BuildCacheService createBuildCacheService(HttpBuildCache configuration, D
             .config("allowInsecureProtocol", Boolean.toString(allowInsecureProtocol))
             .config("useExpectContinue", Boolean.toString(useExpectContinue));
 
+        if (internalOptions.getOption(HTTP2).get()) {
+            if (Http2BuildCacheService.isSupported(httpSettings, allowUntrustedServer)) {
+                return new Http2BuildCacheService(httpSettings, noUserInfoUrl, authenticated ? credentials : null, requestCustomizer, useExpectContinue);
+            }
+            LOGGER.info("HTTP/2 is not supported for the build cache at '{}' with this configuration or Java version, using HTTP/1.1", noUserInfoUrl);
+        }
+        HttpClientHelper httpClientHelper = httpClientHelperFactory.create(httpSettings);
         return new HttpBuildCacheService(httpClientHelper, noUserInfoUrl, requestCustomizer, useExpectContinue);
     }
 
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpRequest;
+import org.gradle.api.JavaVersion;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.http.HttpBuildCacheCredentials;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
+import org.gradle.internal.resource.transport.http.HttpProxySettings;
+import org.gradle.internal.resource.transport.http.HttpSettings;
+import org.gradle.internal.verifier.HttpRedirectVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.Authenticator;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.gradle.caching.http.internal.HttpBuildCacheService.BUILD_CACHE_BITMAP_CONTENT_TYPE;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.BUILD_CACHE_CONTENT_TYPE;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.BUILD_CACHE_KEYS_CONTENT_TYPE;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.decodeBitmap;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.encodeKeys;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.isHttpSuccess;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.safeUri;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.throwHttpStatusCodeException;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.withTrailingSlash;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.wrap;
+
+/**
+ * Build cache implementation that talks to the same HTTP service as {@link HttpBuildCacheService}, using the HTTP client of the JDK.
+ *
+ * <p>The client prefers HTTP/2, negotiated via ALPN for {@code https} and via an upgrade for {@code http}.
+ * With HTTP/2, all concurrent loads and stores are multiplexed over a single connection to the cache, instead of opening a connection for each of them.
+ * Servers only supporting HTTP/1.1 are still talked to via HTTP/1.1.</p>
+ *
+ * <p>Redirects are followed like {@link HttpBuildCacheService} follows them, rather than by the JDK client,
+ * so that every redirect location is checked by the {@link HttpRedirectVerifier} and the number of redirects is limited.</p>
+ *
+ * <p>The client is only available when running on Java 11 or later.
+ * It does not support everything {@link HttpBuildCacheService} supports, see {@link #isSupported(HttpSettings, boolean)}.</p>
+ */
+public class Http2BuildCacheService implements StatefulNextGenBuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Http2BuildCacheService.class);
+    private static final int SC_PERMANENT_REDIRECT = 308;
+
+    private final URI root;
+    private final HttpClient httpClient;
+    private final HttpBuildCacheRequestCustomizer requestCustomizer;
+    private final boolean useExpectContinue;
+    private final Duration requestTimeout;
+    private final int maxRedirects;
+    private final HttpRedirectVerifier redirectVerifier;
+
+    public Http2BuildCacheService(HttpSettings settings, URI url, @Nullable HttpBuildCacheCredentials credentials, HttpBuildCacheRequestCustomizer requestCustomizer, boolean useExpectContinue) {
+        this.root = withTrailingSlash(url);
+        this.requestCustomizer = requestCustomizer;
+        this.useExpectContinue = useExpectContinue;
+        this.requestTimeout = Duration.ofMillis(settings.getTimeoutSettings().getSocketTimeoutMs());
+        this.maxRedirects = settings.getMaxRedirects();
+        this.redirectVerifier = settings.getRedirectVerifier();
+        HttpClient.Builder builder = HttpClient.newBuilder();
+        if (credentials != null) {
+            builder.authenticator(new CacheServerAuthenticator(url.getHost(), credentials));
+        }
+        this.httpClient = builder
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(settings.getTimeoutSettings().getConnectionTimeoutMs()))
+            .sslContext(settings.getSslContextFactory().createSslContext())
+            // Uses the same system properties as the proxy settings of HttpClientHelper
+            .proxy(ProxySelector.getDefault())
+            // Redirects are followed by send(), so that they are verified
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    }
+
+    /**
+     * Whether the settings can be honored by this client.
+     *
+     * The JDK client always verifies the host name of the server, so untrusted servers are not supported.
+     * Authenticating with a proxy is not supported either.
+     */
+    public static boolean isSupported(HttpSettings settings, boolean allowUntrustedServer) {
+        return JavaVersion.current().isJava11Compatible()
+            && !allowUntrustedServer
+            && !hasProxyCredentials(settings.getProxySettings())
+            && !hasProxyCredentials(settings.getSecureProxySettings());
+    }
+
+    private static boolean hasProxyCredentials(HttpProxySettings proxySettings) {
+        HttpProxySettings.HttpProxy proxy = proxySettings.getProxy();
+        return proxy != null && proxy.credentials != null;
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        URI uri = root.resolve("./" + key.getHashCode());
+        HttpResponse<InputStream> response = send(uri, this::newGetRequest, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream content = response.body()) {
+            int statusCode = response.statusCode();
+            if (isHttpSuccess(statusCode)) {
+                reader.readFrom(content);
+                return true;
+            } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                return false;
+            } else {
+                String defaultMessage = String.format("Loading entry from '%s' response status %d: %s", safeUri(uri), statusCode, reasonPhrase(statusCode));
+                return throwHttpStatusCodeException(statusCode, defaultMessage);
+            }
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public boolean contains(BuildCacheKey key) {
+        URI uri = root.resolve("./" + key.getHashCode());
+        Function<URI, HttpRequest> requestFactory = target -> newRequest(target, "HEAD")
+            .timeout(requestTimeout)
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+
+        int statusCode = send(uri, requestFactory, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (isHttpSuccess(statusCode)) {
+            return true;
+        } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+            return false;
+        } else {
+            String defaultMessage = String.format("Checking entry at '%s' response status %d: %s", safeUri(uri), statusCode, reasonPhrase(statusCode));
+            return throwHttpStatusCodeException(statusCode, defaultMessage);
+        }
+    }
+
+    @Override
+    public Set<BuildCacheKey> containsAll(Collection<BuildCacheKey> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        byte[] encodedKeys = encodeKeys(keys);
+        Function<URI, HttpRequest> requestFactory = target -> newRequest(target, "POST")
+            .header(HttpHeaders.CONTENT_TYPE, BUILD_CACHE_KEYS_CONTENT_TYPE)
+            .header(HttpHeaders.ACCEPT, BUILD_CACHE_BITMAP_CONTENT_TYPE)
+            .timeout(requestTimeout)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(encodedKeys))
+            .build();
+
+        HttpResponse<byte[]> response = send(root, requestFactory, HttpResponse.BodyHandlers.ofByteArray());
+        int statusCode = response.statusCode();
+        if (!isHttpSuccess(statusCode)) {
+            String defaultMessage = String.format("Checking %d entries at '%s' response status %d: %s", keys.size(), safeUri(root), statusCode, reasonPhrase(statusCode));
+            throwHttpStatusCodeException(statusCode, defaultMessage);
+        }
+        return decodeBitmap(keys, response.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse(null), response.body(), root);
+    }
+
+    @Override
+    public void store(BuildCacheKey key, NextGenWriter writer) throws BuildCacheException {
+        URI uri = root.resolve(key.getHashCode());
+        // Uploads are not limited by a timeout, as large entries can take longer than that to be transferred
+        Function<URI, HttpRequest> requestFactory = target -> newRequest(target, "PUT")
+            .header(HttpHeaders.CONTENT_TYPE, BUILD_CACHE_CONTENT_TYPE)
+            .expectContinue(useExpectContinue)
+            .PUT(bodyPublisher(writer))
+            .build();
+
+        int statusCode = send(uri, requestFactory, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (!isHttpSuccess(statusCode)) {
+            String defaultMessage = String.format("Storing entry at '%s' response status %d: %s", safeUri(uri), statusCode, reasonPhrase(statusCode));
+            throwHttpStatusCodeException(statusCode, defaultMessage);
+        }
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(NextGenWriter writer) {
+        HttpRequest.BodyPublisher streamPublisher = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return writer.openStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return HttpRequest.BodyPublishers.fromPublisher(streamPublisher, writer.getSize());
+    }
+
+    private HttpRequest newGetRequest(URI uri) {
+        return newRequest(uri, "GET")
+            .header(HttpHeaders.ACCEPT, BUILD_CACHE_CONTENT_TYPE + ", */*")
+            .timeout(requestTimeout)
+            .GET()
+            .build();
+    }
+
+    private HttpRequest.Builder newRequest(URI uri, String method) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        // The customizer is shared with HttpBuildCacheService, so it is applied to an Apache request and its headers are copied
+        BasicHttpRequest customizedRequest = new BasicHttpRequest(method, uri.toASCIIString());
+        requestCustomizer.customize(customizedRequest);
+        for (Header header : customizedRequest.getAllHeaders()) {
+            builder.header(header.getName(), header.getValue());
+        }
+        return builder;
+    }
+
+    /**
+     * Sends the request created for the given URI, and follows the redirects of the server.
+     *
+     * Like the HTTP/1.1 client, the method is kept for temporary and permanent redirects (307 and 308), and {@code GET} is used otherwise.
+     */
+    private <T> HttpResponse<T> send(URI uri, Function<URI, HttpRequest> requestFactory, HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest request = requestFactory.apply(uri);
+        for (int redirects = 0; ; redirects++) {
+            HttpResponse<T> response = send(request, bodyHandler);
+            Optional<String> location = response.headers().firstValue(HttpHeaders.LOCATION);
+            if (maxRedirects <= 0 || !isRedirect(response.statusCode()) || !location.isPresent()) {
+                return response;
+            }
+            discard(response);
+            if (redirects >= maxRedirects) {
+                throw wrap(new IOException(String.format("Maximum redirects (%d) exceeded for %s %s", maxRedirects, request.method(), safeUri(uri))));
+            }
+            URI target = request.uri().resolve(location.get());
+            redirectVerifier.validateRedirects(Collections.singletonList(target));
+            boolean preservesMethod = response.statusCode() == HttpStatus.SC_TEMPORARY_REDIRECT || response.statusCode() == SC_PERMANENT_REDIRECT;
+            if (preservesMethod || request.method().equals("GET") || request.method().equals("HEAD")) {
+                request = requestFactory.apply(target);
+            } else {
+                request = newGetRequest(target);
+            }
+        }
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        switch (statusCode) {
+            case HttpStatus.SC_MOVED_PERMANENTLY:
+            case HttpStatus.SC_MOVED_TEMPORARILY:
+            case HttpStatus.SC_SEE_OTHER:
+            case HttpStatus.SC_TEMPORARY_REDIRECT:
+            case SC_PERMANENT_REDIRECT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void discard(HttpResponse<?> response) {
+        Object body = response.body();
+        if (body instanceof Closeable) {
+            try {
+                ((Closeable) body).close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close response body", e);
+            }
+        }
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        try {
+            HttpResponse<T> response = httpClient.send(request, bodyHandler);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for {} {} via {}: {}", request.method(), safeUri(request.uri()), response.version(), response.statusCode());
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw wrap(new InterruptedIOException("Interrupted while waiting for response from " + safeUri(request.uri())));
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    private static String reasonPhrase(int statusCode) {
+        // HTTP/2 does not transfer reason phrases
+        String reason = EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH);
+        return reason == null ? "" : reason;
+    }
+
+    /**
+     * Only hands out the credentials to the cache server, and not to proxies or other servers it redirects to.
+     */
+    private static class CacheServerAuthenticator extends Authenticator {
+        private final String host;
+        private final PasswordAuthentication authentication;
+
+        public CacheServerAuthenticator(String host, HttpBuildCacheCredentials credentials) {
+            this.host = host;
+            String password = credentials.getPassword();
+            this.authentication = new PasswordAuthentication(credentials.getUsername(), password == null ? new char[0] : password.toCharArray());
+        }
+
+        @Nullable
+        @Override
+        protected PasswordAuthentication getPasswordAuthentication() {
+            if (getRequestorType() == RequestorType.SERVER && host.equalsIgnoreCase(getRequestingHost())) {
+                return authentication;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+        // The JDK client can only be closed explicitly from Java 21 on, before that its connections are closed once it is no longer referenced
+        if (httpClient instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) httpClient).close();
+            } catch (Exception e) {
+                LOGGER.debug("Could not close HTTP client", e);
+            }
+        }
+    }
+}
@@ -17,40 +17,58 @@
 package org.gradle.caching.http.internal;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.protocol.HTTP;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
-import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
 import org.gradle.internal.resource.transport.http.HttpClientResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Build cache implementation that delegates to a service accessible via HTTP.
+ *
+ * <p>Existence of multiple entries is checked with a single {@code POST} to the root of the cache.
+ * The request body contains the keys as hexadecimal strings, one per line.
+ * The response body is a bitmap with a bit for each key in the order of the request, the lowest bit of the first byte being the bit of the first key.
+ * The bit is set if the entry exists in the cache.
+ * The response must have the {@value #BUILD_CACHE_BITMAP_CONTENT_TYPE} content type.
+ * Any other response, for example from a server which handles the {@code POST} as something else, means that the server does not support checking multiple entries.</p>
  */
-public class HttpBuildCacheService implements BuildCacheService {
+public class HttpBuildCacheService implements StatefulNextGenBuildCacheService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpBuildCacheService.class);
     static final String BUILD_CACHE_CONTENT_TYPE = "application/vnd.gradle.build-cache-artifact.v2";
+    static final String BUILD_CACHE_KEYS_CONTENT_TYPE = "application/vnd.gradle.build-cache-keys.v1";
+    static final String BUILD_CACHE_BITMAP_CONTENT_TYPE = "application/vnd.gradle.build-cache-bitmap.v1";
 
     private static final Set<Integer> FATAL_HTTP_ERROR_CODES = ImmutableSet.of(
         HttpStatus.SC_USE_PROXY,
@@ -102,6 +120,64 @@ public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws Buil
         }
     }
 
+    @Override
+    public boolean contains(BuildCacheKey key) {
+        final URI uri = root.resolve("./" + key.getHashCode());
+        HttpHead httpHead = new HttpHead(uri);
+        requestCustomizer.customize(httpHead);
+
+        try (HttpClientResponse response = httpClientHelper.performHttpRequest(httpHead)) {
+            StatusLine statusLine = response.getStatusLine();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for HEAD {}: {}", safeUri(uri), statusLine);
+            }
+            int statusCode = statusLine.getStatusCode();
+            if (isHttpSuccess(statusCode)) {
+                return true;
+            } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                return false;
+            } else {
+                String defaultMessage = String.format("Checking entry at '%s' response status %d: %s", safeUri(uri), statusCode, statusLine.getReasonPhrase());
+                return throwHttpStatusCodeException(statusCode, defaultMessage);
+            }
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public Set<BuildCacheKey> containsAll(Collection<BuildCacheKey> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        HttpPost httpPost = new HttpPost(root);
+        httpPost.addHeader(HttpHeaders.CONTENT_TYPE, BUILD_CACHE_KEYS_CONTENT_TYPE);
+        httpPost.addHeader(HttpHeaders.ACCEPT, BUILD_CACHE_BITMAP_CONTENT_TYPE);
+        requestCustomizer.customize(httpPost);
+        httpPost.setEntity(new ByteArrayEntity(encodeKeys(keys)));
+
+        try (HttpClientResponse response = httpClientHelper.performHttpRequest(httpPost)) {
+            StatusLine statusLine = response.getStatusLine();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for POST {}: {}", safeUri(root), statusLine);
+            }
+            int statusCode = statusLine.getStatusCode();
+            if (!isHttpSuccess(statusCode)) {
+                // Servers which do not support checking multiple entries respond with an error as well
+                String defaultMessage = String.format("Checking %d entries at '%s' response status %d: %s", keys.size(), safeUri(root), statusCode, statusLine.getReasonPhrase());
+                throwHttpStatusCodeException(statusCode, defaultMessage);
+            }
+            return decodeBitmap(keys, response.getHeader(HttpHeaders.CONTENT_TYPE), ByteStreams.toByteArray(response.getContent()), root);
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void store(BuildCacheKey key, NextGenWriter writer) throws BuildCacheException {
+        store(key, (BuildCacheEntryWriter) writer);
+    }
+
     @Override
     public void store(BuildCacheKey key, BuildCacheEntryWriter writer) throws BuildCacheException {
         final URI uri = root.resolve(key.getHashCode());
@@ -155,7 +231,42 @@ public boolean isStreaming() {
         }
     }
 
-    private static BuildCacheException wrap(Throwable e) {
+    static byte[] encodeKeys(Collection<BuildCacheKey> keys) {
+        StringBuilder body = new StringBuilder();
+        for (BuildCacheKey key : keys) {
+            body.append(key.getHashCode()).append('\n');
+        }
+        return body.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static Set<BuildCacheKey> decodeBitmap(Collection<BuildCacheKey> keys, @Nullable String contentType, byte[] bitmap, URI root) {
+        if (!isBitmapContentType(contentType)) {
+            throw new BuildCacheException(String.format("Checking %d entries at '%s' is not supported, the response has content type '%s'", keys.size(), safeUri(root), contentType));
+        }
+        if (bitmap.length < (keys.size() + 7) / 8) {
+            throw new BuildCacheException(String.format("Checking %d entries at '%s' returned a bitmap of only %d bytes", keys.size(), safeUri(root), bitmap.length));
+        }
+        Set<BuildCacheKey> found = new LinkedHashSet<>();
+        int index = 0;
+        for (BuildCacheKey key : keys) {
+            if ((bitmap[index >> 3] & (1 << (index & 7))) != 0) {
+                found.add(key);
+            }
+            index++;
+        }
+        return found;
+    }
+
+    private static boolean isBitmapContentType(@Nullable String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parametersStart = contentType.indexOf(';');
+        String mediaType = parametersStart < 0 ? contentType : contentType.substring(0, parametersStart);
+        return mediaType.trim().equalsIgnoreCase(BUILD_CACHE_BITMAP_CONTENT_TYPE);
+    }
+
+    static BuildCacheException wrap(Throwable e) {
         if (e instanceof Error) {
             throw (Error) e;
         }
@@ -163,11 +274,11 @@ private static BuildCacheException wrap(Throwable e) {
         throw new BuildCacheException(e.getMessage(), e);
     }
 
-    private boolean isHttpSuccess(int statusCode) {
+    static boolean isHttpSuccess(int statusCode) {
         return statusCode >= 200 && statusCode < 300;
     }
 
-    private boolean throwHttpStatusCodeException(int statusCode, String message) {
+    static boolean throwHttpStatusCodeException(int statusCode, String message) {
         if (FATAL_HTTP_ERROR_CODES.contains(statusCode)) {
             throw new UncheckedIOException(message);
         } else {
@@ -176,8 +287,16 @@ private boolean throwHttpStatusCodeException(int statusCode, String message) {
     }
 
     @Override
-    public void close() throws IOException {
-        httpClientHelper.close();
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClientHelper.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -186,7 +305,7 @@ public void close() throws IOException {
      * @param uri Original URI
      * @return a new URI with no user info
      */
-    private static URI safeUri(URI uri) {
+    static URI safeUri(URI uri) {
         try {
             return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), uri.getPath(), uri.getQuery(), uri.getFragment());
         } catch (URISyntaxException e) {
@@ -200,7 +319,7 @@ private static URI safeUri(URI uri) {
      * @param uri the original URI
      * @return a URI guaranteed to have a trailing slash in the path
      */
-    private static URI withTrailingSlash(URI uri) {
+    static URI withTrailingSlash(URI uri) {
         if (uri.getPath().endsWith("/")) {
             return uri;
         }
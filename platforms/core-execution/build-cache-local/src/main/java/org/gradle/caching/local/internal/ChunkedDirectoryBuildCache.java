@@ -0,0 +1,456 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.io.Closer;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.NonNullApi;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.file.FileAccessTracker;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.io.IoConsumer;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local build cache which stores entries as manifests of content-defined chunks, so that entries with similar content share most of their chunks.
+ *
+ * Manifests are stored in the {@value #ENTRIES_DIR} directory, keyed by the cache key.
+ * Chunks are stored in the {@value #CHUNKS_DIR} directory, keyed by the hash of their content.
+ *
+ * Entries compressed with gzip are decompressed before being chunked, as a difference early in a compressed stream changes all the compressed bytes following it.
+ * Their chunks are then compressed individually, and loading the entry concatenates them to a multi-member gzip stream which decompresses to the original content.
+ * Other entries are chunked as they are.
+ *
+ * Entries are chunked and their chunks written outside of the lock, and only the manifest is published while holding it.
+ * Loading an entry as a stream reads its chunks one after the other, without assembling the entry into a file first.
+ *
+ * Chunks that are no longer referenced by any manifest are removed by {@link ChunkedDirectoryBuildCacheCleanup}.
+ */
+@NonNullApi
+public class ChunkedDirectoryBuildCache implements BuildCacheTempFileStore, Closeable, LocalBuildCache {
+    public static final String ENTRIES_DIR = "entries";
+    public static final String CHUNKS_DIR = "chunks";
+
+    private static final byte MANIFEST_FORMAT_VERSION = 1;
+    private static final byte RAW_CHUNKS = 0;
+    private static final byte GZIP_CHUNKS = 1;
+    private static final String GZIP_CHUNK_SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PersistentCache persistentCache;
+    private final BuildCacheTempFileStore tempFileStore;
+    private final FileAccessTracker fileAccessTracker;
+    private final String failedFileSuffix;
+    private final File entriesDir;
+    private final File chunksDir;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ChunkedDirectoryBuildCache(PersistentCache persistentCache, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this.persistentCache = persistentCache;
+        // Create temporary files in the cache directory to ensure they are on the same file system,
+        // and thus can always be moved into the cache proper atomically
+        this.tempFileStore = new DefaultBuildCacheTempFileStore((prefix, suffix) -> {
+            try {
+                return Files.createTempFile(persistentCache.getBaseDir().toPath(), prefix, suffix).toFile();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        this.fileAccessTracker = fileAccessTracker;
+        this.failedFileSuffix = failedFileSuffix;
+        this.entriesDir = new File(persistentCache.getBaseDir(), ENTRIES_DIR);
+        this.chunksDir = new File(persistentCache.getBaseDir(), CHUNKS_DIR);
+    }
+
+    @Override
+    public boolean load(HashCode key, IoConsumer<InputStream> reader) {
+        AtomicBoolean loaded = new AtomicBoolean(false);
+        loadLocallyAsStream(key, (input, size) -> {
+            reader.accept(input);
+            loaded.set(true);
+        });
+        return loaded.get();
+    }
+
+    @Override
+    public void loadLocallyAsStream(HashCode key, LocalBuildCacheService.EntryReader reader) {
+        withReadLock(() -> {
+            File manifestFile = getManifestFile(key);
+            if (!manifestFile.exists()) {
+                return;
+            }
+
+            fileAccessTracker.markAccessed(manifestFile);
+
+            try {
+                List<File> chunkFiles = readChunkFiles(chunksDir, manifestFile);
+                long size = 0;
+                for (File chunkFile : chunkFiles) {
+                    size += chunkFile.length();
+                }
+                try (InputStream input = new ChunksInputStream(chunkFiles.iterator())) {
+                    reader.read(input, size);
+                }
+            } catch (Exception e) {
+                throw markFailed(manifestFile, e);
+            }
+        });
+    }
+
+    /**
+     * Loads the entry by assembling its chunks into a temporary file, for callers which need the entry as a file.
+     * Prefer {@link #loadLocallyAsStream(HashCode, LocalBuildCacheService.EntryReader)}, which does not copy the entry.
+     */
+    @Override
+    public void loadLocally(HashCode key, Consumer<? super File> reader) {
+        withReadLock(() -> {
+            File manifestFile = getManifestFile(key);
+            if (!manifestFile.exists()) {
+                return;
+            }
+
+            fileAccessTracker.markAccessed(manifestFile);
+
+            tempFileStore.withTempFile(key, file -> {
+                try {
+                    assembleEntry(manifestFile, file);
+                    reader.accept(file);
+                } catch (Exception e) {
+                    throw markFailed(manifestFile, e);
+                }
+            });
+        });
+    }
+
+    private void withReadLock(Runnable action) {
+        // We need to lock other processes out here because garbage collection can be under way in another process
+        persistentCache.withFileLock(() -> {
+            // Additional locking necessary because of https://github.com/gradle/gradle/issues/3537
+            lock.readLock().lock();
+            try {
+                action.run();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    private RuntimeException markFailed(File manifestFile, Exception failure) {
+        // Try to move the manifest out of the way in case its permanently corrupt
+        // Don't delete, so that it can be potentially used for debugging
+        File failedFile = new File(manifestFile.getAbsolutePath() + failedFileSuffix);
+        FileUtils.deleteQuietly(failedFile);
+        //noinspection ResultOfMethodCallIgnored
+        manifestFile.renameTo(failedFile);
+
+        return UncheckedException.throwAsUncheckedException(failure);
+    }
+
+    private void assembleEntry(File manifestFile, File targetFile) throws IOException {
+        try (OutputStream output = new FileOutputStream(targetFile)) {
+            for (File chunkFile : readChunkFiles(chunksDir, manifestFile)) {
+                Files.copy(chunkFile.toPath(), output);
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(HashCode key) {
+        return getManifestFile(key).isFile();
+    }
+
+    @Override
+    public void markAccessed(HashCode key) {
+        File manifestFile = getManifestFile(key);
+        if (manifestFile.isFile()) {
+            fileAccessTracker.markAccessed(manifestFile);
+        }
+    }
+
+    @Override
+    public void store(HashCode key, IoConsumer<OutputStream> result) {
+        tempFileStore.withTempFile(key, file -> {
+            try {
+                Closer closer = Closer.create();
+                try {
+                    result.accept(closer.register(new FileOutputStream(file)));
+                } catch (Exception e) {
+                    throw closer.rethrow(e);
+                } finally {
+                    closer.close();
+                }
+            } catch (IOException ex) {
+                throw UncheckedException.throwAsUncheckedException(ex);
+            }
+
+            storeLocally(key, file);
+        });
+    }
+
+    @Override
+    public void storeLocally(HashCode key, File file) {
+        File manifestFile = getManifestFile(key);
+        try {
+            // Chunking and compressing the entry is the expensive part, so it happens without blocking loads and other stores
+            boolean alreadyStored = manifestFile.exists();
+            boolean gzip = !alreadyStored && isGzip(file);
+            List<HashCode> chunks = alreadyStored ? null : storeChunks(file, gzip);
+
+            // We need to lock other processes out here because garbage collection can be under way in another process
+            persistentCache.withFileLock(() -> {
+                // Additional locking necessary because of https://github.com/gradle/gradle/issues/3537
+                lock.writeLock().lock();
+                try {
+                    publishInsideLock(key, manifestFile, file, gzip, chunks);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Couldn't store cache entry '%s' into local cache: %s", key, e), e);
+        }
+        // Like the directory cache, storing consumes the source file
+        FileUtils.deleteQuietly(file);
+        fileAccessTracker.markAccessed(manifestFile);
+    }
+
+    private void publishInsideLock(HashCode key, File manifestFile, File sourceFile, boolean gzip, @Nullable List<HashCode> chunks) {
+        if (chunks == null || manifestFile.exists()) {
+            return;
+        }
+        try {
+            if (!allChunksExist(chunks, gzip)) {
+                // Chunks were stored outside of the lock, so a cleanup may have deleted them before they were referenced by the manifest
+                chunks = storeChunks(sourceFile, gzip);
+            }
+            moveIntoCache(writeManifest(key, gzip ? GZIP_CHUNKS : RAW_CHUNKS, chunks), manifestFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean allChunksExist(List<HashCode> chunks, boolean gzip) {
+        for (HashCode chunk : chunks) {
+            if (!getChunkFile(chunksDir, chunk, gzip).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<HashCode> storeChunks(File sourceFile, boolean gzip) throws IOException {
+        List<HashCode> chunks = new ArrayList<>();
+        try (InputStream input = gzip
+            ? new GZIPInputStream(new FileInputStream(sourceFile), BUFFER_SIZE)
+            : new FileInputStream(sourceFile)
+        ) {
+            ContentDefinedChunker chunker = new ContentDefinedChunker(input);
+            int length;
+            while ((length = chunker.next()) > 0) {
+                Hasher hasher = Hashing.newHasher();
+                hasher.putBytes(chunker.getBuffer(), 0, length);
+                HashCode chunk = hasher.hash();
+                File chunkFile = getChunkFile(chunksDir, chunk, gzip);
+                if (!chunkFile.exists()) {
+                    moveIntoCache(writeChunk(chunk, chunker.getBuffer(), length, gzip), chunkFile);
+                }
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    private File writeChunk(HashCode chunk, byte[] buffer, int length, boolean gzip) throws IOException {
+        File file = createTempFile(chunk);
+        try (OutputStream output = gzip
+            ? new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE)
+            : new FileOutputStream(file)
+        ) {
+            output.write(buffer, 0, length);
+        }
+        return file;
+    }
+
+    private File writeManifest(HashCode key, byte encoding, List<HashCode> chunks) throws IOException {
+        File file = createTempFile(key);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeByte(MANIFEST_FORMAT_VERSION);
+            output.writeByte(encoding);
+            output.writeInt(chunks.size());
+            for (HashCode chunk : chunks) {
+                byte[] bytes = chunk.toByteArray();
+                output.writeByte(bytes.length);
+                output.write(bytes);
+            }
+        }
+        return file;
+    }
+
+    private File createTempFile(HashCode key) throws IOException {
+        return Files.createTempFile(persistentCache.getBaseDir().toPath(), key + "-", PARTIAL_FILE_SUFFIX).toFile();
+    }
+
+    private static void moveIntoCache(File sourceFile, File targetFile) throws IOException {
+        try {
+            Files.createDirectories(targetFile.getParentFile().toPath());
+            Files.move(sourceFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException ignore) {
+            // The same content has been stored in the meantime
+            FileUtils.deleteQuietly(sourceFile);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(sourceFile);
+            throw e;
+        }
+    }
+
+    private static boolean isGzip(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return input.read() == 0x1f && input.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Returns the chunk files referenced by the given manifest, in the order in which they make up the entry.
+     */
+    static List<File> readChunkFiles(File chunksDir, File manifestFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            int version = input.readUnsignedByte();
+            if (version != MANIFEST_FORMAT_VERSION) {
+                throw new IOException("Unsupported build cache manifest format version " + version + " in " + manifestFile + ".");
+            }
+            boolean gzip = input.readByte() == GZIP_CHUNKS;
+            int count = input.readInt();
+            List<File> chunkFiles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[input.readUnsignedByte()];
+                input.readFully(bytes);
+                chunkFiles.add(getChunkFile(chunksDir, HashCode.fromBytes(bytes), gzip));
+            }
+            return chunkFiles;
+        }
+    }
+
+    private static File getChunkFile(File chunksDir, HashCode chunk, boolean gzip) {
+        String name = chunk.toString();
+        // Spread chunks over subdirectories, as there can be millions of them
+        return new File(new File(chunksDir, name.substring(0, 2)), gzip ? name + GZIP_CHUNK_SUFFIX : name);
+    }
+
+    @Override
+    public void withTempFile(HashCode key, Consumer<? super File> action) {
+        persistentCache.withFileLock(() -> tempFileStore.withTempFile(key, action));
+    }
+
+    @Override
+    public void close() {
+        persistentCache.close();
+    }
+
+    private File getManifestFile(HashCode key) {
+        return new File(entriesDir, key.toString());
+    }
+
+    /**
+     * Reads the given chunk files one after the other, opening each of them only once the previous one has been read.
+     */
+    private static class ChunksInputStream extends InputStream {
+        private final Iterator<File> chunkFiles;
+        @Nullable
+        private InputStream current;
+
+        ChunksInputStream(Iterator<File> chunkFiles) {
+            this.chunkFiles = chunkFiles;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (nextChunk()) {
+                int b = current.read();
+                if (b >= 0) {
+                    return b;
+                }
+                closeChunk();
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (nextChunk()) {
+                int read = current.read(buffer, offset, length);
+                if (read > 0) {
+                    return read;
+                }
+                closeChunk();
+            }
+            return -1;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (current == null) {
+                if (!chunkFiles.hasNext()) {
+                    return false;
+                }
+                current = new FileInputStream(chunkFiles.next());
+            }
+            return true;
+        }
+
+        private void closeChunk() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeChunk();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Iterables;
+import org.apache.commons.io.FileUtils;
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupAction;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.NonReservedFileFilter;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cleans up a {@link ChunkedDirectoryBuildCache}.
+ *
+ * Manifests not accessed within the retention period are deleted first, together with entries stored by {@link DirectoryBuildCache} in the same directory.
+ * Afterwards, the references from the remaining manifests to chunks are counted, and chunks which are no longer referenced are deleted.
+ * The references are counted during the cleanup instead of being persisted, so that they cannot get out of sync when a build is interrupted while storing an entry.
+ */
+public class ChunkedDirectoryBuildCacheCleanup implements CleanupAction {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedDirectoryBuildCacheCleanup.class);
+
+    private final LeastRecentlyUsedCacheCleanup entriesCleanup;
+
+    public ChunkedDirectoryBuildCacheCleanup(FileAccessTimeJournal journal, Supplier<Long> removeUnusedEntriesOlderThan) {
+        this.entriesCleanup = new LeastRecentlyUsedCacheCleanup(ChunkedDirectoryBuildCacheCleanup::findEntries, journal, removeUnusedEntriesOlderThan);
+    }
+
+    @Override
+    public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        entriesCleanup.clean(cleanableStore, progressMonitor);
+
+        File chunksDir = new File(cleanableStore.getBaseDir(), ChunkedDirectoryBuildCache.CHUNKS_DIR);
+        Set<File> referencedChunks = findReferencedChunks(cleanableStore, chunksDir);
+        int chunksDeleted = 0;
+        for (File chunkFile : new SingleDepthFilesFinder(2).find(chunksDir, file -> true)) {
+            if (referencedChunks.contains(chunkFile)) {
+                progressMonitor.incrementSkipped();
+            } else {
+                progressMonitor.incrementDeleted();
+                if (FileUtils.deleteQuietly(chunkFile)) {
+                    chunksDeleted++;
+                }
+            }
+        }
+        LOGGER.info("{} cleanup deleted {} unreferenced chunks.", cleanableStore.getDisplayName(), chunksDeleted);
+    }
+
+    private static Set<File> findReferencedChunks(CleanableStore cleanableStore, File chunksDir) {
+        Set<File> referencedChunks = new HashSet<>();
+        File entriesDir = new File(cleanableStore.getBaseDir(), ChunkedDirectoryBuildCache.ENTRIES_DIR);
+        for (File manifestFile : new SingleDepthFilesFinder(1).find(entriesDir, new NonReservedFileFilter(cleanableStore.getReservedCacheFiles()))) {
+            try {
+                referencedChunks.addAll(ChunkedDirectoryBuildCache.readChunkFiles(chunksDir, manifestFile));
+            } catch (IOException e) {
+                // The entry cannot be loaded anymore, so there is no point in keeping it or its chunks
+                LOGGER.debug("Deleting unreadable build cache manifest {}", manifestFile, e);
+                FileUtils.deleteQuietly(manifestFile);
+            }
+        }
+        return referencedChunks;
+    }
+
+    private static Iterable<File> findEntries(File baseDir, FileFilter filter) {
+        FilesFinder singleDepth = new SingleDepthFilesFinder(1);
+        return Iterables.concat(
+            // Entries stored with the directory layout
+            Iterables.filter(singleDepth.find(baseDir, filter), File::isFile),
+            singleDepth.find(new File(baseDir, ChunkedDirectoryBuildCache.ENTRIES_DIR), filter)
+        );
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content, so that an insertion or a removal only changes the chunks around it.
+ *
+ * Boundaries are found with a gear rolling hash over the bytes following the first {@value #MIN_CHUNK_SIZE} bytes of a chunk.
+ * Chunks are on average about {@value #MIN_CHUNK_SIZE} plus 64 KiB long, and never longer than {@value #MAX_CHUNK_SIZE} bytes.
+ *
+ * The gear table and the sizes must never change, as otherwise the chunks of new entries would not be shared with the chunks of existing entries.
+ */
+class ContentDefinedChunker {
+    static final int MIN_CHUNK_SIZE = 16 * 1024;
+    static final int MAX_CHUNK_SIZE = 256 * 1024;
+    private static final long BOUNDARY_MASK = 0xFFFF_0000_0000_0000L;
+    private static final long[] GEAR = createGearTable();
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private int filled;
+    private int chunkLength;
+
+    ContentDefinedChunker(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Advances to the next chunk, and returns its length.
+     * The chunk is at the start of {@link #getBuffer()}, and is only valid until the next call.
+     *
+     * @return the length of the chunk, or 0 when the end of the stream has been reached
+     */
+    int next() throws IOException {
+        System.arraycopy(buffer, chunkLength, buffer, 0, filled - chunkLength);
+        filled -= chunkLength;
+        while (filled < buffer.length) {
+            int read = input.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                break;
+            }
+            filled += read;
+        }
+        chunkLength = findBoundary(buffer, filled);
+        return chunkLength;
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    private static int findBoundary(byte[] data, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        long fingerprint = 0;
+        for (int i = MIN_CHUNK_SIZE; i < length; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+            if ((fingerprint & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long[] createGearTable() {
+        // SplitMix64 with a fixed seed, so that the table is the same everywhere
+        long[] table = new long[256];
+        long state = 0x6772_6164_6C65_4344L;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E37_79B9_7F4A_7C15L;
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+            value = (value ^ (value >>> 27)) * 0x94D0_49BB_1331_11EBL;
+            table[i] = value ^ (value >>> 31);
+        }
+        return table;
+    }
+}
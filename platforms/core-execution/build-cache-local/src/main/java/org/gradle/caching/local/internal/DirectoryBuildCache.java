@@ -85,6 +85,17 @@ public boolean load(HashCode key, IoConsumer<InputStream> reader) {
         return loaded.get();
     }
 
+    @Override
+    public void loadLocallyAsStream(HashCode key, LocalBuildCacheService.EntryReader reader) {
+        loadLocally(key, file -> {
+            try (InputStream input = new FileInputStream(file)) {
+                reader.read(input, file.length());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
     @Override
     public void loadLocally(HashCode key, Consumer<? super File> reader) {
         // We need to lock other processes out here because garbage collection can be under way in another process
@@ -121,6 +132,19 @@ private void loadInsideLock(HashCode key, Consumer<? super File> reader) {
         }
     }
 
+    @Override
+    public boolean contains(HashCode key) {
+        return getCacheEntryFile(key).isFile();
+    }
+
+    @Override
+    public void markAccessed(HashCode key) {
+        File file = getCacheEntryFile(key);
+        if (file.isFile()) {
+            fileAccessTracker.markAccessed(file);
+        }
+    }
+
     @Override
     public void store(HashCode key, IoConsumer<OutputStream> result) {
         tempFileStore.withTempFile(key, file -> {
@@ -34,10 +34,16 @@
 @NonNullApi
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
 
-    private final DirectoryBuildCache cache;
+    private final LocalBuildCache cache;
+    private final BuildCacheTempFileStore tempFileStore;
 
     public DirectoryBuildCacheService(PersistentCache persistentCache, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
-        this.cache = new DirectoryBuildCache(persistentCache, fileAccessTracker, failedFileSuffix);
+        this(new DirectoryBuildCache(persistentCache, fileAccessTracker, failedFileSuffix));
+    }
+
+    public <T extends LocalBuildCache & BuildCacheTempFileStore> DirectoryBuildCacheService(T cache) {
+        this.cache = cache;
+        this.tempFileStore = cache;
     }
 
     @Override
@@ -50,6 +56,21 @@ public void loadLocally(BuildCacheKey key, Consumer<? super File> reader) {
         cache.loadLocally(((BuildCacheKeyInternal) key).getHashCodeInternal(), reader);
     }
 
+    @Override
+    public void loadLocallyAsStream(BuildCacheKey key, EntryReader reader) {
+        cache.loadLocallyAsStream(((BuildCacheKeyInternal) key).getHashCodeInternal(), reader);
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        return cache.contains(((BuildCacheKeyInternal) key).getHashCodeInternal());
+    }
+
+    @Override
+    public void markAccessedLocally(BuildCacheKey key) {
+        cache.markAccessed(((BuildCacheKeyInternal) key).getHashCodeInternal());
+    }
+
     @Override
     public void store(BuildCacheKey key, BuildCacheEntryWriter result) throws BuildCacheException {
         cache.store(((BuildCacheKeyInternal) key).getHashCodeInternal(), result::writeTo);
@@ -62,7 +83,7 @@ public void storeLocally(BuildCacheKey key, File file) {
 
     @Override
     public void withTempFile(HashCode key, Consumer<? super File> action) {
-        cache.withTempFile(key, action);
+        tempFileStore.withTempFile(key, action);
     }
 
     @Override
@@ -30,6 +30,12 @@ public interface LocalBuildCache extends Closeable {
 
     void loadLocally(HashCode key, Consumer<? super File> reader);
 
+    void loadLocallyAsStream(HashCode key, LocalBuildCacheService.EntryReader reader);
+
+    boolean contains(HashCode key);
+
+    void markAccessed(HashCode key);
+
     void store(HashCode key, IoConsumer<OutputStream> result);
 
     void storeLocally(HashCode key, File file);
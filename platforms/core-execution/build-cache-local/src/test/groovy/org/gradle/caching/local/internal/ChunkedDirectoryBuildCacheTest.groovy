@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.cache.CleanableStore
+import org.gradle.cache.CleanupProgressMonitor
+import org.gradle.cache.PersistentCache
+import org.gradle.internal.file.FileAccessTimeJournal
+import org.gradle.internal.file.FileAccessTracker
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+@UsesNativeServices
+@CleanupTestDirectory
+class ChunkedDirectoryBuildCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def cacheDir = temporaryFolder.createDir("cache")
+    def chunksDir = new File(cacheDir, ChunkedDirectoryBuildCache.CHUNKS_DIR)
+    def persistentCache = Mock(PersistentCache) {
+        getBaseDir() >> cacheDir
+        withFileLock(_) >> { Runnable r -> r.run() }
+    }
+    def fileAccessTracker = Mock(FileAccessTracker)
+    def cache = new ChunkedDirectoryBuildCache(persistentCache, fileAccessTracker, ".failed")
+    def key = TestHashCodes.hashCodeFrom(12345678)
+    def otherKey = TestHashCodes.hashCodeFrom(87654321)
+
+    def "restores #type entry from chunks"() {
+        def content = randomBytes(1, 1024 * 1024)
+        def entry = temporaryFolder.file("entry")
+        entry.bytes = compressed ? gzip(content) : content
+
+        when:
+        cache.storeLocally(key, entry)
+
+        then:
+        !entry.exists()
+        chunkFiles().size() > 1
+        1 * fileAccessTracker.markAccessed(new File(cacheDir, "${ChunkedDirectoryBuildCache.ENTRIES_DIR}/$key"))
+
+        when:
+        byte[] loaded = null
+        cache.loadLocally(key) { file ->
+            loaded = compressed ? new GZIPInputStream(new FileInputStream(file)).bytes : file.bytes
+        }
+
+        then:
+        loaded == content
+
+        where:
+        type   | compressed
+        "raw"  | false
+        "gzip" | true
+    }
+
+    def "shares chunks between similar entries"() {
+        def content = randomBytes(1, 2 * 1024 * 1024)
+        def changedContent = concat("prefix".bytes, content)
+
+        when:
+        cache.store(key) { it.write(gzip(content)) }
+        def chunksOfSingleEntry = chunkFiles().size()
+        cache.store(otherKey) { it.write(gzip(changedContent)) }
+
+        then:
+        chunkFiles().size() <= chunksOfSingleEntry + 2
+        cache.load(otherKey) { input ->
+            assert new GZIPInputStream(input).bytes == changedContent
+        }
+    }
+
+    def "streams entry from its chunks"() {
+        def content = randomBytes(3, 1024 * 1024)
+        cache.store(key) { it.write(gzip(content)) }
+
+        when:
+        byte[] loaded = null
+        long loadedSize = -1
+        cache.loadLocallyAsStream(key) { input, size ->
+            loaded = new GZIPInputStream(input).bytes
+            loadedSize = size
+        }
+
+        then:
+        loaded == content
+        loadedSize == chunkFiles().sum { it.length() }
+        !cacheDir.listFiles().any { it.name.endsWith(BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX) }
+    }
+
+    def "stores chunks again when they were deleted before the manifest was published"() {
+        def content = randomBytes(4, 512 * 1024)
+        def entry = temporaryFolder.file("entry")
+        entry.bytes = content
+
+        when:
+        cache.storeLocally(key, entry)
+
+        then:
+        1 * persistentCache.withFileLock(_) >> { Runnable r ->
+            // Simulate a cleanup running between storing the chunks and publishing the manifest
+            chunksDir.deleteDir()
+            r.run()
+        }
+
+        when:
+        byte[] loaded = null
+        cache.load(key) { input -> loaded = input.bytes }
+
+        then:
+        loaded == content
+    }
+
+    def "does not store partial result"() {
+        when:
+        cache.store(key) { output ->
+            output << "abcd"
+            throw new RuntimeException("Simulated write error")
+        }
+
+        then:
+        def ex = thrown RuntimeException
+        ex.message == "Simulated write error"
+        cacheDir.listFiles() as List == []
+        0 * fileAccessTracker.markAccessed(_)
+    }
+
+    def "cleanup deletes chunks no longer referenced by any entry"() {
+        def journal = Stub(FileAccessTimeJournal) {
+            getLastAccessTime(_) >> { File file -> file.name == key.toString() ? 0L : Long.MAX_VALUE }
+        }
+        def cleanableStore = Stub(CleanableStore) {
+            getBaseDir() >> cacheDir
+            getReservedCacheFiles() >> []
+            getDisplayName() >> "Build cache"
+        }
+        def cleanup = new ChunkedDirectoryBuildCacheCleanup(journal, { 1L })
+        def sharedContent = randomBytes(1, 512 * 1024)
+        def otherContent = randomBytes(2, 512 * 1024)
+
+        when:
+        cache.store(otherKey) { it.write(sharedContent) }
+        def chunksOfRemainingEntry = chunkFiles()
+        cache.store(key) { it.write(concat(sharedContent, otherContent)) }
+
+        then:
+        chunkFiles().size() > chunksOfRemainingEntry.size()
+
+        when:
+        cleanup.clean(cleanableStore, Stub(CleanupProgressMonitor))
+
+        then:
+        chunkFiles() == chunksOfRemainingEntry
+        !cache.load(key) { assert false }
+        cache.load(otherKey) { input ->
+            assert input.bytes == sharedContent
+        }
+    }
+
+    private Set<File> chunkFiles() {
+        (chunksDir.listFiles() ?: []).collectMany { it.listFiles() as List } as Set
+    }
+
+    private static byte[] randomBytes(long seed, int length) {
+        def bytes = new byte[length]
+        new Random(seed).nextBytes(bytes)
+        bytes
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        def output = new ByteArrayOutputStream()
+        output.write(first)
+        output.write(second)
+        output.toByteArray()
+    }
+
+    private static byte[] gzip(byte[] content) {
+        def output = new ByteArrayOutputStream()
+        new GZIPOutputStream(output).withStream { it.write(content) }
+        output.toByteArray()
+    }
+}
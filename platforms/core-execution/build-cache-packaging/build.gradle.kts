@@ -8,6 +8,7 @@ description = "Package build cache results"
 dependencies {
 
     api(projects.buildCacheBase)
+    api(projects.concurrent)
     api(projects.files)
     api(projects.hashing)
     api(projects.snapshots)
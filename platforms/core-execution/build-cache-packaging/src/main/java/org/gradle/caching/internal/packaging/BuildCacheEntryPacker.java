@@ -23,6 +23,7 @@
 import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,26 +34,48 @@ public interface BuildCacheEntryPacker {
 
     class PackResult {
         private final long entries;
+        private final long uncompressedSize;
 
-        public PackResult(long entries) {
+        public PackResult(long entries, long uncompressedSize) {
             this.entries = entries;
+            this.uncompressedSize = uncompressedSize;
         }
 
         public long getEntries() {
             return entries;
         }
+
+        /**
+         * The size of the entry before compression.
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
     }
 
     UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException;
 
+    /**
+     * Identifies the format of the packed entries when older Gradle versions cannot unpack them, or returns {@code null} when they can.
+     *
+     * Entries in such a format are stored under a key derived from their cache key and this identifier,
+     * so that older versions sharing the cache do not find them.
+     */
+    @Nullable
+    default String getKeyDiscriminator() {
+        return null;
+    }
+
     class UnpackResult {
         private final OriginMetadata originMetadata;
         private final long entries;
+        private final long uncompressedSize;
         private final Map<String, FileSystemLocationSnapshot> snapshots;
 
-        public UnpackResult(OriginMetadata originMetadata, long entries, Map<String, FileSystemLocationSnapshot> snapshots) {
+        public UnpackResult(OriginMetadata originMetadata, long entries, long uncompressedSize, Map<String, FileSystemLocationSnapshot> snapshots) {
             this.originMetadata = originMetadata;
             this.entries = entries;
+            this.uncompressedSize = uncompressedSize;
             this.snapshots = snapshots;
         }
 
@@ -64,6 +87,13 @@ public long getEntries() {
             return entries;
         }
 
+        /**
+         * The size of the entry after decompression.
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
         public Map<String, FileSystemLocationSnapshot> getSnapshots() {
             return snapshots;
         }
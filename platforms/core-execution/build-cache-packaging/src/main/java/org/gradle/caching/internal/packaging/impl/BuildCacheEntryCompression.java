@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz77support.Parameters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression of a build cache entry.
+ *
+ * Levels range from {@value #FASTEST_LEVEL} (fastest) to {@value #SMALLEST_LEVEL} (smallest entries), with {@value #DEFAULT_LEVEL} selecting the default of the codec.
+ * The level only affects packing, entries are unpacked the same way regardless of the level used to pack them.
+ */
+public enum BuildCacheEntryCompression {
+    /**
+     * Entries are stored as they are, trading size for the time it takes to pack and unpack them.
+     */
+    NONE(0) {
+        @Override
+        public OutputStream compress(OutputStream output, int level) {
+            return output;
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return input;
+        }
+    },
+    GZIP(1) {
+        @Override
+        public OutputStream compress(OutputStream output, int level) throws IOException {
+            return new GZIPOutputStream(output) {
+                {
+                    def.setLevel(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+    },
+    LZ4(2) {
+        @Override
+        public OutputStream compress(OutputStream output, int level) throws IOException {
+            Parameters.Builder parameters = BlockLZ4CompressorOutputStream.createParameterBuilder();
+            if (level != DEFAULT_LEVEL && level <= 3) {
+                parameters.tunedForSpeed();
+            } else if (level >= 7) {
+                parameters.tunedForCompressionRatio();
+            }
+            return new FramedLZ4CompressorOutputStream(output, new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.M4, parameters.build()));
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new FramedLZ4CompressorInputStream(input);
+        }
+    };
+
+    public static final int DEFAULT_LEVEL = -1;
+    public static final int FASTEST_LEVEL = 1;
+    public static final int SMALLEST_LEVEL = 9;
+
+    private final byte id;
+
+    BuildCacheEntryCompression(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * The identifier of the compression in the header of packed entries, which must not change once released.
+     */
+    byte getId() {
+        return id;
+    }
+
+    public abstract OutputStream compress(OutputStream output, int level) throws IOException;
+
+    public abstract InputStream decompress(InputStream input) throws IOException;
+
+    static BuildCacheEntryCompression forId(byte id) throws IOException {
+        for (BuildCacheEntryCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IOException("Unsupported build cache entry compression with id " + id + ".");
+    }
+
+    public static BuildCacheEntryCompression forName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown build cache entry compression '" + name + "'. Supported values are 'gzip', 'lz4' and 'none'.", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+
+/**
+ * Compresses entries with a configurable {@link BuildCacheEntryCompression}.
+ *
+ * Entries compressed with GZIP are written without a header, exactly like {@link GZipBuildCacheEntryPacker} does,
+ * so that they can still be read by Gradle versions which do not know about the header.
+ * Entries compressed otherwise start with a header made of a magic number, a format version and the id of the compression.
+ * Unpacking detects the compression of the entry, so entries of all compressions can coexist in the same cache.
+ * Entries with a header are stored under different keys than GZIP entries, as older versions would fail to unpack them.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
+    private static final byte[] MAGIC = {'G', 'B', 'C'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+
+    private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCompression compression;
+    private final int level;
+
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCompression compression, int level) {
+        if (level != BuildCacheEntryCompression.DEFAULT_LEVEL && (level < BuildCacheEntryCompression.FASTEST_LEVEL || level > BuildCacheEntryCompression.SMALLEST_LEVEL)) {
+            throw new IllegalArgumentException("Unsupported build cache entry compression level " + level + ". Supported levels are " + BuildCacheEntryCompression.DEFAULT_LEVEL
+                + " (the default of the compression) and " + BuildCacheEntryCompression.FASTEST_LEVEL + " to " + BuildCacheEntryCompression.SMALLEST_LEVEL + ".");
+        }
+        this.delegate = delegate;
+        this.compression = compression;
+        this.level = level;
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        if (compression != BuildCacheEntryCompression.GZIP) {
+            writeHeader(output, compression);
+        }
+        try (OutputStream compressedOutput = compression.compress(output, level)) {
+            return delegate.pack(entity, snapshots, compressedOutput, writeOrigin);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getKeyDiscriminator() {
+        return compression == BuildCacheEntryCompression.GZIP ? null : "compression-" + compression.getId();
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        PushbackInputStream headerInput = new PushbackInputStream(input, 1);
+        BuildCacheEntryCompression entryCompression = readCompression(headerInput);
+        try (InputStream decompressedInput = entryCompression.decompress(headerInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
+        }
+    }
+
+    /**
+     * Copies a packed entry of any compression as an entry packed with {@link BuildCacheEntryCompression#NONE}, which can be unpacked without decompressing it.
+     */
+    public static void decompress(InputStream input, OutputStream output) throws IOException {
+        PushbackInputStream headerInput = new PushbackInputStream(input, 1);
+        BuildCacheEntryCompression entryCompression = readCompression(headerInput);
+        writeHeader(output, BuildCacheEntryCompression.NONE);
+        try (InputStream decompressedInput = entryCompression.decompress(headerInput)) {
+            ByteStreams.copy(decompressedInput, output);
+        }
+    }
+
+    private static void writeHeader(OutputStream output, BuildCacheEntryCompression compression) throws IOException {
+        output.write(MAGIC);
+        output.write(FORMAT_VERSION);
+        output.write(compression.getId());
+    }
+
+    private static BuildCacheEntryCompression readCompression(PushbackInputStream input) throws IOException {
+        int first = input.read();
+        if (first == GZIP_MAGIC_FIRST_BYTE || first == -1) {
+            // An entry without header, or an empty entry which fails in the same way as before
+            if (first != -1) {
+                input.unread(first);
+            }
+            return BuildCacheEntryCompression.GZIP;
+        }
+        if (first != MAGIC[0] || readByte(input) != MAGIC[1] || readByte(input) != MAGIC[2]) {
+            throw new IOException("Not a build cache entry.");
+        }
+        int version = readByte(input);
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported build cache entry format version " + version + ", expected at most " + FORMAT_VERSION + ".");
+        }
+        return BuildCacheEntryCompression.forId((byte) readByte(input));
+    }
+
+    private static int readByte(InputStream input) throws IOException {
+        int value = input.read();
+        if (value == -1) {
+            throw new EOFException("Unexpected end of build cache entry header.");
+        }
+        return value;
+    }
+}
@@ -20,6 +20,8 @@
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Interner;
 import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
@@ -32,6 +34,10 @@
 import org.gradle.caching.internal.origin.OriginWriter;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
 import org.gradle.internal.RelativePathSupplier;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.file.BufferProvider;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.file.PathTraversalChecker;
@@ -53,12 +59,15 @@
 
 import javax.annotation.Nullable;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
@@ -66,9 +75,17 @@
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -77,8 +94,10 @@
 
 /**
  * Packages build cache entries to a POSIX TAR file.
+ *
+ * When unpacking in parallel, the packer owns the pool of threads writing files, which is shared by all unpacked entries and released by {@link #stop()}.
  */
-public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
+public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker, Stoppable {
 
     @SuppressWarnings("OctalInteger")
     private interface UnixPermissions {
@@ -93,11 +112,28 @@ private interface UnixPermissions {
     private static final String METADATA_PATH = "METADATA";
     private static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
 
+    /**
+     * Number of files in a directory tree written on the unpacking thread before writing the remaining files in parallel.
+     */
+    private static final int SEQUENTIAL_FILE_COUNT = 32;
+    /**
+     * Files larger than this are written on the unpacking thread, as they are not dominated by the latency of creating the file.
+     */
+    private static final int MAX_PARALLEL_FILE_SIZE = 1024 * 1024;
+    /**
+     * Maximum number of bytes read from the archive but not yet written to files.
+     */
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
     private final TarPackerFileSystemSupport fileSystemSupport;
     private final FilePermissionAccess filePermissionAccess;
     private final StreamHasher streamHasher;
     private final Interner<String> stringInterner;
     private final BufferProvider bufferProvider;
+    @Nullable
+    private final ExecutorFactory executorFactory;
+    private final int unpackThreads;
+    private ManagedExecutor unpackExecutor;
 
     public TarBuildCacheEntryPacker(
         TarPackerFileSystemSupport fileSystemSupport,
@@ -105,12 +141,46 @@ public TarBuildCacheEntryPacker(
         StreamHasher streamHasher,
         Interner<String> stringInterner,
         BufferProvider bufferProvider
+    ) {
+        this(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, bufferProvider, null, 1);
+    }
+
+    /**
+     * Creates a packer which writes the files of large directory trees using up to {@code unpackThreads} threads while unpacking.
+     * The archive is still read on the calling thread, so a value of {@code 1} unpacks sequentially.
+     * The threads are created by the given factory the first time they are needed.
+     */
+    public TarBuildCacheEntryPacker(
+        TarPackerFileSystemSupport fileSystemSupport,
+        FilePermissionAccess filePermissionAccess,
+        StreamHasher streamHasher,
+        Interner<String> stringInterner,
+        BufferProvider bufferProvider,
+        @Nullable ExecutorFactory executorFactory,
+        int unpackThreads
     ) {
         this.fileSystemSupport = fileSystemSupport;
         this.filePermissionAccess = filePermissionAccess;
         this.streamHasher = streamHasher;
         this.stringInterner = stringInterner;
         this.bufferProvider = bufferProvider;
+        this.executorFactory = executorFactory;
+        this.unpackThreads = executorFactory == null ? 1 : unpackThreads;
+    }
+
+    private synchronized ManagedExecutor getUnpackExecutor() {
+        if (unpackExecutor == null) {
+            unpackExecutor = executorFactory.create("Build cache unpack", unpackThreads);
+        }
+        return unpackExecutor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (unpackExecutor != null) {
+            unpackExecutor.stop();
+            unpackExecutor = null;
+        }
     }
 
     @Override
@@ -127,7 +197,8 @@ public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemS
             tarOutput.setAddPaxHeadersForNonAsciiNames(true);
             packMetadata(writeOrigin, tarOutput);
             long entryCount = pack(entity, snapshots, tarOutput);
-            return new PackResult(entryCount + 1);
+            tarOutput.finish();
+            return new PackResult(entryCount + 1, tarOutput.getBytesWritten());
         }
     }
 
@@ -214,7 +285,7 @@ private UnpackResult unpack(CacheableEntity entity, TarArchiveInputStream tarInp
             throw new IllegalStateException("Cached result format error, no origin metadata was found.");
         }
 
-        return new UnpackResult(originMetadata, entries.get(), snapshots);
+        return new UnpackResult(originMetadata, entries.get(), tarInput.getBytesRead(), snapshots);
     }
 
     private static class CacheableTree {
@@ -269,50 +340,158 @@ private TarArchiveEntry unpackTree(String treeName, TreeType treeType, File tree
     private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
         try (CountingOutputStream output = new CountingOutputStream(new FileOutputStream(file))) {
             HashCode hash = streamHasher.hashCopy(input, output);
-            chmodUnpackedFile(entry, file);
-            String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
-            String internedFileName = stringInterner.intern(fileName);
-            return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, DefaultFileMetadata.file(output.getCount(), file.lastModified(), DIRECT));
+            return snapshotUnpackedFile(entry, file, fileName, hash, output.getCount());
         }
     }
 
+    private RegularFileSnapshot snapshotUnpackedFile(TarArchiveEntry entry, File file, String fileName, HashCode hash, long length) {
+        chmodUnpackedFile(entry, file);
+        String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+        String internedFileName = stringInterner.intern(fileName);
+        return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, DefaultFileMetadata.file(length, file.lastModified(), DIRECT));
+    }
+
     @Nullable
     private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, AtomicLong entries, File treeRoot, String treeName) throws IOException {
         RelativePathParser parser = new RelativePathParser(safeEntryName(rootEntry));
 
-        DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
-        builder.enterDirectory(DIRECT, stringInterner.intern(treeRoot.getAbsolutePath()), stringInterner.intern(treeRoot.getName()), INCLUDE_EMPTY_DIRS);
+        // Files may be written in parallel, so the snapshot of the tree is only built once all of them have been written
+        List<Consumer<DirectorySnapshotBuilder>> snapshotActions = new ArrayList<>();
+        Runnable leaveDirectory = () -> snapshotActions.add(DirectorySnapshotBuilder::leaveDirectory);
 
         TarArchiveEntry entry;
 
-        while ((entry = input.getNextEntry()) != null) {
-            boolean isDir = entry.isDirectory();
-            boolean outsideOfRoot = parser.nextPath(safeEntryName(entry), isDir, builder::leaveDirectory);
-            if (outsideOfRoot) {
-                break;
-            }
-            entries.incrementAndGet();
-
-            File file = new File(treeRoot, parser.getRelativePath());
-            if (isDir) {
-                FileUtils.forceMkdir(file);
-                chmodUnpackedFile(entry, file);
-                String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
-                String internedName = stringInterner.intern(parser.getName());
-                builder.enterDirectory(DIRECT, internedAbsolutePath, internedName, INCLUDE_EMPTY_DIRS);
-            } else {
-                RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
-                builder.visitLeafElement(fileSnapshot);
+        try (TreeFileWriter fileWriter = new TreeFileWriter()) {
+            while ((entry = input.getNextEntry()) != null) {
+                boolean isDir = entry.isDirectory();
+                boolean outsideOfRoot = parser.nextPath(safeEntryName(entry), isDir, leaveDirectory);
+                if (outsideOfRoot) {
+                    break;
+                }
+                entries.incrementAndGet();
+
+                File file = new File(treeRoot, parser.getRelativePath());
+                if (isDir) {
+                    FileUtils.forceMkdir(file);
+                    chmodUnpackedFile(entry, file);
+                    String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+                    String internedName = stringInterner.intern(parser.getName());
+                    snapshotActions.add(builder -> builder.enterDirectory(DIRECT, internedAbsolutePath, internedName, INCLUDE_EMPTY_DIRS));
+                } else {
+                    Supplier<RegularFileSnapshot> fileSnapshot = fileWriter.write(input, entry, file, parser.getName());
+                    snapshotActions.add(builder -> builder.visitLeafElement(fileSnapshot.get()));
+                }
             }
+            parser.exitToRoot(leaveDirectory);
+            fileWriter.awaitWrites();
         }
 
-        parser.exitToRoot(builder::leaveDirectory);
+        DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        builder.enterDirectory(DIRECT, stringInterner.intern(treeRoot.getAbsolutePath()), stringInterner.intern(treeRoot.getName()), INCLUDE_EMPTY_DIRS);
+        snapshotActions.forEach(action -> action.accept(builder));
         builder.leaveDirectory();
 
         snapshots.put(treeName, builder.getResult());
         return entry;
     }
 
+    /**
+     * Writes the files of a directory tree.
+     *
+     * The first few files are written on the unpacking thread, so that small trees do not pay for starting threads.
+     * Afterwards, the content of small files is read from the archive into memory, and the files are written and hashed by a pool of threads,
+     * since creating many small files is bound by the latency of the file system rather than by reading the archive.
+     * The threads are shared with other entries being unpacked at the same time.
+     */
+    private class TreeFileWriter implements Closeable {
+        private final List<PendingWrite> pendingWrites = new ArrayList<>();
+        private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+        private int fileCount;
+
+        public Supplier<RegularFileSnapshot> write(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
+            fileCount++;
+            long size = entry.getSize();
+            if (unpackThreads <= 1 || fileCount <= SEQUENTIAL_FILE_COUNT || size > MAX_PARALLEL_FILE_SIZE) {
+                RegularFileSnapshot snapshot = unpackFile(input, entry, file, fileName);
+                return () -> snapshot;
+            }
+
+            int bufferedSize = (int) size;
+            acquire(bufferedSize);
+            PendingWrite pendingWrite = new PendingWrite();
+            try {
+                byte[] content = IOUtils.toByteArray(input, bufferedSize);
+                pendingWrite.future = getUnpackExecutor().submit(() -> {
+                    if (!pendingWrite.started.compareAndSet(false, true)) {
+                        // Unpacking failed before the file was written
+                        return null;
+                    }
+                    try (OutputStream output = new FileOutputStream(file)) {
+                        HashCode hash = streamHasher.hashCopy(new ByteArrayInputStream(content), output);
+                        return snapshotUnpackedFile(entry, file, fileName, hash, content.length);
+                    } finally {
+                        pendingBytes.release(bufferedSize);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                pendingBytes.release(bufferedSize);
+                throw e;
+            }
+            pendingWrites.add(pendingWrite);
+            return () -> Futures.getUnchecked(pendingWrite.future);
+        }
+
+        /**
+         * Waits for all files to be written, rethrowing the first failure.
+         */
+        public void awaitWrites() throws IOException {
+            for (PendingWrite pendingWrite : pendingWrites) {
+                try {
+                    Uninterruptibles.getUninterruptibly(pendingWrite.future);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw UncheckedException.throwAsUncheckedException(cause);
+                }
+            }
+        }
+
+        private void acquire(int bytes) throws InterruptedIOException {
+            try {
+                pendingBytes.acquire(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while unpacking build cache entry");
+            }
+        }
+
+        @Override
+        public void close() {
+            // When unpacking fails, make sure no more files are written after the failure is reported
+            for (PendingWrite pendingWrite : pendingWrites) {
+                if (pendingWrite.started.compareAndSet(false, true)) {
+                    pendingWrite.future.cancel(false);
+                } else {
+                    try {
+                        Uninterruptibles.getUninterruptibly(pendingWrite.future);
+                    } catch (ExecutionException ignored) {
+                        // The first failure has already been reported
+                    }
+                }
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        /**
+         * Set by the thread writing the file, or by the unpacking thread to skip writing it.
+         */
+        private final AtomicBoolean started = new AtomicBoolean();
+        private Future<RegularFileSnapshot> future;
+    }
+
     /**
      * Returns a safe name for the name of a tar archive entry.
      *
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import org.apache.commons.io.FileUtils;
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.file.TreeType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.StreamHasher;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.DirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshotHierarchyVisitor;
+import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotVisitResult;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.gradle.internal.file.FileMetadata.AccessType.DIRECT;
+import static org.gradle.internal.snapshot.DirectorySnapshotBuilder.EmptyDirectoryHandlingStrategy.INCLUDE_EMPTY_DIRS;
+
+/**
+ * Restores the outputs of build cache entries from immutable workspaces holding their unpacked trees.
+ *
+ * The first time an entry is restored, its archive is unpacked into a temporary workspace, which is then moved to the immutable location of the entry.
+ * Next to the trees, the workspace holds the origin metadata of the entry and a manifest with the snapshots of the trees,
+ * so that restoring the entry again only needs to copy or link the files, without reading the archive or hashing the files.
+ *
+ * The size and modification time of each file are recorded in the manifest and checked before restoring it,
+ * so that a workspace modified in place is discarded and unpacked again from the archive.
+ * A discarded workspace is first moved out of its immutable location atomically, so that it is never seen partially deleted.
+ * <p>
+ * Files restored as hard links share their content with the workspace, so they are made read-only to protect the workspace against in-place modification of the outputs,
+ * and the content hash of each file is verified before linking it again, like {@code AssignImmutableWorkspaceStep} does for immutable workspaces.
+ * Linking is only used when explicitly requested, since read-only outputs break work which rewrites its outputs in place,
+ * and on Windows read-only files cannot be deleted by tools which do not clear the read-only attribute first.
+ */
+public class WorkspaceBuildCacheEntryRestorer {
+    private static final String MANIFEST_PATH = "MANIFEST";
+    private static final String METADATA_PATH = "METADATA";
+    private static final String TREE_PREFIX = "tree-";
+    private static final String FORMAT = "workspace-1";
+
+    private static final String MISSING = "missing";
+    private static final String FILE = "file";
+    private static final String DIRECTORY = "directory";
+
+    private static final String ENTER_DIRECTORY = "D";
+    private static final String REGULAR_FILE = "F";
+    private static final String LEAVE_DIRECTORY = "U";
+
+    public enum Mode {
+        /**
+         * Copies the files from the workspace, which recent JDKs do as a copy-on-write clone on file systems supporting it.
+         */
+        COPY,
+        /**
+         * Creates hard links to the files in the workspace, falling back to copying them when linking fails.
+         * Files in the workspace, and hence restored files, are read-only, so outputs cannot be rewritten in place,
+         * and on Windows they cannot be deleted without clearing the read-only attribute first.
+         * The content of the files in the workspace is hashed before linking them again.
+         */
+        LINK;
+
+        public static Mode forName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown build cache restore mode '" + name + "'. Supported values are 'unpack', 'copy' and 'link'.", e);
+            }
+        }
+    }
+
+    /**
+     * Locates the workspaces of build cache entries.
+     */
+    public interface WorkspaceProvider {
+        /**
+         * The immutable location of the workspace of the entry with the given key, which may not exist yet.
+         */
+        File getWorkspace(String cacheKey);
+
+        /**
+         * A new location to unpack the entry with the given key into, before moving it to its immutable location.
+         */
+        File getTemporaryWorkspace(String cacheKey);
+    }
+
+    private final WorkspaceProvider workspaceProvider;
+    private final BuildCacheEntryPacker packer;
+    private final TarPackerFileSystemSupport fileSystemSupport;
+    private final FilePermissionAccess filePermissionAccess;
+    private final StreamHasher streamHasher;
+    private final Interner<String> stringInterner;
+    private final Mode mode;
+
+    public WorkspaceBuildCacheEntryRestorer(
+        WorkspaceProvider workspaceProvider,
+        BuildCacheEntryPacker packer,
+        TarPackerFileSystemSupport fileSystemSupport,
+        FilePermissionAccess filePermissionAccess,
+        StreamHasher streamHasher,
+        Interner<String> stringInterner,
+        Mode mode
+    ) {
+        this.workspaceProvider = workspaceProvider;
+        this.packer = packer;
+        this.fileSystemSupport = fileSystemSupport;
+        this.filePermissionAccess = filePermissionAccess;
+        this.streamHasher = streamHasher;
+        this.stringInterner = stringInterner;
+        this.mode = mode;
+    }
+
+    /**
+     * Restores the outputs of the entry with the given key, unpacking the archive of the entry only when there is no usable workspace for it.
+     */
+    public BuildCacheEntryPacker.UnpackResult unpack(String cacheKey, CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        File workspace = workspaceProvider.getWorkspace(cacheKey);
+        if (new File(workspace, MANIFEST_PATH).isFile()) {
+            try {
+                return restore(entity, workspace, readOrigin);
+            } catch (ModifiedWorkspaceException ignored) {
+                discardWorkspace(cacheKey, workspace);
+            }
+        }
+        File temporaryWorkspace = workspaceProvider.getTemporaryWorkspace(cacheKey);
+        try {
+            extract(entity, input, readOrigin, temporaryWorkspace);
+            moveToImmutableLocation(temporaryWorkspace, workspace);
+        } finally {
+            if (temporaryWorkspace.exists()) {
+                fileSystemSupport.ensureFileIsMissing(temporaryWorkspace);
+            }
+        }
+        try {
+            return restore(entity, workspace, readOrigin);
+        } catch (ModifiedWorkspaceException e) {
+            throw new IOException("Build cache entry workspace " + workspace + " was modified while restoring it.", e);
+        }
+    }
+
+    /**
+     * Moves the workspace out of its immutable location atomically before deleting it,
+     * so that concurrent restores never see a partially deleted workspace.
+     */
+    private void discardWorkspace(String cacheKey, File workspace) throws IOException {
+        File discardedWorkspace = workspaceProvider.getTemporaryWorkspace(cacheKey);
+        try {
+            Files.move(workspace.toPath(), discardedWorkspace.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException ignored) {
+            // The workspace has been discarded concurrently
+            return;
+        }
+        fileSystemSupport.ensureFileIsMissing(discardedWorkspace);
+    }
+
+    private void extract(CacheableEntity entity, InputStream input, OriginReader readOrigin, File temporaryWorkspace) throws IOException {
+        FileUtils.forceMkdir(temporaryWorkspace);
+        Map<String, CacheableTree> trees = workspaceTrees(entity, temporaryWorkspace);
+        File metadataFile = new File(temporaryWorkspace, METADATA_PATH);
+        BuildCacheEntryPacker.UnpackResult result = packer.unpack(new WorkspaceEntity(entity, trees), input, metadataInput -> {
+            Files.copy(metadataInput, metadataFile.toPath());
+            return readOrigin(metadataFile, readOrigin);
+        });
+
+        StringBuilder manifest = new StringBuilder();
+        manifest.append(FORMAT).append('\n');
+        manifest.append(result.getEntries()).append('\n');
+        manifest.append(result.getUncompressedSize()).append('\n');
+        for (Map.Entry<String, CacheableTree> entry : trees.entrySet()) {
+            String escapedTreeName = escape(entry.getKey());
+            FileSystemLocationSnapshot snapshot = result.getSnapshots().get(entry.getKey());
+            if (snapshot == null) {
+                manifest.append(escapedTreeName).append(' ').append(MISSING).append('\n');
+            } else if (entry.getValue().type == TreeType.FILE) {
+                manifest.append(escapedTreeName).append(' ').append(FILE).append('\n');
+                recordFile(manifest, snapshot);
+            } else {
+                manifest.append(escapedTreeName).append(' ').append(DIRECTORY).append('\n');
+                snapshot.accept(new ManifestWriter(manifest));
+            }
+        }
+        Files.write(new File(temporaryWorkspace, MANIFEST_PATH).toPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void moveToImmutableLocation(File temporaryWorkspace, File workspace) throws IOException {
+        try {
+            Files.move(temporaryWorkspace.toPath(), workspace.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ignored) {
+            // The entry has been unpacked concurrently, use that workspace instead
+        }
+    }
+
+    private BuildCacheEntryPacker.UnpackResult restore(CacheableEntity entity, File workspace, OriginReader readOrigin) throws IOException, ModifiedWorkspaceException {
+        Map<String, CacheableTree> outputTrees = outputTrees(entity);
+        List<String> manifest = Files.readAllLines(new File(workspace, MANIFEST_PATH).toPath(), StandardCharsets.UTF_8);
+        Iterator<String> lines = manifest.iterator();
+        if (!FORMAT.equals(lines.next())) {
+            throw new ModifiedWorkspaceException();
+        }
+        long entries = Long.parseLong(lines.next());
+        long uncompressedSize = Long.parseLong(lines.next());
+
+        Map<String, FileSystemLocationSnapshot> snapshots = new HashMap<>();
+        while (lines.hasNext()) {
+            String[] treeLine = lines.next().split(" ");
+            String treeName = unescape(treeLine[0]);
+            CacheableTree tree = outputTrees.get(treeName);
+            if (tree == null) {
+                throw new IllegalStateException(String.format("No tree '%s' registered", treeName));
+            }
+            File source = new File(workspace, TREE_PREFIX + treeLine[0]);
+            switch (treeLine[1]) {
+                case MISSING:
+                    fileSystemSupport.ensureFileIsMissing(tree.root);
+                    break;
+                case FILE:
+                    fileSystemSupport.ensureDirectoryForTree(TreeType.FILE, tree.root);
+                    snapshots.put(treeName, restoreFile(lines.next().split(" "), source, tree.root, tree.root.getName()));
+                    break;
+                case DIRECTORY:
+                    fileSystemSupport.ensureDirectoryForTree(TreeType.DIRECTORY, tree.root);
+                    snapshots.put(treeName, restoreDirectory(lines, source, tree.root));
+                    break;
+                default:
+                    throw new IllegalStateException("Build cache entry workspace format error, invalid tree: " + treeLine[1]);
+            }
+        }
+        OriginMetadata originMetadata = readOrigin(new File(workspace, METADATA_PATH), readOrigin);
+        return new BuildCacheEntryPacker.UnpackResult(originMetadata, entries, uncompressedSize, snapshots);
+    }
+
+    private FileSystemLocationSnapshot restoreDirectory(Iterator<String> lines, File sourceRoot, File targetRoot) throws IOException, ModifiedWorkspaceException {
+        DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        Deque<File> sourceDirectories = new ArrayDeque<>();
+        Deque<File> targetDirectories = new ArrayDeque<>();
+        do {
+            String[] line = lines.next().split(" ");
+            switch (line[0]) {
+                case ENTER_DIRECTORY:
+                    File source;
+                    File target;
+                    if (sourceDirectories.isEmpty()) {
+                        source = sourceRoot;
+                        target = targetRoot;
+                    } else {
+                        String name = unescape(line[2]);
+                        source = new File(sourceDirectories.peek(), name);
+                        target = new File(targetDirectories.peek(), name);
+                        FileUtils.forceMkdir(target);
+                    }
+                    filePermissionAccess.chmod(target, Integer.parseInt(line[1]));
+                    builder.enterDirectory(DIRECT, stringInterner.intern(target.getAbsolutePath()), stringInterner.intern(target.getName()), INCLUDE_EMPTY_DIRS);
+                    sourceDirectories.push(source);
+                    targetDirectories.push(target);
+                    break;
+                case REGULAR_FILE:
+                    String name = unescape(line[4]);
+                    builder.visitLeafElement(restoreFile(line, new File(sourceDirectories.peek(), name), new File(targetDirectories.peek(), name), name));
+                    break;
+                case LEAVE_DIRECTORY:
+                    builder.leaveDirectory();
+                    sourceDirectories.pop();
+                    targetDirectories.pop();
+                    break;
+                default:
+                    throw new IllegalStateException("Build cache entry workspace format error, invalid entry: " + line[0]);
+            }
+        } while (!sourceDirectories.isEmpty());
+        return builder.getResult();
+    }
+
+    private RegularFileSnapshot restoreFile(String[] line, File source, File target, String name) throws IOException, ModifiedWorkspaceException {
+        HashCode hash = HashCode.fromString(line[1]);
+        long length = Long.parseLong(line[2]);
+        long lastModified = Long.parseLong(line[3]);
+        if (source.length() != length || source.lastModified() != lastModified) {
+            throw new ModifiedWorkspaceException();
+        }
+        if (mode == Mode.LINK) {
+            // The workspace shares its files with previously restored outputs, which may have been made writable and modified in place
+            if (!hash.equals(hashContent(source))) {
+                throw new ModifiedWorkspaceException();
+            }
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+            } catch (IOException | UnsupportedOperationException ignored) {
+                // For example when the workspace is on a different file system than the outputs
+                copy(source, target);
+            }
+        } else {
+            copy(source, target);
+        }
+        return new RegularFileSnapshot(stringInterner.intern(target.getAbsolutePath()), stringInterner.intern(name), hash, DefaultFileMetadata.file(target.lastModified(), length, DIRECT));
+    }
+
+    private HashCode hashContent(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return streamHasher.hash(input);
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private static OriginMetadata readOrigin(File metadataFile, OriginReader readOrigin) throws IOException {
+        try (InputStream metadataInput = new FileInputStream(metadataFile)) {
+            return readOrigin.execute(metadataInput);
+        }
+    }
+
+    private void recordFile(StringBuilder manifest, FileSystemLocationSnapshot snapshot) {
+        File file = new File(snapshot.getAbsolutePath());
+        if (mode == Mode.LINK && !file.setReadOnly()) {
+            throw new UncheckedIOException(new IOException("Could not make " + file + " read-only."));
+        }
+        // Record the size and modification time as they are on disk, to detect any later modification
+        manifest.append(REGULAR_FILE).append(' ')
+            .append(snapshot.getHash()).append(' ')
+            .append(file.length()).append(' ')
+            .append(file.lastModified()).append(' ')
+            .append(escape(snapshot.getName())).append('\n');
+    }
+
+    private class ManifestWriter implements FileSystemSnapshotHierarchyVisitor {
+        private final StringBuilder manifest;
+
+        public ManifestWriter(StringBuilder manifest) {
+            this.manifest = manifest;
+        }
+
+        @Override
+        public void enterDirectory(DirectorySnapshot directorySnapshot) {
+            int unixMode = filePermissionAccess.getUnixMode(new File(directorySnapshot.getAbsolutePath()));
+            manifest.append(ENTER_DIRECTORY).append(' ')
+                .append(unixMode).append(' ')
+                .append(escape(directorySnapshot.getName())).append('\n');
+        }
+
+        @Override
+        public SnapshotVisitResult visitEntry(FileSystemLocationSnapshot snapshot) {
+            if (snapshot instanceof RegularFileSnapshot) {
+                recordFile(manifest, snapshot);
+            }
+            return SnapshotVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void leaveDirectory(DirectorySnapshot directorySnapshot) {
+            manifest.append(LEAVE_DIRECTORY).append('\n');
+        }
+    }
+
+    private static Map<String, CacheableTree> outputTrees(CacheableEntity entity) {
+        ImmutableMap.Builder<String, CacheableTree> trees = ImmutableMap.builder();
+        entity.visitOutputTrees((name, type, root) -> trees.put(name, new CacheableTree(type, root)));
+        return trees.build();
+    }
+
+    private static Map<String, CacheableTree> workspaceTrees(CacheableEntity entity, File workspace) {
+        ImmutableMap.Builder<String, CacheableTree> trees = ImmutableMap.builder();
+        entity.visitOutputTrees((name, type, root) -> trees.put(name, new CacheableTree(type, new File(workspace, TREE_PREFIX + escape(name)))));
+        return trees.build();
+    }
+
+    private static String escape(String name) {
+        try {
+            return URLEncoder.encode(name, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ignored) {
+            throw new AssertionError();
+        }
+    }
+
+    private static String unescape(String name) {
+        try {
+            return URLDecoder.decode(name, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError();
+        }
+    }
+
+    private static class CacheableTree {
+        private final TreeType type;
+        private final File root;
+
+        public CacheableTree(TreeType type, File root) {
+            this.type = type;
+            this.root = root;
+        }
+    }
+
+    /**
+     * Unpacks the trees of an entity into a workspace instead of its outputs.
+     */
+    private static class WorkspaceEntity implements CacheableEntity {
+        private final CacheableEntity delegate;
+        private final Map<String, CacheableTree> trees;
+
+        public WorkspaceEntity(CacheableEntity delegate, Map<String, CacheableTree> trees) {
+            this.delegate = delegate;
+            this.trees = trees;
+        }
+
+        @Override
+        public String getIdentity() {
+            return delegate.getIdentity();
+        }
+
+        @Override
+        public Class<?> getType() {
+            return delegate.getType();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return delegate.getDisplayName();
+        }
+
+        @Override
+        public void visitOutputTrees(CacheableTreeVisitor visitor) {
+            trees.forEach((name, tree) -> visitor.visitOutputTree(name, tree.type, tree.root));
+        }
+    }
+
+    private static class ModifiedWorkspaceException extends Exception {
+        public ModifiedWorkspaceException() {
+            super(null, null, false, false);
+        }
+    }
+}
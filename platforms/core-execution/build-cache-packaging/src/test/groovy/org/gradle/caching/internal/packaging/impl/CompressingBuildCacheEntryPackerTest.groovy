@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import org.gradle.internal.snapshot.FileSystemSnapshot
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def content = (1..1000).collect { "line $it" }.join("\n")
+    def delegate = new CopyingPacker(content: content)
+
+    def "unpacks entry packed with #compression at level #level"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, compression, level).pack(Stub(CacheableEntity), [:], output, Stub(OriginWriter))
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.DEFAULT_LEVEL).unpack(Stub(CacheableEntity), new ByteArrayInputStream(output.toByteArray()), Stub(OriginReader))
+
+        then:
+        delegate.unpacked == content
+
+        where:
+        [compression, level] << [BuildCacheEntryCompression.values(), [BuildCacheEntryCompression.DEFAULT_LEVEL, BuildCacheEntryCompression.FASTEST_LEVEL, BuildCacheEntryCompression.SMALLEST_LEVEL]].combinations()
+    }
+
+    def "packs gzip entries without header"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.DEFAULT_LEVEL).pack(Stub(CacheableEntity), [:], output, Stub(OriginWriter))
+
+        then:
+        new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())).text == content
+    }
+
+    def "unpacks entries packed by the gzip packer"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new GZipBuildCacheEntryPacker(delegate).pack(Stub(CacheableEntity), [:], output, Stub(OriginWriter))
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.DEFAULT_LEVEL).unpack(Stub(CacheableEntity), new ByteArrayInputStream(output.toByteArray()), Stub(OriginReader))
+
+        then:
+        delegate.unpacked == content
+    }
+
+    def "decompresses entry packed with #compression"() {
+        def packed = new ByteArrayOutputStream()
+        def decompressed = new ByteArrayOutputStream()
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, compression, BuildCacheEntryCompression.DEFAULT_LEVEL).pack(Stub(CacheableEntity), [:], packed, Stub(OriginWriter))
+        CompressingBuildCacheEntryPacker.decompress(new ByteArrayInputStream(packed.toByteArray()), decompressed)
+
+        then:
+        new String(decompressed.toByteArray(), 5, decompressed.size() - 5) == content
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.DEFAULT_LEVEL).unpack(Stub(CacheableEntity), new ByteArrayInputStream(decompressed.toByteArray()), Stub(OriginReader))
+
+        then:
+        delegate.unpacked == content
+
+        where:
+        compression << BuildCacheEntryCompression.values()
+    }
+
+    def "fails to unpack entry with newer format version"() {
+        def entry = [(byte) 'G', (byte) 'B', (byte) 'C', 2, 2] as byte[]
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.DEFAULT_LEVEL).unpack(Stub(CacheableEntity), new ByteArrayInputStream(entry), Stub(OriginReader))
+
+        then:
+        def e = thrown(IOException)
+        e.message == "Unsupported build cache entry format version 2, expected at most 1."
+    }
+
+    def "stores only gzip entries under their cache key"() {
+        expect:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.DEFAULT_LEVEL).keyDiscriminator == null
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.DEFAULT_LEVEL).keyDiscriminator == "compression-2"
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.NONE, BuildCacheEntryCompression.DEFAULT_LEVEL).keyDiscriminator == "compression-0"
+    }
+
+    def "rejects compression level #level"() {
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.GZIP, level)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unsupported build cache entry compression level $level. Supported levels are -1 (the default of the compression) and 1 to 9."
+
+        where:
+        level << [-2, 0, 10]
+    }
+
+    private static class CopyingPacker implements BuildCacheEntryPacker {
+        String content
+        String unpacked
+
+        @Override
+        PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+            output.write(content.bytes)
+            new PackResult(1, 1)
+        }
+
+        @Override
+        UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+            unpacked = input.text
+            new UnpackResult(null, 1, 1, [:])
+        }
+    }
+}
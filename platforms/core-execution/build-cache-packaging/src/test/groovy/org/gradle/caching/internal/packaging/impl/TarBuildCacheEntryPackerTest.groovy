@@ -19,6 +19,8 @@ package org.gradle.caching.internal.packaging.impl
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
 import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.file.BufferProvider
 import org.gradle.internal.file.Deleter
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.test.precondition.Requires
@@ -55,6 +57,7 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
 
         then:
         packResult.entries == 4
+        packResult.uncompressedSize == output.size()
 
         when:
         def input = new ByteArrayInputStream(output.toByteArray())
@@ -63,6 +66,7 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         then:
         targetDataFile.text == "output"
         result.entries == 4
+        result.uncompressedSize == output.size()
     }
 
     def "can pack tree with missing #type (pre-existing as: #preExistsAs)"() {
@@ -240,6 +244,45 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         targetDir.assertIsEmptyDir()
     }
 
+    def "unpacks directory with many files in parallel"() {
+        def sourceDir = temporaryFolder.file("source").createDir()
+        (1..10).each { dirIndex ->
+            def dir = sourceDir.file("dir-$dirIndex").createDir()
+            (1..50).each { fileIndex ->
+                dir.file("file-${fileIndex}.txt") << "content $dirIndex $fileIndex"
+            }
+        }
+        sourceDir.file("dir-5/empty").createDir()
+        def largeContent = new byte[2 * 1024 * 1024]
+        new Random(1).nextBytes(largeContent)
+        sourceDir.file("dir-3/large.bin").bytes = largeContent
+        def targetDir = temporaryFolder.file("target")
+        def secondTargetDir = temporaryFolder.file("second-target")
+        def executorFactory = new DefaultExecutorFactory()
+        packer = new TarBuildCacheEntryPacker(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, Stub(BufferProvider) {
+            getBuffer() >> new byte[4096]
+        }, executorFactory, 4)
+
+        when:
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceDir)
+        def result = unpack new ByteArrayInputStream(output.toByteArray()), prop(DIRECTORY, targetDir)
+        def secondResult = unpack new ByteArrayInputStream(output.toByteArray()), prop(DIRECTORY, secondTargetDir)
+
+        then:
+        result.entries == 514
+        targetDir.file("dir-7/file-42.txt").text == "content 7 42"
+        targetDir.file("dir-3/large.bin").bytes == largeContent
+        targetDir.file("dir-5/empty").assertIsEmptyDir()
+        result.snapshots["test"].hash == fileSystemAccess.read(sourceDir.absolutePath).hash
+        result.snapshots["test"].hash == fileSystemAccess.read(targetDir.absolutePath).hash
+        secondResult.snapshots["test"].hash == result.snapshots["test"].hash
+
+        cleanup:
+        packer.stop()
+        executorFactory.stop()
+    }
+
     def "catch escaping path in tar archive entry during unpacking"() {
         given:
         def targetDir = temporaryFolder.file("target")
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.file.Deleter
+import org.gradle.internal.nativeintegration.filesystem.FileSystem
+
+import static org.gradle.internal.file.TreeType.DIRECTORY
+import static org.gradle.internal.file.TreeType.FILE
+
+class WorkspaceBuildCacheEntryRestorerTest extends AbstractTarBuildCacheEntryPackerSpec {
+    def workspaces = temporaryFolder.file("workspaces")
+    int temporaryWorkspaces
+    def workspaceProvider = new WorkspaceBuildCacheEntryRestorer.WorkspaceProvider() {
+        @Override
+        File getWorkspace(String cacheKey) {
+            new File(workspaces, cacheKey)
+        }
+
+        @Override
+        File getTemporaryWorkspace(String cacheKey) {
+            new File(workspaces, "$cacheKey-${temporaryWorkspaces++}")
+        }
+    }
+
+    @Override
+    protected FilePermissionAccess createFilePermissionAccess() {
+        new FilePermissionAccess() {
+            @Delegate
+            FileSystem fs = TestFiles.fileSystem()
+        }
+    }
+
+    @Override
+    protected Deleter createDeleter() {
+        TestFiles.deleter()
+    }
+
+    def "restores entry from workspace without reading the archive again in #mode mode"() {
+        def sourceDir = temporaryFolder.file("source").createDir()
+        sourceDir.file("subdir/data.txt") << "data"
+        sourceDir.file("empty").createDir()
+        def sourceFile = temporaryFolder.file("source.txt") << "file"
+        def archive = packEntry(sourceDir, sourceFile)
+        def restorer = restorer(mode)
+
+        when:
+        def first = restore(restorer, new ByteArrayInputStream(archive), "first")
+        def second = restore(restorer, new ThrowingInputStream(), "second")
+
+        then:
+        temporaryFolder.file("second/dir/subdir/data.txt").text == "data"
+        temporaryFolder.file("second/dir/empty").directory
+        temporaryFolder.file("second/file.txt").text == "file"
+        first.entries == second.entries
+        first.snapshots["dir"].hash == second.snapshots["dir"].hash
+        first.snapshots["file"].hash == second.snapshots["file"].hash
+        second.snapshots["dir"].absolutePath == temporaryFolder.file("second/dir").absolutePath
+        temporaryWorkspaces == 1
+
+        where:
+        mode << WorkspaceBuildCacheEntryRestorer.Mode.values()
+    }
+
+    def "unpacks archive again when workspace has been modified through a hard link"() {
+        def sourceDir = temporaryFolder.file("source").createDir()
+        sourceDir.file("data.txt") << "data"
+        def sourceFile = temporaryFolder.file("source.txt") << "file"
+        def archive = packEntry(sourceDir, sourceFile)
+        def restorer = restorer(WorkspaceBuildCacheEntryRestorer.Mode.LINK)
+
+        when:
+        restore(restorer, new ByteArrayInputStream(archive), "first")
+        def linkedFile = temporaryFolder.file("first/dir/data.txt")
+        linkedFile.setWritable(true)
+        linkedFile << " modified in place"
+        restore(restorer, new ByteArrayInputStream(archive), "second")
+
+        then:
+        temporaryFolder.file("second/dir/data.txt").text == "data"
+        // One to unpack the entry, one to discard the modified workspace and one to unpack the entry again
+        temporaryWorkspaces == 3
+    }
+
+    def "unpacks archive again when linked file has been modified without changing its size and modification time"() {
+        def sourceDir = temporaryFolder.file("source").createDir()
+        sourceDir.file("data.txt") << "data"
+        def sourceFile = temporaryFolder.file("source.txt") << "file"
+        def archive = packEntry(sourceDir, sourceFile)
+        def restorer = restorer(WorkspaceBuildCacheEntryRestorer.Mode.LINK)
+
+        when:
+        restore(restorer, new ByteArrayInputStream(archive), "first")
+        def linkedFile = temporaryFolder.file("first/dir/data.txt")
+        def lastModified = linkedFile.lastModified()
+        linkedFile.setWritable(true)
+        linkedFile.text = "DATA"
+        linkedFile.setLastModified(lastModified)
+        restore(restorer, new ByteArrayInputStream(archive), "second")
+
+        then:
+        temporaryFolder.file("second/dir/data.txt").text == "data"
+        temporaryWorkspaces == 3
+        workspaces.list() as Set == ["0123abcd"] as Set
+    }
+
+    def "removes outputs of missing trees"() {
+        def archive = packEntry(temporaryFolder.file("missing-dir"), temporaryFolder.file("missing.txt"))
+        def restorer = restorer(WorkspaceBuildCacheEntryRestorer.Mode.COPY)
+        temporaryFolder.file("target/dir/stale.txt") << "stale"
+        temporaryFolder.file("target/file.txt") << "stale"
+
+        when:
+        restore(restorer, new ByteArrayInputStream(archive), "target")
+        def result = restore(restorer, new ThrowingInputStream(), "target")
+
+        then:
+        !temporaryFolder.file("target/dir").exists()
+        !temporaryFolder.file("target/file.txt").exists()
+        result.snapshots.isEmpty()
+    }
+
+    private byte[] packEntry(File sourceDir, File sourceFile) {
+        def output = new ByteArrayOutputStream()
+        pack output, prop("dir", DIRECTORY, sourceDir), prop("file", FILE, sourceFile)
+        output.toByteArray()
+    }
+
+    private WorkspaceBuildCacheEntryRestorer restorer(WorkspaceBuildCacheEntryRestorer.Mode mode) {
+        new WorkspaceBuildCacheEntryRestorer(workspaceProvider, packer, fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, mode)
+    }
+
+    private restore(WorkspaceBuildCacheEntryRestorer restorer, InputStream input, String target) {
+        def entity = entity(prop("dir", DIRECTORY, temporaryFolder.file(target, "dir")), prop("file", FILE, temporaryFolder.file(target, "file.txt")))
+        restorer.unpack("0123abcd", entity, input, readOrigin)
+    }
+
+    private static class ThrowingInputStream extends InputStream {
+        @Override
+        int read() throws IOException {
+            throw new IOException("The archive should not be read")
+        }
+    }
+}
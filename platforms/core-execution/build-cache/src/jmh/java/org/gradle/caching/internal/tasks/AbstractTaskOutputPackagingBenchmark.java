@@ -19,6 +19,7 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.apache.commons.io.FileUtils;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
@@ -55,6 +56,9 @@ public abstract class AbstractTaskOutputPackagingBenchmark {
         .put("tar.small", new CommonsTarPacker(2))
         .put("tar.large", new CommonsTarPacker(64))
         .put("tar.gz", new GzipPacker(new CommonsTarPacker(4)))
+        .put("tar.gz.fast", new CompressionPacker(new CommonsTarPacker(4), BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.FASTEST_LEVEL))
+        .put("tar.lz4", new CompressionPacker(new CommonsTarPacker(4), BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.DEFAULT_LEVEL))
+        .put("tar.lz4.fast", new CompressionPacker(new CommonsTarPacker(4), BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.FASTEST_LEVEL))
         .put("zip", new ZipPacker(4))
         .build();
 
@@ -26,6 +26,9 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Left to keep H2BuildCacheService logic
@@ -39,6 +42,25 @@ public interface StatefulNextGenBuildCacheService extends BuildCacheService, Clo
      */
     boolean contains(BuildCacheKey key);
 
+    /**
+     * Returns which of the given entries exist in the cache.
+     *
+     * Implementations should check all keys with a single request to the backend where possible.
+     * The default implementation checks the keys one by one.
+     *
+     * @param keys the cache keys.
+     * @return the keys of the entries that exist in the cache.
+     */
+    default Set<BuildCacheKey> containsAll(Collection<BuildCacheKey> keys) {
+        Set<BuildCacheKey> found = new LinkedHashSet<>();
+        for (BuildCacheKey key : keys) {
+            if (contains(key)) {
+                found.add(key);
+            }
+        }
+        return found;
+    }
+
     @Override
     default void store(BuildCacheKey key, BuildCacheEntryWriter legacyWriter) throws BuildCacheException {
         NextGenWriter writer;
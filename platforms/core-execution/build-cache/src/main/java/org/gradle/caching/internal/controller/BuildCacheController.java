@@ -40,5 +40,31 @@ public interface BuildCacheController extends Closeable {
 
     Optional<BuildCacheLoadResult> load(BuildCacheKey cacheKey, CacheableEntity cacheableEntity);
 
+    /**
+     * Loads the entry with the given key from the local cache only, without falling back to the remote cache.
+     */
+    Optional<BuildCacheLoadResult> loadLocally(BuildCacheKey cacheKey, CacheableEntity cacheableEntity);
+
+    /**
+     * Loads the entry with the given key from the remote cache only, storing it in the local cache when found.
+     */
+    Optional<BuildCacheLoadResult> loadRemotely(BuildCacheKey cacheKey, CacheableEntity cacheableEntity);
+
+    /**
+     * Whether the local cache contains an entry with the given key.
+     */
+    boolean containsLocally(BuildCacheKey cacheKey);
+
+    /**
+     * Hints that the entry with the given key is likely to be loaded soon.
+     *
+     * Implementations can use this to check whether the entry exists together with the entries of other work, before it is loaded.
+     *
+     * The key of a unit of work is only known once its inputs have been fingerprinted, right before it executes.
+     * Checks can therefore only be batched with the work executing at the same time, not with work that is further ahead in the execution plan.
+     */
+    default void prefetchContains(BuildCacheKey cacheKey) {
+    }
+
     void store(BuildCacheKey cacheKey, CacheableEntity entity, Map<String, FileSystemSnapshot> snapshots, Duration executionTime);
 }
@@ -17,6 +17,7 @@
 package org.gradle.caching.internal.controller;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Interner;
 import com.google.common.io.Closer;
@@ -24,34 +25,46 @@
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.internal.BuildCacheKeyInternal;
 import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.SimpleBuildCacheKey;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
 import org.gradle.caching.internal.controller.operations.PackOperationDetails;
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
 import org.gradle.caching.internal.controller.operations.UnpackOperationResult;
+import org.gradle.caching.internal.controller.service.AsyncRemoteBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheLoadResult;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
 import org.gradle.caching.internal.controller.service.LocalBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.NullLocalBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.NullRemoteBuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.OpFiringInMemoryBuildCacheHandle;
 import org.gradle.caching.internal.controller.service.OpFiringLocalBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.OpFiringRemoteBuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.PrefetchingRemoteBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.RemoteBuildCacheServiceHandle;
 import org.gradle.caching.internal.origin.OriginMetadata;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
+import org.gradle.caching.internal.origin.OriginReader;
 import org.gradle.caching.internal.origin.OriginWriter;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.WorkspaceBuildCacheEntryRestorer;
 import org.gradle.caching.local.internal.BuildCacheTempFileStore;
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
+import org.gradle.caching.local.internal.InMemoryBuildCache;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.caching.local.internal.TemporaryFileFactory;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.FileMetadata;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.file.TreeType;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationProgressEventEmitter;
+import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.operations.BuildOperationRunner;
 import org.gradle.internal.operations.CallableBuildOperation;
 import org.gradle.internal.operations.RunnableBuildOperation;
@@ -60,6 +73,7 @@
 import org.gradle.internal.snapshot.MissingFileSnapshot;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -78,8 +92,13 @@ public class DefaultBuildCacheController implements BuildCacheController {
     @VisibleForTesting
     final LocalBuildCacheServiceHandle local;
 
+    @Nullable
+    private final OpFiringInMemoryBuildCacheHandle memory;
+
     private final BuildCacheTempFileStore tmp;
     private final PackOperationExecutor packExecutor;
+    @Nullable
+    private final String keyDiscriminator;
 
     private boolean closed;
 
@@ -93,15 +112,57 @@ public DefaultBuildCacheController(
         BuildCacheEntryPacker packer,
         OriginMetadataFactory originMetadataFactory,
         Interner<String> stringInterner
+    ) {
+        this(config, buildOperationRunner, buildOperationProgressEventEmitter, temporaryFileFactory, logStackTraces, disableRemoteOnError, packer, originMetadataFactory, stringInterner, null, false, false, null, null, null);
+    }
+
+    /**
+     * Creates a controller which can use background threads for interacting with the remote cache.
+     *
+     * @param asyncRemoteStore whether entries are uploaded to the remote cache on background threads instead of on the thread storing the entry
+     * @param prefetchRemoteContains whether the existence of entries in the remote cache is checked in batches on a background thread before they are loaded
+     * @param executorFactory creates the background threads, required when either option is enabled, and used for storing entries in memory when available
+     * @param memoryCache keeps recently used entries in memory in front of the local cache, if any
+     * @param workspaceRestorer restores entries loaded from the local cache from workspaces holding their unpacked trees, if any
+     * @param backgroundOperationParent the operation under which work on background threads runs its operations, which must keep running until the controller is closed
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationRunner buildOperationRunner,
+        BuildOperationProgressEventEmitter buildOperationProgressEventEmitter,
+        TemporaryFileFactory temporaryFileFactory,
+        boolean logStackTraces,
+        boolean disableRemoteOnError,
+        BuildCacheEntryPacker packer,
+        OriginMetadataFactory originMetadataFactory,
+        Interner<String> stringInterner,
+        @Nullable ExecutorFactory executorFactory,
+        boolean asyncRemoteStore,
+        boolean prefetchRemoteContains,
+        @Nullable InMemoryBuildCache memoryCache,
+        @Nullable WorkspaceBuildCacheEntryRestorer workspaceRestorer,
+        @Nullable BuildOperationRef backgroundOperationParent
     ) {
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush(), buildOperationRunner);
-        this.remote = toRemoteHandle(config.getBuildPath(), config.getRemote(), config.isRemotePush(), buildOperationRunner, buildOperationProgressEventEmitter, logStackTraces, disableRemoteOnError);
+        this.memory = memoryCache != null && config.getLocal() != null
+            ? new OpFiringInMemoryBuildCacheHandle(memoryCache, buildOperationRunner, temporaryFileFactory, executorFactory, backgroundOperationParent)
+            : null;
+        RemoteBuildCacheServiceHandle remote = toRemoteHandle(config.getBuildPath(), config.getRemote(), config.isRemotePush(), buildOperationRunner, buildOperationProgressEventEmitter, logStackTraces, disableRemoteOnError);
+        if (asyncRemoteStore && remote.canStore()) {
+            remote = new AsyncRemoteBuildCacheServiceHandle(remote, temporaryFileFactory, Preconditions.checkNotNull(executorFactory), backgroundOperationParent);
+        }
+        if (prefetchRemoteContains && remote.canLoad() && remote.getService() instanceof StatefulNextGenBuildCacheService) {
+            remote = new PrefetchingRemoteBuildCacheServiceHandle(remote, (StatefulNextGenBuildCacheService) remote.getService(), Preconditions.checkNotNull(executorFactory));
+        }
+        this.remote = remote;
         this.tmp = toTempFileStore(config.getLocal(), temporaryFileFactory);
+        this.keyDiscriminator = packer.getKeyDiscriminator();
         this.packExecutor = new PackOperationExecutor(
             buildOperationRunner,
             packer,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            workspaceRestorer
         );
     }
 
@@ -112,22 +173,74 @@ public boolean isEnabled() {
 
     @Override
     public Optional<BuildCacheLoadResult> load(BuildCacheKey key, CacheableEntity entity) {
-        Optional<BuildCacheLoadResult> result = loadLocal(key, entity);
+        BuildCacheKey storedKey = storedKey(key);
+        Optional<BuildCacheLoadResult> result = loadLocal(key, storedKey, entity);
         if (result.isPresent()) {
             return result;
         }
-        return loadRemoteAndStoreResultLocally(key, entity);
+        return loadRemoteAndStoreResultLocally(key, storedKey, entity);
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> loadLocally(BuildCacheKey key, CacheableEntity entity) {
+        return loadLocal(key, storedKey(key), entity);
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> loadRemotely(BuildCacheKey key, CacheableEntity entity) {
+        return loadRemoteAndStoreResultLocally(key, storedKey(key), entity);
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        return local.contains(storedKey(key));
+    }
+
+    @Override
+    public void prefetchContains(BuildCacheKey key) {
+        BuildCacheKey storedKey = storedKey(key);
+        // Entries found in the local cache are not loaded from the remote cache
+        if (!local.contains(storedKey)) {
+            remote.prefetchContains(storedKey);
+        }
+    }
+
+    /**
+     * Returns the key the entry for the given cache key is stored under in the caches, which differs from the cache key when older versions cannot unpack the entries.
+     */
+    private BuildCacheKey storedKey(BuildCacheKey key) {
+        if (keyDiscriminator == null) {
+            return key;
+        }
+        Hasher hasher = Hashing.newHasher();
+        hasher.putHash(((BuildCacheKeyInternal) key).getHashCodeInternal());
+        hasher.putString(keyDiscriminator);
+        return new SimpleBuildCacheKey(hasher.hash());
     }
 
-    private Optional<BuildCacheLoadResult> loadLocal(BuildCacheKey key, CacheableEntity entity) {
+    private Optional<BuildCacheLoadResult> loadLocal(BuildCacheKey key, BuildCacheKey storedKey, CacheableEntity entity) {
         try {
-            return local.maybeLoad(key, file -> packExecutor.unpack(key, entity, file));
+            if (memory != null) {
+                Optional<BuildCacheLoadResult> result = memory.maybeLoad(storedKey, entry -> packExecutor.unpack(key, entity, entry));
+                if (result.isPresent()) {
+                    // Keep the entry in the local cache from being cleaned up while it is used from memory
+                    local.markAccessed(storedKey);
+                    return result;
+                }
+                // The memory cache keeps a copy of the entry, so it is loaded as a file
+                return local.maybeLoad(storedKey, file -> {
+                    BuildCacheLoadResult localResult = packExecutor.unpackLocal(key, entity, file);
+                    memory.store(storedKey, file);
+                    return localResult;
+                });
+            }
+            return local.maybeLoadStream(storedKey, (input, size) -> packExecutor.unpackLocal(key, entity, input, size));
         } catch (Exception e) {
             throw new BuildCacheOperationException("Could not load from local cache: " + e.getMessage(), e);
         }
     }
 
-    private Optional<BuildCacheLoadResult> loadRemoteAndStoreResultLocally(BuildCacheKey key, CacheableEntity entity) {
+    private Optional<BuildCacheLoadResult> loadRemoteAndStoreResultLocally(BuildCacheKey key, BuildCacheKey storedKey, CacheableEntity entity) {
         if (!remote.canLoad()) {
             return Optional.empty();
         }
@@ -135,12 +248,12 @@ private Optional<BuildCacheLoadResult> loadRemoteAndStoreResultLocally(BuildCach
         tmp.withTempFile(((BuildCacheKeyInternal) key).getHashCodeInternal(), file -> {
             Optional<BuildCacheLoadResult> remoteResult;
             try {
-                remoteResult = remote.maybeLoad(key, file, f -> packExecutor.unpack(key, entity, f));
+                remoteResult = remote.maybeLoad(storedKey, file, f -> packExecutor.unpack(key, entity, f));
             } catch (Exception e) {
                 throw new BuildCacheOperationException("Could not load from remote cache: " + e.getMessage(), e);
             }
             if (remoteResult.isPresent()) {
-                local.maybeStore(key, file);
+                maybeStoreLocally(storedKey, file);
                 result.set(remoteResult);
             }
         });
@@ -153,17 +266,29 @@ public void store(BuildCacheKey key, CacheableEntity entity, Map<String, FileSys
             return;
         }
         tmp.withTempFile(((BuildCacheKeyInternal) key).getHashCodeInternal(), file -> {
+            BuildCacheKey storedKey = storedKey(key);
             packExecutor.pack(file, key, entity, snapshots, executionTime);
-            remote.maybeStore(key, file);
-            local.maybeStore(key, file);
+            remote.maybeStore(storedKey, file);
+            maybeStoreLocally(storedKey, file);
         });
     }
 
+    private void maybeStoreLocally(BuildCacheKey key, File file) {
+        if (memory != null && local.canStore()) {
+            // Storing locally moves the file into the local cache
+            memory.store(key, file);
+        }
+        local.maybeStore(key, file);
+    }
+
     @Override
     public void close() throws IOException {
         if (!closed) {
             closed = true;
             Closer closer = Closer.create();
+            if (memory != null) {
+                closer.register(memory);
+            }
             closer.register(local);
             closer.register(remote);
             closer.close();
@@ -176,23 +301,59 @@ static class PackOperationExecutor {
         private final BuildCacheEntryPacker packer;
         private final OriginMetadataFactory originMetadataFactory;
         private final Interner<String> stringInterner;
+        @Nullable
+        private final WorkspaceBuildCacheEntryRestorer workspaceRestorer;
 
         PackOperationExecutor(BuildOperationRunner buildOperationRunner, BuildCacheEntryPacker packer, OriginMetadataFactory originMetadataFactory, Interner<String> stringInterner) {
+            this(buildOperationRunner, packer, originMetadataFactory, stringInterner, null);
+        }
+
+        PackOperationExecutor(BuildOperationRunner buildOperationRunner, BuildCacheEntryPacker packer, OriginMetadataFactory originMetadataFactory, Interner<String> stringInterner, @Nullable WorkspaceBuildCacheEntryRestorer workspaceRestorer) {
             this.buildOperationRunner = buildOperationRunner;
             this.packer = packer;
             this.originMetadataFactory = originMetadataFactory;
             this.stringInterner = stringInterner;
+            this.workspaceRestorer = workspaceRestorer;
         }
 
         @VisibleForTesting
         BuildCacheLoadResult unpack(BuildCacheKey key, CacheableEntity entity, File file) {
+            //noinspection IOStreamConstructor
+            return unpack(key, entity, file.length(), () -> new FileInputStream(file), packer::unpack);
+        }
+
+        BuildCacheLoadResult unpack(BuildCacheKey key, CacheableEntity entity, byte[] entry) {
+            return unpack(key, entity, entry.length, () -> new ByteArrayInputStream(entry), packer::unpack);
+        }
+
+        /**
+         * Unpacks an entry from the local cache, restoring it from its workspace when possible.
+         */
+        BuildCacheLoadResult unpackLocal(BuildCacheKey key, CacheableEntity entity, File file) {
+            //noinspection IOStreamConstructor
+            return unpack(key, entity, file.length(), () -> new FileInputStream(file), localUnpacker(key));
+        }
+
+        BuildCacheLoadResult unpackLocal(BuildCacheKey key, CacheableEntity entity, InputStream input, long size) {
+            return unpack(key, entity, size, () -> input, localUnpacker(key));
+        }
+
+        private EntryUnpacker localUnpacker(BuildCacheKey key) {
+            WorkspaceBuildCacheEntryRestorer restorer = workspaceRestorer;
+            if (restorer == null) {
+                return packer::unpack;
+            }
+            return (entity, input, readOrigin) -> restorer.unpack(key.getHashCode(), entity, input, readOrigin);
+        }
+
+        private BuildCacheLoadResult unpack(BuildCacheKey key, CacheableEntity entity, long archiveSize, EntrySource source, EntryUnpacker unpacker) {
             return buildOperationRunner.call(new CallableBuildOperation<BuildCacheLoadResult>() {
                 @Override
                 public BuildCacheLoadResult call(BuildOperationContext context) throws IOException {
-                    //noinspection IOStreamConstructor
-                    try (InputStream input = new FileInputStream(file)) {
-                        BuildCacheLoadResult metadata = doUnpack(entity, input);
-                        context.setResult(new UnpackOperationResult(metadata.getArtifactEntryCount()));
+                    try (InputStream input = source.open()) {
+                        BuildCacheEntryPacker.UnpackResult unpackResult = unpacker.unpack(entity, input, originMetadataFactory.createReader());
+                        BuildCacheLoadResult metadata = toLoadResult(entity, unpackResult);
+                        context.setResult(new UnpackOperationResult(metadata.getArtifactEntryCount(), unpackResult.getUncompressedSize()));
                         return metadata;
                     }
                 }
@@ -200,14 +361,21 @@ public BuildCacheLoadResult call(BuildOperationContext context) throws IOExcepti
                 @Override
                 public BuildOperationDescriptor.Builder description() {
                     return BuildOperationDescriptor.displayName("Unpack build cache entry " + key.getHashCode())
-                        .details(new UnpackOperationDetails(key, file.length()))
+                        .details(new UnpackOperationDetails(key, archiveSize))
                         .progressDisplayName("Unpacking build cache entry");
                 }
             });
         }
 
-        private BuildCacheLoadResult doUnpack(CacheableEntity entity, InputStream input) throws IOException {
-            BuildCacheEntryPacker.UnpackResult unpackResult = packer.unpack(entity, input, originMetadataFactory.createReader());
+        private interface EntrySource {
+            InputStream open() throws IOException;
+        }
+
+        private interface EntryUnpacker {
+            BuildCacheEntryPacker.UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException;
+        }
+
+        private BuildCacheLoadResult toLoadResult(CacheableEntity entity, BuildCacheEntryPacker.UnpackResult unpackResult) {
             // TODO: Update the snapshots from the action
             ImmutableSortedMap<String, FileSystemSnapshot> resultingSnapshots = snapshotUnpackedData(entity, unpackResult.getSnapshots());
             return new BuildCacheLoadResult() {
@@ -255,7 +423,7 @@ public void run(BuildOperationContext context) throws IOException {
                         OriginWriter originWriter = originMetadataFactory.createWriter(entity.getIdentity(), entity.getType(), cacheKey, executionTime);
                         BuildCacheEntryPacker.PackResult packResult = packer.pack(entity, snapshots, fileOutputStream, originWriter);
                         long entryCount = packResult.getEntries();
-                        context.setResult(new PackOperationResult(entryCount, file.length()));
+                        context.setResult(new PackOperationResult(entryCount, file.length(), packResult.getUncompressedSize()));
                     }
                 }
 
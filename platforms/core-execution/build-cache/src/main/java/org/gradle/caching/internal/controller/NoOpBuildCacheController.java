@@ -42,6 +42,21 @@ public Optional<BuildCacheLoadResult> load(BuildCacheKey cacheKey, CacheableEnti
         return Optional.empty();
     }
 
+    @Override
+    public Optional<BuildCacheLoadResult> loadLocally(BuildCacheKey cacheKey, CacheableEntity cacheableEntity) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> loadRemotely(BuildCacheKey cacheKey, CacheableEntity cacheableEntity) {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey cacheKey) {
+        return false;
+    }
+
     @Override
     public void store(BuildCacheKey cacheKey, CacheableEntity entity, Map<String, FileSystemSnapshot> snapshots, Duration executionTime) {
 
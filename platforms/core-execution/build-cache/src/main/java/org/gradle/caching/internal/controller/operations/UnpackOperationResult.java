@@ -21,9 +21,11 @@
 public class UnpackOperationResult implements BuildCacheArchiveUnpackBuildOperationType.Result {
 
     private final long archiveEntryCount;
+    private final long uncompressedSize;
 
-    public UnpackOperationResult(long archiveEntryCount) {
+    public UnpackOperationResult(long archiveEntryCount, long uncompressedSize) {
         this.archiveEntryCount = archiveEntryCount;
+        this.uncompressedSize = uncompressedSize;
     }
 
     @Override
@@ -31,4 +33,9 @@ public long getArchiveEntryCount() {
         return archiveEntryCount;
     }
 
+    @Override
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.local.internal.TemporaryFileFactory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * A remote handle which uploads stored entries on its own threads, so that the worker storing an entry does not wait for the upload.
+ *
+ * The entry is linked or copied to a file owned by the upload, as the caller deletes or moves the packed entry once storing returns.
+ * At most {@value #MAX_PENDING_UPLOADS} uploads are pending at any time, and storing blocks until an upload completes when the limit is reached.
+ * Closing the handle waits for all pending uploads before closing the remote service.
+ *
+ * An upload usually completes after the build operation which scheduled it, so each upload runs as an operation of its own under the given parent operation,
+ * which keeps running until the handle is closed.
+ */
+public class AsyncRemoteBuildCacheServiceHandle implements RemoteBuildCacheServiceHandle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRemoteBuildCacheServiceHandle.class);
+
+    private static final int MAX_PENDING_UPLOADS = 64;
+    private static final int UPLOAD_THREADS = 4;
+
+    private final RemoteBuildCacheServiceHandle delegate;
+    private final TemporaryFileFactory temporaryFileFactory;
+    private final ManagedExecutor uploader;
+    @Nullable
+    private final BuildOperationRef uploadParent;
+    private final Semaphore pendingUploads = new Semaphore(MAX_PENDING_UPLOADS);
+    private volatile boolean closed;
+
+    public AsyncRemoteBuildCacheServiceHandle(RemoteBuildCacheServiceHandle delegate, TemporaryFileFactory temporaryFileFactory, ExecutorFactory executorFactory, @Nullable BuildOperationRef uploadParent) {
+        this.delegate = delegate;
+        this.temporaryFileFactory = temporaryFileFactory;
+        this.uploader = executorFactory.create("Build cache uploads", UPLOAD_THREADS);
+        this.uploadParent = uploadParent;
+    }
+
+    @Nullable
+    @Override
+    public BuildCacheService getService() {
+        return delegate.getService();
+    }
+
+    @Override
+    public boolean canLoad() {
+        return delegate.canLoad();
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, File toFile, Function<File, BuildCacheLoadResult> unpackFunction) {
+        return delegate.maybeLoad(key, toFile, unpackFunction);
+    }
+
+    @Override
+    public boolean canStore() {
+        return !closed && delegate.canStore();
+    }
+
+    /**
+     * Schedules the upload of the file.
+     *
+     * Returns true if the upload was scheduled, which does not mean that it will complete successfully.
+     */
+    @Override
+    public boolean maybeStore(BuildCacheKey key, File file) {
+        if (!canStore()) {
+            return false;
+        }
+        try {
+            pendingUploads.acquire();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        File uploadFile;
+        try {
+            uploadFile = EntryFileLinker.linkOrCopy(temporaryFileFactory, "build-cache-upload", file);
+        } catch (RuntimeException e) {
+            pendingUploads.release();
+            throw e;
+        }
+        uploader.execute(() -> {
+            try {
+                CurrentBuildOperationRef.instance().with(uploadParent, () -> {
+                    delegate.maybeStore(key, uploadFile);
+                });
+            } finally {
+                if (!uploadFile.delete()) {
+                    LOGGER.debug("Could not delete {}", uploadFile);
+                }
+                pendingUploads.release();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                // Waits for the pending uploads
+                uploader.stop();
+            } finally {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -22,8 +22,10 @@
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class BaseLocalBuildCacheServiceHandle implements LocalBuildCacheServiceHandle {
@@ -49,6 +51,23 @@ public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, Function<File
         return result.get();
     }
 
+    @Override
+    public Optional<BuildCacheLoadResult> maybeLoadStream(BuildCacheKey key, BiFunction<InputStream, Long, BuildCacheLoadResult> unpackFunction) {
+        AtomicReference<Optional<BuildCacheLoadResult>> result = new AtomicReference<>(Optional.empty());
+        service.loadLocallyAsStream(key, (input, size) -> result.set(Optional.ofNullable(unpackFunction.apply(input, size))));
+        return result.get();
+    }
+
+    @Override
+    public boolean contains(BuildCacheKey key) {
+        return service.containsLocally(key);
+    }
+
+    @Override
+    public void markAccessed(BuildCacheKey key) {
+        service.markAccessedLocally(key);
+    }
+
     @Override
     public boolean canStore() {
         return pushEnabled;
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.local.internal.TemporaryFileFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Gives work on background threads its own file for a packed entry, as the caller deletes or moves the entry once storing returns.
+ */
+class EntryFileLinker {
+    private EntryFileLinker() {
+    }
+
+    /**
+     * Hard links the file to a new temporary file, or copies it when it cannot be linked.
+     */
+    static File linkOrCopy(TemporaryFileFactory temporaryFileFactory, String prefix, File file) {
+        File linkedFile = temporaryFileFactory.createTemporaryFile(prefix, ".bin");
+        try {
+            Files.delete(linkedFile.toPath());
+            try {
+                Files.createLink(linkedFile.toPath(), file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(file.toPath(), linkedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return linkedFile;
+        } catch (IOException e) {
+            linkedFile.delete();
+            throw new UncheckedIOException("Could not prepare " + file + " for storing in the background", e);
+        }
+    }
+}
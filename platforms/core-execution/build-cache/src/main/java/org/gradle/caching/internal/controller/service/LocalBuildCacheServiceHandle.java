@@ -23,7 +23,9 @@
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
+import java.io.InputStream;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public interface LocalBuildCacheServiceHandle extends Closeable {
@@ -35,6 +37,22 @@ public interface LocalBuildCacheServiceHandle extends Closeable {
     // TODO: what if this errors?
     Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, Function<File, BuildCacheLoadResult> unpackFunction);
 
+    /**
+     * Loads the entry as a stream, which avoids copying it when the local cache does not store it as a single file.
+     * The unpack function receives the stream and the size of the entry.
+     */
+    Optional<BuildCacheLoadResult> maybeLoadStream(BuildCacheKey key, BiFunction<InputStream, Long, BuildCacheLoadResult> unpackFunction);
+
+    /**
+     * Returns whether the local cache has the entry, without loading it.
+     */
+    boolean contains(BuildCacheKey key);
+
+    /**
+     * Records that the entry was used without loading it from the local cache, for example because it was found in memory.
+     */
+    void markAccessed(BuildCacheKey key);
+
     boolean canStore();
 
     /**
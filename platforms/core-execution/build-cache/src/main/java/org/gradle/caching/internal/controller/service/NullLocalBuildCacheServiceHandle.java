@@ -21,7 +21,9 @@
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.InputStream;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class NullLocalBuildCacheServiceHandle implements LocalBuildCacheServiceHandle {
@@ -42,6 +44,20 @@ public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, Function<File
         return Optional.empty();
     }
 
+    @Override
+    public Optional<BuildCacheLoadResult> maybeLoadStream(BuildCacheKey key, BiFunction<InputStream, Long, BuildCacheLoadResult> unpackFunction) {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean contains(BuildCacheKey key) {
+        return false;
+    }
+
+    @Override
+    public void markAccessed(BuildCacheKey key) {
+    }
+
     @Override
     public boolean canStore() {
         return false;
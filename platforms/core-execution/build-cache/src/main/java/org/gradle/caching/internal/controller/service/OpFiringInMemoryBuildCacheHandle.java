@@ -0,0 +1,249 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.operations.BuildCacheMemoryLoadBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheMemoryStoreBuildOperationType;
+import org.gradle.caching.local.internal.InMemoryBuildCache;
+import org.gradle.caching.local.internal.TemporaryFileFactory;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.BuildOperationRunner;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Loads and stores entries in an {@link InMemoryBuildCache}, firing build operations for each load and store.
+ *
+ * The in-memory cache only speeds up loading entries, so failing to store an entry in memory is logged and does not fail the build.
+ * When an executor factory is given, entries are read and stored in memory on a background thread, from a file linked to the packed entry.
+ * At most {@value #MAX_PENDING_STORES} entries are pending at any time, further entries are not stored in memory until the pending ones have been stored.
+ * As storing usually completes after the build operation which stored or loaded the entry, the store operations run under the given parent operation,
+ * which keeps running until the handle is closed.
+ */
+public class OpFiringInMemoryBuildCacheHandle implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpFiringInMemoryBuildCacheHandle.class);
+
+    private static final int MAX_PENDING_STORES = 16;
+
+    private final InMemoryBuildCache cache;
+    private final BuildOperationRunner buildOperationRunner;
+    private final TemporaryFileFactory temporaryFileFactory;
+    @Nullable
+    private final ManagedExecutor executor;
+    @Nullable
+    private final BuildOperationRef storeParent;
+    private final Semaphore pendingStores = new Semaphore(MAX_PENDING_STORES);
+
+    public OpFiringInMemoryBuildCacheHandle(InMemoryBuildCache cache, BuildOperationRunner buildOperationRunner, TemporaryFileFactory temporaryFileFactory) {
+        this(cache, buildOperationRunner, temporaryFileFactory, null, null);
+    }
+
+    public OpFiringInMemoryBuildCacheHandle(
+        InMemoryBuildCache cache,
+        BuildOperationRunner buildOperationRunner,
+        TemporaryFileFactory temporaryFileFactory,
+        @Nullable ExecutorFactory executorFactory,
+        @Nullable BuildOperationRef storeParent
+    ) {
+        this.cache = cache;
+        this.buildOperationRunner = buildOperationRunner;
+        this.temporaryFileFactory = temporaryFileFactory;
+        this.executor = executorFactory == null ? null : executorFactory.create("Build cache in-memory store", 1);
+        this.storeParent = storeParent;
+    }
+
+    public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, Function<byte[], BuildCacheLoadResult> unpackFunction) {
+        return buildOperationRunner.call(new CallableBuildOperation<Optional<BuildCacheLoadResult>>() {
+            @Override
+            public Optional<BuildCacheLoadResult> call(BuildOperationContext context) {
+                byte[] entry = cache.load(key);
+                Optional<BuildCacheLoadResult> result = entry == null
+                    ? Optional.empty()
+                    : Optional.ofNullable(unpackFunction.apply(entry));
+                context.setResult(new MemoryLoadResult(result.isPresent() ? entry : null));
+                return result;
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Load entry " + key.getHashCode() + " from in-memory build cache")
+                    .details(new MemoryLoadDetails(key));
+            }
+        });
+    }
+
+    /**
+     * Stores the given packed entry in memory.
+     * The file can be moved or deleted once this method returns.
+     */
+    public void store(BuildCacheKey key, File file) {
+        if (executor == null || !cache.canStore(file.length())) {
+            storeInOperation(key, () -> cache.store(key, file));
+            return;
+        }
+        if (!pendingStores.tryAcquire()) {
+            // Keeping the entry in memory only speeds up loading it, so it is better to skip it than to make the caller wait
+            LOGGER.debug("Not storing entry {} in the in-memory build cache, as too many entries are pending", key.getHashCode());
+            return;
+        }
+        File storeFile;
+        try {
+            storeFile = EntryFileLinker.linkOrCopy(temporaryFileFactory, "build-cache-memory", file);
+        } catch (RuntimeException e) {
+            pendingStores.release();
+            logStoreFailure(key, e);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                CurrentBuildOperationRef.instance().with(storeParent, () -> storeInOperation(key, () -> cache.store(key, storeFile)));
+            } finally {
+                if (!storeFile.delete()) {
+                    LOGGER.debug("Could not delete {}", storeFile);
+                }
+                pendingStores.release();
+            }
+        });
+    }
+
+    private void storeInOperation(BuildCacheKey key, MemoryStoreAction action) {
+        try {
+            buildOperationRunner.run(new RunnableBuildOperation() {
+                @Override
+                public void run(BuildOperationContext context) throws Exception {
+                    context.setResult(new MemoryStoreResult(action.store()));
+                }
+
+                @Override
+                public BuildOperationDescriptor.Builder description() {
+                    return BuildOperationDescriptor.displayName("Store entry " + key.getHashCode() + " in in-memory build cache")
+                        .details(new MemoryStoreDetails(key));
+                }
+            });
+        } catch (Exception e) {
+            logStoreFailure(key, e);
+        }
+    }
+
+    private static void logStoreFailure(BuildCacheKey key, Exception e) {
+        LOGGER.warn("Could not store entry {} in the in-memory build cache: {}", key.getHashCode(), e.getMessage());
+        LOGGER.debug("Failure storing entry {} in the in-memory build cache", key.getHashCode(), e);
+    }
+
+    /**
+     * Waits for the entries being stored in the background.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    private interface MemoryStoreAction {
+        InMemoryBuildCache.StoreResult store() throws IOException;
+    }
+
+    private static class MemoryLoadDetails implements BuildCacheMemoryLoadBuildOperationType.Details {
+        private final BuildCacheKey key;
+
+        public MemoryLoadDetails(BuildCacheKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getCacheKey() {
+            return key.getHashCode();
+        }
+    }
+
+    private static class MemoryStoreDetails implements BuildCacheMemoryStoreBuildOperationType.Details {
+        private final BuildCacheKey key;
+
+        public MemoryStoreDetails(BuildCacheKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getCacheKey() {
+            return key.getHashCode();
+        }
+    }
+
+    private static class MemoryLoadResult implements BuildCacheMemoryLoadBuildOperationType.Result {
+        @Nullable
+        private final byte[] entry;
+
+        public MemoryLoadResult(@Nullable byte[] entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean isHit() {
+            return entry != null;
+        }
+
+        @Override
+        public long getArchiveSize() {
+            return entry != null ? entry.length : -1;
+        }
+    }
+
+    private static class MemoryStoreResult implements BuildCacheMemoryStoreBuildOperationType.Result {
+        private final InMemoryBuildCache.StoreResult result;
+
+        public MemoryStoreResult(InMemoryBuildCache.StoreResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean isStored() {
+            return result.isStored();
+        }
+
+        @Override
+        public long getArchiveSize() {
+            return result.getSize();
+        }
+
+        @Override
+        public int getEvictedEntries() {
+            return result.getEvictedEntries();
+        }
+
+        @Override
+        public long getEvictedSize() {
+            return result.getEvictedSize();
+        }
+    }
+}
@@ -27,8 +27,10 @@
 import org.gradle.internal.operations.RunnableBuildOperation;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class OpFiringLocalBuildCacheServiceHandle extends BaseLocalBuildCacheServiceHandle {
@@ -48,14 +50,26 @@ public OpFiringLocalBuildCacheServiceHandle(LocalBuildCacheService service, bool
 
     @Override
     public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, Function<File, BuildCacheLoadResult> unpackFunction) {
+        return loadInOperation(key, archiveSize -> OpFiringLocalBuildCacheServiceHandle.super.maybeLoad(key, file -> {
+            archiveSize.set(file.length());
+            return unpackFunction.apply(file);
+        }));
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> maybeLoadStream(BuildCacheKey key, BiFunction<InputStream, Long, BuildCacheLoadResult> unpackFunction) {
+        return loadInOperation(key, archiveSize -> OpFiringLocalBuildCacheServiceHandle.super.maybeLoadStream(key, (input, size) -> {
+            archiveSize.set(size);
+            return unpackFunction.apply(input, size);
+        }));
+    }
+
+    private Optional<BuildCacheLoadResult> loadInOperation(BuildCacheKey key, Function<AtomicReference<Long>, Optional<BuildCacheLoadResult>> load) {
         return buildOperationRunner.call(new CallableBuildOperation<Optional<BuildCacheLoadResult>>() {
             @Override
             public Optional<BuildCacheLoadResult> call(BuildOperationContext context) {
                 AtomicReference<Long> archiveSize = new AtomicReference<>();
-                Optional<BuildCacheLoadResult> result = OpFiringLocalBuildCacheServiceHandle.super.maybeLoad(key, file -> {
-                    archiveSize.set(file.length());
-                    return unpackFunction.apply(file);
-                });
+                Optional<BuildCacheLoadResult> result = load.apply(archiveSize);
                 context.setResult(new LocalLoadResult(result, archiveSize));
                 return result;
             }
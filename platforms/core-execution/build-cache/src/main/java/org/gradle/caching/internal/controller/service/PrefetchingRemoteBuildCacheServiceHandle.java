@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A remote handle which checks whether entries exist in the remote cache before they are loaded, batching the checks for many entries into a single request.
+ *
+ * Keys are checked on a single background thread. Keys announced while a check is in flight are collected, and checked together once it completes.
+ * As keys are announced when the cache key of a unit of work has been calculated, batches only contain the keys of work that executes concurrently.
+ * Loading an entry the check found to be missing does not contact the remote cache.
+ * Loading an entry whose check has not completed yet, or found it to exist, loads it as usual.
+ *
+ * When a check fails, for example because the remote cache does not support checking multiple entries, no further checks are made.
+ */
+public class PrefetchingRemoteBuildCacheServiceHandle implements RemoteBuildCacheServiceHandle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingRemoteBuildCacheServiceHandle.class);
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final RemoteBuildCacheServiceHandle delegate;
+    private final StatefulNextGenBuildCacheService service;
+    private final ManagedExecutor prober;
+    private final Set<String> knownMisses = ConcurrentHashMap.newKeySet();
+    private final Object lock = new Object();
+    private final Set<BuildCacheKey> pending = new LinkedHashSet<>();
+    private boolean probeScheduled;
+    private volatile boolean probingDisabled;
+
+    public PrefetchingRemoteBuildCacheServiceHandle(RemoteBuildCacheServiceHandle delegate, StatefulNextGenBuildCacheService service, ExecutorFactory executorFactory) {
+        this.delegate = delegate;
+        this.service = service;
+        this.prober = executorFactory.create("Build cache probes", 1);
+    }
+
+    @Nullable
+    @Override
+    public BuildCacheService getService() {
+        return delegate.getService();
+    }
+
+    @Override
+    public boolean canLoad() {
+        return delegate.canLoad();
+    }
+
+    @Override
+    public void prefetchContains(BuildCacheKey key) {
+        if (probingDisabled || !delegate.canLoad()) {
+            return;
+        }
+        synchronized (lock) {
+            pending.add(key);
+            if (!probeScheduled) {
+                probeScheduled = true;
+                prober.execute(this::probePending);
+            }
+        }
+    }
+
+    private void probePending() {
+        while (true) {
+            List<BuildCacheKey> batch = new ArrayList<>();
+            synchronized (lock) {
+                Iterator<BuildCacheKey> iterator = pending.iterator();
+                while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+                if (batch.isEmpty() || probingDisabled) {
+                    pending.clear();
+                    probeScheduled = false;
+                    return;
+                }
+            }
+            try {
+                Set<BuildCacheKey> found = service.containsAll(batch);
+                for (BuildCacheKey key : batch) {
+                    if (!found.contains(key)) {
+                        knownMisses.add(key.getHashCode());
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.info("Could not check for entries in remote build cache, no longer checking entries in advance: {}", e.getMessage());
+                probingDisabled = true;
+            }
+        }
+    }
+
+    @Override
+    public Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, File toFile, Function<File, BuildCacheLoadResult> unpackFunction) {
+        if (knownMisses.remove(key.getHashCode())) {
+            LOGGER.debug("Entry {} is known to be missing from remote build cache", key.getHashCode());
+            return Optional.empty();
+        }
+        return delegate.maybeLoad(key, toFile, unpackFunction);
+    }
+
+    @Override
+    public boolean canStore() {
+        return delegate.canStore();
+    }
+
+    @Override
+    public boolean maybeStore(BuildCacheKey key, File file) {
+        knownMisses.remove(key.getHashCode());
+        return delegate.maybeStore(key, file);
+    }
+
+    @Override
+    public void close() {
+        probingDisabled = true;
+        try {
+            prober.stop();
+        } finally {
+            delegate.close();
+        }
+    }
+}
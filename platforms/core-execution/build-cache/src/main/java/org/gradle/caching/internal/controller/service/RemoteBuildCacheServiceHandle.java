@@ -41,6 +41,13 @@ public interface RemoteBuildCacheServiceHandle extends Closeable {
      */
     Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, File toFile, Function<File, BuildCacheLoadResult> unpackFunction);
 
+    /**
+     * Hints that the entry corresponding to the given cache key is likely to be loaded soon,
+     * so that whether it exists in the cache can be checked in advance.
+     */
+    default void prefetchContains(BuildCacheKey key) {
+    }
+
     boolean canStore();
 
     /**
@@ -18,13 +18,14 @@
 
 import com.google.common.io.Closer;
 import com.google.common.io.Files;
-import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
-public class StoreTarget implements BuildCacheEntryWriter {
+public class StoreTarget implements StatefulNextGenBuildCacheService.NextGenWriter {
 
     private final File file;
     private boolean stored;
@@ -47,6 +48,12 @@ public void writeTo(OutputStream output) throws IOException {
         }
     }
 
+    @Override
+    public InputStream openStream() throws IOException {
+        stored = true;
+        return Files.asByteSource(file).openStream();
+    }
+
     public boolean isStored() {
         return stored;
     }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded store of recently used build cache entries, kept in memory in front of the local build cache for the lifetime of the daemon.
+ *
+ * Entries are kept uncompressed, so that they can be unpacked without accessing the local build cache or decompressing them again.
+ * The least recently used entries are evicted when storing an entry would exceed the maximum size of the store.
+ */
+@ServiceScope(Scope.UserHome.class)
+public class InMemoryBuildCache {
+    // Larger entries would evict too many other entries, while being cheap to unpack from the local build cache in comparison to their size
+    private static final int MAX_ENTRY_SIZE_RATIO = 4;
+
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public InMemoryBuildCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxSize / MAX_ENTRY_SIZE_RATIO;
+    }
+
+    /**
+     * Returns the uncompressed entry for the given key, or {@code null} when it is not in memory.
+     */
+    @Nullable
+    public synchronized byte[] load(BuildCacheKey key) {
+        return entries.get(key.getHashCode());
+    }
+
+    /**
+     * Whether a packed entry of the given size can be kept in memory.
+     */
+    public boolean canStore(long packedSize) {
+        return packedSize <= maxEntrySize;
+    }
+
+    /**
+     * Stores the uncompressed content of the given packed entry, evicting the least recently used entries to make room for it.
+     */
+    public StoreResult store(BuildCacheKey key, File file) throws IOException {
+        if (!canStore(file.length())) {
+            return StoreResult.notStored(file.length());
+        }
+        //noinspection IOStreamConstructor
+        try (InputStream input = new FileInputStream(file)) {
+            return store(key, input);
+        }
+    }
+
+    /**
+     * Stores the uncompressed content of the packed entry read from the given stream, evicting the least recently used entries to make room for it.
+     */
+    public StoreResult store(BuildCacheKey key, InputStream packed) throws IOException {
+        EntryBuffer buffer = new EntryBuffer(maxEntrySize);
+        try {
+            CompressingBuildCacheEntryPacker.decompress(packed, buffer);
+        } catch (EntryTooLargeException e) {
+            return StoreResult.notStored(buffer.size());
+        }
+        byte[] entry = buffer.toByteArray();
+        return store(key.getHashCode(), entry);
+    }
+
+    private synchronized StoreResult store(String key, byte[] entry) {
+        byte[] previous = entries.put(key, entry);
+        size += entry.length;
+        if (previous != null) {
+            size -= previous.length;
+        }
+        int evictedEntries = 0;
+        long evictedSize = 0;
+        Iterator<byte[]> leastRecentlyUsed = entries.values().iterator();
+        while (size > maxSize) {
+            byte[] evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            size -= evicted.length;
+            evictedEntries++;
+            evictedSize += evicted.length;
+        }
+        return new StoreResult(true, entry.length, evictedEntries, evictedSize);
+    }
+
+    public static class StoreResult {
+        private final boolean stored;
+        private final long size;
+        private final int evictedEntries;
+        private final long evictedSize;
+
+        private StoreResult(boolean stored, long size, int evictedEntries, long evictedSize) {
+            this.stored = stored;
+            this.size = size;
+            this.evictedEntries = evictedEntries;
+            this.evictedSize = evictedSize;
+        }
+
+        private static StoreResult notStored(long size) {
+            return new StoreResult(false, size, 0, 0);
+        }
+
+        public boolean isStored() {
+            return stored;
+        }
+
+        /**
+         * The number of bytes of the entry, which is only known exactly when it has been stored.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public int getEvictedEntries() {
+            return evictedEntries;
+        }
+
+        public long getEvictedSize() {
+            return evictedSize;
+        }
+    }
+
+    private static class EntryBuffer extends ByteArrayOutputStream {
+        private final long maxSize;
+
+        EntryBuffer(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) {
+            checkSize(1);
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            checkSize(len);
+            super.write(b, off, len);
+        }
+
+        private void checkSize(int len) {
+            if (count + len > maxSize) {
+                throw new EntryTooLargeException();
+            }
+        }
+    }
+
+    private static class EntryTooLargeException extends RuntimeException {
+        EntryTooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+}
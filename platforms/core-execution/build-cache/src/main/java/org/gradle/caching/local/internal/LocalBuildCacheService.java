@@ -20,6 +20,10 @@
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.function.Consumer;
 
 /**
@@ -34,8 +38,47 @@ public interface LocalBuildCacheService extends BuildCacheTempFileStore, Closeab
      */
     void loadLocally(BuildCacheKey key, Consumer<? super File> reader);
 
+    /**
+     * Loads a cache artifact from a local store as a stream. If a result is found the {@code reader} is executed.
+     * Stores which do not keep artifacts as single files can serve them without writing them to a file first.
+     */
+    default void loadLocallyAsStream(BuildCacheKey key, EntryReader reader) {
+        loadLocally(key, file -> {
+            try (InputStream input = new FileInputStream(file)) {
+                reader.read(input, file.length());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the local store has a cache artifact for the given key, without loading it.
+     * Stores which cannot tell cheaply return {@code false}.
+     */
+    default boolean containsLocally(BuildCacheKey key) {
+        return false;
+    }
+
+    /**
+     * Records that the cache artifact for the given key was used without loading it from the local store,
+     * so that it is not removed as unused by the cleanup of the store.
+     */
+    default void markAccessedLocally(BuildCacheKey key) {
+    }
+
     /**
      * Store the given file in the local file store as a cache artifact.
      */
     void storeLocally(BuildCacheKey key, File file);
+
+    /**
+     * Reads a cache artifact loaded from a local store.
+     */
+    interface EntryReader {
+        /**
+         * Reads the artifact from the given stream, which contains {@code size} bytes.
+         */
+        void read(InputStream input, long size) throws IOException;
+    }
 }
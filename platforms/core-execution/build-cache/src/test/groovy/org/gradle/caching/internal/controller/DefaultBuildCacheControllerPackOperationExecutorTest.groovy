@@ -92,11 +92,12 @@ class DefaultBuildCacheControllerPackOperationExecutorTest extends Specification
         1 * originFactory.createReader() >> originReader
 
         then:
-        1 * packer.unpack(entity, _ as InputStream, originReader) >> new BuildCacheEntryPacker.UnpackResult(originMetadata, 123L, fileSnapshots)
+        1 * packer.unpack(entity, _ as InputStream, originReader) >> new BuildCacheEntryPacker.UnpackResult(originMetadata, 123L, 1024L, fileSnapshots)
 
         then:
         1 * buildOperationContext.setResult(_ as UnpackOperationResult) >> { UnpackOperationResult unpackResult ->
             assert unpackResult.archiveEntryCount == 123
+            assert unpackResult.uncompressedSize == 1024
         }
 
         then:
@@ -146,12 +147,13 @@ class DefaultBuildCacheControllerPackOperationExecutorTest extends Specification
         1 * originFactory.createWriter(entity.identity, entity.type, TestHashCodes.hashCodeFrom(1234), Duration.ofMillis(421L)) >> originWriter
 
         then:
-        1 * packer.pack(entity, outputSnapshots, _ as OutputStream, originWriter) >> new BuildCacheEntryPacker.PackResult(123)
+        1 * packer.pack(entity, outputSnapshots, _ as OutputStream, originWriter) >> new BuildCacheEntryPacker.PackResult(123, 1024)
 
         then:
         1 * buildOperationContext.setResult(_ as PackOperationResult) >> { PackOperationResult packResult ->
             assert packResult.archiveEntryCount == 123
             assert packResult.archiveSize == output.size()
+            assert packResult.uncompressedSize == 1024
         }
 
         then:
@@ -24,8 +24,12 @@ import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.CacheableEntity
 import org.gradle.caching.internal.TestBuildCacheKey
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.caching.internal.operations.BuildCacheMemoryLoadBuildOperationType
 import org.gradle.caching.internal.origin.OriginMetadataFactory
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import org.gradle.caching.local.internal.InMemoryBuildCache
 import org.gradle.caching.local.internal.LocalBuildCacheService
 import org.gradle.caching.local.internal.TemporaryFileFactory
 import org.gradle.internal.hash.HashCode
@@ -40,6 +44,7 @@ import spock.lang.Specification
 import java.nio.file.Files
 import java.time.Duration
 import java.util.function.Consumer
+import java.util.zip.GZIPOutputStream
 
 class DefaultBuildCacheControllerTest extends Specification {
 
@@ -51,6 +56,7 @@ class DefaultBuildCacheControllerTest extends Specification {
     }
     Duration executionTime = Duration.ofMillis(123)
     Map<String, FileSystemSnapshot> snapshots = [:]
+    List<byte[]> unpacked = []
 
     def local = Mock(Local) {
         withTempFile(_ as HashCode, _ as Consumer) >> { key, action ->
@@ -60,9 +66,12 @@ class DefaultBuildCacheControllerTest extends Specification {
     def localPush = true
     def remote = Mock(BuildCacheService)
     def remotePush = true
-    BuildCacheEntryPacker packer = Stub(BuildCacheEntryPacker)
+    BuildCacheEntryPacker packer = Stub(BuildCacheEntryPacker) {
+        getKeyDiscriminator() >> null
+    }
     OriginMetadataFactory originMetadataFactory = Stub(OriginMetadataFactory)
     Interner<String> stringInterner = Stub(Interner)
+    InMemoryBuildCache memoryCache = null
 
     def operations = new TestBuildOperationRunner()
     def buildOperationProgressEmitter = new NoOpBuildOperationProgressEventEmitter()
@@ -88,7 +97,13 @@ class DefaultBuildCacheControllerTest extends Specification {
             disableRemoteOnError,
             packer,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            null,
+            false,
+            false,
+            memoryCache,
+            null,
+            null
         )
     }
 
@@ -100,7 +115,7 @@ class DefaultBuildCacheControllerTest extends Specification {
         controller.load(key, cacheableEntity)
 
         then:
-        1 * local.loadLocally(key, _)
+        1 * local.loadLocallyAsStream(key, _)
         0 * local.storeLocally(key, _)
     }
 
@@ -142,10 +157,8 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     def "local load does not stores to local"() {
         given:
-        1 * local.loadLocally(key, _) >> { BuildCacheKey key, Consumer<File> action ->
-            def file = tmpDir.file("file")
-            file.text = "alma"
-            action.accept(file)
+        1 * local.loadLocallyAsStream(key, _) >> { BuildCacheKey key, LocalBuildCacheService.EntryReader reader ->
+            reader.read(new ByteArrayInputStream("alma".bytes), 4)
         }
 
         when:
@@ -157,7 +170,7 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     def "remote load also stores to local"() {
         given:
-        1 * local.loadLocally(key, _) // miss
+        1 * local.loadLocallyAsStream(key, _) // miss
         1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
             reader.readFrom(new ByteArrayInputStream("foo".bytes))
             true
@@ -170,6 +183,33 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * local.storeLocally(key, _)
     }
 
+    def "stores entries older versions cannot unpack under a different key"() {
+        given:
+        packer = Stub(BuildCacheEntryPacker) {
+            getKeyDiscriminator() >> "compression-2"
+        }
+        BuildCacheKey storedKey = null
+
+        when:
+        controller.store(key, cacheableEntity, snapshots, executionTime)
+
+        then:
+        1 * remote.store(_, _) >> { BuildCacheKey remoteKey, BuildCacheEntryWriter writer ->
+            storedKey = remoteKey
+        }
+        1 * local.storeLocally(_, _) >> { BuildCacheKey localKey, File file ->
+            assert localKey.hashCode == storedKey.hashCode
+        }
+        storedKey.hashCode != key.hashCode
+
+        when:
+        controller.load(key, cacheableEntity)
+
+        then:
+        1 * local.loadLocallyAsStream({ it.hashCode == storedKey.hashCode }, _)
+        1 * remote.load({ it.hashCode == storedKey.hashCode }, _)
+    }
+
     def "remote load does not store to local if local is disabled"() {
         given:
         local = null
@@ -188,7 +228,7 @@ class DefaultBuildCacheControllerTest extends Specification {
     def "remote load does not store to local if local push is disabled"() {
         given:
         localPush = false
-        1 * local.loadLocally(key, _) // miss
+        1 * local.loadLocallyAsStream(key, _) // miss
         1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
             reader.readFrom(new ByteArrayInputStream("foo".bytes))
             true
@@ -265,6 +305,79 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * remote.store(key, _)
     }
 
+    def "loads stored entries from memory"() {
+        given:
+        memoryCache = new InMemoryBuildCache(1024 * 1024)
+        packer = Stub(BuildCacheEntryPacker) {
+            pack(_, _, _, _) >> { CacheableEntity entity, Map snapshots, OutputStream output, OriginWriter writer ->
+                new GZIPOutputStream(output).withStream { it.write("entry".bytes) }
+                new BuildCacheEntryPacker.PackResult(1, 1)
+            }
+            unpack(_, _, _) >> { CacheableEntity entity, InputStream input, OriginReader reader ->
+                unpacked << input.bytes
+                new BuildCacheEntryPacker.UnpackResult(null, 1, 1, [:])
+            }
+        }
+        def controller = getController()
+
+        when:
+        controller.store(key, cacheableEntity, snapshots, executionTime)
+        def result = controller.load(key, cacheableEntity)
+
+        then:
+        1 * local.storeLocally(key, _)
+        0 * local.loadLocally(key, _)
+        1 * local.markAccessedLocally(key)
+        result.present
+        new String(unpacked[0], 5, 5) == "entry"
+        operations.log.mostRecentResult(BuildCacheMemoryLoadBuildOperationType).hit
+    }
+
+    def "keeps entries loaded from local in memory"() {
+        given:
+        memoryCache = new InMemoryBuildCache(1024 * 1024)
+        packer = Stub(BuildCacheEntryPacker) {
+            unpack(_, _, _) >> new BuildCacheEntryPacker.UnpackResult(null, 1, 1, [:])
+        }
+        def controller = getController()
+
+        when:
+        def first = controller.load(key, cacheableEntity)
+        def second = controller.load(key, cacheableEntity)
+
+        then:
+        1 * local.loadLocally(key, _) >> { BuildCacheKey key, Consumer<File> action ->
+            def file = tmpDir.file("file")
+            file.withOutputStream { output ->
+                new GZIPOutputStream(output).withStream { it.write("entry".bytes) }
+            }
+            action.accept(file)
+        }
+        first.present
+        second.present
+    }
+
+    def "loads entry from local when it cannot be stored in memory"() {
+        given:
+        memoryCache = Stub(InMemoryBuildCache) {
+            canStore(_) >> true
+            store(_, _ as File) >> { throw new IOException("Memory store failed") }
+        }
+        packer = Stub(BuildCacheEntryPacker) {
+            unpack(_, _, _) >> new BuildCacheEntryPacker.UnpackResult(null, 1, 1, [:])
+        }
+        def controller = getController()
+
+        when:
+        def result = controller.load(key, cacheableEntity)
+
+        then:
+        1 * local.loadLocally(key, _) >> { BuildCacheKey key, Consumer<File> action ->
+            action.accept(tmpDir.createFile("file"))
+        }
+        result.present
+    }
+
     def "close only closes once"() {
         when:
         def controller = getController()
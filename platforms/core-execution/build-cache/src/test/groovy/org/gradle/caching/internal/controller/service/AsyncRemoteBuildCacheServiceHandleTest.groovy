@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.caching.local.internal.TemporaryFileFactory
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.BuildOperationContext
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.BuildOperationRunner
+import org.gradle.internal.operations.BuildOperationTimeSupplier
+import org.gradle.internal.operations.CurrentBuildOperationRef
+import org.gradle.internal.operations.DefaultBuildOperationIdFactory
+import org.gradle.internal.operations.DefaultBuildOperationRunner
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.function.Function
+
+class AsyncRemoteBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def executorFactory = new DefaultExecutorFactory()
+    def buildOperationRunner = new DefaultBuildOperationRunner(
+        CurrentBuildOperationRef.instance(),
+        { 0L } as BuildOperationTimeSupplier,
+        new DefaultBuildOperationIdFactory(),
+        { DefaultBuildOperationRunner.BuildOperationExecutionListener.NO_OP }
+    )
+    def delegate = new GatedRemoteHandle(buildOperationRunner)
+    def temporaryFileFactory = { prefix, suffix -> Files.createTempFile(temporaryFolder.testDirectory.toPath(), prefix, suffix).toFile() } as TemporaryFileFactory
+    def handle = new AsyncRemoteBuildCacheServiceHandle(delegate, temporaryFileFactory, executorFactory, null)
+
+    def cleanup() {
+        delegate.gate.countDown()
+        handle.close()
+        executorFactory.stop()
+    }
+
+    def "returns before the entry has been uploaded"() {
+        def file = temporaryFolder.file("entry").write("content")
+
+        when:
+        def scheduled = handle.maybeStore(key("a"), file)
+        file.delete()
+
+        then:
+        scheduled
+        delegate.stored.isEmpty()
+    }
+
+    def "uploads pending entries when closed"() {
+        def first = temporaryFolder.file("first").write("first")
+        def second = temporaryFolder.file("second").write("second")
+
+        when:
+        handle.maybeStore(key("a"), first)
+        first.delete()
+        handle.maybeStore(key("b"), second)
+        second.delete()
+        delegate.gate.countDown()
+        handle.close()
+
+        then:
+        delegate.stored == [a: "first", b: "second"]
+        delegate.closed
+        !handle.canStore()
+    }
+
+    def "uploads entries under the given parent once the operation which scheduled them has completed"() {
+        def file = temporaryFolder.file("entry").write("content")
+        OperationIdentifier buildTreeOperation = null
+
+        when:
+        buildOperationRunner.run(operation("Run build") {
+            buildTreeOperation = CurrentBuildOperationRef.instance().id
+            def uploadingHandle = new AsyncRemoteBuildCacheServiceHandle(delegate, temporaryFileFactory, executorFactory, CurrentBuildOperationRef.instance().get())
+            buildOperationRunner.run(operation("Store entry") {
+                uploadingHandle.maybeStore(key("a"), file)
+            })
+            delegate.gate.countDown()
+            uploadingHandle.close()
+        })
+
+        then:
+        delegate.stored == [a: "content"]
+        delegate.parents == [a: buildTreeOperation]
+    }
+
+    def "does not schedule uploads when the remote cannot store"() {
+        def file = temporaryFolder.file("entry").write("content")
+        delegate.storeEnabled = false
+
+        expect:
+        !handle.maybeStore(key("a"), file)
+    }
+
+    private static RunnableBuildOperation operation(String displayName, Runnable action) {
+        new RunnableBuildOperation() {
+            @Override
+            void run(BuildOperationContext context) {
+                action.run()
+            }
+
+            @Override
+            BuildOperationDescriptor.Builder description() {
+                BuildOperationDescriptor.displayName(displayName)
+            }
+        }
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    /**
+     * Stores entries in a build operation of their own, like the handle firing operations for a remote cache.
+     */
+    private static class GatedRemoteHandle implements RemoteBuildCacheServiceHandle {
+        final BuildOperationRunner buildOperationRunner
+        final CountDownLatch gate = new CountDownLatch(1)
+        final Map<String, String> stored = new ConcurrentHashMap<>()
+        final Map<String, OperationIdentifier> parents = new ConcurrentHashMap<>()
+        boolean storeEnabled = true
+        boolean closed
+
+        GatedRemoteHandle(BuildOperationRunner buildOperationRunner) {
+            this.buildOperationRunner = buildOperationRunner
+        }
+
+        @Override
+        BuildCacheService getService() {
+            null
+        }
+
+        @Override
+        boolean canLoad() {
+            true
+        }
+
+        @Override
+        Optional<BuildCacheLoadResult> maybeLoad(BuildCacheKey key, File toFile, Function<File, BuildCacheLoadResult> unpackFunction) {
+            Optional.empty()
+        }
+
+        @Override
+        boolean canStore() {
+            storeEnabled
+        }
+
+        @Override
+        boolean maybeStore(BuildCacheKey key, File file) {
+            gate.await()
+            buildOperationRunner.run(operation("Store entry in remote build cache") {
+                stored[key.hashCode] = file.text
+                def parentId = CurrentBuildOperationRef.instance().parentId
+                if (parentId != null) {
+                    parents[key.hashCode] = parentId
+                }
+            })
+            true
+        }
+
+        @Override
+        void close() {
+            closed = true
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.internal.TestBuildCacheKey
+import org.gradle.caching.local.internal.InMemoryBuildCache
+import org.gradle.caching.local.internal.TemporaryFileFactory
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.BuildOperationContext
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.BuildOperationTimeSupplier
+import org.gradle.internal.operations.CurrentBuildOperationRef
+import org.gradle.internal.operations.DefaultBuildOperationIdFactory
+import org.gradle.internal.operations.DefaultBuildOperationRunner
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.zip.GZIPOutputStream
+
+class OpFiringInMemoryBuildCacheHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def executorFactory = new DefaultExecutorFactory()
+    def buildOperationRunner = new DefaultBuildOperationRunner(
+        CurrentBuildOperationRef.instance(),
+        { 0L } as BuildOperationTimeSupplier,
+        new DefaultBuildOperationIdFactory(),
+        { DefaultBuildOperationRunner.BuildOperationExecutionListener.NO_OP }
+    )
+    def temporaryFileFactory = { prefix, suffix -> Files.createTempFile(temporaryFolder.testDirectory.toPath(), prefix, suffix).toFile() } as TemporaryFileFactory
+    def cache = new InMemoryBuildCache(1024 * 1024)
+    def key = new TestBuildCacheKey(0x12345678)
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "stores entries in the background once the operation which stored them has completed"() {
+        def file = gzipped("content")
+
+        when:
+        buildOperationRunner.run(operation("Run build") {
+            def handle = new OpFiringInMemoryBuildCacheHandle(cache, buildOperationRunner, temporaryFileFactory, executorFactory, CurrentBuildOperationRef.instance().get())
+            buildOperationRunner.run(operation("Store entry") {
+                handle.store(key, file)
+            })
+            file.delete()
+            handle.close()
+        })
+
+        then:
+        cache.load(key) != null
+        temporaryFolder.testDirectory.listFiles().toList() == []
+    }
+
+    private File gzipped(String content) {
+        def file = temporaryFolder.file("entry")
+        new GZIPOutputStream(file.newOutputStream()).withCloseable { it.write(content.bytes) }
+        file
+    }
+
+    private static RunnableBuildOperation operation(String displayName, Runnable action) {
+        new RunnableBuildOperation() {
+            @Override
+            void run(BuildOperationContext context) {
+                action.run()
+            }
+
+            @Override
+            BuildOperationDescriptor.Builder description() {
+                BuildOperationDescriptor.displayName(displayName)
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.function.Function
+
+class PrefetchingRemoteBuildCacheServiceHandleTest extends Specification {
+
+    def executorFactory = new DefaultExecutorFactory()
+    def delegate = Mock(RemoteBuildCacheServiceHandle) {
+        canLoad() >> true
+    }
+    def service = new ProbingService()
+    def handle = new PrefetchingRemoteBuildCacheServiceHandle(delegate, service, executorFactory)
+    def unpack = Stub(Function)
+    def conditions = new PollingConditions(timeout: 10)
+
+    def cleanup() {
+        service.gate.countDown()
+        handle.close()
+        executorFactory.stop()
+    }
+
+    def "does not load entries known to be missing"() {
+        def hit = key("hit")
+        def miss = key("miss")
+        service.existing << "hit"
+        service.gate.countDown()
+
+        when:
+        handle.prefetchContains(hit)
+        handle.prefetchContains(miss)
+        conditions.eventually {
+            assert service.batches.flatten().size() == 2
+        }
+        handle.maybeLoad(hit, new File("hit"), unpack)
+        handle.maybeLoad(miss, new File("miss"), unpack)
+
+        then:
+        1 * delegate.maybeLoad(hit, _, _) >> Optional.empty()
+        0 * delegate.maybeLoad(miss, _, _)
+    }
+
+    def "checks keys announced during a check in a single batch"() {
+        when:
+        handle.prefetchContains(key("a"))
+        conditions.eventually {
+            assert service.batches.size() == 1
+        }
+        handle.prefetchContains(key("b"))
+        handle.prefetchContains(key("c"))
+        service.gate.countDown()
+
+        then:
+        conditions.eventually {
+            assert service.batches == [["a"], ["b", "c"]]
+        }
+    }
+
+    def "loads entries whose check has not completed"() {
+        def key = key("a")
+
+        when:
+        handle.prefetchContains(key)
+        handle.maybeLoad(key, new File("a"), unpack)
+
+        then:
+        1 * delegate.maybeLoad(key, _, _) >> Optional.empty()
+    }
+
+    def "stops checking after a failed check"() {
+        service.failure = new BuildCacheException("not supported")
+        service.gate.countDown()
+
+        when:
+        handle.prefetchContains(key("a"))
+        conditions.eventually {
+            assert service.batches.size() == 1
+        }
+        handle.prefetchContains(key("b"))
+        handle.maybeLoad(key("a"), new File("a"), unpack)
+
+        then:
+        1 * delegate.maybeLoad(_, _, _) >> Optional.empty()
+        service.batches == [["a"]]
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private static class ProbingService implements StatefulNextGenBuildCacheService {
+        final CountDownLatch gate = new CountDownLatch(1)
+        final List<List<String>> batches = new CopyOnWriteArrayList<>()
+        final Set<String> existing = []
+        Exception failure
+
+        @Override
+        Set<BuildCacheKey> containsAll(Collection<BuildCacheKey> keys) {
+            batches << keys*.hashCode
+            gate.await()
+            if (failure != null) {
+                throw failure
+            }
+            keys.findAll { existing.contains(it.hashCode) } as Set
+        }
+
+        @Override
+        boolean contains(BuildCacheKey key) {
+            throw new UnsupportedOperationException()
+        }
+
+        @Override
+        void store(BuildCacheKey key, NextGenWriter writer) {
+            throw new UnsupportedOperationException()
+        }
+
+        @Override
+        boolean load(BuildCacheKey key, org.gradle.caching.BuildCacheEntryReader reader) {
+            throw new UnsupportedOperationException()
+        }
+
+        @Override
+        void open() {
+        }
+
+        @Override
+        void close() {
+        }
+    }
+}
@@ -80,4 +80,12 @@ class StoreTargetTest extends Specification {
         output.closed
     }
 
+    def "can open stream of stored data"() {
+        when:
+        def content = target.openStream().withCloseable { it.text }
+
+        then:
+        content == "test"
+        target.stored
+    }
 }
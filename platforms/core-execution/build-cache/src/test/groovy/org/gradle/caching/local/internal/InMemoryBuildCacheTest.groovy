@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.caching.internal.TestBuildCacheKey
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.GZIPOutputStream
+
+class InMemoryBuildCacheTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    // Fits four entries of 100 bytes, each with a header of 5 bytes
+    def cache = new InMemoryBuildCache(4 * 105)
+
+    def "keeps entries uncompressed"() {
+        def key = new TestBuildCacheKey(1)
+        def content = "content" * 10
+
+        when:
+        def result = cache.store(key, entry(content))
+
+        then:
+        result.stored
+        result.size == content.length() + 5
+        result.evictedEntries == 0
+        new String(cache.load(key), 0, 3) == "GBC"
+        new String(cache.load(key), 5, content.length()) == content
+        cache.load(new TestBuildCacheKey(2)) == null
+    }
+
+    def "evicts least recently used entries"() {
+        def keys = (1..5).collect { new TestBuildCacheKey(it) }
+        (0..3).each { cache.store(keys[it], entry("x" * 100)) }
+
+        when:
+        cache.load(keys[0])
+        def result = cache.store(keys[4], entry("x" * 100))
+
+        then:
+        result.stored
+        result.evictedEntries == 1
+        result.evictedSize == 105
+        cache.load(keys[0]) != null
+        cache.load(keys[1]) == null
+        cache.load(keys[2]) != null
+        cache.load(keys[3]) != null
+        cache.load(keys[4]) != null
+    }
+
+    def "replaces entry stored again"() {
+        def key = new TestBuildCacheKey(1)
+
+        when:
+        cache.store(key, entry("x" * 100))
+        cache.store(key, entry("y" * 100))
+        def result = (2..4).collect { cache.store(new TestBuildCacheKey(it), entry("x" * 100)) }.last()
+
+        then:
+        result.evictedEntries == 0
+        new String(cache.load(key), 5, 100) == "y" * 100
+    }
+
+    def "does not store entries larger than a quarter of the cache"() {
+        def key = new TestBuildCacheKey(1)
+
+        when:
+        def result = cache.store(key, entry("x" * 101))
+
+        then:
+        !result.stored
+        cache.load(key) == null
+    }
+
+    private File entry(String content) {
+        def file = tmpDir.createFile("entry")
+        file.withOutputStream { output ->
+            new GZIPOutputStream(output).withStream { it.write(content.bytes) }
+        }
+        file
+    }
+}
@@ -80,5 +80,12 @@ public enum CachingDisabledReasonCategory {
      *
      * @see <a href="https://docs.gradle.org/current/userguide/incremental_build.html#sec:how_does_it_work">How fingerprinting works</a>
      */
-    NON_CACHEABLE_INPUTS
+    NON_CACHEABLE_INPUTS,
+
+    /**
+     * Previous executions of the same type of work were faster than loading their results from the remote cache.
+     *
+     * The result of the work was not found in the local cache and is not loaded from the remote cache, but is still stored in the build cache.
+     */
+    CHEAPER_TO_REBUILD
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history;
+
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import java.time.Duration;
+
+/**
+ * Execution and remote build cache load times of previous executions of each type of work,
+ * used to skip loading results from the remote cache when rebuilding them is faster.
+ *
+ * The type of work is identified by the class of its implementation.
+ */
+@ServiceScope(Scope.Build.class)
+public interface BuildCacheCostHistory {
+    /**
+     * A history which knows no costs, used when loading from the remote cache is never skipped.
+     */
+    BuildCacheCostHistory NONE = new BuildCacheCostHistory() {
+        @Override
+        public boolean isCheaperToRebuild(String workType) {
+            return false;
+        }
+
+        @Override
+        public void recordExecution(String workType, Duration executionTime) {
+        }
+
+        @Override
+        public void recordLoad(String workType, Duration loadTime) {
+        }
+    };
+
+    /**
+     * Whether loading the result of the given type of work from the remote cache should be skipped,
+     * because previous executions took less time than loading their results from it.
+     * <p>
+     * Every call that returns {@code true} counts as a skipped load. After a number of skipped loads, the load is allowed again once,
+     * so that the history notices when loading from the remote cache has become cheaper.
+     */
+    boolean isCheaperToRebuild(String workType);
+
+    /**
+     * Records the duration of an execution of the given type of work.
+     */
+    void recordExecution(String workType, Duration executionTime);
+
+    /**
+     * Records the duration of loading the result of the given type of work from the remote cache.
+     */
+    void recordLoad(String workType, Duration loadTime);
+}
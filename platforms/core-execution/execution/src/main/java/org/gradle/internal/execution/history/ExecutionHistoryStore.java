@@ -16,6 +16,7 @@
 
 package org.gradle.internal.execution.history;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ExecutionHistoryStore {
@@ -24,4 +25,18 @@ public interface ExecutionHistoryStore {
     void store(String key, AfterExecutionState executionState);
 
     void remove(String key);
+
+    /**
+     * Hints that the states for the given keys are about to be loaded, roughly in the given order.
+     * Implementations may load them ahead of time.
+     */
+    default void prefetch(List<String> keys) {
+    }
+
+    /**
+     * Hints that the state for the given key is not going to be loaded anymore, for example because its unit of work has completed.
+     * Implementations may discard the state they prefetched for it.
+     */
+    default void discardPrefetched(String key) {
+    }
 }
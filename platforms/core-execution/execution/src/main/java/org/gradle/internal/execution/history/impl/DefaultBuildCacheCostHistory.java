@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import org.gradle.cache.IndexedCache;
+import org.gradle.cache.IndexedCacheParameters;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link BuildCacheCostHistory} persisted in the execution history cache.
+ *
+ * The costs of a type of work are moving averages of the previous execution and load times,
+ * so that a single unusually slow or fast execution or load does not change the decision.
+ * Loads from the remote cache are retried after {@value #SKIPPED_LOADS_BEFORE_RETRY} skipped loads,
+ * so that the decision follows changes of the remote cache or the network.
+ *
+ * The costs of each type of work are read from the cache once and then updated in memory.
+ * Updated costs are written back once, when the build finishes.
+ */
+public class DefaultBuildCacheCostHistory implements BuildCacheCostHistory, Closeable {
+    private static final long UNKNOWN = -1;
+    private static final int SKIPPED_LOADS_BEFORE_RETRY = 10;
+    private static final Costs NO_COSTS = new Costs(UNKNOWN, UNKNOWN, 0);
+
+    private final PersistentCache cache;
+    private final IndexedCache<String, Costs> store;
+    private final Map<String, Costs> costs = new ConcurrentHashMap<>();
+    private final Set<String> updatedWorkTypes = ConcurrentHashMap.newKeySet();
+
+    public DefaultBuildCacheCostHistory(Supplier<PersistentCache> cache) {
+        this.cache = cache.get();
+        this.store = this.cache.createIndexedCache(
+            IndexedCacheParameters.of("buildCacheCosts", String.class, new CostsSerializer())
+        );
+    }
+
+    @Override
+    public boolean isCheaperToRebuild(String workType) {
+        Costs updated = update(workType, previousCosts -> {
+            if (!previousCosts.isCheaperToRebuild()) {
+                return previousCosts;
+            }
+            if (previousCosts.skippedLoads >= SKIPPED_LOADS_BEFORE_RETRY) {
+                // Measure the load time again
+                return new Costs(previousCosts.executionTime, previousCosts.loadTime, 0);
+            }
+            return new Costs(previousCosts.executionTime, previousCosts.loadTime, previousCosts.skippedLoads + 1);
+        });
+        return updated.isCheaperToRebuild() && updated.skippedLoads > 0;
+    }
+
+    @Override
+    public void recordExecution(String workType, Duration executionTime) {
+        update(workType, previousCosts -> new Costs(average(previousCosts.executionTime, executionTime.toMillis()), previousCosts.loadTime, previousCosts.skippedLoads));
+    }
+
+    @Override
+    public void recordLoad(String workType, Duration loadTime) {
+        update(workType, previousCosts -> new Costs(previousCosts.executionTime, average(previousCosts.loadTime, loadTime.toMillis()), 0));
+    }
+
+    /**
+     * Atomically replaces the costs of the given type of work, loading them from the cache first if needed.
+     */
+    private Costs update(String workType, UnaryOperator<Costs> updater) {
+        Costs updated = costs.compute(workType, (type, current) -> updater.apply(current != null ? current : load(type)));
+        updatedWorkTypes.add(workType);
+        return updated;
+    }
+
+    private Costs load(String workType) {
+        Costs stored = cache.useCache(() -> store.getIfPresent(workType));
+        return stored != null ? stored : NO_COSTS;
+    }
+
+    @Override
+    public void close() {
+        if (updatedWorkTypes.isEmpty()) {
+            return;
+        }
+        cache.useCache(() -> {
+            for (String workType : updatedWorkTypes) {
+                store.put(workType, costs.get(workType));
+            }
+        });
+        updatedWorkTypes.clear();
+    }
+
+    private static long average(long previous, long current) {
+        return previous == UNKNOWN ? current : (previous + current) / 2;
+    }
+
+    private static class Costs {
+        private final long executionTime;
+        private final long loadTime;
+        private final int skippedLoads;
+
+        public Costs(long executionTime, long loadTime, int skippedLoads) {
+            this.executionTime = executionTime;
+            this.loadTime = loadTime;
+            this.skippedLoads = skippedLoads;
+        }
+
+        public boolean isCheaperToRebuild() {
+            return executionTime != UNKNOWN
+                && loadTime != UNKNOWN
+                && executionTime < loadTime;
+        }
+    }
+
+    private static class CostsSerializer extends AbstractSerializer<Costs> {
+        @Override
+        public Costs read(Decoder decoder) throws Exception {
+            long executionTime = decoder.readLong();
+            long loadTime = decoder.readLong();
+            int skippedLoads = decoder.readSmallInt();
+            return new Costs(executionTime, loadTime, skippedLoads);
+        }
+
+        @Override
+        public void write(Encoder encoder, Costs value) throws Exception {
+            encoder.writeLong(value.executionTime);
+            encoder.writeLong(value.loadTime);
+            encoder.writeSmallInt(value.skippedLoads);
+        }
+    }
+}
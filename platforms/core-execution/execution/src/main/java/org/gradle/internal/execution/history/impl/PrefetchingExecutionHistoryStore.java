@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.execution.history.AfterExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.gradle.internal.execution.history.PreviousExecutionState;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ExecutionHistoryStore} which loads the states passed to {@link #prefetch(List)} on a dedicated thread, ahead of the units of work asking for them.
+ *
+ * A unit of work whose state is being prefetched waits for the prefetch to complete instead of loading the state itself.
+ * Storing or removing the state of a unit of work discards its prefetched state, including a prefetch which is still loading the previous state.
+ * The prefetched state of a unit of work which completed without loading it, for example because it was skipped, is discarded via {@link #discardPrefetched(String)}.
+ * <p>
+ * At most {@value #MAX_PREFETCHED_STATES} prefetched states are kept in memory, and prefetching pauses until some of them have been used.
+ * When the limit is reached, states which have not been used for {@value #MAX_UNUSED_MILLIS} ms are discarded, oldest first,
+ * so that states which are never asked for do not stop prefetching.
+ */
+public class PrefetchingExecutionHistoryStore implements ExecutionHistoryStore, Closeable {
+    private static final int MAX_PREFETCHED_STATES = 500;
+    private static final long MAX_UNUSED_MILLIS = 10_000;
+
+    private final ExecutionHistoryStore delegate;
+    private final ManagedExecutor prefetcher;
+    private final int maxPrefetchedStates;
+    private final long maxUnusedNanos;
+    // Ordered by the time the states were prefetched, guarded by itself
+    private final Map<String, PrefetchedState> prefetchedStates = new LinkedHashMap<>();
+    private volatile List<String> keysToPrefetch = ImmutableList.of();
+    private volatile boolean closed;
+
+    public PrefetchingExecutionHistoryStore(ExecutionHistoryStore delegate, ExecutorFactory executorFactory) {
+        this(delegate, executorFactory, MAX_PREFETCHED_STATES, MAX_UNUSED_MILLIS);
+    }
+
+    @VisibleForTesting
+    PrefetchingExecutionHistoryStore(ExecutionHistoryStore delegate, ExecutorFactory executorFactory, int maxPrefetchedStates, long maxUnusedMillis) {
+        this.delegate = delegate;
+        this.prefetcher = executorFactory.create("Execution history prefetcher");
+        this.maxPrefetchedStates = maxPrefetchedStates;
+        this.maxUnusedNanos = TimeUnit.MILLISECONDS.toNanos(maxUnusedMillis);
+    }
+
+    @Override
+    public void prefetch(List<String> keys) {
+        ImmutableList<String> keysCopy = ImmutableList.copyOf(keys);
+        keysToPrefetch = keysCopy;
+        prefetcher.execute(() -> prefetchStates(keysCopy));
+    }
+
+    private void prefetchStates(List<String> keys) {
+        for (String key : keys) {
+            PrefetchedState prefetchedState;
+            synchronized (prefetchedStates) {
+                // Stop when a newer request has replaced this one
+                if (keysToPrefetch != keys || !awaitCapacity()) {
+                    return;
+                }
+                if (prefetchedStates.containsKey(key)) {
+                    continue;
+                }
+                prefetchedState = new PrefetchedState(System.nanoTime());
+                prefetchedStates.put(key, prefetchedState);
+            }
+            try {
+                prefetchedState.state.complete(delegate.load(key));
+            } catch (Throwable t) {
+                prefetchedState.state.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Waits until there is room for another prefetched state, discarding states which have not been used for too long.
+     * Must be called while holding the lock on {@link #prefetchedStates}.
+     */
+    private boolean awaitCapacity() {
+        while (!closed) {
+            if (prefetchedStates.size() < maxPrefetchedStates) {
+                return true;
+            }
+            long now = System.nanoTime();
+            Iterator<PrefetchedState> iterator = prefetchedStates.values().iterator();
+            long oldestPrefetchedAt = iterator.next().prefetchedAt;
+            if (now - oldestPrefetchedAt >= maxUnusedNanos) {
+                iterator.remove();
+                continue;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(prefetchedStates, maxUnusedNanos - (now - oldestPrefetchedAt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Optional<PreviousExecutionState> load(String key) {
+        PrefetchedState prefetchedState = discard(key);
+        if (prefetchedState != null) {
+            try {
+                return prefetchedState.state.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Load the state again, so that the failure is reported for the unit of work
+            }
+        }
+        return delegate.load(key);
+    }
+
+    @Override
+    public void store(String key, AfterExecutionState executionState) {
+        delegate.store(key, executionState);
+        // Discard after storing, as a prefetch which started before may have loaded the previous state
+        discard(key);
+    }
+
+    @Override
+    public void remove(String key) {
+        delegate.remove(key);
+        discard(key);
+    }
+
+    @Override
+    public void discardPrefetched(String key) {
+        discard(key);
+    }
+
+    @Nullable
+    private PrefetchedState discard(String key) {
+        synchronized (prefetchedStates) {
+            PrefetchedState prefetchedState = prefetchedStates.remove(key);
+            if (prefetchedState != null) {
+                prefetchedStates.notifyAll();
+            }
+            return prefetchedState;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (prefetchedStates) {
+            prefetchedStates.notifyAll();
+        }
+        prefetcher.stop();
+        synchronized (prefetchedStates) {
+            prefetchedStates.clear();
+        }
+    }
+
+    private static class PrefetchedState {
+        private final long prefetchedAt;
+        private final CompletableFuture<Optional<PreviousExecutionState>> state = new CompletableFuture<>();
+
+        PrefetchedState(long prefetchedAt) {
+            this.prefetchedAt = prefetchedAt;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.execution.history.AfterExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.gradle.internal.execution.history.PreviousExecutionState;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An {@link ExecutionHistoryStore} which hands updates over to a dedicated thread that writes them to the delegate store in batches.
+ *
+ * Storing the state of a unit of work only records the update in memory, so that the worker does not wait for the state to be converted for serialization,
+ * or for the cross-process lock of the execution history cache.
+ * Loading the state of a unit of work with a pending update returns the pending state, and several pending updates for the same unit of work are coalesced.
+ * The number of pending updates is bounded, and storing blocks when the writer falls behind.
+ * All pending updates are written when the store is closed at the end of the build.
+ */
+public class WriteBehindExecutionHistoryStore implements ExecutionHistoryStore, Closeable {
+    private static final int MAX_PENDING_UPDATES = 1000;
+    private static final int MAX_BATCH_SIZE = 100;
+    // Compared by identity
+    private static final String STOP = new String("stop");
+
+    private final ExecutionHistoryStore delegate;
+    private final ConcurrentMap<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(MAX_PENDING_UPDATES);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ManagedExecutor writer;
+    private volatile boolean closed;
+
+    public WriteBehindExecutionHistoryStore(ExecutionHistoryStore delegate, ExecutorFactory executorFactory) {
+        this.delegate = delegate;
+        this.writer = executorFactory.create("Execution history writer");
+        writer.execute(this::writePendingUpdates);
+    }
+
+    @Override
+    public Optional<PreviousExecutionState> load(String key) {
+        PendingUpdate pendingUpdate = pendingUpdates.get(key);
+        if (pendingUpdate != null) {
+            return pendingUpdate.state == null
+                ? Optional.empty()
+                : Optional.of(DefaultExecutionHistoryStore.toPreviousExecutionState(pendingUpdate.state));
+        }
+        return delegate.load(key);
+    }
+
+    @Override
+    public void store(String key, AfterExecutionState executionState) {
+        update(key, new PendingUpdate(executionState));
+    }
+
+    @Override
+    public void remove(String key) {
+        update(key, new PendingUpdate(null));
+    }
+
+    private void update(String key, PendingUpdate update) {
+        if (closed) {
+            update.applyTo(key, delegate);
+            return;
+        }
+        pendingUpdates.put(key, update);
+        try {
+            queue.put(key);
+        } catch (InterruptedException e) {
+            pendingUpdates.remove(key, update);
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private void writePendingUpdates() {
+        List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            for (String key : batch) {
+                if (key == STOP) {
+                    stopped = true;
+                } else {
+                    write(key);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(String key) {
+        // The latest update for the key is written, and later updates for the same key are queued again
+        PendingUpdate update = pendingUpdates.get(key);
+        if (update == null) {
+            return;
+        }
+        try {
+            update.applyTo(key, delegate);
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            pendingUpdates.remove(key, update);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            queue.put(STOP);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        writer.stop();
+        // Updates which raced with closing the store
+        for (String key : pendingUpdates.keySet()) {
+            write(key);
+        }
+        Throwable writeFailure = failure.getAndSet(null);
+        if (writeFailure != null) {
+            throw UncheckedException.throwAsUncheckedException(writeFailure);
+        }
+    }
+
+    private static class PendingUpdate {
+        @Nullable
+        private final AfterExecutionState state;
+
+        PendingUpdate(@Nullable AfterExecutionState state) {
+            this.state = state;
+        }
+
+        void applyTo(String key, ExecutionHistoryStore store) {
+            if (state == null) {
+                store.remove(key);
+            } else {
+                store.store(key, state);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.execution.steps;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.internal.controller.BuildCacheController;
@@ -24,8 +25,10 @@
 import org.gradle.internal.execution.caching.CachingDisabledReasonCategory;
 import org.gradle.internal.execution.caching.CachingState;
 import org.gradle.internal.execution.caching.CachingStateFactory;
+import org.gradle.internal.execution.caching.impl.DefaultBuildCacheKey;
 import org.gradle.internal.execution.caching.impl.DefaultCachingStateFactory;
 import org.gradle.internal.execution.history.BeforeExecutionState;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.execution.history.OverlappingOutputs;
 import org.gradle.internal.hash.HashCode;
 import org.slf4j.Logger;
@@ -42,15 +45,20 @@
     private static final CachingState BUILD_CACHE_DISABLED_STATE = CachingState.disabledWithoutInputs(BUILD_CACHE_DISABLED_REASON);
     private static final CachingDisabledReason VALIDATION_FAILED_REASON = new CachingDisabledReason(CachingDisabledReasonCategory.VALIDATION_FAILURE, "Caching has been disabled to ensure correctness. Please consult deprecation warnings for more details.");
     private static final CachingState VALIDATION_FAILED_STATE = CachingState.disabledWithoutInputs(VALIDATION_FAILED_REASON);
+    @VisibleForTesting
+    static final CachingDisabledReason CHEAPER_TO_REBUILD_REASON = new CachingDisabledReason(CachingDisabledReasonCategory.CHEAPER_TO_REBUILD, "Previous executions were faster than loading from the remote build cache");
 
     private final BuildCacheController buildCache;
+    private final BuildCacheCostHistory costHistory;
     private final boolean emitDebugLogging;
 
     public AbstractResolveCachingStateStep(
         BuildCacheController buildCache,
+        BuildCacheCostHistory costHistory,
         boolean emitDebugLogging
     ) {
         this.buildCache = buildCache;
+        this.costHistory = costHistory;
         this.emitDebugLogging = emitDebugLogging;
     }
 
@@ -64,7 +72,15 @@ public CachingResult execute(UnitOfWork work, C context) {
                 : calculateCachingStateWithNoCapturedInputs(work));
 
         cachingState.apply(
-            enabled -> logCacheKey(enabled.getCacheKeyCalculatedState().getKey(), work),
+            enabled -> {
+                BuildCacheKey cacheKey = enabled.getCacheKeyCalculatedState().getKey();
+                logCacheKey(cacheKey, work);
+                if (work.isAllowedToLoadFromCache()) {
+                    // Let the build cache check for the entry while the work is checked for being up-to-date.
+                    // This is the earliest point the key is known, so checks are only batched with other work resolving its caching state at the same time.
+                    buildCache.prefetchContains(cacheKey);
+                }
+            },
             disabled -> logDisabledReasons(disabled.getDisabledReasons(), work)
         );
 
@@ -90,8 +106,17 @@ private CachingState calculateCachingState(UnitOfWork work, C context, BeforeExe
             .orElse(null);
         work.shouldDisableCaching(detectedOverlappingOutputs)
             .ifPresent(cachingDisabledReasonsBuilder::add);
+        ImmutableList<CachingDisabledReason> cachingDisabledReasons = cachingDisabledReasonsBuilder.build();
+        if (cachingDisabledReasons.isEmpty()
+            && work.isAllowedToLoadFromCache()
+            && !buildCache.containsLocally(new DefaultBuildCacheKey(cacheKey))
+            && costHistory.isCheaperToRebuild(beforeExecutionState.getImplementation().getClassIdentifier())) {
+            // Entries in the local cache are always loaded, only the load from the remote cache is skipped.
+            // The result is still stored in the build cache, see BuildCacheStep
+            cachingDisabledReasons = ImmutableList.of(CHEAPER_TO_REBUILD_REASON);
+        }
 
-        return cachingStateFactory.createCachingState(beforeExecutionState, cacheKey, cachingDisabledReasonsBuilder.build());
+        return cachingStateFactory.createCachingState(beforeExecutionState, cacheKey, cachingDisabledReasons);
     }
 
     /**
@@ -28,11 +28,16 @@
 import org.gradle.internal.execution.MutableUnitOfWork;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.execution.UnitOfWork;
+import org.gradle.internal.execution.caching.CachingDisabledReasonCategory;
+import org.gradle.internal.execution.caching.CachingState;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.execution.history.ExecutionOutputState;
 import org.gradle.internal.execution.history.impl.DefaultExecutionOutputState;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.TreeType;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.time.Timer;
 import org.gradle.internal.vfs.FileSystemAccess;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +54,7 @@
     private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheStep.class);
 
     private final BuildCacheController buildCache;
+    private final BuildCacheCostHistory costHistory;
     private final Deleter deleter;
     private final FileSystemAccess fileSystemAccess;
     private final OutputChangeListener outputChangeListener;
@@ -56,12 +62,14 @@
 
     public BuildCacheStep(
         BuildCacheController buildCache,
+        BuildCacheCostHistory costHistory,
         Deleter deleter,
         FileSystemAccess fileSystemAccess,
         OutputChangeListener outputChangeListener,
         Step<? super C, ? extends AfterExecutionResult> delegate
     ) {
         this.buildCache = buildCache;
+        this.costHistory = costHistory;
         this.deleter = deleter;
         this.fileSystemAccess = fileSystemAccess;
         this.outputChangeListener = outputChangeListener;
@@ -71,13 +79,25 @@ public BuildCacheStep(
     @Override
     public AfterExecutionResult execute(UnitOfWork work, C context) {
         return context.getCachingState().fold(
-            cachingEnabled -> executeWithCache(work, context, cachingEnabled.getCacheKeyCalculatedState().getKey()),
-            cachingDisabled -> executeWithoutCache(work, context)
+            cachingEnabled -> executeWithCache(work, context, cachingEnabled.getCacheKeyCalculatedState()),
+            cachingDisabled -> cachingDisabled.getCacheKeyCalculatedState()
+                .filter(cacheKeyCalculatedState -> isOnlyCheaperToRebuild(cachingDisabled))
+                .map(cacheKeyCalculatedState -> executeAndStoreInCache(cacheableWork(work, context, cacheKeyCalculatedState), cacheKeyCalculatedState.getKey(), context))
+                .orElseGet(() -> executeWithoutCache(work, context))
         );
     }
 
-    private AfterExecutionResult executeWithCache(UnitOfWork work, C context, BuildCacheKey cacheKey) {
-        CacheableWork cacheableWork = new CacheableWork(context.getIdentity().getUniqueId(), context.getWorkspace(), work);
+    /**
+     * Work that is cheaper to rebuild than to load from the remote cache is not loaded, but its result is still stored in the cache.
+     */
+    private static boolean isOnlyCheaperToRebuild(CachingState.Disabled cachingDisabled) {
+        return cachingDisabled.getDisabledReasons().stream()
+            .allMatch(reason -> reason.getCategory() == CachingDisabledReasonCategory.CHEAPER_TO_REBUILD);
+    }
+
+    private AfterExecutionResult executeWithCache(UnitOfWork work, C context, CachingState.CacheKeyCalculatedState cacheKeyCalculatedState) {
+        BuildCacheKey cacheKey = cacheKeyCalculatedState.getKey();
+        CacheableWork cacheableWork = cacheableWork(work, context, cacheKeyCalculatedState);
         return Try.ofFailable(() -> work.isAllowedToLoadFromCache()
                 ? tryLoadingFromCache(cacheKey, cacheableWork)
                 : Optional.<BuildCacheLoadResult>empty()
@@ -114,13 +134,32 @@ private AfterExecutionResult executeWithCache(UnitOfWork work, C context, BuildC
             ));
     }
 
+    private static CacheableWork cacheableWork(UnitOfWork work, WorkspaceContext context, CachingState.CacheKeyCalculatedState cacheKeyCalculatedState) {
+        String workType = cacheKeyCalculatedState.getBeforeExecutionState().getImplementation().getClassIdentifier();
+        return new CacheableWork(context.getIdentity().getUniqueId(), context.getWorkspace(), work, workType);
+    }
+
+    /**
+     * Loads the result of the work from the local cache, and then from the remote cache.
+     * <p>
+     * Only loads from the remote cache are measured, as the history compares their duration with the execution time.
+     */
     private Optional<BuildCacheLoadResult> tryLoadingFromCache(BuildCacheKey cacheKey, CacheableWork cacheableWork) {
         if (cacheableWork.shouldInvalidateOutputsBeforeLoad()) {
             ImmutableList.Builder<String> roots = ImmutableList.builder();
             cacheableWork.visitOutputTrees((name, type, root) -> roots.add(root.getAbsolutePath()));
             fileSystemAccess.invalidate(roots.build());
         }
-        return buildCache.load(cacheKey, cacheableWork);
+        Optional<BuildCacheLoadResult> localResult = buildCache.loadLocally(cacheKey, cacheableWork);
+        if (localResult.isPresent()) {
+            return localResult;
+        }
+        Timer timer = Time.startTimer();
+        Optional<BuildCacheLoadResult> result = buildCache.loadRemotely(cacheKey, cacheableWork);
+        if (result.isPresent()) {
+            costHistory.recordLoad(cacheableWork.workType, Duration.ofMillis(timer.getElapsedMillis()));
+        }
+        return result;
     }
 
     private void cleanLocalState(File workspace, UnitOfWork work) {
@@ -162,7 +201,11 @@ private AfterExecutionResult executeAndStoreInCache(CacheableWork cacheableWork,
     private void storeInCacheUnlessDisabled(CacheableWork cacheableWork, BuildCacheKey cacheKey, AfterExecutionResult result, Execution executionResult) {
         if (executionResult.canStoreOutputsInCache()) {
             result.getAfterExecutionOutputState()
-                .ifPresent(afterExecutionState -> store(cacheableWork, cacheKey, afterExecutionState.getOutputFilesProducedByWork(), afterExecutionState.getOriginMetadata().getExecutionTime()));
+                .ifPresent(afterExecutionState -> {
+                    Duration executionTime = afterExecutionState.getOriginMetadata().getExecutionTime();
+                    costHistory.recordExecution(cacheableWork.workType, executionTime);
+                    store(cacheableWork, cacheKey, afterExecutionState.getOutputFilesProducedByWork(), executionTime);
+                });
         } else {
             LOGGER.debug("Not storing result of {} in cache because storing was disabled for this execution", cacheableWork.getDisplayName());
         }
@@ -193,11 +236,13 @@ private static class CacheableWork implements CacheableEntity {
         private final String identity;
         private final File workspace;
         private final UnitOfWork work;
+        private final String workType;
 
-        public CacheableWork(String identity, File workspace, UnitOfWork work) {
+        public CacheableWork(String identity, File workspace, UnitOfWork work, String workType) {
             this.identity = identity;
             this.workspace = workspace;
             this.work = work;
+            this.workType = workType;
         }
 
         @Override
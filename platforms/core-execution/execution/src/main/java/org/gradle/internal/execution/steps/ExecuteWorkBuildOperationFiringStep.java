@@ -196,6 +196,8 @@ private static org.gradle.operations.execution.CachingDisabledReasonCategory con
                     return org.gradle.operations.execution.CachingDisabledReasonCategory.OVERLAPPING_OUTPUTS;
                 case VALIDATION_FAILURE:
                     return org.gradle.operations.execution.CachingDisabledReasonCategory.VALIDATION_FAILURE;
+                case CHEAPER_TO_REBUILD:
+                    return org.gradle.operations.execution.CachingDisabledReasonCategory.CHEAPER_TO_REBUILD;
                 default:
                     throw new AssertionError();
             }
@@ -19,6 +19,7 @@
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.caching.CachingState;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.execution.history.PreviousExecutionState;
 import org.gradle.internal.hash.HashCode;
 
@@ -29,10 +30,11 @@
 
     public ResolveIncrementalCachingStateStep(
         BuildCacheController buildCache,
+        BuildCacheCostHistory costHistory,
         boolean emitDebugLogging,
         Step<? super IncrementalCachingContext, ? extends UpToDateResult> delegate
     ) {
-        super(buildCache, emitDebugLogging);
+        super(buildCache, costHistory, emitDebugLogging);
         this.delegate = delegate;
     }
 
@@ -20,6 +20,7 @@
 import org.gradle.caching.internal.controller.NoOpBuildCacheController;
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.caching.CachingState;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.hash.HashCode;
 
 import java.util.Optional;
@@ -29,15 +30,16 @@
 
     public ResolveNonIncrementalCachingStateStep(
         BuildCacheController buildCache,
+        BuildCacheCostHistory costHistory,
         boolean emitDebugLogging,
         Step<? super NonIncrementalCachingContext, ? extends UpToDateResult> delegate
     ) {
-        super(buildCache, emitDebugLogging);
+        super(buildCache, costHistory, emitDebugLogging);
         this.delegate = delegate;
     }
 
     public ResolveNonIncrementalCachingStateStep(Step<? super NonIncrementalCachingContext, ? extends UpToDateResult> delegate) {
-        this(NoOpBuildCacheController.INSTANCE, false, delegate);
+        this(NoOpBuildCacheController.INSTANCE, BuildCacheCostHistory.NONE, false, delegate);
     }
 
     @Override
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.execution.history.AfterExecutionState
+import org.gradle.internal.execution.history.ExecutionHistoryStore
+import org.gradle.internal.execution.history.PreviousExecutionState
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PrefetchingExecutionHistoryStoreTest extends Specification {
+    def executorFactory = new DefaultExecutorFactory()
+    def delegate = new CountingExecutionHistoryStore()
+    def store = new PrefetchingExecutionHistoryStore(delegate, executorFactory)
+
+    def cleanup() {
+        store.close()
+        executorFactory.stop()
+    }
+
+    def "uses prefetched state"() {
+        def state = Stub(PreviousExecutionState)
+        delegate.states["a"] = state
+
+        when:
+        store.prefetch(["a", "b"])
+        new PollingConditions().eventually {
+            assert delegate.loads == ["a", "b"]
+        }
+
+        then:
+        store.load("a").get() == state
+        !store.load("b").present
+        delegate.loads == ["a", "b"]
+    }
+
+    def "loads state again after it has been stored"() {
+        def state = Stub(PreviousExecutionState)
+        delegate.states["a"] = state
+
+        when:
+        store.prefetch(["a"])
+        new PollingConditions().eventually {
+            assert delegate.loads == ["a"]
+        }
+        store.store("a", Stub(AfterExecutionState))
+
+        then:
+        store.load("a").get() == state
+        delegate.loads == ["a", "a"]
+    }
+
+    def "does not use state prefetched while the state was stored"() {
+        def oldState = Stub(PreviousExecutionState)
+        def newState = Stub(PreviousExecutionState)
+        delegate.states["a"] = oldState
+        def stateRead = new CountDownLatch(1)
+        def stored = new CountDownLatch(1)
+        delegate.afterRead = {
+            stateRead.countDown()
+            stored.await(10, TimeUnit.SECONDS)
+        }
+
+        when:
+        store.prefetch(["a"])
+        stateRead.await(10, TimeUnit.SECONDS)
+        delegate.states["a"] = newState
+        store.store("a", Stub(AfterExecutionState))
+        stored.countDown()
+
+        then:
+        store.load("a").get() == newState
+    }
+
+    def "continues prefetching when prefetched states are not used"() {
+        store = new PrefetchingExecutionHistoryStore(delegate, executorFactory, 2, 50)
+
+        when:
+        store.prefetch(["a", "b", "c", "d"])
+
+        then:
+        new PollingConditions().eventually {
+            assert delegate.loads == ["a", "b", "c", "d"]
+        }
+    }
+
+    def "continues prefetching when work completes without using its prefetched state"() {
+        store = new PrefetchingExecutionHistoryStore(delegate, executorFactory, 2, TimeUnit.MINUTES.toMillis(10))
+
+        when:
+        store.prefetch(["a", "b", "c"])
+        new PollingConditions().eventually {
+            assert delegate.loads == ["a", "b"]
+        }
+        Thread.sleep(100)
+
+        then:
+        delegate.loads == ["a", "b"]
+
+        when:
+        store.discardPrefetched("a")
+
+        then:
+        new PollingConditions().eventually {
+            assert delegate.loads == ["a", "b", "c"]
+        }
+    }
+
+    def "loads state of work that was not prefetched"() {
+        when:
+        store.load("a")
+
+        then:
+        delegate.loads == ["a"]
+    }
+
+    private static class CountingExecutionHistoryStore implements ExecutionHistoryStore {
+        final Map<String, PreviousExecutionState> states = new ConcurrentHashMap<>()
+        final List<String> loads = [].asSynchronized()
+        Closure<?> afterRead = {}
+
+        @Override
+        Optional<PreviousExecutionState> load(String key) {
+            loads << key
+            def state = Optional.ofNullable(states[key])
+            afterRead()
+            state
+        }
+
+        @Override
+        void store(String key, AfterExecutionState executionState) {
+        }
+
+        @Override
+        void remove(String key) {
+        }
+    }
+}
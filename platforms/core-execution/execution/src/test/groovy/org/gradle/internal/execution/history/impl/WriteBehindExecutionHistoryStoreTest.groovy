@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.execution.history.AfterExecutionState
+import org.gradle.internal.execution.history.ExecutionHistoryStore
+import org.gradle.internal.execution.history.PreviousExecutionState
+import org.gradle.internal.hash.TestHashCodes
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+
+class WriteBehindExecutionHistoryStoreTest extends Specification {
+    def executorFactory = new DefaultExecutorFactory()
+    def delegate = new GatedExecutionHistoryStore()
+    def store = new WriteBehindExecutionHistoryStore(delegate, executorFactory)
+
+    def cleanup() {
+        delegate.gate.countDown()
+        store.close()
+        executorFactory.stop()
+    }
+
+    def "loads pending state before it has been written"() {
+        def state = afterExecutionState(1)
+
+        when:
+        store.store("key", state)
+
+        then:
+        store.load("key").get().cacheKey == state.cacheKey
+        delegate.stored.isEmpty()
+    }
+
+    def "loads removal before it has been written"() {
+        delegate.stored["key"] = Stub(PreviousExecutionState)
+
+        when:
+        store.remove("key")
+
+        then:
+        !store.load("key").present
+    }
+
+    def "writes latest pending state on close"() {
+        def state = afterExecutionState(2)
+
+        when:
+        store.store("key", afterExecutionState(1))
+        store.store("key", state)
+        store.store("other", afterExecutionState(3))
+        store.remove("other")
+        delegate.gate.countDown()
+        store.close()
+
+        then:
+        delegate.stored["key"].cacheKey == state.cacheKey
+        !delegate.stored.containsKey("other")
+        store.load("key").get().cacheKey == state.cacheKey
+    }
+
+    def "rethrows write failure on close"() {
+        def failure = new RuntimeException("broken")
+        delegate.failure = failure
+
+        when:
+        store.store("key", afterExecutionState(1))
+        delegate.gate.countDown()
+        store.close()
+
+        then:
+        def e = thrown(RuntimeException)
+        e == failure
+    }
+
+    private AfterExecutionState afterExecutionState(int cacheKey) {
+        Stub(AfterExecutionState) {
+            getCacheKey() >> TestHashCodes.hashCodeFrom(cacheKey)
+            getInputFileProperties() >> ImmutableSortedMap.of()
+        }
+    }
+
+    private static class GatedExecutionHistoryStore implements ExecutionHistoryStore {
+        final CountDownLatch gate = new CountDownLatch(1)
+        final Map<String, PreviousExecutionState> stored = new ConcurrentHashMap<>()
+        RuntimeException failure
+
+        @Override
+        Optional<PreviousExecutionState> load(String key) {
+            Optional.ofNullable(stored[key])
+        }
+
+        @Override
+        void store(String key, AfterExecutionState executionState) {
+            gate.await()
+            if (failure != null) {
+                throw failure
+            }
+            stored[key] = DefaultExecutionHistoryStore.toPreviousExecutionState(executionState)
+        }
+
+        @Override
+        void remove(String key) {
+            gate.await()
+            stored.remove(key)
+        }
+    }
+}
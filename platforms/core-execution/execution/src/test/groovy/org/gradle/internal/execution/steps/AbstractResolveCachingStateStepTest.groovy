@@ -23,15 +23,20 @@ import org.gradle.caching.internal.controller.BuildCacheController
 import org.gradle.internal.execution.caching.CachingDisabledReason
 import org.gradle.internal.execution.caching.CachingDisabledReasonCategory
 import org.gradle.internal.execution.history.BeforeExecutionState
+import org.gradle.internal.execution.history.BuildCacheCostHistory
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
 
 import java.time.Duration
 
 abstract class AbstractResolveCachingStateStepTest<C extends ValidationFinishedContext, S extends AbstractResolveCachingStateStep<C>> extends StepSpec<C> {
 
     def buildCache = Mock(BuildCacheController)
+    def costHistory = Mock(BuildCacheCostHistory)
     S step
     def delegateResult = Stub(UpToDateResult)
     def beforeExecutionState = Stub(BeforeExecutionState) {
+        implementation >> ImplementationSnapshot.of("MyWorkClass", TestHashCodes.hashCodeFrom(1234))
         inputFileProperties >> ImmutableSortedMap.of()
         inputProperties >> ImmutableSortedMap.of()
         outputFileLocationSnapshots >> ImmutableSortedMap.of()
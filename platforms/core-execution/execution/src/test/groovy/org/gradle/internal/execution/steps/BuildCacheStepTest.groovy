@@ -16,6 +16,7 @@
 
 package org.gradle.internal.execution.steps
 
+import com.google.common.collect.ImmutableList
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.internal.CacheableEntity
 import org.gradle.caching.internal.controller.BuildCacheController
@@ -29,8 +30,11 @@ import org.gradle.internal.execution.caching.CachingDisabledReasonCategory
 import org.gradle.internal.execution.caching.CachingState
 import org.gradle.internal.execution.history.AfterExecutionState
 import org.gradle.internal.execution.history.BeforeExecutionState
+import org.gradle.internal.execution.history.BuildCacheCostHistory
 import org.gradle.internal.execution.history.ExecutionOutputState
 import org.gradle.internal.file.Deleter
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
 import org.gradle.internal.vfs.FileSystemAccess
 
 import java.time.Duration
@@ -42,7 +46,8 @@ import static org.gradle.internal.execution.ExecutionEngine.ExecutionOutcome.FRO
 class BuildCacheStepTest extends StepSpec<TestCachingContext> implements SnapshotterFixture {
     def buildCacheController = Mock(BuildCacheController)
 
-    def beforeExecutionState = Stub(BeforeExecutionState)
+    def beforeExecutionState = Mock(BeforeExecutionState)
+    def implementation = ImplementationSnapshot.of("MyWorkClass", TestHashCodes.hashCodeFrom(1234))
 
     def cacheKeyHashCode = "30a042b90a"
     def cacheKey = Stub(BuildCacheKey) {
@@ -53,7 +58,7 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
     def fileSystemAccess = Mock(FileSystemAccess)
     def outputChangeListener = Mock(OutputChangeListener)
 
-    def step = new BuildCacheStep<TestCachingContext>(buildCacheController, deleter, fileSystemAccess, outputChangeListener, delegate)
+    def step = new BuildCacheStep<TestCachingContext>(buildCacheController, BuildCacheCostHistory.NONE, deleter, fileSystemAccess, outputChangeListener, delegate)
     def delegateResult = Mock(AfterExecutionResult)
 
     def "loads from cache"() {
@@ -75,7 +80,7 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
 
         then:
         _ * work.allowedToLoadFromCache >> true
-        1 * buildCacheController.load(cacheKey, _) >> Optional.of(loadMetadata)
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.of(loadMetadata)
 
         then:
         _ * work.visitOutputs(_ as File, _ as UnitOfWork.OutputVisitor) >> { File workspace, UnitOfWork.OutputVisitor visitor ->
@@ -108,7 +113,8 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
 
         then:
         _ * work.allowedToLoadFromCache >> true
-        1 * buildCacheController.load(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadRemotely(cacheKey, _) >> Optional.empty()
 
         then:
         1 * delegate.execute(work, context) >> delegateResult
@@ -137,7 +143,7 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
 
         then:
         _ * work.allowedToLoadFromCache >> true
-        1 * buildCacheController.load(cacheKey, _) >> { BuildCacheKey key, CacheableEntity entity ->
+        1 * buildCacheController.loadLocally(cacheKey, _) >> { BuildCacheKey key, CacheableEntity entity ->
             loadedOutputFile << "output"
             loadedOutputDir.mkdirs()
             loadedOutputDir.file("output.txt") << "output"
@@ -162,7 +168,8 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
 
         then:
         _ * work.allowedToLoadFromCache >> true
-        1 * buildCacheController.load(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadRemotely(cacheKey, _) >> Optional.empty()
 
         then:
         1 * delegate.execute(work, context) >> delegateResult
@@ -186,7 +193,8 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
 
         then:
         _ * work.allowedToLoadFromCache >> true
-        1 * buildCacheController.load(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadRemotely(cacheKey, _) >> Optional.empty()
 
         then:
         1 * delegate.execute(work, context) >> delegateResult
@@ -292,8 +300,93 @@ class BuildCacheStepTest extends StepSpec<TestCachingContext> implements Snapsho
         0 * _
     }
 
+    def "records load time of results loaded from remote cache"() {
+        given:
+        def costHistory = Mock(BuildCacheCostHistory)
+        def step = new BuildCacheStep<TestCachingContext>(buildCacheController, costHistory, deleter, fileSystemAccess, outputChangeListener, delegate)
+        def cachedOriginMetadata = Stub(OriginMetadata)
+        def outputsFromCache = snapshotsOf("test": [])
+
+        when:
+        def result = step.execute(work, context)
+
+        then:
+        result.execution.get().outcome == FROM_CACHE
+
+        interaction { withValidCacheKey() }
+
+        then:
+        _ * work.allowedToLoadFromCache >> true
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.empty()
+        1 * buildCacheController.loadRemotely(cacheKey, _) >> Optional.of(loadMetadata)
+        1 * costHistory.recordLoad("MyWorkClass", _ as Duration)
+
+        then:
+        _ * work.visitOutputs(_ as File, _ as UnitOfWork.OutputVisitor)
+        1 * loadMetadata.originMetadata >> cachedOriginMetadata
+        1 * loadMetadata.resultingSnapshots >> outputsFromCache
+        0 * _
+    }
+
+    def "does not record load time of results loaded from local cache"() {
+        given:
+        def costHistory = Mock(BuildCacheCostHistory)
+        def step = new BuildCacheStep<TestCachingContext>(buildCacheController, costHistory, deleter, fileSystemAccess, outputChangeListener, delegate)
+        def cachedOriginMetadata = Stub(OriginMetadata)
+        def outputsFromCache = snapshotsOf("test": [])
+
+        when:
+        def result = step.execute(work, context)
+
+        then:
+        result.execution.get().outcome == FROM_CACHE
+
+        interaction { withValidCacheKey() }
+
+        then:
+        _ * work.allowedToLoadFromCache >> true
+        1 * buildCacheController.loadLocally(cacheKey, _) >> Optional.of(loadMetadata)
+
+        then:
+        _ * work.visitOutputs(_ as File, _ as UnitOfWork.OutputVisitor)
+        1 * loadMetadata.originMetadata >> cachedOriginMetadata
+        1 * loadMetadata.resultingSnapshots >> outputsFromCache
+        0 * costHistory.recordLoad(_, _)
+        0 * _
+    }
+
+    def "does not load but stores when work is cheaper to rebuild"() {
+        given:
+        def costHistory = Mock(BuildCacheCostHistory)
+        def step = new BuildCacheStep<TestCachingContext>(buildCacheController, costHistory, deleter, fileSystemAccess, outputChangeListener, delegate)
+        def execution = Mock(Execution)
+        def cheaperToRebuild = new CachingDisabledReason(CachingDisabledReasonCategory.CHEAPER_TO_REBUILD, "Cheaper to rebuild")
+
+        when:
+        def result = step.execute(work, context)
+
+        then:
+        result == delegateResult
+
+        _ * context.cachingState >> CachingState.disabled(ImmutableList.of(cheaperToRebuild), cacheKey, beforeExecutionState)
+        _ * beforeExecutionState.implementation >> implementation
+        0 * buildCacheController.loadLocally(_, _)
+        0 * buildCacheController.loadRemotely(_, _)
+
+        then:
+        1 * delegate.execute(work, context) >> delegateResult
+        1 * delegateResult.execution >> Try.successful(execution)
+        1 * execution.canStoreOutputsInCache() >> true
+
+        then:
+        1 * costHistory.recordExecution("MyWorkClass", Duration.ofMillis(123L))
+        interaction { outputStored {} }
+        0 * _
+    }
+
     private void withValidCacheKey() {
         _ * context.cachingState >> CachingState.enabled(cacheKey, beforeExecutionState)
+        _ * beforeExecutionState.implementation >> implementation
     }
 
     private void outputStored(Closure storeResult) {
@@ -17,11 +17,12 @@
 package org.gradle.internal.execution.steps
 
 import com.google.common.collect.ImmutableList
+import org.gradle.internal.execution.caching.CachingDisabledReasonCategory
 
 class ResolveNonIncrementalCachingStateStepTest extends AbstractResolveCachingStateStepTest<ValidationFinishedContext, ResolveNonIncrementalCachingStateStep<ValidationFinishedContext>> {
     @Override
     ResolveNonIncrementalCachingStateStep<ValidationFinishedContext> createStep() {
-        return new ResolveNonIncrementalCachingStateStep<>(buildCache, false, delegate)
+        return new ResolveNonIncrementalCachingStateStep<>(buildCache, costHistory, false, delegate)
     }
 
     def "calculates cache key when execution state is available"() {
@@ -43,4 +44,46 @@ class ResolveNonIncrementalCachingStateStepTest extends AbstractResolveCachingSt
         where:
         buildCacheEnabled << [true, false]
     }
+
+    def "disables loading from remote cache when work is cheaper to rebuild"() {
+        delegateResult.executionReasons >> ImmutableList.of()
+        delegateResult.reusedOutputOriginMetadata >> Optional.empty()
+        delegateResult.afterExecutionOutputState >> Optional.empty()
+
+        when:
+        step.execute(work, context)
+        then:
+        _ * buildCache.enabled >> true
+        _ * context.beforeExecutionState >> Optional.of(beforeExecutionState)
+        _ * context.validationProblems >> ImmutableList.of()
+        _ * work.shouldDisableCaching(null) >> Optional.empty()
+        _ * work.allowedToLoadFromCache >> true
+        1 * buildCache.containsLocally(_) >> false
+        1 * costHistory.isCheaperToRebuild("MyWorkClass") >> true
+        0 * buildCache.prefetchContains(_)
+        1 * delegate.execute(work, { CachingContext context ->
+            context.cachingState.whenDisabled().map { it.disabledReasons*.category }.get() == [CachingDisabledReasonCategory.CHEAPER_TO_REBUILD]
+            context.cachingState.cacheKeyCalculatedState.isPresent()
+        }) >> delegateResult
+    }
+
+    def "keeps caching enabled when work cheaper to rebuild is in the local cache"() {
+        delegateResult.executionReasons >> ImmutableList.of()
+        delegateResult.reusedOutputOriginMetadata >> Optional.empty()
+        delegateResult.afterExecutionOutputState >> Optional.empty()
+
+        when:
+        step.execute(work, context)
+        then:
+        _ * buildCache.enabled >> true
+        _ * context.beforeExecutionState >> Optional.of(beforeExecutionState)
+        _ * context.validationProblems >> ImmutableList.of()
+        _ * work.shouldDisableCaching(null) >> Optional.empty()
+        _ * work.allowedToLoadFromCache >> true
+        1 * buildCache.containsLocally(_) >> true
+        0 * costHistory.isCheaperToRebuild(_)
+        1 * delegate.execute(work, { CachingContext context ->
+            context.cachingState.whenEnabled().isPresent()
+        }) >> delegateResult
+    }
 }
@@ -17,6 +17,7 @@
 package org.gradle.internal.execution;
 
 import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.execution.history.OverlappingOutputDetector;
 import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetector;
 import org.gradle.internal.execution.impl.DefaultExecutionEngine;
@@ -73,7 +74,7 @@ public static ExecutionEngine createExecutionEngine(
             new CaptureIncrementalStateBeforeExecutionStep<>(buildOperationRunner, classloaderHierarchyHasher, outputSnapshotter, overlappingOutputDetector,
             new ValidateStep<>(virtualFileSystem, validationWarningReporter,
             new ResolveChangesStep<>(changeDetector,
-            new ResolveIncrementalCachingStateStep<>(buildCacheController, false,
+            new ResolveIncrementalCachingStateStep<>(buildCacheController, BuildCacheCostHistory.NONE, false,
             new SkipUpToDateStep<>(
             new StoreExecutionStateStep<>(
             new ResolveInputChangesStep<>(
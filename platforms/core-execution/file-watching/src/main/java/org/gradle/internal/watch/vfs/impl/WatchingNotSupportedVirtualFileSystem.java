@@ -41,7 +41,11 @@ public class WatchingNotSupportedVirtualFileSystem extends AbstractVirtualFileSy
     private static final Logger LOGGER = LoggerFactory.getLogger(WatchingNotSupportedVirtualFileSystem.class);
 
     public WatchingNotSupportedVirtualFileSystem(SnapshotHierarchy root) {
-        super(root);
+        this(root, false);
+    }
+
+    public WatchingNotSupportedVirtualFileSystem(SnapshotHierarchy root, boolean lockFreeStores) {
+        super(root, lockFreeStores);
     }
 
     @Override
@@ -49,6 +53,11 @@ protected SnapshotHierarchy updateNotifyingListeners(UpdateFunction updateFuncti
         return updateFunction.update(SnapshotHierarchy.NodeDiffListener.NOOP);
     }
 
+    @Override
+    protected boolean hasUpdateSideEffects() {
+        return false;
+    }
+
     @Override
     public boolean afterBuildStarted(
         WatchMode watchMode,
@@ -72,7 +72,7 @@ public class WatchingVirtualFileSystem extends AbstractVirtualFileSystem impleme
      */
     private final Set<File> watchableHierarchiesRegisteredEarly = new LinkedHashSet<>();
 
-    private FileWatcherRegistry watchRegistry;
+    private volatile FileWatcherRegistry watchRegistry;
     private Exception reasonForNotWatchingFiles;
     private boolean stateInvalidatedAtStartOfBuild;
 
@@ -84,7 +84,19 @@ public WatchingVirtualFileSystem(
         WatchableFileSystemDetector watchableFileSystemDetector,
         FileChangeListeners fileChangeListeners
     ) {
-        super(root);
+        this(watcherRegistryFactory, root, fileSystemWatchingDocumentationIndex, locationsWrittenByCurrentBuild, watchableFileSystemDetector, fileChangeListeners, false);
+    }
+
+    public WatchingVirtualFileSystem(
+        FileWatcherRegistryFactory watcherRegistryFactory,
+        SnapshotHierarchy root,
+        FileSystemWatchingDocumentationIndex fileSystemWatchingDocumentationIndex,
+        FileWatchingFilter locationsWrittenByCurrentBuild,
+        WatchableFileSystemDetector watchableFileSystemDetector,
+        FileChangeListeners fileChangeListeners,
+        boolean lockFreeStores
+    ) {
+        super(root, lockFreeStores);
         this.watcherRegistryFactory = watcherRegistryFactory;
         this.fileSystemWatchingDocumentationIndex = fileSystemWatchingDocumentationIndex;
         this.locationsWrittenByCurrentBuild = locationsWrittenByCurrentBuild;
@@ -105,6 +117,11 @@ protected SnapshotHierarchy updateNotifyingListeners(UpdateFunction updateFuncti
         }
     }
 
+    @Override
+    protected boolean hasUpdateSideEffects() {
+        return watchRegistry != null;
+    }
+
     @Override
     public boolean afterBuildStarted(
         WatchMode watchMode,
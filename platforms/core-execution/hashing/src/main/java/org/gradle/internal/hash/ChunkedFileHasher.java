@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import org.gradle.api.UncheckedIOException;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link FileHasher} that hashes large files as a sequence of fixed-size chunks, optionally in parallel.
+ *
+ * <p>The resulting hash is a tree hash: the hash of the file length followed by the hashes of all the chunks in order.
+ * It is therefore <em>not</em> the same as the hash produced by the streaming {@link DefaultFileHasher} for the same content.
+ * The chunk size and threshold are fixed, and the hash does not depend on whether the chunks are hashed in parallel,
+ * so the same content always gets the same hash, on every machine.
+ * Files not larger than a chunk are hashed by the delegate, so small files keep their streaming hash.
+ * {@link ChunkedStreamHasher} produces the same hashes for content that is not read from a file.</p>
+ *
+ * <p>Chunks are read with positional reads from a single channel, which is closed once the file is hashed,
+ * so hashing does not leave the file mapped or locked.</p>
+ */
+public class ChunkedFileHasher implements FileHasher {
+    public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    static final HashCode SIGNATURE = Hashing.signature(ChunkedFileHasher.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final FileHasher smallFileHasher;
+    private final HashFunction hashFunction;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    /**
+     * Creates a hasher that hashes the chunks of large files with the given executor, or sequentially when no executor is given.
+     */
+    public ChunkedFileHasher(FileHasher smallFileHasher, HashFunction hashFunction, @Nullable ExecutorService executor) {
+        this(smallFileHasher, hashFunction, executor, CHUNK_SIZE);
+    }
+
+    ChunkedFileHasher(FileHasher smallFileHasher, HashFunction hashFunction, @Nullable ExecutorService executor, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.smallFileHasher = smallFileHasher;
+        this.hashFunction = hashFunction;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public HashCode hash(File file) {
+        return hash(file, file.length());
+    }
+
+    @Override
+    public HashCode hash(File file, long length, long lastModified) {
+        return hash(file, length);
+    }
+
+    private HashCode hash(File file, long length) {
+        if (length <= chunkSize) {
+            return smallFileHasher.hash(file);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= chunkSize) {
+                // The file shrank since it was stat-ed
+                return smallFileHasher.hash(file);
+            }
+            return hashChunks(channel, size);
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s' as it does not exist.", hashFunction.getAlgorithm(), file), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s'", hashFunction.getAlgorithm(), file), e);
+        }
+    }
+
+    private HashCode hashChunks(FileChannel channel, long size) throws IOException {
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        hasher.putHash(SIGNATURE);
+        hasher.putLong(size);
+        if (executor == null) {
+            for (long offset = 0; offset < size; offset += chunkSize) {
+                hasher.putHash(hashChunk(channel, offset, Math.min(chunkSize, size - offset)));
+            }
+            return hasher.hash();
+        }
+
+        List<Future<HashCode>> chunkHashes = new ArrayList<>((int) (size / chunkSize) + 1);
+        try {
+            for (long offset = 0; offset < size; offset += chunkSize) {
+                long chunkOffset = offset;
+                long chunkLength = Math.min(chunkSize, size - offset);
+                chunkHashes.add(executor.submit(() -> hashChunk(channel, chunkOffset, chunkLength)));
+            }
+            for (Future<HashCode> chunkHash : chunkHashes) {
+                hasher.putHash(chunkHash.get());
+            }
+            return hasher.hash();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing file chunks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<HashCode> chunkHash : chunkHashes) {
+                chunkHash.cancel(false);
+            }
+        }
+    }
+
+    private HashCode hashChunk(FileChannel channel, long offset, long length) throws IOException {
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        byte[] buffer = new byte[(int) Math.min(READ_BUFFER_SIZE, length)];
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            int read = channel.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position)), position);
+            if (read < 0) {
+                throw new EOFException("File was truncated while being hashed");
+            }
+            hasher.putBytes(buffer, 0, read);
+            position += read;
+        }
+        return hasher.hash();
+    }
+}
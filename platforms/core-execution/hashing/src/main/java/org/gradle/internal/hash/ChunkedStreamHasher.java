@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link StreamHasher} that produces the same hash for some content as {@link ChunkedFileHasher} does for a file with that content.
+ *
+ * <p>Used to hash file content that is not read from the file itself, like the files unpacked from a build cache entry,
+ * so that their hashes match the hashes of the files when they are snapshotted.
+ * Content not larger than a chunk gets the hash of the delegate.</p>
+ */
+public class ChunkedStreamHasher implements StreamHasher {
+    private final StreamHasher smallContentHasher;
+    private final HashFunction hashFunction;
+    private final int chunkSize;
+
+    public ChunkedStreamHasher(StreamHasher smallContentHasher, HashFunction hashFunction) {
+        this(smallContentHasher, hashFunction, ChunkedFileHasher.CHUNK_SIZE);
+    }
+
+    ChunkedStreamHasher(StreamHasher smallContentHasher, HashFunction hashFunction, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.smallContentHasher = smallContentHasher;
+        this.hashFunction = hashFunction;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public HashCode hash(InputStream inputStream) throws IOException {
+        return hashCopy(inputStream, ByteStreams.nullOutputStream());
+    }
+
+    @Override
+    public HashCode hashCopy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        // The length is only known at the end, so both hashes are computed while the content is read
+        ChunkHashingInputStream chunks = new ChunkHashingInputStream(inputStream);
+        HashCode contentHash = smallContentHasher.hashCopy(chunks, outputStream);
+        return chunks.length <= chunkSize ? contentHash : chunks.hash();
+    }
+
+    private class ChunkHashingInputStream extends FilterInputStream {
+        private final List<HashCode> chunkHashes = new ArrayList<>();
+        private PrimitiveHasher chunkHasher = hashFunction.newPrimitiveHasher();
+        private int chunkLength;
+        private long length;
+
+        ChunkHashingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                completeChunkIfFull();
+                chunkHasher.putByte((byte) value);
+                chunkLength++;
+                length++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            int read = super.read(bytes, offset, count);
+            int position = offset;
+            int remaining = read;
+            while (remaining > 0) {
+                completeChunkIfFull();
+                int hashed = Math.min(remaining, chunkSize - chunkLength);
+                chunkHasher.putBytes(bytes, position, hashed);
+                chunkLength += hashed;
+                length += hashed;
+                position += hashed;
+                remaining -= hashed;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes must be hashed as well
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(count, 0))];
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        private void completeChunkIfFull() {
+            if (chunkLength == chunkSize) {
+                chunkHashes.add(chunkHasher.hash());
+                chunkHasher = hashFunction.newPrimitiveHasher();
+                chunkLength = 0;
+            }
+        }
+
+        HashCode hash() {
+            PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+            hasher.putHash(ChunkedFileHasher.SIGNATURE);
+            hasher.putLong(length);
+            for (HashCode chunkHash : chunkHashes) {
+                hasher.putHash(chunkHash);
+            }
+            if (chunkLength > 0) {
+                hasher.putHash(chunkHasher.hash());
+            }
+            return hasher.hash();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import org.gradle.api.UncheckedIOException
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+class ChunkedFileHasherTest extends Specification {
+    @TempDir
+    File tmpDir
+
+    ExecutorService executor = Executors.newFixedThreadPool(4)
+    ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor()
+    def streamingHasher = new DefaultFileHasher(new DefaultStreamHasher())
+
+    def cleanup() {
+        executor.shutdownNow()
+        singleThreadExecutor.shutdownNow()
+    }
+
+    def "uses streaming hash for files not larger than a chunk"() {
+        def file = file("small.bin", 100)
+        def hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 100)
+
+        expect:
+        hasher.hash(file) == streamingHasher.hash(file)
+    }
+
+    def "uses chunked hash for files larger than a chunk"() {
+        def file = file("large.bin", 1000)
+        def hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64)
+
+        expect:
+        hasher.hash(file) != streamingHasher.hash(file)
+        hasher.hash(file) == hasher.hash(file, 1000, file.lastModified())
+    }
+
+    def "chunked hash does not depend on parallelism"() {
+        def file = file("large.bin", 1000)
+
+        expect:
+        new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), null, 64).hash(file) == new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64).hash(file)
+    }
+
+    def "does not keep the file open after hashing"() {
+        def file = file("large.bin", 1000)
+        new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64).hash(file)
+
+        expect:
+        file.delete()
+    }
+
+    def "chunked hash is stable and sensitive to content"() {
+        def file = file("large.bin", 1000)
+        def hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64)
+        def original = hasher.hash(file)
+
+        when:
+        def bytes = file.bytes
+        bytes[999] = (byte) (bytes[999] + 1)
+        file.bytes = bytes
+
+        then:
+        hasher.hash(file) != original
+        new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), singleThreadExecutor, 64).hash(file) == hasher.hash(file)
+    }
+
+    def "chunked hash depends on chunk size"() {
+        def file = file("large.bin", 1000)
+
+        expect:
+        new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64).hash(file) != new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 128).hash(file)
+    }
+
+    def "reports missing file"() {
+        def hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor, 64)
+        def missing = new File(tmpDir, "missing.bin")
+
+        when:
+        hasher.hash(missing, 1000, 0)
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.message.contains("as it does not exist")
+    }
+
+    private File file(String name, int length) {
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def file = new File(tmpDir, name)
+        file.bytes = bytes
+        return file
+    }
+}
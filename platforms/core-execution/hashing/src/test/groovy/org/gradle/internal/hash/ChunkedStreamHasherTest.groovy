@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class ChunkedStreamHasherTest extends Specification {
+    @TempDir
+    File tmpDir
+
+    def streamHasher = new DefaultStreamHasher()
+    def fileHasher = new ChunkedFileHasher(new DefaultFileHasher(streamHasher), Hashing.defaultFunction(), null, 64)
+    def hasher = new ChunkedStreamHasher(streamHasher, Hashing.defaultFunction(), 64)
+
+    def "hashes content like the file hasher hashes a file with the same content"() {
+        def file = file("content.bin", length)
+
+        expect:
+        hasher.hash(new ByteArrayInputStream(file.bytes)) == fileHasher.hash(file)
+
+        where:
+        length << [0, 1, 63, 64, 65, 128, 1000]
+    }
+
+    def "copies the content while hashing"() {
+        def file = file("content.bin", 1000)
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def hash = hasher.hashCopy(new ByteArrayInputStream(file.bytes), output)
+
+        then:
+        output.toByteArray() == file.bytes
+        hash == fileHasher.hash(file)
+    }
+
+    def "hash does not depend on how the content is read"() {
+        def file = file("content.bin", 1000)
+        def oneByteAtATime = new FilterInputStream(new ByteArrayInputStream(file.bytes)) {
+            @Override
+            int read(byte[] bytes, int offset, int count) {
+                return super.read(bytes, offset, Math.min(count, 1))
+            }
+        }
+
+        expect:
+        hasher.hash(oneByteAtATime) == fileHasher.hash(file)
+    }
+
+    private File file(String name, int length) {
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def file = new File(tmpDir, name)
+        file.bytes = bytes
+        return file
+    }
+}
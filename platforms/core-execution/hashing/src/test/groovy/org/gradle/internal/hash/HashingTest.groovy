@@ -109,6 +109,37 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 hashes differ from md5 hashes'() {
+        expect:
+        Hashing.murmur3().hashString("abc") != Hashing.md5().hashString("abc")
+        Hashing.murmur3().hashString("abc") == Hashing.murmur3().hashString("abc")
+        Hashing.murmur3().hashString("abc").toString().length() == Hashing.murmur3().hexDigits
+    }
+
+    def 'murmur3 hasher cannot be reused'() {
+        given:
+        def hasher = Hashing.murmur3().newHasher()
+        hasher.putInt(1)
+        hasher.hash()
+
+        when:
+        hasher.hash()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'can look up hash function by algorithm'() {
+        expect:
+        Hashing.forAlgorithm(algorithm) == function
+
+        where:
+        algorithm     | function
+        "MD5"         | Hashing.md5()
+        "sha-256"     | Hashing.sha256()
+        "MURMUR3-128" | Hashing.murmur3()
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares read and write throughput of the B-tree and the log-structured indexed cache storage,
+ * and reports the size on disk per live entry after each iteration as the {@code bytesOnDiskPerEntry} secondary metric,
+ * as a measure of the space amplification of the storage.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class IndexedCacheStorageBenchmark {
+
+    @Param({"btree", "log-structured"})
+    String storage;
+
+    @Param({"100000"})
+    int entries;
+
+    File cacheDir;
+    PersistentIndexedStore<String, String> cache;
+    Random random;
+    private double bytesOnDiskPerEntry = -1;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("indexed-cache-storage-benchmark").toFile();
+        cache = storage.equals("log-structured")
+            ? new LogStructuredPersistentIndexedCache<>(new File(cacheDir, "cache.idx"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER)
+            : new BTreePersistentIndexedCache<>(new File(cacheDir, "cache.bin"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+        for (int i = 0; i < entries; i++) {
+            cache.put(key(i), value(i, 0));
+        }
+        random = new Random(1234L);
+        bytesOnDiskPerEntry = -1;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        bytesOnDiskPerEntry();
+        FileUtils.forceDelete(cacheDir);
+    }
+
+    /**
+     * The size on disk per entry once the cache is closed, reported as a secondary metric.
+     */
+    public double bytesOnDiskPerEntry() {
+        // Counters may be read before or after the iteration is torn down, so the cache is closed by whichever comes first
+        if (bytesOnDiskPerEntry < 0) {
+            cache.close();
+            bytesOnDiskPerEntry = (double) FileUtils.sizeOfDirectory(cacheDir) / entries;
+        }
+        return bytesOnDiskPerEntry;
+    }
+
+    @Benchmark
+    public String read() {
+        return cache.get(key(random.nextInt(entries)));
+    }
+
+    @Benchmark
+    public void write() {
+        int index = random.nextInt(entries);
+        // Values of varying size, so that the B-tree cannot always update a value in place
+        cache.put(key(index), value(index, random.nextInt(8)));
+    }
+
+    private static String key(int index) {
+        return "/some/project/src/main/java/org/example/File" + index + ".java";
+    }
+
+    private static String value(int index, int variant) {
+        StringBuilder builder = new StringBuilder("hash-of-file-").append(index);
+        for (int i = 0; i < variant; i++) {
+            builder.append("-more-content");
+        }
+        return builder.toString();
+    }
+}
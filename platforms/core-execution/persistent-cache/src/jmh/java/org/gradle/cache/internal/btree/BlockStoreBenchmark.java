@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares read and write throughput of {@link BTreePersistentIndexedCache} backed by {@link FileBackedBlockStore} and {@link MemoryMappedBlockStore}.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BlockStoreBenchmark {
+
+    @Param({"file", "mapped"})
+    String store;
+
+    @Param({"100000"})
+    int entries;
+
+    File cacheDir;
+    BTreePersistentIndexedCache<String, Long> cache;
+    Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("block-store-benchmark").toFile();
+        File cacheFile = new File(cacheDir, "cache.bin");
+        BlockStore blockStore = store.equals("mapped") ? new MemoryMappedBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        cache = new BTreePersistentIndexedCache<>(cacheFile, blockStore, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.LONG_SERIALIZER);
+        for (int i = 0; i < entries; i++) {
+            cache.put(key(i), (long) i);
+        }
+        random = new Random(1234L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        FileUtils.forceDelete(cacheDir);
+    }
+
+    @Benchmark
+    public Long read() {
+        return cache.get(key(random.nextInt(entries)));
+    }
+
+    @Benchmark
+    public void write() {
+        int index = random.nextInt(entries);
+        cache.put(key(index), (long) index + 1);
+    }
+
+    private static String key(int index) {
+        return "/some/project/src/main/java/org/example/File" + index + ".java";
+    }
+}
@@ -27,24 +27,46 @@
     private final Serializer<K> keySerializer;
     private final Serializer<V> valueSerializer;
     private final CacheDecorator cacheDecorator;
+    private final StorageType storageType;
+
+    /**
+     * How the entries of an indexed cache are stored on disk.
+     */
+    public enum StorageType {
+        /**
+         * A B-tree, accessed with a read or write system call per block.
+         */
+        BTREE,
+        /**
+         * A B-tree in the same file format as {@link #BTREE}, accessed via memory-mapped segments of the file.
+         * Falls back to {@link #BTREE} when the JVM does not support unmapping files.
+         */
+        MEMORY_MAPPED_BTREE,
+        /**
+         * An append-only log of segment files with an in-memory hash index, which is saved to an index file when the cache is closed.
+         * Trades disk space for fewer and sequential writes, and is not compatible with the file format of the B-tree storage types.
+         */
+        LOG_STRUCTURED
+    }
 
     public static <K, V> IndexedCacheParameters<K, V> of(String cacheName, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new IndexedCacheParameters<K, V>(cacheName, keySerializer, valueSerializer, null);
+        return new IndexedCacheParameters<K, V>(cacheName, keySerializer, valueSerializer, null, StorageType.BTREE);
     }
 
     public static <K, V> IndexedCacheParameters<K, V> of(String cacheName, Class<K> keyType, Serializer<V> valueSerializer) {
-        return new IndexedCacheParameters<K, V>(cacheName, SERIALIZER_FACTORY.getSerializerFor(keyType), valueSerializer, null);
+        return new IndexedCacheParameters<K, V>(cacheName, SERIALIZER_FACTORY.getSerializerFor(keyType), valueSerializer, null, StorageType.BTREE);
     }
 
     public static <K, V> IndexedCacheParameters<K, V> of(String cacheName, Class<K> keyType, Class<V> valueType) {
-        return new IndexedCacheParameters<K, V>(cacheName, SERIALIZER_FACTORY.getSerializerFor(keyType), SERIALIZER_FACTORY.getSerializerFor(valueType), null);
+        return new IndexedCacheParameters<K, V>(cacheName, SERIALIZER_FACTORY.getSerializerFor(keyType), SERIALIZER_FACTORY.getSerializerFor(valueType), null, StorageType.BTREE);
     }
 
-    private IndexedCacheParameters(String cacheName, Serializer<K> keySerializer, Serializer<V> valueSerializer, @Nullable CacheDecorator cacheDecorator) {
+    private IndexedCacheParameters(String cacheName, Serializer<K> keySerializer, Serializer<V> valueSerializer, @Nullable CacheDecorator cacheDecorator, StorageType storageType) {
         this.cacheName = cacheName;
         this.keySerializer = keySerializer;
         this.valueSerializer = valueSerializer;
         this.cacheDecorator = cacheDecorator;
+        this.storageType = storageType;
     }
 
     public String getCacheName() {
@@ -64,7 +86,15 @@ public CacheDecorator getCacheDecorator() {
         return cacheDecorator;
     }
 
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
     public IndexedCacheParameters<K, V> withCacheDecorator(CacheDecorator cacheDecorator) {
-        return new IndexedCacheParameters<K, V>(cacheName, keySerializer, valueSerializer, cacheDecorator);
+        return new IndexedCacheParameters<K, V>(cacheName, keySerializer, valueSerializer, cacheDecorator, storageType);
+    }
+
+    public IndexedCacheParameters<K, V> withStorageType(StorageType storageType) {
+        return new IndexedCacheParameters<K, V>(cacheName, keySerializer, valueSerializer, cacheDecorator, storageType);
     }
 }
@@ -31,7 +31,9 @@
 import org.gradle.cache.LockTimeoutException;
 import org.gradle.cache.MultiProcessSafeIndexedCache;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.btree.MemoryMappedBlockStore;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
 import org.gradle.internal.Cast;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.ExecutorFactory;
@@ -311,7 +313,7 @@ public <K, V> MultiProcessSafeIndexedCache<K, V> newCache(final IndexedCachePara
             if (entry == null) {
                 File cacheFile = findCacheFile(parameters);
                 LOG.debug("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Supplier<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                Supplier<PersistentIndexedStore<K, V>> indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getStorageType(), parameters.getKeySerializer(), parameters.getValueSerializer());
 
                 MultiProcessSafeIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafeIndexedCache<>(indexedCacheFactory, fileAccess);
                 CacheDecorator decorator = parameters.getCacheDecorator();
@@ -338,6 +340,9 @@ public <K, V> MultiProcessSafeIndexedCache<K, V> newCache(final IndexedCachePara
     }
 
     private <K, V> File findCacheFile(IndexedCacheParameters<K, V> parameters) {
+        if (parameters.getStorageType() == IndexedCacheParameters.StorageType.LOG_STRUCTURED) {
+            return new File(baseDir, parameters.getCacheName() + ".idx");
+        }
         return new File(baseDir, parameters.getCacheName() + ".bin");
     }
 
@@ -346,8 +351,19 @@ public <K, V> boolean cacheExists(IndexedCacheParameters<K, V> parameters) {
         return findCacheFile(parameters).exists();
     }
 
-    <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new BTreePersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer);
+    <K, V> PersistentIndexedStore<K, V> doCreateCache(File cacheFile, IndexedCacheParameters.StorageType storageType, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        switch (storageType) {
+            case MEMORY_MAPPED_BTREE:
+                if (MemoryMappedBlockStore.isSupported()) {
+                    return new BTreePersistentIndexedCache<>(cacheFile, new MemoryMappedBlockStore(cacheFile), keySerializer, valueSerializer);
+                }
+                return new BTreePersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer);
+            case LOG_STRUCTURED:
+                return new LogStructuredPersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer);
+            case BTREE:
+            default:
+                return new BTreePersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer);
+        }
     }
 
     /**
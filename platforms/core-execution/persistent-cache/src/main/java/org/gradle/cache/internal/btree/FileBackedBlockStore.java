@@ -24,14 +24,11 @@
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
-public class FileBackedBlockStore implements BlockStore {
+public class FileBackedBlockStore extends AbstractBlockStore {
     private final File cacheFile;
     private RandomAccessFile file;
     private ByteOutput output;
     private ByteInput input;
-    private long nextBlock;
-    private Factory factory;
-    private long currentFileSize;
 
     public FileBackedBlockStore(File cacheFile) {
         this.cacheFile = cacheFile;
@@ -44,14 +41,13 @@ public String toString() {
 
     @Override
     public void open(Runnable runnable, Factory factory) {
-        this.factory = factory;
         try {
             cacheFile.getParentFile().mkdirs();
             file = openRandomAccessFile();
             output = new ByteOutput(file);
             input = new ByteInput(file);
-            currentFileSize = file.length();
-            nextBlock = currentFileSize;
+            long currentFileSize = file.length();
+            opened(factory, currentFileSize);
             if (currentFileSize == 0) {
                 runnable.run();
             }
@@ -85,188 +81,44 @@ public void close() {
     public void clear() {
         try {
             file.setLength(0);
-            currentFileSize = 0;
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        nextBlock = 0;
+        reset(0);
     }
 
     @Override
-    public void attach(BlockPayload block) {
-        if (block.getBlock() == null) {
-            block.setBlock(new BlockImpl(block));
-        }
+    protected DataOutputStream startWrite(long pos) throws IOException {
+        return output.start(pos);
     }
 
     @Override
-    public void remove(BlockPayload block) {
-        BlockImpl blockImpl = (BlockImpl) block.getBlock();
-        blockImpl.detach();
+    protected long getBytesWritten() {
+        return output.getBytesWritten();
     }
 
     @Override
-    public void flush() {
+    protected void finishWrite() throws IOException {
+        output.done();
     }
 
     @Override
-    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
-        return read(BlockPointer.pos(0), payloadType);
+    protected void grow(long fileSize) throws IOException {
+        file.setLength(fileSize);
     }
 
     @Override
-    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
-        assert !pos.isNull();
-        try {
-            T payload = payloadType.cast(factory.create(payloadType));
-            BlockImpl block = new BlockImpl(payload, pos);
-            block.read();
-            return payload;
-        } catch (CorruptedCacheException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new UncheckedIOException(e);
-        }
+    protected DataInputStream startRead(long pos) throws IOException {
+        return input.start(pos);
     }
 
     @Override
-    public void write(BlockPayload block) {
-        BlockImpl blockImpl = (BlockImpl) block.getBlock();
-        try {
-            blockImpl.write();
-        } catch (CorruptedCacheException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new UncheckedIOException(e);
-        }
+    protected long getBytesRead() {
+        return input.getBytesRead();
     }
 
-    private long alloc(long length) {
-        long pos = nextBlock;
-        nextBlock += length;
-        return pos;
-    }
-
-    private final class BlockImpl extends Block {
-        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
-        private static final int TAIL_SIZE = INT_SIZE;
-
-        private BlockPointer pos;
-        private int payloadSize;
-
-        private BlockImpl(BlockPayload payload, BlockPointer pos) {
-            this(payload);
-            setPos(pos);
-        }
-
-        public BlockImpl(BlockPayload payload) {
-            super(payload);
-            pos = null;
-            payloadSize = -1;
-        }
-
-        @Override
-        public boolean hasPos() {
-            return pos != null;
-        }
-
-        @Override
-        public BlockPointer getPos() {
-            if (pos == null) {
-                pos = BlockPointer.pos(alloc(getSize()));
-            }
-            return pos;
-        }
-
-        @Override
-        public void setPos(BlockPointer pos) {
-            assert this.pos == null && !pos.isNull();
-            this.pos = pos;
-        }
-
-        @Override
-        public int getSize() {
-            if (payloadSize < 0) {
-                payloadSize = getPayload().getSize();
-            }
-            return payloadSize + HEADER_SIZE + TAIL_SIZE;
-        }
-
-        @Override
-        public void setSize(int size) {
-            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
-            assert newPayloadSize >= payloadSize;
-            payloadSize = newPayloadSize;
-        }
-
-        public void write() throws Exception {
-            long pos = getPos().getPos();
-
-            DataOutputStream outputStream = output.start(pos);
-
-            BlockPayload payload = getPayload();
-
-            // Write header
-            outputStream.writeByte(payload.getType());
-            outputStream.writeInt(payloadSize);
-            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
-
-            // Write body
-            payload.write(outputStream);
-
-            // Write count
-            long bytesWritten = output.getBytesWritten();
-            if (bytesWritten > Integer.MAX_VALUE) {
-                throw new IllegalArgumentException("Block payload exceeds maximum size");
-            }
-            outputStream.writeInt((int) bytesWritten);
-            output.done();
-
-            // Pad
-            if (currentFileSize < finalSize) {
-                file.setLength(finalSize);
-                currentFileSize = finalSize;
-            }
-        }
-
-        public void read() throws Exception {
-            long pos = getPos().getPos();
-            assert pos >= 0;
-            if (pos + HEADER_SIZE >= currentFileSize) {
-                throw blockCorruptedException();
-            }
-
-            DataInputStream inputStream = input.start(pos);
-
-            BlockPayload payload = getPayload();
-
-            // Read header
-            byte type = inputStream.readByte();
-            if (type != payload.getType()) {
-                throw blockCorruptedException();
-            }
-
-            // Read body
-            payloadSize = inputStream.readInt();
-            if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > currentFileSize) {
-                throw blockCorruptedException();
-            }
-            payload.read(inputStream);
-
-            // Read and verify count
-            long actualCount = input.getBytesRead();
-            long count = inputStream.readInt();
-            if (actualCount != count) {
-                throw blockCorruptedException();
-            }
-            input.done();
-        }
-
-        @Override
-        public RuntimeException blockCorruptedException() {
-            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
-                    FileBackedBlockStore.this));
-        }
+    @Override
+    protected void finishRead() {
+        input.done();
     }
-
 }
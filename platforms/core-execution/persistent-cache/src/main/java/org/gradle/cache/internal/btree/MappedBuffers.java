@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import static org.gradle.internal.UncheckedException.throwAsUncheckedException;
+
+/**
+ * Releases the mapping of a memory-mapped buffer right away, instead of when the buffer is garbage collected.
+ *
+ * A file cannot be truncated on Windows while a part of it is mapped.
+ * A buffer must not be accessed anymore once it has been unmapped, as this would crash the JVM.
+ */
+final class MappedBuffers {
+    @Nullable
+    private static final Unmapper UNMAPPER = createUnmapper();
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Whether mapped buffers can be unmapped on this JVM.
+     */
+    static boolean canUnmap() {
+        return UNMAPPER != null;
+    }
+
+    static void unmap(ByteBuffer buffer) {
+        if (UNMAPPER == null) {
+            throw new UnsupportedOperationException("Unmapping buffers is not supported on this JVM.");
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+        } catch (Exception e) {
+            throw throwAsUncheckedException(e);
+        }
+    }
+
+    @Nullable
+    private static Unmapper createUnmapper() {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (Exception e) {
+            // Try the Java 8 way
+        }
+        try {
+            Method cleanerMethod = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            };
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private interface Unmapper {
+        void unmap(ByteBuffer buffer) throws Exception;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BlockStore} which memory-maps the backing file in fixed-size segments.
+ *
+ * Blocks are read and written directly from and to the mapped segments, so there is no system call per block access,
+ * and caching of the file content is left to the OS page cache.
+ * The file is grown one segment at a time. When the store is closed, the segments are unmapped and the file is truncated to the actually used length.
+ * This keeps the file format the same as the one of {@link FileBackedBlockStore}, so both stores can be used for the same file.
+ * <p>
+ * Unmapping relies on JVM internals, so the store can only be used when {@link #isSupported()} returns {@code true}.
+ */
+public class MemoryMappedBlockStore extends AbstractBlockStore {
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private final File cacheFile;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private FileChannel channel;
+    private boolean readOnly;
+    private MappedOutputStream output;
+    private MappedInputStream input;
+
+    public MemoryMappedBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MemoryMappedBlockStore(File cacheFile, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+        }
+        this.cacheFile = cacheFile;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Whether memory-mapped stores can be used on this JVM.
+     */
+    public static boolean isSupported() {
+        return MappedBuffers.canUnmap();
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        try {
+            cacheFile.getParentFile().mkdirs();
+            channel = openChannel();
+            long currentFileSize = channel.size();
+            opened(factory, currentFileSize);
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        try {
+            readOnly = false;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (AccessDeniedException e) {
+            readOnly = true;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            try {
+                unmapSegments();
+                if (!readOnly) {
+                    // Remove the padding of the last segment
+                    channel.truncate(getCurrentFileSize());
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        unmapSegments();
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        reset(0);
+    }
+
+    private void unmapSegments() {
+        output = null;
+        input = null;
+        for (MappedByteBuffer segment : segments) {
+            MappedBuffers.unmap(segment);
+        }
+        segments.clear();
+    }
+
+    @Override
+    protected DataOutputStream startWrite(long pos) throws IOException {
+        if (readOnly) {
+            throw new IOException(String.format("Cannot write to read-only %s.", this));
+        }
+        output = new MappedOutputStream(pos);
+        return new DataOutputStream(output);
+    }
+
+    @Override
+    protected long getBytesWritten() {
+        return output.bytesWritten;
+    }
+
+    @Override
+    protected void finishWrite() {
+        output = null;
+    }
+
+    @Override
+    protected DataInputStream startRead(long pos) {
+        input = new MappedInputStream(pos);
+        return new DataInputStream(input);
+    }
+
+    @Override
+    protected long getBytesRead() {
+        return input.bytesRead;
+    }
+
+    @Override
+    protected void finishRead() {
+        input = null;
+    }
+
+    private ByteBuffer segmentAt(long pos) throws IOException {
+        int index = (int) (pos / segmentSize);
+        while (segments.size() <= index) {
+            long start = (long) segments.size() * segmentSize;
+            if (readOnly) {
+                long size = Math.min(segmentSize, channel.size() - start);
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, size));
+            } else {
+                // Mapping beyond the end of the file grows the file
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+            }
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Reads from the mapped segments, starting at a given position.
+     */
+    private class MappedInputStream extends InputStream {
+        private long pos;
+        private long bytesRead;
+
+        MappedInputStream(long pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos >= getCurrentFileSize()) {
+                return -1;
+            }
+            byte value = segmentAt(pos).get((int) (pos % segmentSize));
+            pos++;
+            bytesRead++;
+            return value & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (pos >= getCurrentFileSize()) {
+                return -1;
+            }
+            int segmentOffset = (int) (pos % segmentSize);
+            int count = (int) Math.min(Math.min(length, segmentSize - segmentOffset), getCurrentFileSize() - pos);
+            ByteBuffer view = segmentAt(pos).duplicate();
+            view.position(segmentOffset);
+            view.get(bytes, offset, count);
+            pos += count;
+            bytesRead += count;
+            return count;
+        }
+    }
+
+    /**
+     * Writes to the mapped segments, starting at a given position.
+     */
+    private class MappedOutputStream extends OutputStream {
+        private long pos;
+        private long bytesWritten;
+
+        MappedOutputStream(long pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            segmentAt(pos).put((int) (pos % segmentSize), (byte) value);
+            pos++;
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int segmentOffset = (int) (pos % segmentSize);
+                int count = Math.min(length, segmentSize - segmentOffset);
+                ByteBuffer view = segmentAt(pos).duplicate();
+                view.position(segmentOffset);
+                view.put(bytes, offset, count);
+                pos += count;
+                bytesWritten += count;
+                offset += count;
+                length -= count;
+            }
+        }
+    }
+}
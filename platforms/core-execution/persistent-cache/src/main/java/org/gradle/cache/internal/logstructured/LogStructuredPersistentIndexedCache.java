@@ -0,0 +1,603 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.internal.PersistentIndexedStore;
+import org.gradle.cache.internal.btree.KeyHasher;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An indexed cache which appends every update to a log of segment files, and keeps the location of the latest record for each key in an in-memory hash index.
+ *
+ * Each write is a single sequential append, regardless of the number of entries in the cache, and each read is a single positional read.
+ * The index is saved to the index file so that it does not need to be rebuilt by scanning the segments when the cache is opened again.
+ * Records appended after the index has been saved are recovered by scanning the segments from where the index ends.
+ * This also covers records appended by a process which did not close the cache.
+ * So the index is only saved on close when more bytes were appended since it was last saved than it takes to write the index.
+ * Closing a cache which was only read does not write anything.
+ *
+ * Overwritten and removed records stay in the segments until the cache is compacted, which copies the live records to new segments and deletes the old ones.
+ * Compaction happens when the cache is closed and the proportion of garbage in the segments exceeds a threshold.
+ *
+ * Like {@link org.gradle.cache.internal.btree.BTreePersistentIndexedCache}, keys are identified by a 64 bit hash of their serialized form.
+ */
+public class LogStructuredPersistentIndexedCache<K, V> implements PersistentIndexedStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredPersistentIndexedCache.class);
+
+    private static final int INDEX_MAGIC = 0x4c534331;
+    private static final int INDEX_VERSION = 1;
+    private static final int TOMBSTONE = -1;
+    // key hash, value length
+    private static final int RECORD_HEADER_SIZE = 8 + 4;
+    // checksum
+    private static final int RECORD_TAIL_SIZE = 4;
+    // key hash, segment, offset, length
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 8 + 4;
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final File indexFile;
+    private final Pattern segmentFileNamePattern;
+    private final KeyHasher<K> keyHasher;
+    private final Serializer<V> serializer;
+    private final long maxSegmentSize;
+    private final long minCompactionSize;
+    private final Map<Long, RecordLocation> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private long liveBytes;
+    private boolean indexFileValid;
+    private long unindexedBytes;
+    private boolean open;
+
+    public LogStructuredPersistentIndexedCache(File indexFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(indexFile, keySerializer, valueSerializer, DEFAULT_MAX_SEGMENT_SIZE, MIN_COMPACTION_SIZE);
+    }
+
+    public LogStructuredPersistentIndexedCache(File indexFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, long maxSegmentSize, long minCompactionSize) {
+        this.indexFile = indexFile;
+        this.segmentFileNamePattern = Pattern.compile(Pattern.quote(indexFile.getName()) + "\\.(\\d+)\\.log");
+        this.keyHasher = new KeyHasher<>(keySerializer);
+        this.serializer = valueSerializer;
+        this.maxSegmentSize = maxSegmentSize;
+        this.minCompactionSize = minCompactionSize;
+        try {
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException("Could not open " + this + ".", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + indexFile.getName() + " (" + indexFile + ")";
+    }
+
+    private void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        indexFile.getParentFile().mkdirs();
+        Map<Integer, File> segmentFiles = findSegmentFiles();
+        int replayFromSegment = 0;
+        long replayFromOffset = 0;
+        indexFileValid = false;
+        unindexedBytes = 0;
+        if (indexFile.isFile()) {
+            try {
+                IndexPosition position = loadIndex(segmentFiles);
+                replayFromSegment = position.segment;
+                replayFromOffset = position.offset;
+                indexFileValid = true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.info("Index of {} is invalid. Rebuilding it from the segments.", this, e);
+                closeSegments();
+                index.clear();
+                replayFromSegment = 0;
+                replayFromOffset = 0;
+            }
+        }
+        for (Map.Entry<Integer, File> entry : segmentFiles.entrySet()) {
+            int id = entry.getKey();
+            if (id < replayFromSegment) {
+                if (!segments.containsKey(id)) {
+                    // Left over from an interrupted compaction
+                    Files.deleteIfExists(entry.getValue().toPath());
+                }
+                continue;
+            }
+            Segment segment = segments.get(id);
+            if (segment == null) {
+                segment = openSegment(id);
+            }
+            unindexedBytes += replay(segment, id == replayFromSegment ? replayFromOffset : 0);
+        }
+        activeSegment = segments.isEmpty() ? openSegment(0) : segments.lastEntry().getValue();
+        liveBytes = 0;
+        for (RecordLocation location : index.values()) {
+            liveBytes += location.length;
+        }
+        open = true;
+    }
+
+    private Map<Integer, File> findSegmentFiles() {
+        TreeMap<Integer, File> segmentFiles = new TreeMap<>();
+        File[] files = indexFile.getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = segmentFileNamePattern.matcher(file.getName());
+                if (matcher.matches()) {
+                    segmentFiles.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+        return segmentFiles;
+    }
+
+    private IndexPosition loadIndex(Map<Integer, File> segmentFiles) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != INDEX_MAGIC || input.readInt() != INDEX_VERSION) {
+                throw new IOException("Unexpected index file header.");
+            }
+            int segmentCount = input.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                int id = input.readInt();
+                long size = input.readLong();
+                if (!segmentFiles.containsKey(id)) {
+                    throw new IOException("Missing segment " + id + ".");
+                }
+                Segment segment = openSegment(id);
+                if (segment.size < size) {
+                    throw new IOException("Segment " + id + " is shorter than expected.");
+                }
+            }
+            int activeSegmentId = input.readInt();
+            long activeSegmentEnd = input.readLong();
+            int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                long keyHash = input.readLong();
+                Segment segment = segments.get(input.readInt());
+                if (segment == null) {
+                    throw new IOException("Entry refers to an unknown segment.");
+                }
+                index.put(keyHash, new RecordLocation(segment, input.readLong(), input.readInt()));
+            }
+            return new IndexPosition(activeSegmentId, activeSegmentEnd);
+        }
+    }
+
+    /**
+     * Applies the records of the segment from the given offset to the index, and truncates a partially written record at the end of the segment.
+     *
+     * @return the number of bytes of the applied records
+     */
+    private long replay(Segment segment, long fromOffset) throws IOException {
+        if (fromOffset >= segment.size) {
+            return 0;
+        }
+        long offset = fromOffset;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file.toPath())))) {
+            skipFully(input, offset);
+            while (offset < segment.size) {
+                long keyHash;
+                int valueLength;
+                byte[] value;
+                try {
+                    keyHash = input.readLong();
+                    valueLength = input.readInt();
+                    if (valueLength < TOMBSTONE || offset + recordLength(valueLength) > segment.size) {
+                        break;
+                    }
+                    value = new byte[Math.max(valueLength, 0)];
+                    input.readFully(value);
+                    if (input.readInt() != checksum(keyHash, valueLength, value)) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                int length = recordLength(valueLength);
+                if (valueLength == TOMBSTONE) {
+                    index.remove(keyHash);
+                } else {
+                    index.put(keyHash, new RecordLocation(segment, offset, length));
+                }
+                offset += length;
+            }
+        }
+        if (offset < segment.size) {
+            LOGGER.info("Discarding incomplete record at offset {} of segment {} of {}.", offset, segment.id, this);
+            segment.channel.truncate(offset);
+            segment.size = offset;
+        }
+        return offset - fromOffset;
+    }
+
+    private static void skipFully(DataInputStream input, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    @Nullable
+    @Override
+    public V get(K key) {
+        try {
+            long keyHash = keyHasher.getHashCode(key);
+            RecordLocation location = index.get(keyHash);
+            if (location == null) {
+                return null;
+            }
+            byte[] value = readValue(keyHash, location);
+            if (value == null) {
+                LOGGER.warn("Entry '{}' of {} is corrupt. Discarding.", key, this);
+                index.remove(keyHash);
+                liveBytes -= location.length;
+                return null;
+            }
+            return serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(value)));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Nullable
+    private byte[] readValue(long keyHash, RecordLocation location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        readFully(location.segment.channel, buffer, location.offset);
+        buffer.flip();
+        if (buffer.getLong() != keyHash) {
+            return null;
+        }
+        int valueLength = buffer.getInt();
+        if (valueLength < 0 || recordLength(valueLength) != location.length) {
+            return null;
+        }
+        byte[] value = new byte[valueLength];
+        buffer.get(value);
+        if (buffer.getInt() != checksum(keyHash, valueLength, value)) {
+            return null;
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        try {
+            long keyHash = keyHasher.getHashCode(key);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+            serializer.write(encoder, value);
+            encoder.flush();
+            byte[] serializedValue = bytes.toByteArray();
+            RecordLocation location = append(keyHash, serializedValue.length, serializedValue);
+            RecordLocation previous = index.put(keyHash, location);
+            liveBytes += location.length;
+            discard(previous);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        try {
+            long keyHash = keyHasher.getHashCode(key);
+            RecordLocation previous = index.remove(keyHash);
+            if (previous == null) {
+                return;
+            }
+            append(keyHash, TOMBSTONE, new byte[0]);
+            discard(previous);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    private void discard(@Nullable RecordLocation previous) {
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+    }
+
+    private RecordLocation append(long keyHash, int valueLength, byte[] value) throws IOException {
+        int length = recordLength(valueLength);
+        if (activeSegment.size > 0 && activeSegment.size + length > maxSegmentSize) {
+            activeSegment = openSegment(activeSegment.id + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putLong(keyHash);
+        buffer.putInt(valueLength);
+        buffer.put(value);
+        buffer.putInt(checksum(keyHash, valueLength, value));
+        buffer.flip();
+        long offset = activeSegment.size;
+        while (buffer.hasRemaining()) {
+            activeSegment.channel.write(buffer, offset + buffer.position());
+        }
+        activeSegment.size += length;
+        unindexedBytes += length;
+        return new RecordLocation(activeSegment, offset, length);
+    }
+
+    /**
+     * Copies the live records to new segments, and deletes the old segments.
+     */
+    public void compact() {
+        try {
+            doCompact();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not compact %s.", this), e);
+        }
+    }
+
+    private void doCompact() throws IOException {
+        LOGGER.debug("Compacting {}", this);
+        List<Segment> oldSegments = new ArrayList<>(segments.values());
+        segments.clear();
+        activeSegment = openSegment(activeSegment.id + 1);
+        for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+            RecordLocation location = entry.getValue();
+            ByteBuffer record = ByteBuffer.allocate(location.length);
+            readFully(location.segment.channel, record, location.offset);
+            record.flip();
+            if (activeSegment.size > 0 && activeSegment.size + location.length > maxSegmentSize) {
+                activeSegment = openSegment(activeSegment.id + 1);
+            }
+            long offset = activeSegment.size;
+            while (record.hasRemaining()) {
+                activeSegment.channel.write(record, offset + record.position());
+            }
+            activeSegment.size += location.length;
+            entry.setValue(new RecordLocation(activeSegment, offset, location.length));
+        }
+        for (Segment segment : segments.values()) {
+            segment.channel.force(false);
+        }
+        // Save the index before deleting the old segments, so that the index never refers to a deleted segment.
+        // Old segments left behind when this process dies in between are deleted when the cache is opened again.
+        writeIndex();
+        for (Segment segment : oldSegments) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file.toPath());
+        }
+    }
+
+    private boolean shouldCompact() {
+        long totalBytes = getDiskSize();
+        return totalBytes >= minCompactionSize && totalBytes - liveBytes > liveBytes;
+    }
+
+    /**
+     * Whether to save the index, which is the case when replaying the records appended since the index was saved would read more than writing the index.
+     */
+    private boolean shouldSaveIndex() {
+        return !indexFileValid || unindexedBytes > (long) index.size() * INDEX_ENTRY_SIZE;
+    }
+
+    private void writeIndex() throws IOException {
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(segments.size());
+            for (Segment segment : segments.values()) {
+                output.writeInt(segment.id);
+                output.writeLong(segment.size);
+            }
+            output.writeInt(activeSegment.id);
+            output.writeLong(activeSegment.size);
+            output.writeInt(index.size());
+            for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+                RecordLocation location = entry.getValue();
+                output.writeLong(entry.getKey());
+                output.writeInt(location.segment.id);
+                output.writeLong(location.offset);
+                output.writeInt(location.length);
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexFileValid = true;
+        unindexedBytes = 0;
+    }
+
+    public void reset() {
+        close();
+        try {
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Closing {}", this);
+        if (!open) {
+            return;
+        }
+        try {
+            if (shouldCompact()) {
+                doCompact();
+            } else if (shouldSaveIndex()) {
+                writeIndex();
+            }
+        } catch (Exception e) {
+            // The index is rebuilt from the segments on next open
+            LOGGER.warn("Could not save the index of {}.", this, e);
+        } finally {
+            open = false;
+            closeSegments();
+            index.clear();
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Returns the total size of the segments, including overwritten and removed records.
+     */
+    public long getDiskSize() {
+        long totalBytes = 0;
+        for (Segment segment : segments.values()) {
+            totalBytes += segment.size;
+        }
+        return totalBytes;
+    }
+
+    public void verify() {
+        try {
+            for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+                if (readValue(entry.getKey(), entry.getValue()) == null) {
+                    throw new IOException(String.format("Corrupt record at offset %s of segment %s.", entry.getValue().offset, entry.getValue().segment.id));
+                }
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Some problems were found when checking the integrity of %s.", this), e);
+        }
+    }
+
+    public void clear() {
+        open = false;
+        closeSegments();
+        index.clear();
+        try {
+            for (File file : findSegmentFiles().values()) {
+                Files.deleteIfExists(file.toPath());
+            }
+            Files.deleteIfExists(indexFile.toPath());
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close segment {} of {}.", segment.id, this, e);
+            }
+        }
+        segments.clear();
+        activeSegment = null;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        File file = new File(indexFile.getParentFile(), indexFile.getName() + "." + id + ".log");
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, file, channel, channel.size());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static int recordLength(int valueLength) {
+        return RECORD_HEADER_SIZE + Math.max(valueLength, 0) + RECORD_TAIL_SIZE;
+    }
+
+    private static int checksum(long keyHash, int valueLength, byte[] value) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putLong(keyHash);
+        header.putInt(valueLength);
+        crc.update(header.array());
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private static class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        long size;
+
+        Segment(int id, File file, FileChannel channel, long size) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private static class RecordLocation {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        RecordLocation(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class IndexPosition {
+        final int segment;
+        final long offset;
+
+        IndexPosition(int segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
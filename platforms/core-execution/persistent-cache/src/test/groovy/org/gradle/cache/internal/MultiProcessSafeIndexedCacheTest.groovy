@@ -16,16 +16,15 @@
 package org.gradle.cache.internal
 
 import org.gradle.cache.FileAccess
-import org.gradle.cache.internal.btree.BTreePersistentIndexedCache
 import spock.lang.Specification
 
 import java.util.function.Supplier
 
 class MultiProcessSafeIndexedCacheTest extends Specification {
     final FileAccess fileAccess = Mock()
-    final Supplier<BTreePersistentIndexedCache<String, String>> factory = Mock()
+    final Supplier<PersistentIndexedStore<String, String>> factory = Mock()
     final cache = new DefaultMultiProcessSafeIndexedCache<String, String>(factory, fileAccess)
-    final BTreePersistentIndexedCache<String, String> backingCache = Mock()
+    final PersistentIndexedStore<String, String> backingCache = Mock()
 
     def "opens cache on first access"() {
         when:
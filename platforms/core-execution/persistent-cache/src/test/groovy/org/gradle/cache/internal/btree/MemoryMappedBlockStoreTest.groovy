@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.internal.serialize.DefaultSerializer
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MemoryMappedBlockStoreTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def cacheFile = tmpDir.file("cache.bin")
+    def keySerializer = new DefaultSerializer<String>()
+    def valueSerializer = new DefaultSerializer<String>()
+
+    def "persists entries across segments"() {
+        def values = (1..500).collectEntries { ["key_$it".toString(), "value_$it".toString() * (it % 7 + 1)] }
+
+        when:
+        def cache = mappedCache()
+        values.each { key, value -> cache.put(key, value) }
+        cache.verify()
+        cache.close()
+        cache = mappedCache()
+
+        then:
+        values.every { key, value -> cache.get(key) == value }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "truncates padding on close so that the file can be read by the file backed store"() {
+        def referenceFile = tmpDir.file("reference.bin")
+        def referenceCache = new BTreePersistentIndexedCache<String, String>(referenceFile, keySerializer, valueSerializer, (short) 4, 100)
+        def cache = mappedCache()
+        [cache, referenceCache].each { c ->
+            (1..100).each { c.put("key_$it".toString(), "value_$it".toString()) }
+            c.remove("key_50")
+            c.close()
+        }
+
+        when:
+        def fileBackedCache = new BTreePersistentIndexedCache<String, String>(cacheFile, keySerializer, valueSerializer, (short) 4, 100)
+
+        then:
+        cacheFile.length() == referenceFile.length()
+        fileBackedCache.get("key_1") == "value_1"
+        fileBackedCache.get("key_100") == "value_100"
+        fileBackedCache.get("key_50") == null
+        fileBackedCache.verify()
+
+        cleanup:
+        fileBackedCache?.close()
+    }
+
+    def "file does not grow when the cache is opened and closed repeatedly"() {
+        def cache = mappedCache()
+        (1..100).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+        def length = cacheFile.length()
+
+        when:
+        3.times {
+            cache = mappedCache()
+            cache.get("key_1")
+            cache.close()
+        }
+
+        then:
+        cacheFile.length() == length
+    }
+
+    def "reads entries written by the file backed store"() {
+        def fileBackedCache = new BTreePersistentIndexedCache<String, String>(cacheFile, keySerializer, valueSerializer, (short) 4, 100)
+        (1..100).each { fileBackedCache.put("key_$it".toString(), "value_$it".toString()) }
+        fileBackedCache.close()
+
+        when:
+        def cache = mappedCache()
+
+        then:
+        (1..100).every { cache.get("key_$it".toString()) == "value_$it".toString() }
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "rebuilds corrupt cache file"() {
+        cacheFile.text = "some junk"
+
+        when:
+        def cache = mappedCache()
+        cache.put("key_1", "value_1")
+
+        then:
+        cache.get("key_1") == "value_1"
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    private BTreePersistentIndexedCache<String, String> mappedCache() {
+        // Use small segments so that blocks span segment boundaries
+        new BTreePersistentIndexedCache<String, String>(cacheFile, new MemoryMappedBlockStore(cacheFile, 1024), keySerializer, valueSerializer, (short) 4, 100)
+    }
+}
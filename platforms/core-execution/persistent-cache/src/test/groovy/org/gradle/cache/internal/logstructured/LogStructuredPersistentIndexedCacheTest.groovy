@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.internal.serialize.DefaultSerializer
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class LogStructuredPersistentIndexedCacheTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def indexFile = tmpDir.file("cache.idx")
+    def keySerializer = new DefaultSerializer<String>()
+    def valueSerializer = new DefaultSerializer<String>()
+    LogStructuredPersistentIndexedCache<String, String> cache
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "persists entries across segments"() {
+        def values = (1..500).collectEntries { ["key_$it".toString(), "value_$it".toString() * (it % 7 + 1)] }
+
+        when:
+        cache = createCache()
+        values.each { key, value -> cache.put(key, value) }
+        cache.remove("key_10")
+        cache.verify()
+        cache.close()
+        cache = createCache()
+
+        then:
+        tmpDir.testDirectory.listFiles().count { it.name.endsWith(".log") } > 1
+        values.findAll { key, value -> key != "key_10" }.every { key, value -> cache.get(key) == value }
+        cache.get("key_10") == null
+        cache.verify()
+    }
+
+    def "compacts overwritten entries on close"() {
+        cache = createCache()
+        (1..10).each { round ->
+            (1..200).each { cache.put("key_$it".toString(), "value_${it}_$round".toString()) }
+        }
+        def sizeBeforeClose = cache.diskSize
+
+        when:
+        cache.close()
+        cache = createCache()
+
+        then:
+        cache.diskSize < sizeBeforeClose / 5
+        (1..200).every { cache.get("key_$it".toString()) == "value_${it}_10".toString() }
+        cache.verify()
+    }
+
+    def "recovers entries written after the index was saved"() {
+        cache = createCache()
+        cache.put("key_1", "value_1")
+        cache.put("key_2", "value_2")
+        cache.close()
+        cache = createCache()
+        cache.put("key_1", "value_1_new")
+        cache.remove("key_2")
+        cache.put("key_3", "value_3")
+
+        when:
+        // Open a second instance without closing the first one, as a process which died would do
+        def other = createCache()
+
+        then:
+        other.get("key_1") == "value_1_new"
+        other.get("key_2") == null
+        other.get("key_3") == "value_3"
+
+        cleanup:
+        other?.close()
+    }
+
+    def "rebuilds index from the segments when the index file is corrupt"() {
+        cache = createCache()
+        (1..100).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.remove("key_50")
+        cache.close()
+        indexFile.text = "some junk"
+
+        when:
+        cache = createCache()
+
+        then:
+        cache.get("key_1") == "value_1"
+        cache.get("key_100") == "value_100"
+        cache.get("key_50") == null
+        cache.verify()
+    }
+
+    def "discards partially written record at the end of a segment"() {
+        cache = createCache(1024 * 1024)
+        cache.put("key_1", "value_1")
+        cache.put("key_2", "value_2")
+        cache.close()
+        def segment = tmpDir.file("cache.idx.0.log")
+        segment.bytes = segment.bytes[0..-3] as byte[]
+        indexFile.delete()
+
+        when:
+        cache = createCache(1024 * 1024)
+
+        then:
+        cache.get("key_1") == "value_1"
+        cache.get("key_2") == null
+
+        when:
+        cache.put("key_2", "value_2")
+        cache.close()
+        cache = createCache(1024 * 1024)
+
+        then:
+        cache.get("key_2") == "value_2"
+        cache.verify()
+    }
+
+    def "does not save the index when the cache was only read"() {
+        cache = createCache()
+        (1..100).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+        def indexContent = indexFile.bytes
+        indexFile.lastModified = 0
+
+        when:
+        cache = createCache()
+        (1..100).each { cache.get("key_$it".toString()) }
+        cache.close()
+
+        then:
+        indexFile.lastModified() == 0
+        indexFile.bytes == indexContent
+    }
+
+    def "saves the index only once enough records were appended since it was last saved"() {
+        cache = createCache(1024 * 1024)
+        (1..100).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+        indexFile.lastModified = 0
+
+        when:
+        cache = createCache(1024 * 1024)
+        cache.put("key_1", "value_1_new")
+        cache.close()
+        cache = createCache(1024 * 1024)
+
+        then:
+        indexFile.lastModified() == 0
+        cache.get("key_1") == "value_1_new"
+
+        when:
+        (1..100).each { cache.put("key_$it".toString(), "value_${it}_newer".toString()) }
+        cache.close()
+        cache = createCache(1024 * 1024)
+
+        then:
+        indexFile.lastModified() != 0
+        (1..100).every { cache.get("key_$it".toString()) == "value_${it}_newer".toString() }
+        cache.verify()
+    }
+
+    def "saves the index after it was rebuilt"() {
+        cache = createCache()
+        (1..10).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+        indexFile.delete()
+
+        when:
+        cache = createCache()
+        cache.get("key_1")
+        cache.close()
+
+        then:
+        indexFile.file
+    }
+
+    private LogStructuredPersistentIndexedCache<String, String> createCache(long maxSegmentSize = 4096) {
+        new LogStructuredPersistentIndexedCache<String, String>(indexFile, keySerializer, valueSerializer, maxSegmentSize, 1024)
+    }
+}
@@ -1,6 +1,7 @@
 plugins {
     id("gradlebuild.distribution.implementation-java")
     id("gradlebuild.publish-public-libraries")
+    id("gradlebuild.jmh")
 }
 
 description = "Tools to take immutable, comparable snapshots of files and other things"
@@ -35,6 +36,9 @@ dependencies {
     testFixturesImplementation(projects.fileCollections)
     testFixturesImplementation(libs.commonsIo)
 
+    jmhImplementation(platform(projects.distributionsDependencies))
+    jmhImplementation(libs.commonsIo)
+
     integTestDistributionRuntimeOnly(projects.distributionsCore)
 }
 tasks.isolatedProjectsIntegTest {
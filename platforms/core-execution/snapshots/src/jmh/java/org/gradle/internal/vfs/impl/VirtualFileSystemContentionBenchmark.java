@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl;
+
+import com.google.common.collect.Interners;
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.snapshot.CaseSensitivity;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives {@link DefaultFileSystemAccess} from many threads, each snapshotting its own output directory after invalidating it,
+ * and compares storing the snapshots under the lock with storing them by compare-and-set on the root.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(16)
+@State(Scope.Benchmark)
+public class VirtualFileSystemContentionBenchmark {
+
+    private static final int DIRECTORIES = 64;
+    private static final int FILES_PER_DIRECTORY = 20;
+
+    @Param({"locked", "lock-free"})
+    String mode;
+
+    File rootDir;
+    File[] directories;
+    DefaultFileSystemAccess fileSystemAccess;
+    final AtomicInteger nextThreadIndex = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index;
+        int iteration;
+
+        @Setup(Level.Trial)
+        public void setup(VirtualFileSystemContentionBenchmark benchmark) {
+            index = benchmark.nextThreadIndex.getAndIncrement();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        rootDir = Files.createTempDirectory("vfs-contention-benchmark").toFile();
+        directories = new File[DIRECTORIES];
+        for (int dir = 0; dir < DIRECTORIES; dir++) {
+            File directory = new File(rootDir, "output-" + dir);
+            for (int file = 0; file < FILES_PER_DIRECTORY; file++) {
+                File outputFile = new File(directory, "nested-" + (file % 4) + "/file-" + file + ".txt");
+                FileUtils.writeStringToFile(outputFile, "content " + dir + "/" + file, StandardCharsets.UTF_8);
+            }
+            directories[dir] = directory;
+        }
+
+        SnapshotHierarchy root = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE);
+        AbstractVirtualFileSystem virtualFileSystem = new AbstractVirtualFileSystem(root, mode.equals("lock-free")) {
+            @Override
+            protected SnapshotHierarchy updateNotifyingListeners(UpdateFunction updateFunction) {
+                return updateFunction.update(SnapshotHierarchy.NodeDiffListener.NOOP);
+            }
+
+            @Override
+            protected boolean hasUpdateSideEffects() {
+                return false;
+            }
+        };
+        fileSystemAccess = new DefaultFileSystemAccess(
+            new DefaultFileHasher(new DefaultStreamHasher()),
+            Interners.newStrongInterner(),
+            VirtualFileSystemContentionBenchmark::stat,
+            virtualFileSystem,
+            locations -> {},
+            new DirectorySnapshotterStatistics.Collector()
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.forceDelete(rootDir);
+    }
+
+    @Benchmark
+    public FileSystemLocationSnapshot snapshotOutputs(ThreadState threadState) throws IOException {
+        File directory = directories[(threadState.index + DIRECTORIES / 2 * (threadState.iteration++ & 1)) % DIRECTORIES];
+        String location = directory.getAbsolutePath();
+        fileSystemAccess.write(Collections.singletonList(location), () -> {});
+        return fileSystemAccess.read(location);
+    }
+
+    private static FileMetadata stat(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isDirectory()) {
+                return DefaultFileMetadata.directory(FileMetadata.AccessType.DIRECT);
+            }
+            if (attributes.isRegularFile()) {
+                return DefaultFileMetadata.file(attributes.lastModifiedTime().toMillis(), attributes.size(), FileMetadata.AccessType.DIRECT);
+            }
+            return DefaultFileMetadata.missing(FileMetadata.AccessType.DIRECT);
+        } catch (NoSuchFileException e) {
+            return DefaultFileMetadata.missing(FileMetadata.AccessType.DIRECT);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -44,6 +44,7 @@
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -56,6 +57,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -89,12 +91,29 @@ public Iterable<String> getRemappedSegments(Iterable<String> segments) {
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
     private final DirectorySnapshotterStatistics.Collector collector;
+    private final ParallelDirectoryWalker parallelWalker;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector) {
+        this(hasher, stringInterner, defaultExcludes, collector, null);
+    }
+
+    /**
+     * Creates a snapshotter that walks unfiltered directory trees concurrently on the given executor when one is provided.
+     *
+     * The produced snapshots are identical to the ones produced without an executor.
+     */
+    public DirectorySnapshotter(
+        FileHasher hasher,
+        Interner<String> stringInterner,
+        Collection<String> defaultExcludes,
+        DirectorySnapshotterStatistics.Collector collector,
+        @Nullable Executor snapshottingExecutor
+    ) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
         this.collector = collector;
+        this.parallelWalker = snapshottingExecutor == null ? null : new ParallelDirectoryWalker(snapshottingExecutor, hasher, stringInterner, this.defaultExcludes, collector);
     }
 
     /**
@@ -120,8 +139,15 @@ public FileSystemLocationSnapshot snapshot(
         Consumer<FileSystemLocationSnapshot> unfilteredSnapshotRecorder
     ) {
         try {
-            AtomicBoolean hasBeenFiltered = new AtomicBoolean();
             Path rootPath = Paths.get(absolutePath);
+            if (parallelWalker != null && predicate == null && Files.isDirectory(rootPath, LinkOption.NOFOLLOW_LINKS)) {
+                FileSystemLocationSnapshot result = parallelWalker.snapshot(rootPath, previouslyKnownSnapshots);
+                if (result != null) {
+                    unfilteredSnapshotRecorder.accept(result);
+                    return result;
+                }
+            }
+            AtomicBoolean hasBeenFiltered = new AtomicBoolean();
             PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, previouslyKnownSnapshots, unfilteredSnapshotRecorder);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
             FileSystemLocationSnapshot result = visitor.getResult();
@@ -134,6 +160,16 @@ public FileSystemLocationSnapshot snapshot(
         }
     }
 
+    static BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFileAttributes symlinkAttributes) {
+        try {
+            return Files.readAttributes(symlink, BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            // We emulate the behavior of `Files.walkFileTree(Path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), PathVisitor)`,
+            // and return the attributes of the symlink if we can't read the attributes of the target of the symlink.
+            return symlinkAttributes;
+        }
+    }
+
     private interface SymbolicLinkMapping {
         String remapAbsolutePath(Path path);
 
@@ -425,16 +461,6 @@ private boolean shouldVisitFile(Path file, String internedName) {
             return shouldVisit(file, internedName, false);
         }
 
-        private static BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFileAttributes symlinkAttributes) {
-            try {
-                return Files.readAttributes(symlink, BasicFileAttributes.class);
-            } catch (IOException ioe) {
-                // We emulate the behavior of `Files.walkFileTree(Path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), PathVisitor)`,
-                // and return the attributes of the symlink if we can't read the attributes of the target of the symlink.
-                return symlinkAttributes;
-            }
-        }
-
         private FileSystemLeafSnapshot snapshotFile(Path absoluteFilePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
             String internedRemappedAbsoluteFilePath = intern(symbolicLinkMapping.remapAbsolutePath(absoluteFilePath));
             FileSystemLocationSnapshot previouslyKnownSnapshot = previouslyKnownSnapshots.get(internedRemappedAbsoluteFilePath);
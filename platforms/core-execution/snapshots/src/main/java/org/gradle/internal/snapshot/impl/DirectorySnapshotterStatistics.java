@@ -25,6 +25,7 @@
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public interface DirectorySnapshotterStatistics {
@@ -48,12 +49,24 @@ public interface DirectorySnapshotterStatistics {
      */
     long getFailedFiles();
 
+    /**
+     * The number of directory trees that were snapshotted in parallel.
+     */
+    long getParallelHierarchyCount();
+
+    /**
+     * Time spent snapshotting directory trees in parallel.
+     */
+    long getParallelSnapshottingTimeMillis();
+
     @ServiceScope(Scope.Global.class)
     class Collector {
         private final AtomicLong hierarchyCount = new AtomicLong();
         private final AtomicLong directoryCount = new AtomicLong();
         private final AtomicLong fileCount = new AtomicLong();
         private final AtomicLong failedFileCount = new AtomicLong();
+        private final AtomicLong parallelHierarchyCount = new AtomicLong();
+        private final AtomicLong parallelSnapshottingTime = new AtomicLong();
 
         public void recordVisitHierarchy() {
             hierarchyCount.incrementAndGet();
@@ -71,11 +84,18 @@ public void recordVisitFileFailed() {
             failedFileCount.incrementAndGet();
         }
 
+        public void recordParallelHierarchy(long snapshottingTimeNanos) {
+            parallelHierarchyCount.incrementAndGet();
+            parallelSnapshottingTime.addAndGet(snapshottingTimeNanos);
+        }
+
         public DirectorySnapshotterStatistics collect() {
             long hierarchyCount = this.hierarchyCount.getAndSet(0);
             long directoryCount = this.directoryCount.getAndSet(0);
             long fileCount = this.fileCount.getAndSet(0);
             long failedFileCount = this.failedFileCount.getAndSet(0);
+            long parallelHierarchyCount = this.parallelHierarchyCount.getAndSet(0);
+            long parallelSnapshottingTimeMillis = TimeUnit.NANOSECONDS.toMillis(this.parallelSnapshottingTime.getAndSet(0));
 
             return new DirectorySnapshotterStatistics() {
                 @Override
@@ -98,10 +118,25 @@ public long getFailedFiles() {
                     return failedFileCount;
                 }
 
+                @Override
+                public long getParallelHierarchyCount() {
+                    return parallelHierarchyCount;
+                }
+
+                @Override
+                public long getParallelSnapshottingTimeMillis() {
+                    return parallelSnapshottingTimeMillis;
+                }
+
                 @Override
                 public String toString() {
-                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
+                    String summary = MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
                         hierarchyCount, directoryCount, fileCount, failedFileCount);
+                    if (parallelHierarchyCount == 0) {
+                        return summary;
+                    }
+                    return summary + MessageFormat.format(", snapshot {0,number,integer} hierarchies in parallel in {1,number,integer} ms",
+                        parallelHierarchyCount, parallelSnapshottingTimeMillis);
                 }
             };
         }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.DirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.FileSystemLeafSnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static org.gradle.internal.snapshot.DirectorySnapshotBuilder.EmptyDirectoryHandlingStrategy.INCLUDE_EMPTY_DIRS;
+
+/**
+ * Snapshots an unfiltered directory tree by visiting its directories concurrently.
+ *
+ * Each directory is listed on the executor, its files are hashed right away, and its subdirectories are visited as separate tasks.
+ * The snapshot of a directory is assembled once the snapshots of all its subdirectories are available, so tasks never wait for each other.
+ * The tree is walked a single time, and the result is the same snapshot as the one produced by the sequential walk of {@link DirectorySnapshotter}.
+ * <p>
+ * Directories reached via symlinks and entries that cannot be read need the cycle detection and error reporting of the sequential walk.
+ * When the walk encounters one of them, it gives up, and the caller snapshots the tree sequentially.
+ */
+class ParallelDirectoryWalker {
+    private final Executor executor;
+    private final FileHasher hasher;
+    private final Interner<String> stringInterner;
+    private final DirectorySnapshotter.DefaultExcludes defaultExcludes;
+    private final DirectorySnapshotterStatistics.Collector collector;
+
+    ParallelDirectoryWalker(
+        Executor executor,
+        FileHasher hasher,
+        Interner<String> stringInterner,
+        DirectorySnapshotter.DefaultExcludes defaultExcludes,
+        DirectorySnapshotterStatistics.Collector collector
+    ) {
+        this.executor = executor;
+        this.hasher = hasher;
+        this.stringInterner = stringInterner;
+        this.defaultExcludes = defaultExcludes;
+        this.collector = collector;
+    }
+
+    /**
+     * Snapshots the given root directory, or returns {@code null} when the tree needs to be snapshotted by the sequential walk.
+     */
+    @Nullable
+    public FileSystemLocationSnapshot snapshot(Path rootDirectory, Map<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots) {
+        long start = System.nanoTime();
+        collector.recordVisitHierarchy();
+        collector.recordVisitDirectory();
+        Path fileName = rootDirectory.getFileName();
+        String rootName = fileName == null ? "" : intern(fileName.toString());
+        DirectoryVisit rootVisit = new DirectoryVisit(ImmutableMap.copyOf(previouslyKnownSnapshots));
+        try {
+            DirectorySnapshot result = rootVisit.visitDirectory(rootDirectory, rootName).join();
+            collector.recordParallelHierarchy(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            // The sequential walk reports failures with the right context
+            return null;
+        }
+    }
+
+    private String intern(String string) {
+        return stringInterner.intern(string);
+    }
+
+    private class DirectoryVisit {
+        private final ImmutableMap<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots;
+
+        DirectoryVisit(ImmutableMap<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots) {
+            this.previouslyKnownSnapshots = previouslyKnownSnapshots;
+        }
+
+        CompletableFuture<DirectorySnapshot> visitDirectory(Path directory, String name) {
+            return CompletableFuture.supplyAsync(() -> listDirectory(directory, name), executor)
+                .thenCompose(Function.identity());
+        }
+
+        private CompletableFuture<DirectorySnapshot> listDirectory(Path directory, String name) {
+            String absolutePath = intern(directory.toString());
+            FileSystemLocationSnapshot previouslyKnownSnapshot = previouslyKnownSnapshots.get(absolutePath);
+            if (previouslyKnownSnapshot instanceof DirectorySnapshot) {
+                return CompletableFuture.completedFuture((DirectorySnapshot) previouslyKnownSnapshot);
+            } else if (previouslyKnownSnapshot != null) {
+                throw new IllegalStateException("Expected a previously known directory snapshot at " + absolutePath + " but got " + previouslyKnownSnapshot);
+            }
+
+            List<FileSystemLeafSnapshot> files = new ArrayList<>();
+            List<CompletableFuture<DirectorySnapshot>> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    String entryName = intern(entry.getFileName().toString());
+                    if (attributes.isDirectory()) {
+                        collector.recordVisitDirectory();
+                        if (!defaultExcludes.excludeDir(entryName)) {
+                            subdirectories.add(visitDirectory(entry, entryName));
+                        }
+                    } else {
+                        collector.recordVisitFile();
+                        FileSystemLeafSnapshot file = snapshotFile(entry, entryName, attributes);
+                        if (file != null) {
+                            files.add(file);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return CompletableFuture.allOf(subdirectories.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+                    builder.enterDirectory(AccessType.DIRECT, absolutePath, name, INCLUDE_EMPTY_DIRS);
+                    files.forEach(builder::visitLeafElement);
+                    subdirectories.forEach(subdirectory -> builder.visitDirectory(subdirectory.join()));
+                    return (DirectorySnapshot) builder.leaveDirectory();
+                });
+        }
+
+        @Nullable
+        private FileSystemLeafSnapshot snapshotFile(Path file, String name, BasicFileAttributes attributes) {
+            AccessType accessType = AccessType.DIRECT;
+            if (attributes.isSymbolicLink()) {
+                accessType = AccessType.VIA_SYMLINK;
+                attributes = DirectorySnapshotter.readAttributesOfSymlinkTarget(file, attributes);
+                if (attributes.isDirectory()) {
+                    throw new UnsupportedByParallelWalkException();
+                }
+            }
+            if (defaultExcludes.excludeFile(name)) {
+                return null;
+            }
+            String absolutePath = intern(file.toString());
+            FileSystemLocationSnapshot previouslyKnownSnapshot = previouslyKnownSnapshots.get(absolutePath);
+            if (previouslyKnownSnapshot != null) {
+                if (!(previouslyKnownSnapshot instanceof FileSystemLeafSnapshot)) {
+                    throw new IllegalStateException("Expected a previously known leaf snapshot at " + absolutePath + ", but found " + previouslyKnownSnapshot);
+                }
+                return (FileSystemLeafSnapshot) previouslyKnownSnapshot;
+            }
+            if (attributes.isSymbolicLink()) {
+                return new MissingFileSnapshot(absolutePath, name, accessType);
+            } else if (!attributes.isRegularFile()) {
+                throw new UnsupportedByParallelWalkException();
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            long length = attributes.size();
+            HashCode hash = hasher.hash(file.toFile(), length, lastModified);
+            return new RegularFileSnapshot(absolutePath, name, hash, DefaultFileMetadata.file(lastModified, length, accessType));
+        }
+    }
+
+    private static class UnsupportedByParallelWalkException extends RuntimeException {
+        UnsupportedByParallelWalkException() {
+            super(null, null, false, false);
+        }
+    }
+}
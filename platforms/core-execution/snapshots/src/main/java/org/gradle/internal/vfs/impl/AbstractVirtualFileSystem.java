@@ -27,23 +27,41 @@
 import java.util.Collections;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
+/**
+ * Base class for virtual file systems.
+ *
+ * Structural updates of the root are serialized via a lock.
+ * When lock-free stores are enabled, storing a snapshot instead updates the root with compare-and-set,
+ * retrying against the new root when another update won the race.
+ * This is only done while updates have no side effects, see {@link #hasUpdateSideEffects()},
+ * since an update may be computed multiple times.
+ */
 public abstract class AbstractVirtualFileSystem implements VirtualFileSystem {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractVirtualFileSystem.class);
+    private static final AtomicReferenceFieldUpdater<AbstractVirtualFileSystem, SnapshotHierarchy> ROOT_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(AbstractVirtualFileSystem.class, SnapshotHierarchy.class, "root");
 
     private final ReentrantLock updateLock = new ReentrantLock();
+    private final boolean lockFreeStores;
 
-    // Mutable state, changes need to be guarded by updateLock
+    // Mutable state, changes need to be guarded by updateLock, apart from lock-free stores
     protected volatile SnapshotHierarchy root;
     private volatile VersionHierarchyRoot versionHierarchyRoot;
 
     protected AbstractVirtualFileSystem(SnapshotHierarchy root) {
+        this(root, false);
+    }
+
+    protected AbstractVirtualFileSystem(SnapshotHierarchy root, boolean lockFreeStores) {
         this.root = root;
         this.versionHierarchyRoot = VersionHierarchyRoot.empty(0, root.getCaseSensitivity());
+        this.lockFreeStores = lockFreeStores;
     }
 
     protected void underLock(Runnable runnable) {
@@ -98,24 +116,73 @@ private void storeIfUnchanged(String absolutePath, long versionBefore, FileSyste
         long versionAfter = versionHierarchyRoot.getVersion(absolutePath);
         // Only update VFS if no changes happened in between
         // The version in sub-locations may be smaller than the version we queried at the root when using a `StoringAction`.
-        AtomicBoolean updated = new AtomicBoolean(false);
+        boolean updated = false;
         if (versionBefore >= versionAfter) {
-            updateRootUnderLock(root -> {
-                // Check again, now under lock
-                long versionAfterUnderLock = versionHierarchyRoot.getVersion(absolutePath);
-                if (versionBefore >= versionAfterUnderLock) {
-                    updated.set(true);
-                    return updateNotifyingListeners(diffListener -> root.store(absolutePath, snapshot, diffListener));
-                } else {
-                    return root;
-                }
-            });
+            updated = lockFreeStores
+                ? storeWithoutLock(absolutePath, versionBefore, snapshot)
+                : storeUnderLock(absolutePath, versionBefore, snapshot);
         }
-        if (!updated.get()) {
+        if (!updated) {
             LOGGER.debug("Changes to the virtual file system happened while snapshotting '{}', not storing resulting snapshot", absolutePath);
         }
     }
 
+    private boolean storeUnderLock(String absolutePath, long versionBefore, FileSystemLocationSnapshot snapshot) {
+        AtomicBoolean updated = new AtomicBoolean(false);
+        updateRootUnderLock(root -> {
+            // Check again, now under lock
+            long versionAfterUnderLock = versionHierarchyRoot.getVersion(absolutePath);
+            if (versionBefore >= versionAfterUnderLock) {
+                updated.set(true);
+                return updateNotifyingListeners(diffListener -> root.store(absolutePath, snapshot, diffListener));
+            } else {
+                return root;
+            }
+        });
+        return updated.get();
+    }
+
+    /**
+     * Stores the snapshot by compare-and-set on the root, falling back to the lock when updates start having side effects.
+     *
+     * Locked updates replace the root without compare-and-set, so they may drop a concurrently stored snapshot.
+     * That is fine, since the snapshot is then simply re-created on the next access.
+     * Invalidations bump the version before replacing the root, so the version is checked again after a successful compare-and-set,
+     * and the snapshot is removed again if it may be stale.
+     *
+     * @return whether the snapshot was stored.
+     */
+    private boolean storeWithoutLock(String absolutePath, long versionBefore, FileSystemLocationSnapshot snapshot) {
+        while (true) {
+            SnapshotHierarchy currentRoot = root;
+            if (hasUpdateSideEffects()) {
+                return storeUnderLock(absolutePath, versionBefore, snapshot);
+            }
+            if (versionBefore < versionHierarchyRoot.getVersion(absolutePath)) {
+                return false;
+            }
+            SnapshotHierarchy newRoot = updateNotifyingListeners(diffListener -> currentRoot.store(absolutePath, snapshot, diffListener));
+            if (ROOT_UPDATER.compareAndSet(this, currentRoot, newRoot)) {
+                if (hasUpdateSideEffects() || versionBefore < versionHierarchyRoot.getVersion(absolutePath)) {
+                    // A locked update may have replaced the root with the very same instance in the meantime,
+                    // so the compare-and-set cannot tell whether the snapshot is still valid.
+                    updateRootUnderLock(root -> updateNotifyingListeners(diffListener -> root.invalidate(absolutePath, diffListener)));
+                    return false;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Whether {@link #updateNotifyingListeners(UpdateFunction)} currently does more than computing the new root, for example notifying file watchers.
+     *
+     * Such updates are never done with lock-free stores, since they may be retried.
+     */
+    protected boolean hasUpdateSideEffects() {
+        return true;
+    }
+
     @Override
     public void invalidate(Iterable<String> locations) {
         LOGGER.debug("Invalidating VFS paths: {}", locations);
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl;
+
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotVisitResult;
+import org.gradle.internal.vfs.VirtualFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the content hashes of the regular files in the virtual file system on disk, so they survive daemon restarts.
+ *
+ * <p>The state is a compact binary file containing the path, length, last modified time and hash of each regular file,
+ * sorted by path and with shared path prefixes omitted.
+ * It is not used to re-create the virtual file system itself, since the file system may have changed arbitrarily while no daemon was running.
+ * Instead, the loaded hashes are used as hints when hashing a file: a hint is only used when the length and last modified time
+ * of the file still match, so validation only requires the stat the snapshotter does anyway.</p>
+ *
+ * <p>Only files which have been last modified well before the build started are stored,
+ * so a change within the same file system timestamp granularity as the hashing is never missed.
+ * The file is only written again when a file had to be hashed since it was loaded or written, so a build where all hashes came from the file,
+ * or from the virtual file system of a warm daemon, does not walk the virtual file system.</p>
+ */
+public class PersistentVirtualFileSystemState {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersistentVirtualFileSystemState.class);
+
+    private static final int MAGIC = 0x56465331;
+    private static final int VERSION = 1;
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
+    private volatile Map<String, FileHint> hints = Collections.emptyMap();
+    private File loadedFrom;
+    private long loadedTimestamp;
+    // Whether files were hashed that may not be in the file
+    private volatile boolean dirty = true;
+
+    /**
+     * Returns a hasher which uses the loaded hashes when the file did not change since they were stored.
+     */
+    public FileHasher decorate(FileHasher delegate) {
+        return new HintingFileHasher(delegate);
+    }
+
+    public int getHintCount() {
+        return hints.size();
+    }
+
+    /**
+     * Loads the hashes from the given state file, if it exists.
+     *
+     * A corrupt or incompatible file is ignored.
+     */
+    public synchronized void load(File stateFile) {
+        if (!stateFile.isFile()) {
+            hints = Collections.emptyMap();
+            loadedFrom = null;
+            return;
+        }
+        if (stateFile.equals(loadedFrom) && stateFile.lastModified() == loadedTimestamp) {
+            // Nothing changed since we have written or read the file
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile.toPath())))) {
+            hints = read(input);
+            loadedFrom = stateFile;
+            loadedTimestamp = stateFile.lastModified();
+            dirty = false;
+            LOGGER.debug("Loaded {} file hashes from {}", hints.size(), stateFile);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Ignoring virtual file system state in {} as it cannot be read", stateFile, e);
+            hints = Collections.emptyMap();
+            loadedFrom = null;
+        }
+    }
+
+    /**
+     * Stores the hashes of all the regular files below the given root directory in the virtual file system.
+     *
+     * @param buildStartTime files modified after this point in time, minus the timestamp granularity, are not stored.
+     */
+    public synchronized void store(File stateFile, VirtualFileSystem virtualFileSystem, File rootDirectory, long buildStartTime) {
+        if (!dirty && stateFile.equals(loadedFrom)) {
+            return;
+        }
+        dirty = false;
+        long trustedBefore = buildStartTime - TIMESTAMP_GRANULARITY_MILLIS;
+        TreeMap<String, FileHint> newHints = new TreeMap<>();
+        try (Stream<FileSystemLocationSnapshot> roots = virtualFileSystem.findRootSnapshotsUnder(rootDirectory.getAbsolutePath())) {
+            roots.forEach(root -> root.accept(snapshot -> {
+                if (snapshot instanceof RegularFileSnapshot) {
+                    RegularFileSnapshot fileSnapshot = (RegularFileSnapshot) snapshot;
+                    FileMetadata metadata = fileSnapshot.getMetadata();
+                    if (metadata.getAccessType() == FileMetadata.AccessType.DIRECT && metadata.getLastModified() < trustedBefore) {
+                        newHints.put(fileSnapshot.getAbsolutePath(), new FileHint(metadata.getLength(), metadata.getLastModified(), fileSnapshot.getHash()));
+                    }
+                }
+                return SnapshotVisitResult.CONTINUE;
+            }));
+        }
+        if (newHints.equals(hints) && stateFile.equals(loadedFrom)) {
+            // Only files that are not stored, like recently modified ones, have been hashed
+            return;
+        }
+        try {
+            File parentDir = stateFile.getParentFile();
+            Files.createDirectories(parentDir.toPath());
+            File tempFile = File.createTempFile(stateFile.getName(), ".tmp", parentDir);
+            try {
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                    write(newHints, output);
+                }
+                Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+            hints = newHints;
+            loadedFrom = stateFile;
+            loadedTimestamp = stateFile.lastModified();
+            LOGGER.debug("Stored {} file hashes in {}", newHints.size(), stateFile);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not store virtual file system state in {}", stateFile, e);
+        }
+    }
+
+    private static void write(TreeMap<String, FileHint> hints, DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(hints.size());
+        String previousPath = "";
+        for (Map.Entry<String, FileHint> entry : hints.entrySet()) {
+            String path = entry.getKey();
+            int commonPrefix = commonPrefixLength(previousPath, path);
+            output.writeInt(commonPrefix);
+            output.writeUTF(path.substring(commonPrefix));
+            FileHint hint = entry.getValue();
+            output.writeLong(hint.length);
+            output.writeLong(hint.lastModified);
+            byte[] hashBytes = hint.hash.toByteArray();
+            output.writeByte(hashBytes.length);
+            output.write(hashBytes);
+            previousPath = path;
+        }
+    }
+
+    private static Map<String, FileHint> read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Unsupported file format");
+        }
+        int count = input.readInt();
+        Map<String, FileHint> result = new HashMap<>(count * 4 / 3 + 1);
+        String previousPath = "";
+        for (int i = 0; i < count; i++) {
+            int commonPrefix = input.readInt();
+            String path = previousPath.substring(0, commonPrefix) + input.readUTF();
+            long length = input.readLong();
+            long lastModified = input.readLong();
+            byte[] hashBytes = new byte[input.readUnsignedByte()];
+            input.readFully(hashBytes);
+            result.put(path, new FileHint(length, lastModified, HashCode.fromBytes(hashBytes)));
+            previousPath = path;
+        }
+        return result;
+    }
+
+    private static int commonPrefixLength(String first, String second) {
+        int max = Math.min(first.length(), second.length());
+        int i = 0;
+        while (i < max && first.charAt(i) == second.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private class HintingFileHasher implements FileHasher {
+        private final FileHasher delegate;
+
+        HintingFileHasher(FileHasher delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HashCode hash(File file) {
+            dirty = true;
+            return delegate.hash(file);
+        }
+
+        @Override
+        public HashCode hash(File file, long length, long lastModified) {
+            FileHint hint = hints.get(file.getPath());
+            if (hint != null && hint.length == length && hint.lastModified == lastModified) {
+                return hint.hash;
+            }
+            dirty = true;
+            return delegate.hash(file, length, lastModified);
+        }
+    }
+
+    private static class FileHint {
+        private final long length;
+        private final long lastModified;
+        private final HashCode hash;
+
+        FileHint(long length, long lastModified, HashCode hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileHint fileHint = (FileHint) o;
+            return length == fileHint.length && lastModified == fileHint.lastModified && hash.equals(fileHint.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(length, lastModified, hash);
+        }
+    }
+}
@@ -42,6 +42,7 @@ import spock.lang.Issue
 import spock.lang.Specification
 
 import java.nio.file.Paths
+import java.util.concurrent.Executors
 import java.util.function.Consumer
 
 @UsesNativeServices
@@ -530,6 +531,66 @@ class DirectorySnapshotterTest extends Specification {
         pipe.delete()
     }
 
+    def "parallel snapshotting produces the same snapshot as sequential snapshotting (filtered: #filtered)"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        (1..5).each { dir ->
+            (1..20).each { file ->
+                rootDir.file("dir$dir/sub$file/file${file}.txt") << "content $dir $file"
+                rootDir.file("dir$dir/sub$file/file${file}.html") << "html $dir $file"
+            }
+        }
+        rootDir.file("a.txt") << "root"
+        rootDir.file(".git/config") << "excluded"
+        def predicate = filtered ? directoryWalkerPredicate(new PatternSet().include("**/*.txt")) : null
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), DirectoryScanner.getDefaultExcludes() as List, statisticsCollector, executor)
+        def sequentialSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), DirectoryScanner.getDefaultExcludes() as List, statisticsCollector)
+
+        when:
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, predicate, [:], {})
+        def sequentialSnapshot = sequentialSnapshotter.snapshot(rootDir.absolutePath, predicate, [:], {})
+
+        then:
+        parallelSnapshot.hash == sequentialSnapshot.hash
+        SnapshotVisitorUtil.getRelativePaths(parallelSnapshot, true) == SnapshotVisitorUtil.getRelativePaths(sequentialSnapshot, true)
+
+        cleanup:
+        executor?.shutdown()
+
+        where:
+        filtered << [false, true]
+    }
+
+    @Requires(UnitTestPreconditions.Symlinks)
+    def "parallel snapshotting produces the same snapshot as sequential snapshotting for trees with symlinks"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        def linkTarget = tmpDir.createDir("linkTarget")
+        linkTarget.file("linked/file.txt") << "linked"
+        (1..10).each { dir ->
+            rootDir.file("dir$dir/file.txt") << "content $dir"
+        }
+        rootDir.file("dir1/fileLink").createLink(rootDir.file("dir2/file.txt"))
+        rootDir.file("dir1/missingLink").createLink(rootDir.file("missing"))
+        rootDir.file("dir3/dirLink").createLink(linkTarget)
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), DirectoryScanner.getDefaultExcludes() as List, statisticsCollector, executor)
+        def sequentialSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), DirectoryScanner.getDefaultExcludes() as List, statisticsCollector)
+
+        when:
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, null, [:], {})
+        def sequentialSnapshot = sequentialSnapshotter.snapshot(rootDir.absolutePath, null, [:], {})
+
+        then:
+        parallelSnapshot.hash == sequentialSnapshot.hash
+        SnapshotVisitorUtil.getRelativePaths(parallelSnapshot, true) == SnapshotVisitorUtil.getRelativePaths(sequentialSnapshot, true)
+        SnapshotVisitorUtil.getRelativePaths(parallelSnapshot, true).contains("dir3/dirLink/linked/file.txt")
+
+        cleanup:
+        executor?.shutdown()
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes() as List)
 
@@ -30,6 +30,18 @@ class AbstractVirtualFileSystemTest extends ConcurrentSpec implements TestSnapsh
         }
     }
 
+    def lockFreeVfs = new AbstractVirtualFileSystem(DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE), true) {
+        @Override
+        protected SnapshotHierarchy updateNotifyingListeners(AbstractVirtualFileSystem.UpdateFunction updateFunction) {
+            return updateFunction.update(SnapshotHierarchy.NodeDiffListener.NOOP)
+        }
+
+        @Override
+        protected boolean hasUpdateSideEffects() {
+            return false
+        }
+    }
+
     def "does not store snapshot when invalidation happened in between"() {
         def location = '/my/location/new'
         when:
@@ -117,4 +129,42 @@ class AbstractVirtualFileSystemTest extends ConcurrentSpec implements TestSnapsh
         then:
         vfs.findSnapshot(location).present
     }
+
+    def "lock-free store does not store snapshot when invalidation happened in between"() {
+        def location = '/my/location/new'
+        when:
+        start {
+            lockFreeVfs.store(location) { ->
+                instant.snapshottingStarted
+                thread.blockUntil.invalidated
+                instant.snapshottingFinished
+                return directory(location, [])
+            }
+        }
+        async {
+            thread.blockUntil.snapshottingStarted
+            lockFreeVfs.invalidate(['/my/location/new/something'])
+            instant.invalidated
+        }
+        then:
+        instant.snapshottingStarted < instant.invalidated
+        instant.invalidated < instant.snapshottingFinished
+        !lockFreeVfs.findSnapshot(location).present
+    }
+
+    def "keeps all snapshots stored lock-free from many threads"() {
+        def locations = (1..200).collect { "/my/location/${it % 10}/child${it}".toString() }
+
+        when:
+        async {
+            locations.each { location ->
+                start {
+                    lockFreeVfs.store(location) { -> regularFile(location) }
+                }
+            }
+        }
+
+        then:
+        locations.every { lockFreeVfs.findSnapshot(it).present }
+    }
 }
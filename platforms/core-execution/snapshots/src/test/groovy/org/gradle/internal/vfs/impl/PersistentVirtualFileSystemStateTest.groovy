@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl
+
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.hash.FileHasher
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.internal.vfs.FileSystemAccess
+import org.gradle.internal.vfs.VirtualFileSystem
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+@CleanupTestDirectory
+class PersistentVirtualFileSystemStateTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    VirtualFileSystem virtualFileSystem = TestFiles.virtualFileSystem()
+    FileSystemAccess fileSystemAccess = TestFiles.fileSystemAccess(virtualFileSystem)
+    def rootDir = temporaryFolder.createDir("root")
+    def stateFile = temporaryFolder.file("state/vfs-state.bin")
+    def delegate = Mock(FileHasher)
+
+    def "restores hashes of unchanged files stored by a previous instance"() {
+        def file = rootDir.file("dir/file.txt").createFile() << "content"
+        def otherFile = rootDir.file("dir/other.txt").createFile() << "other content"
+        def snapshot = fileSystemAccess.read(rootDir.absolutePath)
+        def buildStartTime = System.currentTimeMillis() + 10000
+
+        when:
+        new PersistentVirtualFileSystemState().store(stateFile, virtualFileSystem, rootDir, buildStartTime)
+        def state = new PersistentVirtualFileSystemState()
+        state.load(stateFile)
+        def hasher = state.decorate(delegate)
+        def hash = hasher.hash(file, file.length(), file.lastModified())
+        def otherHash = hasher.hash(otherFile, otherFile.length(), otherFile.lastModified())
+
+        then:
+        snapshot != null
+        state.hintCount == 2
+        hash == TestFiles.fileHasher().hash(file)
+        otherHash == TestFiles.fileHasher().hash(otherFile)
+        0 * delegate._
+    }
+
+    def "hashes file when its metadata differs from the stored one"() {
+        def file = rootDir.file("file.txt").createFile() << "content"
+        fileSystemAccess.read(rootDir.absolutePath)
+        def state = new PersistentVirtualFileSystemState()
+        state.store(stateFile, virtualFileSystem, rootDir, System.currentTimeMillis() + 10000)
+        def hasher = state.decorate(delegate)
+        def newHash = TestHashCodes.hashCodeFrom(1234)
+
+        when:
+        def hash = hasher.hash(file, file.length() + 1, file.lastModified())
+
+        then:
+        hash == newHash
+        1 * delegate.hash(file, file.length() + 1, file.lastModified()) >> newHash
+    }
+
+    def "does not store recently modified files"() {
+        rootDir.file("file.txt").createFile() << "content"
+        fileSystemAccess.read(rootDir.absolutePath)
+        def state = new PersistentVirtualFileSystemState()
+
+        when:
+        state.store(stateFile, virtualFileSystem, rootDir, rootDir.file("file.txt").lastModified())
+
+        then:
+        state.hintCount == 0
+    }
+
+    def "ignores corrupt state file"() {
+        stateFile.createFile() << "not a state file"
+        def state = new PersistentVirtualFileSystemState()
+
+        when:
+        state.load(stateFile)
+
+        then:
+        state.hintCount == 0
+    }
+
+    def "does not write the state again when no file had to be hashed"() {
+        def file = rootDir.file("file.txt").createFile() << "content"
+        fileSystemAccess.read(rootDir.absolutePath)
+        new PersistentVirtualFileSystemState().store(stateFile, virtualFileSystem, rootDir, System.currentTimeMillis() + 10000)
+        def state = new PersistentVirtualFileSystemState()
+        state.load(stateFile)
+        stateFile.lastModified = 0
+
+        when:
+        state.decorate(delegate).hash(file, file.length(), file.lastModified())
+        state.store(stateFile, virtualFileSystem, rootDir, System.currentTimeMillis() + 10000)
+
+        then:
+        stateFile.lastModified() == 0
+        0 * delegate._
+
+        when:
+        def other = rootDir.file("other.txt").createFile() << "other"
+        state.decorate(delegate).hash(other, other.length(), other.lastModified())
+        virtualFileSystem.invalidateAll()
+        fileSystemAccess.read(rootDir.absolutePath)
+        state.store(stateFile, virtualFileSystem, rootDir, System.currentTimeMillis() + 10000)
+
+        then:
+        1 * delegate.hash(other, other.length(), other.lastModified()) >> TestHashCodes.hashCodeFrom(1234)
+        stateFile.lastModified() != 0
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.reflect;
+
+import org.gradle.internal.hash.ChunkedFileHasher;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.Hashing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares streaming file hashing with chunked file hashing, sequential and parallel, across file sizes.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class FileHashingBenchmark {
+
+    @Param({"65536", "16777216", "268435456", "1073741824"})
+    long fileSize;
+
+    @Param({"streaming", "chunked", "chunked-parallel"})
+    String mode;
+
+    File file;
+    ExecutorService executor;
+    FileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("file-hashing-benchmark", ".bin");
+        byte[] buffer = new byte[1024 * 1024];
+        Random random = new Random(1234L);
+        try (OutputStream output = new FileOutputStream(file)) {
+            for (long written = 0; written < fileSize; written += buffer.length) {
+                random.nextBytes(buffer);
+                output.write(buffer, 0, (int) Math.min(buffer.length, fileSize - written));
+            }
+        }
+
+        FileHasher streamingHasher = new DefaultFileHasher(new DefaultStreamHasher());
+        if (mode.equals("chunked")) {
+            hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), null);
+        } else if (mode.equals("chunked-parallel")) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            hasher = new ChunkedFileHasher(streamingHasher, Hashing.defaultFunction(), executor);
+        } else {
+            hasher = streamingHasher;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public Object hash() {
+        return hasher.hash(file);
+    }
+}
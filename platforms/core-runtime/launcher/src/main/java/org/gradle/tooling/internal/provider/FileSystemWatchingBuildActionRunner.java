@@ -20,6 +20,7 @@
 import org.gradle.api.internal.changedetection.state.FileHasherStatistics;
 import org.gradle.deployment.internal.DeploymentRegistryInternal;
 import org.gradle.initialization.StartParameterBuildOptions;
+import org.gradle.internal.buildevents.BuildStartedTime;
 import org.gradle.internal.buildoption.InternalOptions;
 import org.gradle.internal.buildtree.BuildActionRunner;
 import org.gradle.internal.buildtree.BuildTreeLifecycleController;
@@ -29,6 +30,7 @@
 import org.gradle.internal.operations.BuildOperationRunner;
 import org.gradle.internal.service.scopes.VirtualFileSystemServices;
 import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics;
+import org.gradle.internal.vfs.impl.PersistentVirtualFileSystemState;
 import org.gradle.internal.watch.options.FileSystemWatchingSettingsFinalizedProgressDetails;
 import org.gradle.internal.watch.registry.WatchMode;
 import org.gradle.internal.watch.vfs.BuildLifecycleAwareVirtualFileSystem;
@@ -36,6 +38,8 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+
 public class FileSystemWatchingBuildActionRunner implements BuildActionRunner {
     private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemWatchingBuildActionRunner.class);
 
@@ -48,6 +52,10 @@ public class FileSystemWatchingBuildActionRunner implements BuildActionRunner {
     private final BuildOperationRunner buildOperationRunner;
     private final BuildActionRunner delegate;
     private final InternalOptions options;
+    private final PersistentVirtualFileSystemState persistentState;
+    private final File persistentStateFile;
+    private final File rootDirectory;
+    private final BuildStartedTime buildStartedTime;
 
     public FileSystemWatchingBuildActionRunner(
         BuildOperationProgressEventEmitter eventEmitter,
@@ -58,7 +66,11 @@ public FileSystemWatchingBuildActionRunner(
         DirectorySnapshotterStatistics.Collector directorySnapshotterStatisticsCollector,
         BuildOperationRunner buildOperationRunner,
         BuildActionRunner delegate,
-        InternalOptions options
+        InternalOptions options,
+        PersistentVirtualFileSystemState persistentState,
+        File persistentStateFile,
+        File rootDirectory,
+        BuildStartedTime buildStartedTime
     ) {
         this.eventEmitter = eventEmitter;
         this.virtualFileSystem = virtualFileSystem;
@@ -69,6 +81,10 @@ public FileSystemWatchingBuildActionRunner(
         this.buildOperationRunner = buildOperationRunner;
         this.delegate = delegate;
         this.options = options;
+        this.persistentState = persistentState;
+        this.persistentStateFile = persistentStateFile;
+        this.rootDirectory = rootDirectory;
+        this.buildStartedTime = buildStartedTime;
     }
 
     @Override
@@ -91,6 +107,10 @@ public Result run(BuildAction action, BuildTreeLifecycleController buildControll
         if (watchFileSystemMode.isEnabled()) {
             dropVirtualFileSystemIfRequested(options, virtualFileSystem);
         }
+        boolean persistVfs = VirtualFileSystemServices.isPersistVfs(options);
+        if (persistVfs) {
+            persistentState.load(persistentStateFile);
+        }
         if (verboseVfsLogging == VfsLogging.VERBOSE) {
             logVfsStatistics("since last build", statStatisticsCollector, fileHasherStatisticsCollector, directorySnapshotterStatisticsCollector);
         }
@@ -134,6 +154,10 @@ public boolean isEnabled() {
         try {
             return delegate.run(action, buildController);
         } finally {
+            if (persistVfs) {
+                // Store before the build finishes, since that may empty the virtual file system
+                persistentState.store(persistentStateFile, virtualFileSystem, rootDirectory, buildStartedTime.getStartTime());
+            }
             int maximumNumberOfWatchedHierarchies = VirtualFileSystemServices.getMaximumNumberOfWatchedHierarchies(options);
             virtualFileSystem.beforeBuildFinished(
                 watchFileSystemMode,
@@ -17,6 +17,7 @@
 package org.gradle.tooling.internal.provider;
 
 import org.gradle.StartParameter;
+import org.gradle.api.internal.changedetection.state.FileContentHasherFactory;
 import org.gradle.api.internal.changedetection.state.FileHasherStatistics;
 import org.gradle.api.internal.tasks.userinput.BuildScanUserInputHandler;
 import org.gradle.api.internal.tasks.userinput.DefaultBuildScanUserInputHandler;
@@ -32,6 +33,7 @@
 import org.gradle.initialization.BuildRequestMetaData;
 import org.gradle.initialization.exception.ExceptionAnalyser;
 import org.gradle.initialization.layout.BuildLayout;
+import org.gradle.initialization.layout.ProjectCacheDir;
 import org.gradle.internal.build.BuildLayoutValidator;
 import org.gradle.internal.build.BuildStateRegistry;
 import org.gradle.internal.build.event.BuildEventListenerFactory;
@@ -67,6 +69,7 @@
 import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics;
 import org.gradle.internal.time.Clock;
 import org.gradle.internal.time.Time;
+import org.gradle.internal.vfs.impl.PersistentVirtualFileSystemState;
 import org.gradle.internal.watch.vfs.BuildLifecycleAwareVirtualFileSystem;
 import org.gradle.internal.watch.vfs.FileChangeListeners;
 import org.gradle.internal.work.WorkerLeaseService;
@@ -82,6 +85,7 @@
 import org.gradle.problems.buildtree.ProblemStream;
 import org.gradle.tooling.internal.provider.continuous.ContinuousBuildActionExecutor;
 
+import java.io.File;
 import java.util.List;
 
 import static org.gradle.internal.snapshot.CaseSensitivity.CASE_INSENSITIVE;
@@ -210,8 +214,12 @@ BuildTreeActionExecutor createActionExecutor(
             InternalOptions options,
             StartParameter startParameter,
             InternalProblems problemsService,
-            ProblemStream problemStream
+            ProblemStream problemStream,
+            PersistentVirtualFileSystemState persistentVirtualFileSystemState,
+            ProjectCacheDir projectCacheDir,
+            FileContentHasherFactory contentHasherFactory
         ) {
+            File persistentVirtualFileSystemStateFile = new File(projectCacheDir.getDir(), contentHasherFactory.getVersionedCacheName("vfs-state") + ".bin");
             return new InitProblems(
                 new InitDeprecationLoggingActionExecutor(
                     new RootBuildLifecycleBuildActionExecutor(
@@ -237,7 +245,11 @@ BuildTreeActionExecutor createActionExecutor(
                                     buildStartedTime,
                                     buildRequestMetaData,
                                     buildLoggerFactory),
-                                options),
+                                options,
+                                persistentVirtualFileSystemState,
+                                persistentVirtualFileSystemStateFile,
+                                buildLayout.getRootDirectory(),
+                                buildStartedTime),
                             gradleEnterprisePluginManager)),
                     eventEmitter,
                     startParameter,
@@ -20,6 +20,7 @@ import org.gradle.api.internal.StartParameterInternal
 import org.gradle.api.internal.changedetection.state.FileHasherStatistics
 import org.gradle.deployment.internal.Deployment
 import org.gradle.deployment.internal.DeploymentRegistryInternal
+import org.gradle.internal.buildevents.BuildStartedTime
 import org.gradle.internal.buildoption.DefaultInternalOptions
 import org.gradle.internal.buildtree.BuildActionRunner
 import org.gradle.internal.buildtree.BuildTreeLifecycleController
@@ -28,6 +29,7 @@ import org.gradle.internal.invocation.BuildAction
 import org.gradle.internal.operations.BuildOperationProgressEventEmitter
 import org.gradle.internal.operations.BuildOperationRunner
 import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics
+import org.gradle.internal.vfs.impl.PersistentVirtualFileSystemState
 import org.gradle.internal.watch.options.FileSystemWatchingSettingsFinalizedProgressDetails
 import org.gradle.internal.watch.registry.WatchMode
 import org.gradle.internal.watch.vfs.BuildLifecycleAwareVirtualFileSystem
@@ -57,7 +59,11 @@ class FileSystemWatchingBuildActionRunnerTest extends Specification {
         Stub(DirectorySnapshotterStatistics.Collector),
         buildOperationRunner,
         delegate,
-        new DefaultInternalOptions([:]))
+        new DefaultInternalOptions([:]),
+        Stub(PersistentVirtualFileSystemState),
+        new File("vfs-state.bin"),
+        new File("root"),
+        BuildStartedTime.startingAt(0))
 
     def setup() {
         _ * startParameter.getSystemPropertiesArgs() >> [:]
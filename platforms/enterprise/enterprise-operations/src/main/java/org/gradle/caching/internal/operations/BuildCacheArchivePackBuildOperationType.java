@@ -35,6 +35,13 @@ public interface Result {
 
         long getArchiveEntryCount();
 
+        /**
+         * The size of the archive before compression.
+         *
+         * @since 8.12
+         */
+        long getUncompressedSize();
+
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * A store operation to the in-memory tier in front of the local build cache.
+ *
+ * Storing an entry may evict the least recently used entries to stay within the size of the tier.
+ * Store operation results and failures are mutually exclusive.
+ *
+ * @since 8.12
+ */
+public final class BuildCacheMemoryStoreBuildOperationType implements BuildOperationType<BuildCacheMemoryStoreBuildOperationType.Details, BuildCacheMemoryStoreBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The cache key.
+         *
+         * @since 8.12
+         */
+        String getCacheKey();
+
+    }
+
+    public interface Result {
+
+        /**
+         * Whether the entry has actually been stored.
+         *
+         * Entries are not stored when they are too large for the tier.
+         *
+         * @since 8.12
+         */
+        boolean isStored();
+
+        /**
+         * The number of bytes of the uncompressed cache artifact.
+         *
+         * @since 8.12
+         */
+        long getArchiveSize();
+
+        /**
+         * The number of entries evicted to make room for the entry.
+         *
+         * @since 8.12
+         */
+        int getEvictedEntries();
+
+        /**
+         * The number of bytes of the entries evicted to make room for the entry.
+         *
+         * @since 8.12
+         */
+        long getEvictedSize();
+
+    }
+
+    private BuildCacheMemoryStoreBuildOperationType() {
+    }
+}
@@ -78,5 +78,14 @@ public enum CachingDisabledReasonCategory {
     /**
      * The work has failed validation.
      */
-    VALIDATION_FAILURE
+    VALIDATION_FAILURE,
+
+    /**
+     * Previous executions of the same type of work were faster than loading their results from the remote cache.
+     * <p>
+     * The result of the work is not loaded from the remote cache, but is still stored in the build cache.
+     *
+     * @since 8.12
+     */
+    CHEAPER_TO_REBUILD
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.integtests.resolve.caching
+
+import org.gradle.integtests.fixtures.AbstractHttpDependencyResolutionTest
+import org.gradle.test.fixtures.maven.MavenModule
+import org.gradle.test.precondition.Requires
+import org.gradle.test.preconditions.IntegTestPreconditions
+
+// The configuration cache skips resolution altogether when the cache entry is reused
+@Requires(IntegTestPreconditions.NotConfigCached)
+class ResolvedGraphCacheIntegrationTest extends AbstractHttpDependencyResolutionTest {
+    private static final String RESTORED = "from the resolved graph cache"
+
+    MavenModule moduleA
+    MavenModule moduleB
+
+    def setup() {
+        executer.requireOwnGradleUserHomeDir()
+        executer.beforeExecute {
+            withArgument("-Dorg.gradle.internal.dependency-resolution.resolved-graph-cache=true")
+            withArgument("--info")
+        }
+
+        def repo = mavenHttpRepo
+        moduleB = repo.module("org", "b", "1.0").publish()
+        moduleA = repo.module("org", "a", "1.0").dependsOn(moduleB).publish()
+
+        buildFile << """
+            configurations {
+                conf
+            }
+            dependencies {
+                conf 'org:a:1.0'
+            }
+
+            def conf = configurations.conf
+            task graph {
+                doLast {
+                    println "components: " + conf.incoming.resolutionResult.allComponents.findAll { it.id instanceof ModuleComponentIdentifier }*.id*.displayName.sort()
+                }
+            }
+            task resolveFiles {
+                doLast {
+                    println "files: " + conf.files*.name.sort()
+                }
+            }
+        """
+    }
+
+    def "restores graph resolved by an earlier build"() {
+        given:
+        useHttpRepo()
+        moduleA.pom.expectGet()
+        moduleB.pom.expectGet()
+
+        when:
+        succeeds "graph"
+
+        then:
+        outputContains("components: [org:a:1.0, org:b:1.0]")
+        outputDoesNotContain(RESTORED)
+
+        when:
+        server.resetExpectations()
+        succeeds "graph"
+
+        then:
+        outputContains("components: [org:a:1.0, org:b:1.0]")
+        outputContains(RESTORED)
+    }
+
+    def "resolves graph fully in later builds once the artifacts of a restored graph have been queried"() {
+        given:
+        useHttpRepo()
+        moduleA.pom.expectGet()
+        moduleB.pom.expectGet()
+        succeeds "graph"
+
+        when:
+        server.resetExpectations()
+        moduleA.artifact.expectGet()
+        moduleB.artifact.expectGet()
+        succeeds "resolveFiles"
+
+        then:
+        outputContains("files: [a-1.0.jar, b-1.0.jar]")
+        outputContains(RESTORED)
+
+        when:
+        server.resetExpectations()
+        succeeds "resolveFiles"
+
+        then:
+        outputContains("files: [a-1.0.jar, b-1.0.jar]")
+        outputDoesNotContain(RESTORED)
+    }
+
+    def "does not cache graphs resolved from a file repository"() {
+        given:
+        buildFile << """
+            repositories {
+                maven { url = '${mavenRepo.uri}' }
+            }
+        """
+
+        when:
+        succeeds "graph"
+        succeeds "graph"
+
+        then:
+        outputContains("components: [org:a:1.0, org:b:1.0]")
+        outputDoesNotContain(RESTORED)
+    }
+
+    def "does not restore graph when a dependency changes"() {
+        given:
+        useHttpRepo()
+        moduleA.pom.expectGet()
+        moduleB.pom.expectGet()
+        succeeds "graph"
+
+        when:
+        server.resetExpectations()
+        buildFile.text = buildFile.text.replace("conf 'org:a:1.0'", "conf 'org:b:1.0'")
+        succeeds "graph"
+
+        then:
+        outputContains("components: [org:b:1.0]")
+        outputDoesNotContain(RESTORED)
+    }
+
+    private void useHttpRepo() {
+        buildFile << """
+            repositories {
+                maven { url = '${mavenHttpRepo.uri}' }
+            }
+        """
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory;
+import org.gradle.api.internal.component.ArtifactType;
+import org.gradle.api.internal.file.TestFiles;
+import org.gradle.internal.component.external.model.ModuleDependencyMetadata;
+import org.gradle.internal.resource.local.FileResourceRepository;
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares parsing the POMs of modules that all import the same large BOM, as done when resolving a graph of modules of a platform:
+ * with the {@link ImportedPomCache} and the {@link ParentPomCache} shared by all parses of the build, and with the BOM and its parent parsed again for every importing POM.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ImportedPomBenchmark {
+    private static final int MODULES = 200;
+    private static final int MANAGED_DEPENDENCIES = 500;
+    private static final int DEPENDENCIES = 10;
+
+    private final FileResourceRepository fileRepository = TestFiles.fileRepository();
+    private final VersionSelectorScheme versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser());
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory();
+    private final MavenMutableModuleMetadataFactory metadataFactory = DependencyManagementTestUtil.mavenMetadataFactory();
+    private File tmpDir;
+    private File parentFile;
+    private File bomFile;
+    private final List<File> pomFiles = new ArrayList<>(MODULES);
+    private final DescriptorParseContext parseContext = new DescriptorParseContext() {
+        @Override
+        public LocallyAvailableExternalResource getMetaDataArtifact(ModuleComponentIdentifier componentIdentifier, ArtifactType artifactType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LocallyAvailableExternalResource getMetaDataArtifact(ModuleDependencyMetadata dependencyMetadata, VersionSelector acceptor, ArtifactType artifactType) {
+            return fileRepository.resource(dependencyMetadata.getSelector().getModule().equals("platform-parent") ? parentFile : bomFile);
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("imported-pom").toFile();
+
+        parentFile = write("platform-parent.pom", "<project><modelVersion>4.0.0</modelVersion>"
+            + "<groupId>org.example</groupId><artifactId>platform-parent</artifactId><version>1.0</version><packaging>pom</packaging>"
+            + "<properties><platform.version>1.0</platform.version></properties></project>");
+
+        StringBuilder bom = new StringBuilder("<project><modelVersion>4.0.0</modelVersion>"
+            + "<parent><groupId>org.example</groupId><artifactId>platform-parent</artifactId><version>1.0</version></parent>"
+            + "<artifactId>platform-bom</artifactId><packaging>pom</packaging><dependencyManagement><dependencies>");
+        for (int i = 0; i < MANAGED_DEPENDENCIES; i++) {
+            bom.append("<dependency><groupId>org.example.group").append(i % 20).append("</groupId><artifactId>library-").append(i)
+                .append("</artifactId><version>${platform.version}</version>")
+                .append("<exclusions><exclusion><groupId>commons-logging</groupId><artifactId>commons-logging</artifactId></exclusion></exclusions>")
+                .append("</dependency>");
+        }
+        bomFile = write("platform-bom.pom", bom.append("</dependencies></dependencyManagement></project>").toString());
+
+        for (int i = 0; i < MODULES; i++) {
+            StringBuilder pom = new StringBuilder("<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>org.example.app</groupId><artifactId>module-" + i + "</artifactId><version>1.0</version>"
+                + "<dependencyManagement><dependencies><dependency><groupId>org.example</groupId><artifactId>platform-bom</artifactId>"
+                + "<version>1.0</version><type>pom</type><scope>import</scope></dependency></dependencies></dependencyManagement><dependencies>");
+            for (int k = 0; k < DEPENDENCIES; k++) {
+                int library = (i * DEPENDENCIES + k) % MANAGED_DEPENDENCIES;
+                pom.append("<dependency><groupId>org.example.group").append(library % 20).append("</groupId><artifactId>library-").append(library).append("</artifactId></dependency>");
+            }
+            pomFiles.add(write("module-" + i + ".pom", pom.append("</dependencies></project>").toString()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tmpDir.toPath())) {
+            paths.sorted(Collections.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODULES)
+    public void parseWithImportedPomCache(Blackhole bh) {
+        GradlePomModuleDescriptorParser parser = createParser(new ImportedPomCache(), new ParentPomCache());
+        for (File pomFile : pomFiles) {
+            bh.consume(parser.parseMetaData(parseContext, pomFile, true).getResult());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODULES)
+    public void parseWithoutImportedPomCache(Blackhole bh) {
+        for (File pomFile : pomFiles) {
+            bh.consume(createParser(new ImportedPomCache(), new ParentPomCache()).parseMetaData(parseContext, pomFile, true).getResult());
+        }
+    }
+
+    private GradlePomModuleDescriptorParser createParser(ImportedPomCache importedPomCache, ParentPomCache parentPomCache) {
+        return new GradlePomModuleDescriptorParser(
+            versionSelectorScheme,
+            moduleIdentifierFactory,
+            fileRepository,
+            metadataFactory,
+            importedPomCache,
+            parentPomCache
+        );
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(tmpDir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer;
+import org.gradle.api.internal.artifacts.dependencies.DefaultImmutableVersionConstraint;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer;
+import org.gradle.internal.component.external.descriptor.MavenScope;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector;
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
+import org.gradle.internal.component.external.model.maven.MavenDependencyDescriptor;
+import org.gradle.internal.component.external.model.maven.MavenDependencyType;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.util.AttributeTestUtil;
+import org.gradle.util.TestUtil;
+import org.gradle.util.internal.SimpleMapInterner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares reading the module metadata of a large synthetic graph from the cache, as done on a warm resolution:
+ * from the {@link ModuleMetadataStore} pack of the repository, and from one descriptor file per module as the store did before.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ModuleMetadataStoreBenchmark {
+    private static final int MODULES = 5000;
+    private static final int DEPENDENCIES = 10;
+    private static final String REPOSITORY = "repository";
+
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory();
+    private final Interner<String> stringInterner = SimpleMapInterner.threadSafe();
+    private final ModuleMetadataSerializer serializer = new ModuleMetadataSerializer(
+        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+        new CapabilitySelectorSerializer(),
+        DependencyManagementTestUtil.mavenMetadataFactory(),
+        DependencyManagementTestUtil.ivyMetadataFactory(),
+        new ModuleSourcesSerializer(Collections.emptyMap())
+    );
+
+    private File tmpDir;
+    private ModuleMetadataStore store;
+    private final List<ModuleComponentAtRepositoryKey> keys = new ArrayList<>(MODULES);
+    private final List<ModuleMetadataCacheEntry> entries = new ArrayList<>(MODULES);
+    private final List<File> descriptorFiles = new ArrayList<>(MODULES);
+
+    @Setup
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("module-metadata").toFile();
+        store = new ModuleMetadataStore(new File(tmpDir, "descriptors"), serializer, moduleIdentifierFactory, stringInterner);
+        for (int i = 0; i < MODULES; i++) {
+            ModuleComponentIdentifier id = componentId(i);
+            List<MavenDependencyDescriptor> dependencies = new ArrayList<>(DEPENDENCIES);
+            for (int k = 1; k <= DEPENDENCIES; k++) {
+                ModuleComponentIdentifier target = componentId((i + k) % MODULES);
+                dependencies.add(new MavenDependencyDescriptor(
+                    MavenScope.Compile,
+                    MavenDependencyType.DEPENDENCY,
+                    DefaultModuleComponentSelector.newSelector(target.getModuleIdentifier(), DefaultImmutableVersionConstraint.of(target.getVersion())),
+                    null,
+                    ImmutableList.of()
+                ));
+            }
+            ModuleComponentResolveMetadata metadata = DependencyManagementTestUtil.mavenMetadataFactory().create(id, dependencies).asImmutable();
+
+            ModuleComponentAtRepositoryKey key = new ModuleComponentAtRepositoryKey(REPOSITORY, id);
+            keys.add(key);
+            entries.add(store.putModuleDescriptor(key, metadata, ModuleMetadataCacheEntry.forMetaData(metadata, 0)));
+
+            File descriptorFile = new File(tmpDir, "files/" + i + "/descriptor.bin");
+            descriptorFile.getParentFile().mkdirs();
+            try (KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(descriptorFile))) {
+                serializer.write(encoder, metadata, new HashMap<>());
+            }
+            descriptorFiles.add(descriptorFile);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tmpDir.toPath())) {
+            paths.sorted(Collections.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODULES)
+    public void readFromPack(Blackhole bh) {
+        for (int i = 0; i < MODULES; i++) {
+            bh.consume(store.getModuleDescriptor(keys.get(i), entries.get(i)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODULES)
+    public void readFromDescriptorFiles(Blackhole bh) throws IOException {
+        for (int i = 0; i < MODULES; i++) {
+            try (StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(new FileInputStream(descriptorFiles.get(i))), stringInterner)) {
+                bh.consume(serializer.read(decoder, moduleIdentifierFactory, new HashMap<>()));
+            }
+        }
+    }
+
+    private static ModuleComponentIdentifier componentId(int index) {
+        return DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org.example.group" + index % 50, "module-" + index), "1." + index);
+    }
+}
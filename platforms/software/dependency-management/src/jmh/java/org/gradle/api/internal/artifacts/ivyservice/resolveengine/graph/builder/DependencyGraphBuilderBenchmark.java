@@ -0,0 +1,265 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ComponentSelectorConverter;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionSelector;
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil;
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution;
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionApplicator;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelector;
+import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.RootComponentMetadataBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.dependencies.DefaultExcludeRuleConverter;
+import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.dependencies.DefaultLocalVariantGraphResolveStateBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.LatestModuleConflictResolver;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.attributes.AttributeDesugaring;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.api.internal.attributes.immutable.ImmutableAttributesSchema;
+import org.gradle.internal.Describables;
+import org.gradle.internal.buildoption.DefaultInternalOptions;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector;
+import org.gradle.internal.component.external.model.ImmutableCapabilities;
+import org.gradle.internal.component.local.model.DefaultLocalVariantGraphResolveMetadata;
+import org.gradle.internal.component.local.model.DefaultLocalVariantGraphResolveState;
+import org.gradle.internal.component.local.model.LocalComponentArtifactMetadata;
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveMetadata;
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveState;
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveStateFactory;
+import org.gradle.internal.component.local.model.LocalVariantGraphResolveState;
+import org.gradle.internal.component.local.model.LocalVariantMetadata;
+import org.gradle.internal.component.local.model.TestComponentIdentifiers;
+import org.gradle.internal.component.model.ComponentConfigurationIdentifier;
+import org.gradle.internal.component.model.ComponentGraphSpecificResolveState;
+import org.gradle.internal.component.model.ComponentIdGenerator;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.GraphVariantSelector;
+import org.gradle.internal.component.model.LocalComponentDependencyMetadata;
+import org.gradle.internal.component.model.LocalOriginDependencyMetadata;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.operations.TestBuildOperationExecutor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.resolver.DependencyToComponentIdResolver;
+import org.gradle.internal.resolve.result.BuildableComponentIdResolveResult;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.util.AttributeTestUtil;
+import org.gradle.util.TestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a graph of {@value #MODULES} modules with {@value #DEPENDENCIES} dependencies each, whose metadata is already in memory.
+ * <p>
+ * Each invocation counts as one operation per edge, so running with {@code -prof gc} reports the bytes allocated per edge
+ * by the graph builder as {@code gc.alloc.rate.norm}.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DependencyGraphBuilderBenchmark {
+    private static final int MODULES = 2000;
+    private static final int DEPENDENCIES = 10;
+    private static final int EDGES = MODULES * DEPENDENCIES;
+
+    private final DefaultVersionComparator versionComparator = new DefaultVersionComparator();
+    private final VersionParser versionParser = new VersionParser();
+    private final AttributeDesugaring desugaring = new AttributeDesugaring(AttributeTestUtil.attributesFactory());
+    private final LocalComponentGraphResolveStateFactory resolveStateFactory = new LocalComponentGraphResolveStateFactory(
+        desugaring,
+        new ComponentIdGenerator(),
+        new DefaultLocalVariantGraphResolveStateBuilder(
+            new ComponentIdGenerator(),
+            null,
+            new DefaultExcludeRuleConverter(new DefaultImmutableModuleIdentifierFactory())
+        ),
+        TestUtil.calculatedValueContainerFactory(),
+        TestUtil.inMemoryCacheFactory()
+    );
+
+    private final Map<ModuleIdentifier, LocalComponentGraphResolveState> modules = new HashMap<>();
+    private final Map<ComponentIdentifier, LocalComponentGraphResolveState> components = new HashMap<>();
+    private DependencyGraphBuilder builder;
+    private RootComponentMetadataBuilder.RootComponentState rootComponent;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < MODULES; i++) {
+            ModuleIdentifier moduleId = DefaultModuleIdentifier.newId("org.example", "m" + i);
+            List<LocalOriginDependencyMetadata> dependencies = new ArrayList<>(DEPENDENCIES);
+            for (int k = 1; k <= DEPENDENCIES; k++) {
+                dependencies.add(dependencyOn((i + k) % MODULES));
+            }
+            ModuleVersionIdentifier id = DefaultModuleVersionIdentifier.newId(moduleId, "1.0");
+            ComponentIdentifier componentId = DefaultModuleComponentIdentifier.newId(id);
+            LocalComponentGraphResolveState component = component(id, componentId, Collections.singletonList(variant("default", componentId, dependencies)));
+            modules.put(moduleId, component);
+            components.put(componentId, component);
+        }
+
+        ComponentIdentifier rootId = TestComponentIdentifiers.newProjectId(":root");
+        LocalComponentGraphResolveState root = component(
+            DefaultModuleVersionIdentifier.newId("org.example", "root", "1.0"),
+            rootId,
+            Collections.singletonList(variant("root", rootId, Collections.singletonList(dependencyOn(0))))
+        );
+        rootComponent = new RootComponentMetadataBuilder.RootComponentState() {
+            @Override
+            public LocalComponentGraphResolveState getRootComponent() {
+                return root;
+            }
+
+            @Override
+            public LocalVariantGraphResolveState getRootVariant() {
+                return root.getConfigurationLegacy("root");
+            }
+        };
+
+        builder = new DependencyGraphBuilder(
+            new ModuleExclusions(),
+            AttributeTestUtil.attributesFactory(),
+            AttributeTestUtil.services(),
+            desugaring,
+            new DefaultVersionSelectorScheme(versionComparator, versionParser),
+            versionComparator,
+            new ComponentIdGenerator(),
+            versionParser,
+            new GraphVariantSelector(AttributeTestUtil.services(), DependencyManagementTestUtil.newFailureHandler()),
+            new TestBuildOperationExecutor(),
+            new DefaultExecutorFactory(),
+            new DefaultInternalOptions(Collections.emptyMap())
+        );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public void resolveGraph(Blackhole bh) {
+        builder.resolve(
+            rootComponent,
+            Collections.emptyList(),
+            dependency -> true,
+            new ModuleSelectorConverter(),
+            new InMemoryIdResolver(),
+            new InMemoryMetadataResolver(),
+            ModuleReplacementsData.NO_OP,
+            DependencySubstitutionApplicator.NO_OP,
+            new LatestModuleConflictResolver<>(versionComparator, versionParser),
+            Collections.emptyList(),
+            ConflictResolution.latest,
+            false,
+            false,
+            new DependencyGraphVisitor() {
+                @Override
+                public void visitNode(DependencyGraphNode node) {
+                    bh.consume(node);
+                }
+            }
+        );
+    }
+
+    private static LocalOriginDependencyMetadata dependencyOn(int module) {
+        ModuleComponentSelector selector = DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org.example", "m" + module), new DefaultMutableVersionConstraint("1.0"));
+        return new LocalComponentDependencyMetadata(selector, "default", Collections.emptyList(), Collections.emptyList(), false, false, true, false, false, null);
+    }
+
+    private LocalComponentGraphResolveState component(ModuleVersionIdentifier id, ComponentIdentifier componentId, List<LocalVariantGraphResolveState> variants) {
+        return resolveStateFactory.realizedStateFor(new LocalComponentGraphResolveMetadata(id, componentId, "release", ImmutableAttributesSchema.EMPTY), variants);
+    }
+
+    private LocalVariantGraphResolveState variant(String name, ComponentIdentifier componentId, List<LocalOriginDependencyMetadata> dependencies) {
+        LocalVariantMetadata artifacts = new LocalVariantMetadata(
+            name,
+            new ComponentConfigurationIdentifier(componentId, name),
+            Describables.of(name),
+            ImmutableAttributes.EMPTY,
+            ImmutableCapabilities.EMPTY,
+            TestUtil.calculatedValueContainerFactory().create(Describables.of(name, "artifacts"), ImmutableList.<LocalComponentArtifactMetadata>of())
+        );
+        return resolveStateFactory.realizedVariantStateFor(
+            componentId,
+            new DefaultLocalVariantGraphResolveMetadata(name, true, ImmutableAttributes.EMPTY, ImmutableCapabilities.EMPTY, false),
+            new DefaultLocalVariantGraphResolveState.VariantDependencyMetadata(dependencies, Collections.emptySet(), Collections.emptyList()),
+            ImmutableSet.of(artifacts)
+        );
+    }
+
+    private static class ModuleSelectorConverter implements ComponentSelectorConverter {
+        @Override
+        public ModuleIdentifier getModule(ComponentSelector selector) {
+            return ((ModuleComponentSelector) selector).getModuleIdentifier();
+        }
+
+        @Override
+        public ModuleVersionSelector getSelector(ComponentSelector selector) {
+            return DefaultModuleVersionSelector.newSelector((ModuleComponentSelector) selector);
+        }
+    }
+
+    private class InMemoryIdResolver implements DependencyToComponentIdResolver {
+        @Override
+        public void resolve(DependencyMetadata dependency, VersionSelector acceptor, @Nullable VersionSelector rejector, BuildableComponentIdResolveResult result) {
+            LocalComponentGraphResolveState component = modules.get(((ModuleComponentSelector) dependency.getSelector()).getModuleIdentifier());
+            result.resolved(component.getId(), component.getMetadata().getModuleVersionId());
+        }
+    }
+
+    private class InMemoryMetadataResolver implements ComponentMetaDataResolver {
+        @Override
+        public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+            result.resolved(components.get(identifier), ComponentGraphSpecificResolveState.EMPTY_STATE);
+        }
+
+        @Override
+        public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+            return true;
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.gradle.api.internal.artifacts;
 
+import javax.annotation.Nullable;
+
 /**
  * A factory for {@link ComponentMetadataProcessor}.
  * <p>
@@ -34,4 +36,14 @@ public interface ComponentMetadataProcessorFactory {
      * @return a {@code ComponentMetadataProcessor}
      */
     ComponentMetadataProcessor createComponentMetadataProcessor(MetadataResolutionContext resolutionContext);
+
+    /**
+     * Describes the processing applied by the processors this factory creates, in a way that is stable across builds.
+     *
+     * @return the description, or {@code null} if the processing depends on rules that cannot be described, such as rules implemented in build logic
+     */
+    @Nullable
+    default String getStableProcessingDescription() {
+        return null;
+    }
 }
@@ -22,6 +22,7 @@
 import org.gradle.internal.component.external.model.VariantDerivationStrategy;
 import org.gradle.internal.management.DependencyResolutionManagementInternal;
 
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 
 public interface ComponentMetadataHandlerInternal {
@@ -30,5 +31,11 @@ public interface ComponentMetadataHandlerInternal {
     VariantDerivationStrategy getVariantDerivationStrategy();
     void onAddRule(Consumer<DisplayName> consumer);
 
+    /**
+     * @see ComponentMetadataProcessorFactory#getStableProcessingDescription()
+     */
+    @Nullable
+    String getStableProcessingDescription();
+
     ComponentMetadataProcessorFactory createFactory(DependencyResolutionManagementInternal dependencyResolutionManagement);
 }
@@ -26,6 +26,7 @@
 import org.gradle.internal.typeconversion.NotationParserBuilder;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -84,6 +85,11 @@ public boolean participatesInReplacements(ModuleIdentifier moduleId) {
         return targets.contains(moduleId) || replacements.containsKey(moduleId);
     }
 
+    @Override
+    public Map<ModuleIdentifier, Replacement> getReplacements() {
+        return Collections.unmodifiableMap(replacements);
+    }
+
     private static void detectCycles(Map<ModuleIdentifier, Replacement> replacements, ModuleIdentifier source, ModuleIdentifier target) {
         if (source.equals(target)) {
             throw new InvalidUserDataException(String.format("Cannot declare module replacement that replaces self: %s->%s", source, target));
@@ -60,6 +60,7 @@
 import org.gradle.internal.typeconversion.NotationParserBuilder;
 import org.gradle.internal.typeconversion.UnsupportedNotationException;
 
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -249,6 +250,15 @@ public void onAddRule(Consumer<DisplayName> consumer) {
         metadataRuleContainer.onAddRule(consumer);
     }
 
+    @Nullable
+    @Override
+    public String getStableProcessingDescription() {
+        if (!metadataRuleContainer.isEmpty()) {
+            return null;
+        }
+        return getVariantDerivationStrategy().getClass().getName();
+    }
+
     @Override
     public ComponentMetadataProcessorFactory createFactory(DependencyResolutionManagementInternal dependencyResolutionManagement) {
         // we need to defer the creation of the actual factory until configuration is completed
@@ -269,7 +279,18 @@ public ComponentMetadataProcessorFactory createFactory(DependencyResolutionManag
             }
             return this;
         };
-        return resolutionContext -> actualHandler.get().createComponentMetadataProcessor(resolutionContext);
+        return new ComponentMetadataProcessorFactory() {
+            @Override
+            public ComponentMetadataProcessor createComponentMetadataProcessor(MetadataResolutionContext resolutionContext) {
+                return actualHandler.get().createComponentMetadataProcessor(resolutionContext);
+            }
+
+            @Nullable
+            @Override
+            public String getStableProcessingDescription() {
+                return actualHandler.get().getStableProcessingDescription();
+            }
+        };
     }
 
     static class ComponentMetadataDetailsMatchingSpec implements Spec<ComponentMetadataDetails> {
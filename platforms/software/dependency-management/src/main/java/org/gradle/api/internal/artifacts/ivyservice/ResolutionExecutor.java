@@ -20,6 +20,7 @@
 import com.google.common.collect.ImmutableSet;
 import org.gradle.StartParameter;
 import org.gradle.api.InvalidUserCodeException;
+import org.gradle.api.artifacts.ResolvedConfiguration;
 import org.gradle.api.artifacts.ResolutionStrategy;
 import org.gradle.api.artifacts.ResolveException;
 import org.gradle.api.artifacts.UnresolvedDependency;
@@ -42,18 +43,22 @@
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ExternalModuleComponentResolverFactory;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ResolverProviderFactories;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ResolverProviderFactory;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
 import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.RootComponentMetadataBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.projectmodule.LocalComponentRegistry;
 import org.gradle.api.internal.artifacts.ivyservice.projectmodule.ProjectDependencyResolver;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ComponentResolversChain;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.DependencyGraphResolver;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ArtifactSelectionSpec;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ArtifactVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultResolvedArtifactsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultVisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DependencyArtifactsVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ResolvedArtifactSetResolver;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ResolvedArtifactsGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ResolvedVariantCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VariantArtifactSetCache;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactSet;
@@ -76,9 +81,13 @@
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedLocalComponentsResultGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AdhocHandlingComponentResultSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.CompleteComponentResultSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionDescriptorFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.FileDependencyCollectingGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphRecorder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ByteArrayBinaryStore;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
@@ -96,6 +105,7 @@
 import org.gradle.api.internal.attributes.immutable.ImmutableAttributesSchema;
 import org.gradle.api.internal.project.ProjectStateRegistry;
 import org.gradle.api.internal.tasks.TaskDependencyFactory;
+import org.gradle.api.internal.tasks.TaskDependencyResolveContext;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.cache.internal.BinaryStore;
@@ -104,10 +114,16 @@
 import org.gradle.internal.component.model.DependencyMetadata;
 import org.gradle.internal.component.model.GraphVariantSelector;
 import org.gradle.internal.component.resolution.failure.ResolutionFailureHandler;
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.lazy.Lazy;
 import org.gradle.internal.locking.DependencyLockingGraphVisitor;
 import org.gradle.internal.model.CalculatedValueContainerFactory;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -130,6 +146,7 @@
  * </ul>
  */
 public class ResolutionExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionExecutor.class);
     private static final Spec<DependencyMetadata> IS_LOCAL_EDGE = element -> element.getSelector() instanceof ProjectComponentSelector;
     private final DependencyGraphResolver dependencyGraphResolver;
     private final GlobalDependencyResolutionRules metadataHandler;
@@ -162,6 +179,11 @@ public class ResolutionExecutor {
     private final AttributeSchemaServices attributeSchemaServices;
     private final ResolutionFailureHandler resolutionFailureHandler;
     private final VariantArtifactSetCache variantArtifactSetCache;
+    private final ResolvedGraphCache resolvedGraphCache;
+    private final ResolvedGraphCacheKeyFactory resolvedGraphCacheKeyFactory;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final CompleteComponentResultSerializer completeComponentResultSerializer;
+    private final boolean refreshDependencies;
 
     @Inject
     public ResolutionExecutor(
@@ -195,7 +217,11 @@ public ResolutionExecutor(
         ConsumerProvidedVariantFinder consumerProvidedVariantFinder,
         AttributeSchemaServices attributeSchemaServices,
         ResolutionFailureHandler resolutionFailureHandler,
-        VariantArtifactSetCache variantArtifactSetCache
+        VariantArtifactSetCache variantArtifactSetCache,
+        ResolvedGraphCache resolvedGraphCache,
+        VersionSelectorScheme versionSelectorScheme,
+        CompleteComponentResultSerializer completeComponentResultSerializer,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher
     ) {
         this.dependencyGraphResolver = dependencyGraphResolver;
         this.metadataHandler = metadataHandler;
@@ -228,6 +254,11 @@ public ResolutionExecutor(
         this.attributeSchemaServices = attributeSchemaServices;
         this.resolutionFailureHandler = resolutionFailureHandler;
         this.variantArtifactSetCache = variantArtifactSetCache;
+        this.resolvedGraphCache = resolvedGraphCache;
+        this.resolvedGraphCacheKeyFactory = new ResolvedGraphCacheKeyFactory(metadataHandler, attributeContainerSerializer, capabilitySelectorSerializer, classLoaderHierarchyHasher);
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.completeComponentResultSerializer = completeComponentResultSerializer;
+        this.refreshDependencies = startParameter.isRefreshDependencies();
     }
 
     /**
@@ -292,9 +323,80 @@ public ResolverResults resolveBuildDependencies(ResolveContext resolveContext) {
      * @return An immutable result set, containing the full graph of resolved components.
      */
     public ResolverResults resolveGraph(ResolveContext resolveContext, List<ResolutionAwareRepository> repositories) {
+        RootComponentMetadataBuilder.RootComponentState rootComponent = resolveContext.toRootComponent();
+        if (!resolvedGraphCache.isEnabled()) {
+            return resolveGraph(resolveContext, rootComponent, repositories, null);
+        }
+
+        HashCode key = resolvedGraphCacheKeyFactory.keyFor(rootComponent, resolveContext.getSyntheticDependencies(), resolveContext.getResolutionStrategy(), repositories);
+        if (key == null) {
+            return resolveGraph(resolveContext, rootComponent, repositories, null);
+        }
 
+        if (!refreshDependencies) {
+            ResolvedGraphCache.Entry entry = resolvedGraphCache.load(key);
+            if (entry != null) {
+                if (entry.isArtifactsQueried()) {
+                    // The artifacts of the graph are likely to be queried again, which needs a full resolution anyway
+                    return resolveGraph(resolveContext, rootComponent, repositories, null);
+                }
+                return restoreGraph(resolveContext, rootComponent, repositories, key, entry);
+            }
+        }
+
+        ResolvedGraphRecorder recorder = new ResolvedGraphRecorder(versionSelectorScheme, attributeContainerSerializer, capabilitySelectorSerializer, completeComponentResultSerializer, componentSelectionDescriptorFactory);
+        ResolverResults results = resolveGraph(resolveContext, rootComponent, repositories, recorder);
+        ResolvedGraphCache.Entry entry = recorder.complete();
+        if (entry != null && !results.getVisitedGraph().hasAnyFailure()) {
+            resolvedGraphCache.store(key, entry);
+        }
+        return results;
+    }
+
+    /**
+     * Restores a graph from the {@link ResolvedGraphCache}.
+     *
+     * The artifacts of the graph depend on the metadata of the variants in the graph, which is not part of the cached graph.
+     * They are resolved by a full resolution of the graph, the first time they are queried.
+     * The entry then records that the artifacts were queried, so that later builds resolve the graph fully right away instead of restoring it.
+     */
+    private ResolverResults restoreGraph(
+        ResolveContext resolveContext,
+        RootComponentMetadataBuilder.RootComponentState rootComponent,
+        List<ResolutionAwareRepository> repositories,
+        HashCode key,
+        ResolvedGraphCache.Entry entry
+    ) {
+        dependencyLockingProvider.confirmNotLocked(resolveContext.getDependencyLockingId());
+        LOGGER.info("Restored dependency graph of {} from the resolved graph cache", resolveContext.getResolutionHost().getDisplayName());
+
+        StoreSet stores = storeFactory.createStoreSet();
+        MinimalResolutionResult resolutionResult = StreamingResolutionResultBuilder.resolutionResultFrom(
+            ByteArrayBinaryStore.dataOf(entry.getGraph()),
+            entry.getRootVariantId(),
+            entry.getRootAttributes(),
+            stores.newModelCache(),
+            attributeContainerSerializer,
+            capabilitySelectorSerializer,
+            completeComponentResultSerializer,
+            componentSelectionDescriptorFactory
+        );
+        VisitedGraphResults graphResults = new DefaultVisitedGraphResults(resolutionResult, Collections.emptySet(), null);
+
+        Lazy<ResolverResults> fullResults = Lazy.locking().of(() -> {
+            resolvedGraphCache.store(key, entry.withArtifactsQueried());
+            return resolveGraph(resolveContext, rootComponent, repositories, null);
+        });
+        return DefaultResolverResults.graphResolved(graphResults, new DeferredVisitedArtifactSet(fullResults), new DeferredLegacyResolverResults(fullResults));
+    }
+
+    private ResolverResults resolveGraph(
+        ResolveContext resolveContext,
+        RootComponentMetadataBuilder.RootComponentState rootComponent,
+        List<ResolutionAwareRepository> repositories,
+        @Nullable ResolvedGraphRecorder recorder
+    ) {
         ResolutionHost resolutionHost = resolveContext.getResolutionHost();
-        RootComponentMetadataBuilder.RootComponentState rootComponent = resolveContext.toRootComponent();
         ImmutableAttributes requestAttributes = rootComponent.getRootVariant().getAttributes();
         ResolutionStrategy.SortOrder defaultSortOrder = resolveContext.getResolutionStrategy().getSortOrder();
         ImmutableAttributesSchema consumerSchema = rootComponent.getRootComponent().getMetadata().getAttributesSchema();
@@ -322,6 +424,9 @@ public ResolverResults resolveGraph(ResolveContext resolveContext, List<Resoluti
         graphVisitors.add(newModelBuilder);
         graphVisitors.add(localComponentsVisitor);
         graphVisitors.add(failureCollector);
+        if (recorder != null) {
+            graphVisitors.add(recorder);
+        }
 
         FailOnVersionConflictGraphVisitor versionConflictVisitor = null;
         if (resolutionStrategy.getConflictResolution() == ConflictResolution.strict) {
@@ -538,4 +643,64 @@ private ComponentResolvers getResolvers(
 
         return new ComponentResolversChain(resolvers);
     }
+
+    /**
+     * The artifacts of a graph restored from the {@link ResolvedGraphCache}, which are resolved the first time they are queried.
+     */
+    private static class DeferredVisitedArtifactSet implements VisitedArtifactSet {
+        private final Lazy<ResolverResults> fullResults;
+
+        DeferredVisitedArtifactSet(Lazy<ResolverResults> fullResults) {
+            this.fullResults = fullResults;
+        }
+
+        @Override
+        public SelectedArtifactSet select(ArtifactSelectionSpec spec) {
+            return new DeferredSelectedArtifactSet(fullResults.map(results -> results.getVisitedArtifacts().select(spec)));
+        }
+
+        @Override
+        public SelectedArtifactResults selectLegacy(ArtifactSelectionSpec spec, boolean lenient) {
+            return fullResults.get().getVisitedArtifacts().selectLegacy(spec, lenient);
+        }
+    }
+
+    /**
+     * The legacy results of a graph restored from the {@link ResolvedGraphCache}, which are resolved the first time they are queried.
+     */
+    private static class DeferredLegacyResolverResults implements ResolverResults.LegacyResolverResults {
+        private final Lazy<ResolverResults> fullResults;
+
+        DeferredLegacyResolverResults(Lazy<ResolverResults> fullResults) {
+            this.fullResults = fullResults;
+        }
+
+        @Override
+        public LegacyVisitedArtifactSet getLegacyVisitedArtifactSet() {
+            return dependencySpec -> new DeferredSelectedArtifactSet(fullResults.map(results -> results.getLegacyResults().getLegacyVisitedArtifactSet().select(dependencySpec)));
+        }
+
+        @Override
+        public ResolvedConfiguration getResolvedConfiguration() {
+            return fullResults.get().getLegacyResults().getResolvedConfiguration();
+        }
+    }
+
+    private static class DeferredSelectedArtifactSet implements SelectedArtifactSet {
+        private final Lazy<SelectedArtifactSet> delegate;
+
+        DeferredSelectedArtifactSet(Lazy<SelectedArtifactSet> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visitDependencies(TaskDependencyResolveContext context) {
+            delegate.get().visitDependencies(context);
+        }
+
+        @Override
+        public void visitArtifacts(ArtifactVisitor visitor, boolean continueOnSelectionFailure) {
+            delegate.get().visitArtifacts(visitor, continueOnSelectionFailure);
+        }
+    }
 }
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.RootComponentMetadataBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectorSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.IvyArtifactNameSerializer;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.artifacts.repositories.descriptor.FlatDirRepositoryDescriptor;
+import org.gradle.api.internal.artifacts.repositories.descriptor.RepositoryDescriptor;
+import org.gradle.api.internal.artifacts.repositories.descriptor.UrlRepositoryDescriptor;
+import org.gradle.api.internal.artifacts.repositories.resolver.ResourcePattern;
+import org.gradle.api.internal.attributes.DefaultOrderedCompatibilityRule;
+import org.gradle.api.internal.attributes.DefaultOrderedDisambiguationRule;
+import org.gradle.api.internal.attributes.immutable.ImmutableAttributesSchema;
+import org.gradle.api.internal.capabilities.ImmutableCapability;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.action.ConfigurableRule;
+import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveState;
+import org.gradle.internal.component.local.model.LocalVariantGraphResolveState;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.ExcludeMetadata;
+import org.gradle.internal.component.model.ForcingDependencyMetadata;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.component.model.LocalOriginDependencyMetadata;
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Calculates the key of a resolved graph in the {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphCache}.
+ * <p>
+ * The key covers the root variant and its dependencies, the consumer attribute schema and its rules, the module replacements,
+ * the repositories and the parts of the resolution strategy that can influence the graph.
+ * Resolutions that use inputs that cannot be fingerprinted reliably, such as dependency substitution rules, component selection rules,
+ * component metadata rules, capability resolution rules, attribute rules implemented by lambdas or build logic that cannot be hashed,
+ * or dependency locking, have no key.
+ * Neither have resolutions that use repositories backed by local files, such as {@code mavenLocal()} or flat directories,
+ * as their metadata can change at any time without a change to the repository.
+ */
+class ResolvedGraphCacheKeyFactory {
+    private static final Pattern URI_SCHEME = Pattern.compile("^([a-zA-Z][a-zA-Z0-9+.-]*):");
+
+    private final GlobalDependencyResolutionRules metadataHandler;
+    private final AttributeContainerSerializer attributeContainerSerializer;
+    private final CapabilitySelectorSerializer capabilitySelectorSerializer;
+    private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
+
+    ResolvedGraphCacheKeyFactory(
+        GlobalDependencyResolutionRules metadataHandler,
+        AttributeContainerSerializer attributeContainerSerializer,
+        CapabilitySelectorSerializer capabilitySelectorSerializer,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher
+    ) {
+        this.metadataHandler = metadataHandler;
+        this.attributeContainerSerializer = attributeContainerSerializer;
+        this.capabilitySelectorSerializer = capabilitySelectorSerializer;
+        this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
+    }
+
+    /**
+     * Returns the key of the graph for the given resolution, or null when the graph cannot be cached.
+     */
+    @Nullable
+    HashCode keyFor(
+        RootComponentMetadataBuilder.RootComponentState rootComponent,
+        List<? extends DependencyMetadata> syntheticDependencies,
+        ResolutionStrategyInternal resolutionStrategy,
+        List<ResolutionAwareRepository> repositories
+    ) {
+        String metadataProcessing = metadataHandler.getComponentMetadataProcessorFactory().getStableProcessingDescription();
+        if (metadataProcessing == null
+            || resolutionStrategy.isDependencyLockingEnabled()
+            || resolutionStrategy.getIncludeAllSelectableVariantResults()
+            || !resolutionStrategy.getDependencySubstitutionRule().isEmpty()
+            || !resolutionStrategy.getComponentSelection().getRules().isEmpty()
+            || resolutionStrategy.getCapabilitiesResolutionRules().hasRules()
+            || repositories.stream().anyMatch(repository -> isBackedByLocalFiles(repository.getDescriptor()))) {
+            return null;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(output)) {
+            ComponentSelectorSerializer selectorSerializer = new ComponentSelectorSerializer(attributeContainerSerializer, capabilitySelectorSerializer);
+
+            LocalComponentGraphResolveState component = rootComponent.getRootComponent();
+            encoder.writeString(component.getMetadata().getId().getDisplayName());
+            encoder.writeString(component.getMetadata().getModuleVersionId().toString());
+            if (!writeSchema(encoder, component.getMetadata().getAttributesSchema())) {
+                return null;
+            }
+
+            LocalVariantGraphResolveState variant = rootComponent.getRootVariant();
+            encoder.writeString(variant.getName());
+            attributeContainerSerializer.write(encoder, variant.getAttributes());
+            encoder.writeSmallInt(variant.getCapabilities().asSet().size());
+            for (ImmutableCapability capability : variant.getCapabilities()) {
+                encoder.writeString(capability.getGroup());
+                encoder.writeString(capability.getName());
+                encoder.writeNullableString(capability.getVersion());
+            }
+            writeDependencies(encoder, selectorSerializer, variant.getDependencies());
+            writeDependencies(encoder, selectorSerializer, syntheticDependencies);
+            writeExcludes(encoder, variant.getExcludes());
+
+            encoder.writeSmallInt(repositories.size());
+            for (ResolutionAwareRepository repository : repositories) {
+                RepositoryDescriptor descriptor = repository.getDescriptor();
+                encoder.writeString(descriptor.getId());
+                encoder.writeString(descriptor.getName());
+                encoder.writeString(descriptor.getType().name());
+                encoder.writeString(descriptor.getProperties().toString());
+            }
+
+            encoder.writeString(resolutionStrategy.getConflictResolution().name());
+            encoder.writeBoolean(resolutionStrategy.isDependencyVerificationEnabled());
+            encoder.writeString(metadataProcessing);
+            writeModuleReplacements(encoder, metadataHandler.getModuleMetadataProcessor().getModuleReplacements());
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return Hashing.hashBytes(output.toByteArray());
+    }
+
+    private static boolean isBackedByLocalFiles(RepositoryDescriptor descriptor) {
+        if (descriptor instanceof FlatDirRepositoryDescriptor) {
+            return true;
+        }
+        if (descriptor instanceof UrlRepositoryDescriptor) {
+            UrlRepositoryDescriptor urlDescriptor = (UrlRepositoryDescriptor) descriptor;
+            if (urlDescriptor.url != null && isLocalFile(urlDescriptor.url.toString())) {
+                return true;
+            }
+            for (ResourcePattern metadataResource : urlDescriptor.getMetadataResources()) {
+                if (isLocalFile(metadataResource.getPattern())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given location is a file, either because it uses the {@code file} scheme or because it has no scheme at all.
+     * Single letter schemes are Windows drive letters.
+     */
+    private static boolean isLocalFile(String location) {
+        Matcher matcher = URI_SCHEME.matcher(location);
+        if (!matcher.find()) {
+            return true;
+        }
+        String scheme = matcher.group(1);
+        return scheme.length() == 1 || scheme.equalsIgnoreCase("file");
+    }
+
+    /**
+     * Writes the attributes of the schema with their compatibility and disambiguation rules.
+     *
+     * @return whether all rules could be fingerprinted
+     */
+    private boolean writeSchema(Encoder encoder, ImmutableAttributesSchema schema) throws IOException {
+        encoder.writeSmallInt(schema.getAttributes().size());
+        for (Attribute<?> attribute : schema.getAttributes()) {
+            encoder.writeString(attribute.getName());
+            encoder.writeString(attribute.getType().getName());
+            if (!writeRules(encoder, schema.compatibilityRuleActions(attribute)) || !writeRules(encoder, schema.disambiguationRuleActions(attribute))) {
+                return false;
+            }
+        }
+        encoder.writeSmallInt(schema.getAttributeDisambiguationPrecedence().size());
+        for (Attribute<?> attribute : schema.getAttributeDisambiguationPrecedence()) {
+            encoder.writeString(attribute.getName());
+        }
+        return true;
+    }
+
+    private boolean writeRules(Encoder encoder, List<? extends Action<?>> rules) throws IOException {
+        encoder.writeSmallInt(rules.size());
+        for (Action<?> rule : rules) {
+            if (!writeRule(encoder, rule)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rules added as classes are identified by their implementation and their parameters, ordered rules by the implementation of their comparator.
+     * Comparators with state and rules of other kinds cannot be fingerprinted.
+     */
+    private boolean writeRule(Encoder encoder, Action<?> rule) throws IOException {
+        if (rule instanceof InstantiatingAction) {
+            List<? extends ConfigurableRule<?>> configurableRules = ((InstantiatingAction<?>) rule).getRules().getConfigurableRules();
+            encoder.writeString("rule-classes");
+            encoder.writeSmallInt(configurableRules.size());
+            for (ConfigurableRule<?> configurableRule : configurableRules) {
+                if (!writeImplementation(encoder, configurableRule.getRuleClass())) {
+                    return false;
+                }
+                Hasher hasher = Hashing.newHasher();
+                configurableRule.getRuleParams().appendToHasher(hasher);
+                encoder.writeBinary(hasher.hash().toByteArray());
+            }
+            return true;
+        }
+        if (rule instanceof DefaultOrderedCompatibilityRule) {
+            DefaultOrderedCompatibilityRule<?> orderedRule = (DefaultOrderedCompatibilityRule<?>) rule;
+            encoder.writeString("compatible-when-ordered");
+            encoder.writeBoolean(orderedRule.isReverse());
+            return writeComparator(encoder, orderedRule.getComparator());
+        }
+        if (rule instanceof DefaultOrderedDisambiguationRule) {
+            DefaultOrderedDisambiguationRule<?> orderedRule = (DefaultOrderedDisambiguationRule<?>) rule;
+            encoder.writeString("disambiguate-by-order");
+            encoder.writeBoolean(orderedRule.isPickFirst());
+            return writeComparator(encoder, orderedRule.getComparator());
+        }
+        return false;
+    }
+
+    private boolean writeComparator(Encoder encoder, Comparator<?> comparator) throws IOException {
+        Class<?> type = comparator.getClass();
+        if (type.isSynthetic()) {
+            // Lambdas
+            return false;
+        }
+        if (comparator instanceof Enum) {
+            encoder.writeString(((Enum<?>) comparator).name());
+        } else if (hasState(type)) {
+            return false;
+        }
+        return writeImplementation(encoder, type);
+    }
+
+    /**
+     * Whether instances of the given class have fields that are not transient, and whose values can therefore change the behavior of the instance.
+     */
+    private static boolean hasState(Class<?> type) {
+        for (Class<?> current = type; current != null && current != Object.class && current != Enum.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the name of the class together with the hash of its class loader, which covers the implementation of the class.
+     * Classes of the JDK are identified by their name only.
+     *
+     * @return whether the class loader of the class is known to Gradle
+     */
+    private boolean writeImplementation(Encoder encoder, Class<?> type) throws IOException {
+        encoder.writeString(type.getName());
+        ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null) {
+            return true;
+        }
+        HashCode classLoaderHash = classLoaderHierarchyHasher.getClassLoaderHash(classLoader);
+        if (classLoaderHash == null) {
+            return false;
+        }
+        encoder.writeBinary(classLoaderHash.toByteArray());
+        return true;
+    }
+
+    private static void writeModuleReplacements(Encoder encoder, ModuleReplacementsData moduleReplacements) throws IOException {
+        Map<ModuleIdentifier, ModuleReplacementsData.Replacement> replacements = moduleReplacements.getReplacements();
+        encoder.writeSmallInt(replacements.size());
+        // Sort the replacements, as they are declared in no particular order
+        List<Map.Entry<ModuleIdentifier, ModuleReplacementsData.Replacement>> sortedReplacements = replacements.entrySet().stream()
+            .sorted(Comparator.comparing(entry -> entry.getKey().toString()))
+            .collect(Collectors.toList());
+        for (Map.Entry<ModuleIdentifier, ModuleReplacementsData.Replacement> replacement : sortedReplacements) {
+            encoder.writeString(replacement.getKey().toString());
+            encoder.writeString(replacement.getValue().getTarget().toString());
+            encoder.writeNullableString(replacement.getValue().getReason());
+        }
+    }
+
+    private static void writeDependencies(Encoder encoder, ComponentSelectorSerializer selectorSerializer, List<? extends DependencyMetadata> dependencies) throws IOException {
+        encoder.writeSmallInt(dependencies.size());
+        for (DependencyMetadata dependency : dependencies) {
+            selectorSerializer.write(encoder, dependency.getSelector());
+            encoder.writeBoolean(dependency.isChanging());
+            encoder.writeBoolean(dependency.isTransitive());
+            encoder.writeBoolean(dependency.isConstraint());
+            encoder.writeBoolean(dependency.isEndorsingStrictVersions());
+            encoder.writeBoolean(dependency instanceof ForcingDependencyMetadata && ((ForcingDependencyMetadata) dependency).isForce());
+            encoder.writeNullableString(dependency.getReason());
+            encoder.writeNullableString(dependency instanceof LocalOriginDependencyMetadata ? ((LocalOriginDependencyMetadata) dependency).getDependencyConfiguration() : null);
+            writeExcludes(encoder, dependency.getExcludes());
+            encoder.writeSmallInt(dependency.getArtifacts().size());
+            for (IvyArtifactName artifact : dependency.getArtifacts()) {
+                IvyArtifactNameSerializer.INSTANCE.write(encoder, artifact);
+            }
+        }
+    }
+
+    private static void writeExcludes(Encoder encoder, List<? extends ExcludeMetadata> excludes) throws IOException {
+        encoder.writeSmallInt(excludes.size());
+        for (ExcludeMetadata exclude : excludes) {
+            encoder.writeString(exclude.getModuleId().toString());
+            IvyArtifactNameSerializer.INSTANCE.writeNullable(encoder, exclude.getArtifact());
+            encoder.writeNullableString(exclude.getMatcher());
+        }
+    }
+}
@@ -40,8 +40,10 @@
 import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.Collection;
@@ -64,15 +66,20 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
     private final VersionSelectorScheme mavenVersionSelectorScheme;
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final MavenMutableModuleMetadataFactory metadataFactory;
+    private final ImportedPomCache importedPomCache;
+    private final ParentPomCache parentPomCache;
 
     public GradlePomModuleDescriptorParser(VersionSelectorScheme gradleVersionSelectorScheme,
                                            ImmutableModuleIdentifierFactory moduleIdentifierFactory,
-                                           FileResourceRepository fileResourceRepository, MavenMutableModuleMetadataFactory metadataFactory) {
+                                           FileResourceRepository fileResourceRepository, MavenMutableModuleMetadataFactory metadataFactory,
+                                           ImportedPomCache importedPomCache, ParentPomCache parentPomCache) {
         super(fileResourceRepository);
         this.gradleVersionSelectorScheme = gradleVersionSelectorScheme;
         mavenVersionSelectorScheme = new MavenVersionSelectorScheme(gradleVersionSelectorScheme);
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.metadataFactory = metadataFactory;
+        this.importedPomCache = importedPomCache;
+        this.parentPomCache = parentPomCache;
     }
 
     @Override
@@ -129,7 +136,7 @@ private void doParsePom(DescriptorParseContext parserSettings, GradlePomModuleDe
                 ModuleComponentSelector parentId = DefaultModuleComponentSelector.newSelector(
                     DefaultModuleIdentifier.newId(parentGroupId, parentArtifactId),
                     new DefaultImmutableVersionConstraint(parentVersion));
-                PomReader parentPomReader = parsePomForSelector(parserSettings, parentId, pomReader.getAllPomProperties());
+                PomReader parentPomReader = parseParentPom(parserSettings, parentId, pomReader.getAllPomProperties());
                 pomReader.setPomParent(parentPomReader);
 
                 // Current POM can derive version/artifactId from parent. Resolve GAV and substitute values
@@ -203,8 +210,7 @@ private Map<MavenDependencyKey, PomDependencyMgt> parseImportedDependencyMgts(De
                 ModuleComponentSelector importedId = DefaultModuleComponentSelector.newSelector(
                     DefaultModuleIdentifier.newId(currentDependencyMgt.getGroupId(), currentDependencyMgt.getArtifactId()),
                     new DefaultImmutableVersionConstraint(currentDependencyMgt.getVersion()));
-                PomReader importedPom = parsePomForSelector(parseContext, importedId, new HashMap<>());
-                for (Map.Entry<MavenDependencyKey, PomDependencyMgt> entry : importedPom.getDependencyMgt().entrySet()) {
+                for (Map.Entry<MavenDependencyKey, PomDependencyMgt> entry : parseImportedPom(parseContext, importedId).entrySet()) {
                     if (!importedDependencyMgts.containsKey(entry.getKey())) {
                         importedDependencyMgts.put(entry.getKey(), entry.getValue());
                     }
@@ -214,6 +220,24 @@ private Map<MavenDependencyKey, PomDependencyMgt> parseImportedDependencyMgts(De
         return importedDependencyMgts;
     }
 
+    /**
+     * Returns the dependency management of an imported POM, parsing it when it has not been imported yet in this build.
+     *
+     * @param parseContext Parse context
+     * @param selector Imported POM
+     * @return Dependency management of the imported POM
+     */
+    private Map<MavenDependencyKey, PomDependencyMgt> parseImportedPom(DescriptorParseContext parseContext, ModuleComponentSelector selector) throws IOException, SAXException {
+        LocallyAvailableExternalResource localResource = getMetaDataArtifact(parseContext, selector);
+        File pomFile = localResource.getFile();
+        Map<MavenDependencyKey, PomDependencyMgt> dependencyMgt = importedPomCache.getDependencyMgt(pomFile);
+        if (dependencyMgt != null) {
+            return dependencyMgt;
+        }
+        PomReader importedPom = parsePomResource(parseContext, localResource, new HashMap<>());
+        return importedPomCache.putDependencyMgt(pomFile, importedPom.getDependencyMgt());
+    }
+
     /**
      * Checks if dependency has scope "import".
      *
@@ -228,11 +252,23 @@ private PomReader parsePomForId(DescriptorParseContext parseContext, ModuleCompo
         return parsePomResource(parseContext, parseContext.getMetaDataArtifact(identifier, ArtifactType.MAVEN_POM), childProperties);
     }
 
-    private PomReader parsePomForSelector(DescriptorParseContext parseContext, ModuleComponentSelector selector, Map<String, String> childProperties) throws IOException, SAXException {
+    /**
+     * Parses a parent POM, reusing its document when it has already been parsed in this build.
+     *
+     * @param parseContext Parse context
+     * @param selector Parent POM
+     * @param childProperties Properties of the child POM, used to interpolate the parent POM
+     * @return Parent POM reader
+     */
+    private PomReader parseParentPom(DescriptorParseContext parseContext, ModuleComponentSelector selector, Map<String, String> childProperties) throws IOException, SAXException {
+        Document document = parentPomCache.getDocument(getMetaDataArtifact(parseContext, selector));
+        return parsePom(parseContext, new PomReader(document, moduleIdentifierFactory, childProperties));
+    }
+
+    private LocallyAvailableExternalResource getMetaDataArtifact(DescriptorParseContext parseContext, ModuleComponentSelector selector) {
         ModuleDependencyMetadata moduleDependencyMetadata = toDependencyMetadata(selector);
         VersionSelector acceptor = mavenVersionSelectorScheme.parseSelector(selector.getVersion());
-        LocallyAvailableExternalResource localResource = parseContext.getMetaDataArtifact(moduleDependencyMetadata, acceptor, ArtifactType.MAVEN_POM);
-        return parsePomResource(parseContext, localResource, childProperties);
+        return parseContext.getMetaDataArtifact(moduleDependencyMetadata, acceptor, ArtifactType.MAVEN_POM);
     }
 
     private ModuleDependencyMetadata toDependencyMetadata(ModuleComponentSelector selector) {
@@ -240,7 +276,10 @@ private ModuleDependencyMetadata toDependencyMetadata(ModuleComponentSelector se
     }
 
     private PomReader parsePomResource(DescriptorParseContext parseContext, LocallyAvailableExternalResource localResource, Map<String, String> childProperties) throws SAXException, IOException {
-        PomReader pomReader = new PomReader(localResource, moduleIdentifierFactory, childProperties);
+        return parsePom(parseContext, new PomReader(localResource, moduleIdentifierFactory, childProperties));
+    }
+
+    private PomReader parsePom(DescriptorParseContext parseContext, PomReader pomReader) throws SAXException, IOException {
         GradlePomModuleDescriptorBuilder mdBuilder = new GradlePomModuleDescriptorBuilder(pomReader, gradleVersionSelectorScheme, mavenVersionSelectorScheme);
         doParsePom(parseContext, mdBuilder, pomReader);
         return pomReader;
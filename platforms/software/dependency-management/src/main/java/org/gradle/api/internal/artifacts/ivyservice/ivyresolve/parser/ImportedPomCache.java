@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.MavenDependencyKey;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.PomDependencyMgt;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the dependency management of the POMs imported with the {@code import} scope during a build,
+ * so that a BOM imported by many modules, together with its parents and the BOMs it imports itself, is only parsed once.
+ * <p>
+ * Imported POMs are parsed without the properties of the importing POM, so their dependency management only depends on the content of the POM file.
+ * Entries are keyed by the file, its length and its modification time, so that a POM of a local repository that changes during the build is parsed again.
+ * The cached elements are detached from the DOM of the imported POM, so they can be shared between threads.
+ */
+@ServiceScope(Scope.Build.class)
+public class ImportedPomCache {
+    private final ConcurrentMap<PomFileKey, Map<MavenDependencyKey, PomDependencyMgt>> dependencyMgts = new ConcurrentHashMap<>();
+
+    @Nullable
+    Map<MavenDependencyKey, PomDependencyMgt> getDependencyMgt(File pomFile) {
+        return dependencyMgts.get(PomFileKey.of(pomFile));
+    }
+
+    /**
+     * Caches the dependency management of the given imported POM and returns the cached copy.
+     * A POM can be imported concurrently by several resolutions, in which case the first parsed copy is kept.
+     */
+    Map<MavenDependencyKey, PomDependencyMgt> putDependencyMgt(File pomFile, Map<MavenDependencyKey, PomDependencyMgt> dependencyMgt) {
+        // Not using computeIfAbsent(), as parsing a POM can import further POMs
+        ImmutableMap.Builder<MavenDependencyKey, PomDependencyMgt> builder = ImmutableMap.builderWithExpectedSize(dependencyMgt.size());
+        for (Map.Entry<MavenDependencyKey, PomDependencyMgt> entry : dependencyMgt.entrySet()) {
+            builder.put(entry.getKey(), new DetachedDependencyMgt(entry.getValue()));
+        }
+        Map<MavenDependencyKey, PomDependencyMgt> detached = builder.build();
+        Map<MavenDependencyKey, PomDependencyMgt> previous = dependencyMgts.putIfAbsent(PomFileKey.of(pomFile), detached);
+        return previous != null ? previous : detached;
+    }
+
+    private static class DetachedDependencyMgt implements PomDependencyMgt {
+        private final MavenDependencyKey id;
+        private final String version;
+        private final String scope;
+        private final List<ModuleIdentifier> excludedModules;
+
+        DetachedDependencyMgt(PomDependencyMgt dependencyMgt) {
+            this.id = dependencyMgt.getId();
+            this.version = dependencyMgt.getVersion();
+            this.scope = dependencyMgt.getScope();
+            this.excludedModules = ImmutableList.copyOf(dependencyMgt.getExcludedModules());
+        }
+
+        @Override
+        public MavenDependencyKey getId() {
+            return id;
+        }
+
+        @Override
+        public String getGroupId() {
+            return id.getGroupId();
+        }
+
+        @Override
+        public String getArtifactId() {
+            return id.getArtifactId();
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getScope() {
+            return scope;
+        }
+
+        @Override
+        public String getType() {
+            return id.getType();
+        }
+
+        @Override
+        public String getClassifier() {
+            return id.getClassifier();
+        }
+
+        @Override
+        public List<ModuleIdentifier> getExcludedModules() {
+            return excludedModules;
+        }
+    }
+}
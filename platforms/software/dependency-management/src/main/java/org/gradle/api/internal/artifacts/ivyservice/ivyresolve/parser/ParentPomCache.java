@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the parsed documents of the parent POMs used during a build, so that a parent shared by many modules is only parsed once.
+ * <p>
+ * Only the XML document is cached. Each child reads its own copy of the document, interpolated with the properties of that child.
+ * Entries are keyed by the file, its length and its modification time, like the entries of the {@link ImportedPomCache}.
+ */
+@ServiceScope(Scope.Build.class)
+public class ParentPomCache {
+    private final ConcurrentMap<PomFileKey, Document> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a copy of the document of the given parent POM, parsing the POM when it has not been parsed yet in this build.
+     */
+    Document getDocument(LocallyAvailableExternalResource resource) {
+        PomFileKey key = PomFileKey.of(resource.getFile());
+        Document document = documents.get(key);
+        if (document == null) {
+            // Not using computeIfAbsent(), so that a POM being parsed does not block the resolutions using other POMs
+            Document parsed = PomReader.parseDocument(resource);
+            Document previous = documents.putIfAbsent(key, parsed);
+            document = previous != null ? previous : parsed;
+        }
+        return copyOf(document);
+    }
+
+    private static Document copyOf(Document document) {
+        // The DOM updates internal state when it is read, so the cached document is only read to copy it
+        synchronized (document) {
+            Document copy = (Document) document.cloneNode(true);
+            copy.setDocumentURI(document.getDocumentURI());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * Identifies the content of a POM file by the file, its length and its modification time,
+ * so that a POM of a local repository that changes during the build is parsed again.
+ */
+class PomFileKey {
+    private final File file;
+    private final long length;
+    private final long lastModified;
+
+    private PomFileKey(File file, long length, long lastModified) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    static PomFileKey of(File file) {
+        return new PomFileKey(file, file.length(), file.lastModified());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PomFileKey key = (PomFileKey) o;
+        return length == key.length && lastModified == key.lastModified && file.equals(key.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file, length, lastModified);
+    }
+}
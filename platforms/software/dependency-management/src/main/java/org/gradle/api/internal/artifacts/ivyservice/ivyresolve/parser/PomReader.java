@@ -137,16 +137,16 @@ public InputSource resolveEntity(String publicId, String systemId) {
     private final Element parentElement;
 
     public PomReader(final LocallyAvailableExternalResource resource, ImmutableModuleIdentifierFactory moduleIdentifierFactory, Map<String, String> childPomProperties) throws SAXException {
+        this(parseDocument(resource), moduleIdentifierFactory, childPomProperties);
+    }
+
+    /**
+     * Creates a reader for an already parsed POM. The reader does not modify the document, but it must not be read concurrently.
+     */
+    public PomReader(Document pomDomDoc, ImmutableModuleIdentifierFactory moduleIdentifierFactory, Map<String, String> childPomProperties) throws SAXException {
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         setPomProperties(childPomProperties);
-        final String systemId = resource.getFile().toURI().toASCIIString();
-        Document pomDomDoc = resource.withContent(inputStream -> {
-            try {
-                return parseToDom(inputStream, systemId);
-            } catch (Exception e) {
-                throw new MetaDataParseException("POM", resource, e);
-            }
-        }).getResult();
+        String systemId = pomDomDoc.getDocumentURI();
         projectElement = pomDomDoc.getDocumentElement();
         if (!PROJECT.equals(projectElement.getNodeName()) && !MODEL.equals(projectElement.getNodeName())) {
             throw new SAXParseException("project must be the root tag", systemId, systemId, 0, 0);
@@ -248,6 +248,20 @@ private static DocumentBuilder getDocBuilder(EntityResolver entityResolver) {
         }
     }
 
+    /**
+     * Parses the given POM into a document, whose URI is the location of the POM file.
+     */
+    public static Document parseDocument(LocallyAvailableExternalResource resource) {
+        String systemId = resource.getFile().toURI().toASCIIString();
+        return resource.withContent(inputStream -> {
+            try {
+                return parseToDom(inputStream, systemId);
+            } catch (Exception e) {
+                throw new MetaDataParseException("POM", resource, e);
+            }
+        }).getResult();
+    }
+
     private static Document parseToDom(InputStream stream, String systemId) throws IOException, SAXException {
         // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
         // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
@@ -25,11 +25,20 @@ class ModuleMetadataCacheEntry {
     final byte type;
     final boolean isChanging;
     final long createTimestamp;
+    // location of the descriptor in the module metadata store, when present
+    final long descriptorOffset;
+    final int descriptorLength;
 
     ModuleMetadataCacheEntry(byte type, boolean isChanging, long createTimestamp) {
+        this(type, isChanging, createTimestamp, -1, 0);
+    }
+
+    ModuleMetadataCacheEntry(byte type, boolean isChanging, long createTimestamp, long descriptorOffset, int descriptorLength) {
         this.type = type;
         this.isChanging = isChanging;
         this.createTimestamp = createTimestamp;
+        this.descriptorOffset = descriptorOffset;
+        this.descriptorLength = descriptorLength;
     }
 
     public static ModuleMetadataCacheEntry forMissingModule(long createTimestamp) {
@@ -40,6 +49,10 @@ public static ModuleMetadataCacheEntry forMetaData(ModuleComponentResolveMetadat
         return new ModuleMetadataCacheEntry(TYPE_PRESENT, metaData.isChanging(), createTimestamp);
     }
 
+    public ModuleMetadataCacheEntry withDescriptorAt(long offset, int length) {
+        return new ModuleMetadataCacheEntry(type, isChanging, createTimestamp, offset, length);
+    }
+
     public boolean isMissing() {
         return type == TYPE_MISSING;
     }
@@ -32,6 +32,8 @@ public void write(Encoder encoder, ModuleMetadataCacheEntry value) throws Except
             case ModuleMetadataCacheEntry.TYPE_PRESENT:
                 encoder.writeBoolean(value.isChanging);
                 encoder.writeLong(value.createTimestamp);
+                encoder.writeSmallLong(value.descriptorOffset);
+                encoder.writeSmallInt(value.descriptorLength);
                 break;
             default:
                 throw new IllegalArgumentException("Don't know how to serialize meta-data entry: " + value);
@@ -48,7 +50,9 @@ public ModuleMetadataCacheEntry read(Decoder decoder) throws Exception {
             case ModuleMetadataCacheEntry.TYPE_PRESENT:
                 boolean isChanging = decoder.readBoolean();
                 createTimestamp = decoder.readLong();
-                return new ModuleMetadataCacheEntry(ModuleMetadataCacheEntry.TYPE_PRESENT, isChanging, createTimestamp);
+                long descriptorOffset = decoder.readSmallLong();
+                int descriptorLength = decoder.readSmallInt();
+                return new ModuleMetadataCacheEntry(ModuleMetadataCacheEntry.TYPE_PRESENT, isChanging, createTimestamp, descriptorOffset, descriptorLength);
             default:
                 throw new IllegalArgumentException("Don't know how to deserialize meta-data entry of type " + type);
         }
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only file holding the serialized module metadata records of a single repository.
+ * <p>
+ * Records are addressed by their offset and length, as stored in the module metadata index.
+ * Each record starts with a header holding its length and the id of its component, so that an index entry
+ * that does not point at the start of the record of its component is detected, and so that the file can be scanned.
+ * <p>
+ * The file is read through read-only memory-mapped segments, so reading a record does not open the file,
+ * and only the parts of the file that are actually read are paged in.
+ * The mapping is extended when a record is requested that was appended after the file was last mapped, possibly by another process,
+ * and replaced when the file itself has been replaced.
+ * <p>
+ * Records that are not referenced by the index anymore, for example the previous descriptors of refreshed modules,
+ * are removed by {@link #compact(LiveRecords) compacting} the file.
+ */
+class ModuleMetadataPack {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMetadataPack.class);
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int RECORD_MAGIC = 0x474d4450;
+    // magic, record length, id length
+    private static final int RECORD_PREFIX_LENGTH = 12;
+    private static final long MIN_COMPACTION_LENGTH = 1024 * 1024;
+    private static final long COMPACTION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+    private static final ComponentIdentifierSerializer COMPONENT_ID_SERIALIZER = new ComponentIdentifierSerializer();
+
+    private final File file;
+    private final File compactionMarker;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long mappedLength;
+    @Nullable
+    private Object mappedIdentity;
+    private boolean compactionChecked;
+
+    ModuleMetadataPack(File file) {
+        this(file, SEGMENT_SIZE);
+    }
+
+    ModuleMetadataPack(File file, int segmentSize) {
+        this.file = file;
+        this.compactionMarker = new File(file.getParentFile(), file.getName() + ".compacted");
+        this.segmentSize = segmentSize;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Creates the record for the given serialized descriptor.
+     */
+    static byte[] createRecord(ComponentIdentifier componentId, byte[] descriptor) throws IOException {
+        ByteArrayOutputStream encodedId = new ByteArrayOutputStream();
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(encodedId)) {
+            COMPONENT_ID_SERIALIZER.write(encoder, componentId);
+        }
+        int length = RECORD_PREFIX_LENGTH + encodedId.size() + descriptor.length;
+        ByteArrayOutputStream record = new ByteArrayOutputStream(length);
+        DataOutputStream output = new DataOutputStream(record);
+        output.writeInt(RECORD_MAGIC);
+        output.writeInt(length);
+        output.writeInt(encodedId.size());
+        encodedId.writeTo(output);
+        output.write(descriptor);
+        return record.toByteArray();
+    }
+
+    /**
+     * Returns the serialized descriptor of the record at the given position, or null when the file does not contain a record for the given component there.
+     */
+    @Nullable
+    synchronized InputStream read(long offset, int length, ComponentIdentifier componentId) throws IOException {
+        if (offset < 0 || length < RECORD_PREFIX_LENGTH || !checkIdentity() || (offset + length > mappedLength && !map(offset + length))) {
+            return null;
+        }
+        InputStream record = openRecord(offset, length);
+        return componentId.equals(readHeader(record, length)) ? record : null;
+    }
+
+    /**
+     * Appends a record to the file and returns its offset.
+     * <p>
+     * Must be called while holding the lock of the cache that contains the file, so that there is a single writer.
+     */
+    synchronized long append(byte[] record) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Returns true when the file should be compacted, at most once a day and only once per instance.
+     */
+    synchronized boolean isCompactionDue() {
+        if (compactionChecked) {
+            return false;
+        }
+        compactionChecked = true;
+        if (file.length() < MIN_COMPACTION_LENGTH || System.currentTimeMillis() - compactionMarker.lastModified() < COMPACTION_INTERVAL) {
+            return false;
+        }
+        try {
+            if (!compactionMarker.createNewFile() && !compactionMarker.setLastModified(System.currentTimeMillis())) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the file with only its live records, when at least half of the file is taken by records that are not live.
+     * Returns the new offset of each live record by its previous offset, or null when the file was not rewritten.
+     * <p>
+     * Must be called while holding the lock of the cache that contains the file, so that there is a single writer.
+     * The entries pointing at the live records must be updated afterwards.
+     */
+    @Nullable
+    synchronized Map<Long, Long> compact(LiveRecords liveRecords) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        Path tempFile;
+        Map<Long, Long> relocated = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> live = new ArrayList<>();
+            long liveLength = 0;
+            long position = 0;
+            while (position < size) {
+                int length = readRecordLength(channel, position, size);
+                ComponentIdentifier componentId = length < 0 ? null : readHeader(new ByteArrayInputStream(readFully(channel, position, length)), length);
+                if (componentId == null) {
+                    // Not the start of a record, for example the remains of an interrupted write
+                    position++;
+                    continue;
+                }
+                if (liveRecords.isLive(componentId, position, length)) {
+                    live.add(new long[]{position, length});
+                    liveLength += length;
+                }
+                position += length;
+            }
+            if (liveLength > size / 2) {
+                return null;
+            }
+
+            tempFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                long newOffset = 0;
+                for (long[] record : live) {
+                    long copied = 0;
+                    while (copied < record[1]) {
+                        copied += channel.transferTo(record[0] + copied, record[1] - copied, target);
+                    }
+                    relocated.put(record[0], newOffset);
+                    newOffset += record[1];
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+        }
+
+        segments.clear();
+        mappedLength = 0;
+        mappedIdentity = null;
+        try {
+            Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Some file systems do not allow replacing a file that is mapped, keep the file as it is
+            LOGGER.debug("Could not replace {} with its compacted copy.", file, e);
+            Files.deleteIfExists(tempFile);
+            return null;
+        }
+        return relocated;
+    }
+
+    /**
+     * Drops the mapped segments when the file has been replaced since it was mapped.
+     * Returns false when the file does not exist.
+     */
+    private boolean checkIdentity() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        // Some file systems report the modification time as creation time, prefer the file key as it is stable across appends
+        Object identity = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        if (!identity.equals(mappedIdentity)) {
+            segments.clear();
+            mappedLength = 0;
+            mappedIdentity = identity;
+        }
+        return true;
+    }
+
+    /**
+     * Maps the file up to its current length. Returns false when the file is shorter than the requested length.
+     */
+    private boolean map(long requiredLength) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < requiredLength) {
+                return false;
+            }
+            // The last segment may have been mapped while the file was shorter
+            if (!segments.isEmpty() && segments.get(segments.size() - 1).capacity() < segmentSize) {
+                segments.remove(segments.size() - 1);
+            }
+            for (long start = (long) segments.size() * segmentSize; start < size; start += segmentSize) {
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start)));
+            }
+            mappedLength = size;
+            return true;
+        }
+    }
+
+    private InputStream openRecord(long offset, int length) {
+        int index = (int) (offset / segmentSize);
+        int start = (int) (offset % segmentSize);
+        if (start + length <= segmentSize) {
+            ByteBuffer record = segments.get(index).duplicate();
+            record.position(start);
+            record.limit(start + length);
+            return new RecordInputStream(record);
+        }
+
+        // The record spans several segments, copy it
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            ByteBuffer segment = segments.get(index++).duplicate();
+            segment.position(start);
+            int count = Math.min(length - copied, segment.remaining());
+            segment.get(bytes, copied, count);
+            copied += count;
+            start = 0;
+        }
+        return new RecordInputStream(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads the header of a record of the given length and returns its component id, leaving the stream at the start of the serialized descriptor.
+     * Returns null when the stream does not start with the header of a record of the given length.
+     */
+    @Nullable
+    private static ComponentIdentifier readHeader(InputStream record, int length) {
+        DataInputStream input = new DataInputStream(record);
+        try {
+            if (input.readInt() != RECORD_MAGIC || input.readInt() != length) {
+                return null;
+            }
+            int idLength = input.readInt();
+            if (idLength <= 0 || idLength > length - RECORD_PREFIX_LENGTH) {
+                return null;
+            }
+            byte[] encodedId = new byte[idLength];
+            input.readFully(encodedId);
+            try (KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(encodedId))) {
+                return COMPONENT_ID_SERIALIZER.read(decoder);
+            }
+        } catch (Exception e) {
+            // Not the start of a record
+            return null;
+        }
+    }
+
+    /**
+     * Returns the length of the record starting at the given position, or -1 when there is no record at that position.
+     */
+    private static int readRecordLength(FileChannel channel, long position, long size) throws IOException {
+        if (position + RECORD_PREFIX_LENGTH > size) {
+            return -1;
+        }
+        ByteBuffer prefix = ByteBuffer.wrap(readFully(channel, position, RECORD_PREFIX_LENGTH));
+        if (prefix.getInt() != RECORD_MAGIC) {
+            return -1;
+        }
+        int length = prefix.getInt();
+        return length < RECORD_PREFIX_LENGTH || position + length > size ? -1 : length;
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + channel);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decides which records are kept when compacting the file.
+     */
+    interface LiveRecords {
+        boolean isLive(ComponentIdentifier componentId, long offset, int length);
+    }
+
+    private static class RecordInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        RecordInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            if (count <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
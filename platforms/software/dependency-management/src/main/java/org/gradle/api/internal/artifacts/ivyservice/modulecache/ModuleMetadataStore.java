@@ -15,77 +15,138 @@
  */
 package org.gradle.api.internal.artifacts.ivyservice.modulecache;
 
-import com.google.common.base.Joiner;
 import com.google.common.collect.Interner;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.cache.IndexedCache;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
-import org.gradle.internal.resource.local.LocallyAvailableResource;
-import org.gradle.internal.resource.local.PathKeyFileStore;
-import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
-import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Stores the module metadata of each repository in a single {@link ModuleMetadataPack}.
+ * <p>
+ * Each descriptor is written as a record with its own string table, and is located through
+ * the offset and length held by its {@link ModuleMetadataCacheEntry}.
+ * The records that are not referenced by the index anymore are removed from time to time, when the index is written to.
+ */
 public class ModuleMetadataStore {
 
-    private static final Joiner PATH_JOINER = Joiner.on("/");
-    private final PathKeyFileStore metaDataStore;
+    private static final String PACK_FILE_NAME = "descriptors.bin";
+    private final File storeDirectory;
     private final ModuleMetadataSerializer moduleMetadataSerializer;
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final Interner<String> stringInterner;
+    private final ConcurrentMap<String, ModuleMetadataPack> packs = new ConcurrentHashMap<>();
 
-    public ModuleMetadataStore(PathKeyFileStore metaDataStore,
+    public ModuleMetadataStore(File storeDirectory,
                                ModuleMetadataSerializer moduleMetadataSerializer,
                                ImmutableModuleIdentifierFactory moduleIdentifierFactory,
                                Interner<String> stringInterner) {
-        this.metaDataStore = metaDataStore;
+        this.storeDirectory = storeDirectory;
         this.moduleMetadataSerializer = moduleMetadataSerializer;
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.stringInterner = stringInterner;
     }
 
-    public MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponentAtRepositoryKey component) {
-        String[] filePath = getFilePath(component);
-        LocallyAvailableResource resource = metaDataStore.get(filePath);
-        if (resource != null) {
-            try {
-                try (StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(new FileInputStream(resource.getFile())), stringInterner)) {
-                    return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, new HashMap<>());
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Could not load module metadata from " + resource.getDisplayName(), e);
+    /**
+     * Reads the descriptor that the given entry points at, or returns null when it is not in the store anymore.
+     */
+    @Nullable
+    public MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponentAtRepositoryKey component, ModuleMetadataCacheEntry entry) {
+        ModuleMetadataPack pack = getPack(component.getRepositoryId());
+        try {
+            // The store may have been replaced since the entry was written
+            InputStream record = pack.read(entry.descriptorOffset, entry.descriptorLength, component.getComponentId());
+            if (record == null) {
+                return null;
+            }
+            try (StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new StringDeduplicatingKryoBackedDecoder(record), stringInterner)) {
+                return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, new HashMap<>());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not load module metadata for " + component.getComponentId() + " from " + pack.getFile(), e);
+        }
+    }
+
+    /**
+     * Writes the descriptor and returns the given entry, pointing at the written descriptor.
+     */
+    public ModuleMetadataCacheEntry putModuleDescriptor(ModuleComponentAtRepositoryKey component, ModuleComponentResolveMetadata metadata, ModuleMetadataCacheEntry entry) {
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            try (StringDeduplicatingKryoBackedEncoder encoder = new StringDeduplicatingKryoBackedEncoder(record)) {
+                moduleMetadataSerializer.write(encoder, metadata, new HashMap<>());
             }
+            byte[] bytes = ModuleMetadataPack.createRecord(component.getComponentId(), record.toByteArray());
+            long offset = getPack(component.getRepositoryId()).append(bytes);
+            return entry.withDescriptorAt(offset, bytes.length);
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
         }
-        return null;
     }
 
-    public LocallyAvailableResource putModuleDescriptor(ModuleComponentAtRepositoryKey component, final ModuleComponentResolveMetadata metadata) {
-        String[] filePath = getFilePath(component);
-        return metaDataStore.add(PATH_JOINER.join(filePath), moduleDescriptorFile -> {
-            try {
-                try (KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(moduleDescriptorFile))) {
-                    moduleMetadataSerializer.write(encoder, metadata, new HashMap<>());
+    /**
+     * Removes the descriptors of the given repository that the given index does not point at anymore, when this is due.
+     * <p>
+     * Must be called while holding the lock of the cache that contains the index.
+     */
+    public void compactIfDue(String repositoryId, IndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> index) {
+        ModuleMetadataPack pack = getPack(repositoryId);
+        if (pack.isCompactionDue()) {
+            compact(repositoryId, index);
+        }
+    }
+
+    /**
+     * Removes the descriptors of the given repository that the given index does not point at anymore, and updates the entries of the other descriptors.
+     * <p>
+     * Must be called while holding the lock of the cache that contains the index.
+     */
+    void compact(String repositoryId, IndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> index) {
+        Map<Long, ModuleComponentAtRepositoryKey> liveRecords = new HashMap<>();
+        try {
+            Map<Long, Long> relocated = getPack(repositoryId).compact((componentId, offset, length) -> {
+                if (!(componentId instanceof ModuleComponentIdentifier)) {
+                    return false;
                 }
-            } catch (Exception e) {
-                throw UncheckedException.throwAsUncheckedException(e);
+                ModuleComponentAtRepositoryKey key = new ModuleComponentAtRepositoryKey(repositoryId, (ModuleComponentIdentifier) componentId);
+                ModuleMetadataCacheEntry entry = index.getIfPresent(key);
+                if (entry == null || entry.isMissing() || entry.descriptorOffset != offset || entry.descriptorLength != length) {
+                    return false;
+                }
+                liveRecords.put(offset, key);
+                return true;
+            });
+            if (relocated == null) {
+                return;
             }
-        });
+            // An entry that is not updated, for example because the process is killed, points into another record and is treated as missing
+            relocated.forEach((offset, newOffset) -> {
+                ModuleComponentAtRepositoryKey key = liveRecords.get(offset);
+                ModuleMetadataCacheEntry entry = index.getIfPresent(key);
+                if (entry != null) {
+                    index.put(key, entry.withDescriptorAt(newOffset, entry.descriptorLength));
+                }
+            });
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
     }
 
-    private String[] getFilePath(ModuleComponentAtRepositoryKey componentId) {
-        ModuleComponentIdentifier moduleComponentIdentifier = componentId.getComponentId();
-        return new String[] {
-            moduleComponentIdentifier.getGroup(),
-            moduleComponentIdentifier.getModule(),
-            moduleComponentIdentifier.getVersion(),
-            componentId.getRepositoryId(),
-            "descriptor.bin"
-        };
+    private ModuleMetadataPack getPack(String repositoryId) {
+        return packs.computeIfAbsent(repositoryId, id -> new ModuleMetadataPack(new File(new File(storeDirectory, id), PACK_FILE_NAME)));
     }
 
 }
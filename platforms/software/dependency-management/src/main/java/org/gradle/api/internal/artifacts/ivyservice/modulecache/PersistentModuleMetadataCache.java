@@ -29,8 +29,6 @@
 import org.gradle.cache.IndexedCache;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
-import org.gradle.internal.hash.ChecksumService;
-import org.gradle.internal.resource.local.DefaultPathKeyFileStore;
 import org.gradle.internal.serialize.AbstractSerializer;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
@@ -52,11 +50,10 @@ public PersistentModuleMetadataCache(
         MavenMutableModuleMetadataFactory mavenMetadataFactory,
         IvyMutableModuleMetadataFactory ivyMetadataFactory,
         Interner<String> stringInterner,
-        ModuleSourcesSerializer moduleSourcesSerializer,
-        ChecksumService checksumService
+        ModuleSourcesSerializer moduleSourcesSerializer
     ) {
         super(timeProvider);
-        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(checksumService, artifactCacheMetadata.getMetaDataStoreDirectory()), new ModuleMetadataSerializer(attributeContainerSerializer, capabilitySelectorSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer), moduleIdentifierFactory, stringInterner);
+        moduleMetadataStore = new ModuleMetadataStore(artifactCacheMetadata.getMetaDataStoreDirectory(), new ModuleMetadataSerializer(attributeContainerSerializer, capabilitySelectorSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer), moduleIdentifierFactory, stringInterner);
         this.artifactCacheLockingManager = cacheAccessCoordinator;
     }
 
@@ -82,9 +79,9 @@ protected CachedMetadata get(ModuleComponentAtRepositoryKey key) {
             if (entry.isMissing()) {
                 return new DefaultCachedMetadata(entry, null, timeProvider);
             }
-            MutableModuleComponentResolveMetadata metadata = moduleMetadataStore.getModuleDescriptor(key);
+            MutableModuleComponentResolveMetadata metadata = moduleMetadataStore.getModuleDescriptor(key, entry);
             if (metadata == null) {
-                // Descriptor file has been deleted - ignore the entry
+                // Descriptor has been deleted - ignore the entry
                 cache.remove(key);
                 return null;
             }
@@ -100,8 +97,8 @@ protected CachedMetadata store(final ModuleComponentAtRepositoryKey key, final M
             // Need to lock the cache in order to write to the module metadata store
             artifactCacheLockingManager.useCache(() -> {
                 final ModuleComponentResolveMetadata metadata = cachedMetadata.getMetadata();
-                moduleMetadataStore.putModuleDescriptor(key, metadata);
-                getCache().put(key, entry);
+                moduleMetadataStore.compactIfDue(key.getRepositoryId(), getCache());
+                getCache().put(key, moduleMetadataStore.putModuleDescriptor(key, metadata, entry));
             });
         }
         return cachedMetadata;
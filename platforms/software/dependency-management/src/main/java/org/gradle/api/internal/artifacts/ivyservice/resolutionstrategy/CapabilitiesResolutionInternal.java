@@ -20,4 +20,9 @@
 
 public interface CapabilitiesResolutionInternal extends CapabilitiesResolution {
     void apply(CapabilitiesConflictHandler.ResolutionDetails details);
+
+    /**
+     * Whether any capability resolution rule has been declared.
+     */
+    boolean hasRules();
 }
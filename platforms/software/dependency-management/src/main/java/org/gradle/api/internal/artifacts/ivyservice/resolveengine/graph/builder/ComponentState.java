@@ -44,7 +44,6 @@
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -57,7 +56,7 @@ public class ComponentState implements ComponentResolutionState, DependencyGraph
     private final ComponentIdentifier componentIdentifier;
     private final ModuleVersionIdentifier id;
     private final ComponentMetaDataResolver resolver;
-    private final List<NodeState> nodes = new LinkedList<>();
+    private final List<NodeState> nodes = new ArrayList<>(1);
     private final Long resultId;
     private final ModuleResolveState module;
     private final List<ComponentSelectionDescriptorInternal> selectionCauses = new ArrayList<>();
@@ -66,7 +65,7 @@ public class ComponentState implements ComponentResolutionState, DependencyGraph
     private volatile ComponentGraphResolveState resolveState;
     private volatile ComponentGraphSpecificResolveState graphResolveState;
 
-    private ComponentSelectionState state = ComponentSelectionState.Selectable;
+    private volatile ComponentSelectionState state = ComponentSelectionState.Selectable;
     private ModuleVersionResolveException metadataResolveFailure;
     private ModuleSelectors<SelectorState> selectors;
     private DependencyGraphBuilder.VisitState visitState = DependencyGraphBuilder.VisitState.NotSeen;
@@ -205,18 +204,7 @@ public void resolve() {
             return;
         }
 
-        ComponentOverrideMetadata componentOverrideMetadata;
-        if (selectors != null && selectors.size() > 0) {
-            // Taking the first selector here to determine the 'changing' status and 'client module' is our best bet to get the selector that will most likely be chosen in the end.
-            // As selectors are sorted accordingly (see ModuleSelectors.SELECTOR_COMPARATOR).
-            SelectorState firstSelector = selectors.first();
-
-            @SuppressWarnings("deprecation")
-            ComponentOverrideMetadata md = DefaultComponentOverrideMetadata.forDependency(firstSelector.isChanging(), selectors.getFirstDependencyArtifact(), firstSelector.getClientModule());
-            componentOverrideMetadata = md;
-        } else {
-            componentOverrideMetadata = DefaultComponentOverrideMetadata.EMPTY;
-        }
+        ComponentOverrideMetadata componentOverrideMetadata = getComponentOverrideMetadata();
         if (tryResolveVirtualPlatform()) {
             return;
         }
@@ -231,6 +219,19 @@ public void resolve() {
         graphResolveState = result.getGraphState();
     }
 
+    ComponentOverrideMetadata getComponentOverrideMetadata() {
+        if (selectors != null && selectors.size() > 0) {
+            // Taking the first selector here to determine the 'changing' status and 'client module' is our best bet to get the selector that will most likely be chosen in the end.
+            // As selectors are sorted accordingly (see ModuleSelectors.SELECTOR_COMPARATOR).
+            SelectorState firstSelector = selectors.first();
+
+            @SuppressWarnings("deprecation")
+            ComponentOverrideMetadata md = DefaultComponentOverrideMetadata.forDependency(firstSelector.isChanging(), selectors.getFirstDependencyArtifact(), firstSelector.getClientModule());
+            return md;
+        }
+        return DefaultComponentOverrideMetadata.EMPTY;
+    }
+
     private boolean tryResolveVirtualPlatform() {
         if (module.isVirtualPlatform()) {
             for (ComponentState version : module.getAllVersions()) {
@@ -259,6 +260,19 @@ public void addNode(NodeState node) {
         nodes.add(node);
     }
 
+    /**
+     * Returns the node of this component for the variant with the given name, if it has been created.
+     */
+    @Nullable
+    NodeState getNode(String variantName) {
+        for (NodeState node : nodes) {
+            if (node.getResolveState().getName().equals(variantName)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
     private ComponentSelectionReason cachedReason;
 
     @Override
@@ -46,6 +46,8 @@
 import org.gradle.api.internal.attributes.matching.AttributeMatcher;
 import org.gradle.api.internal.capabilities.CapabilityInternal;
 import org.gradle.api.specs.Spec;
+import org.gradle.internal.buildoption.IntegerInternalOption;
+import org.gradle.internal.buildoption.InternalOptions;
 import org.gradle.internal.component.model.ComponentGraphResolveMetadata;
 import org.gradle.internal.component.model.ComponentIdGenerator;
 import org.gradle.internal.component.model.DependencyMetadata;
@@ -53,6 +55,7 @@
 import org.gradle.internal.component.model.VariantGraphResolveMetadata;
 import org.gradle.internal.component.resolution.failure.ResolutionFailureHandler;
 import org.gradle.internal.component.resolution.failure.exception.AbstractResolutionFailureException;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.deprecation.DeprecationLogger;
 import org.gradle.internal.operations.BuildOperationConstraint;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -62,6 +65,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -81,6 +85,12 @@ public class DependencyGraphBuilder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
 
+    /**
+     * Number of threads speculatively resolving the metadata of selected components and their transitive dependencies, see {@link MetadataPrefetcher}.
+     * Metadata is not prefetched when set to 0.
+     */
+    public static final IntegerInternalOption METADATA_PREFETCH_THREADS = new IntegerInternalOption("org.gradle.internal.dependency-resolution.metadata-prefetch-threads", 0);
+
     private final ModuleExclusions moduleExclusions;
     private final AttributesFactory attributesFactory;
     private final AttributeSchemaServices attributeSchemaServices;
@@ -91,6 +101,8 @@ public class DependencyGraphBuilder {
     private final VersionParser versionParser;
     private final GraphVariantSelector variantSelector;
     private final BuildOperationExecutor buildOperationExecutor;
+    private final ExecutorFactory executorFactory;
+    private final int metadataPrefetchThreads;
 
     @Inject
     public DependencyGraphBuilder(
@@ -103,7 +115,9 @@ public DependencyGraphBuilder(
         ComponentIdGenerator idGenerator,
         VersionParser versionParser,
         GraphVariantSelector variantSelector,
-        BuildOperationExecutor buildOperationExecutor
+        BuildOperationExecutor buildOperationExecutor,
+        ExecutorFactory executorFactory,
+        InternalOptions internalOptions
     ) {
         this.moduleExclusions = moduleExclusions;
         this.attributesFactory = attributesFactory;
@@ -115,6 +129,8 @@ public DependencyGraphBuilder(
         this.versionParser = versionParser;
         this.variantSelector = variantSelector;
         this.buildOperationExecutor = buildOperationExecutor;
+        this.executorFactory = executorFactory;
+        this.metadataPrefetchThreads = internalOptions.getOption(METADATA_PREFETCH_THREADS).get();
     }
 
     public void resolve(
@@ -135,12 +151,15 @@ public void resolve(
     ) {
         ModuleConflictHandler moduleConflictHandler = new DefaultConflictHandler(moduleConflictResolver, moduleReplacements);
         CapabilitiesConflictHandler capabilitiesConflictHandler = new DefaultCapabilitiesConflictHandler(capabilityConflictResolvers);
+        MetadataPrefetcher metadataPrefetcher = metadataPrefetchThreads > 0
+            ? new MetadataPrefetcher(componentMetaDataResolver, versionSelectorScheme, executorFactory, metadataPrefetchThreads)
+            : null;
 
         ResolveState resolveState = new ResolveState(
             idGenerator,
             rootComponent,
             componentIdResolver,
-            componentMetaDataResolver,
+            metadataPrefetcher != null ? metadataPrefetcher : componentMetaDataResolver,
             edgeFilter,
             moduleExclusions,
             componentSelectorConverter,
@@ -158,7 +177,13 @@ public void resolve(
             variantSelector
         );
 
-        traverseGraph(resolveState);
+        try {
+            traverseGraph(resolveState, metadataPrefetcher);
+        } finally {
+            if (metadataPrefetcher != null) {
+                metadataPrefetcher.stop();
+            }
+        }
 
         validateGraph(resolveState, failingOnDynamicVersions, failingOnChangingVersions);
 
@@ -168,7 +193,7 @@ public void resolve(
     /**
      * Traverses the dependency graph, resolving conflicts and building the paths from the root configuration.
      */
-    private void traverseGraph(final ResolveState resolveState) {
+    private void traverseGraph(final ResolveState resolveState, @Nullable MetadataPrefetcher metadataPrefetcher) {
         resolveState.onMoreSelected(resolveState.getRoot());
         final List<EdgeState> dependencies = new ArrayList<>();
 
@@ -197,9 +222,9 @@ private void traverseGraph(final ResolveState resolveState) {
                 // Initialize and collect any new outgoing edges of this node
                 dependencies.clear();
                 node.visitOutgoingDependencies(dependencies);
-                boolean edgeWasProcessed = resolveEdges(node, dependencies, ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC, false, resolveState);
+                boolean edgeWasProcessed = resolveEdges(node, dependencies, ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC, false, resolveState, metadataPrefetcher);
                 node.collectEndorsedStrictVersions(dependencies);
-                resolveEdges(node, dependencies, NOT_ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC, edgeWasProcessed, resolveState);
+                resolveEdges(node, dependencies, NOT_ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC, edgeWasProcessed, resolveState, metadataPrefetcher);
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
                 if (moduleConflictHandler.hasConflicts()) {
@@ -267,12 +292,13 @@ private boolean resolveEdges(
         final List<EdgeState> dependencies,
         final Spec<EdgeState> edgeFilter,
         final boolean recomputeSelectors,
-        final ResolveState resolveState
+        final ResolveState resolveState,
+        @Nullable final MetadataPrefetcher metadataPrefetcher
     ) {
         if (dependencies.isEmpty()) {
             return false;
         }
-        if (performSelectionSerially(dependencies, edgeFilter, resolveState, recomputeSelectors)) {
+        if (performSelectionSerially(dependencies, edgeFilter, resolveState, recomputeSelectors, metadataPrefetcher)) {
             maybeDownloadMetadataInParallel(node, dependencies, edgeFilter, buildOperationExecutor, resolveState.getComponentMetadataResolver());
             attachToTargetRevisionsSerially(dependencies, edgeFilter);
             return true;
@@ -282,7 +308,7 @@ private boolean resolveEdges(
 
     }
 
-    private static boolean performSelectionSerially(List<EdgeState> edges, Spec<EdgeState> edgeFilter, ResolveState resolveState, boolean recomputeSelectors) {
+    private static boolean performSelectionSerially(List<EdgeState> edges, Spec<EdgeState> edgeFilter, ResolveState resolveState, boolean recomputeSelectors, @Nullable MetadataPrefetcher metadataPrefetcher) {
         boolean processed = false;
         for (EdgeState edge : edges) {
             if (!edgeFilter.isSatisfiedBy(edge)) {
@@ -296,7 +322,7 @@ private static boolean performSelectionSerially(List<EdgeState> edges, Spec<Edge
 
             if (selector.canAffectSelection() && module.getSelectors().size() > 0) {
                 // Have an unprocessed/new selector for this module. Need to re-select the target version (if there are any selectors that can be used).
-                performSelection(resolveState, module);
+                performSelection(resolveState, module, metadataPrefetcher);
             }
             if (edge.isUsed()) {
                 // Some corner case result in the edge being removed, in that case it needs to be "removed"
@@ -313,7 +339,7 @@ private static boolean performSelectionSerially(List<EdgeState> edges, Spec<Edge
      * and added to the graph.
      * On resolve failure, the failure is recorded and no `ComponentState` is selected.
      */
-    private static void performSelection(ResolveState resolveState, ModuleResolveState module) {
+    private static void performSelection(ResolveState resolveState, ModuleResolveState module, @Nullable MetadataPrefetcher metadataPrefetcher) {
         ComponentState currentSelection = module.getSelected();
 
         try {
@@ -328,6 +354,12 @@ private static void performSelection(ResolveState resolveState, ModuleResolveSta
             // This is the first time we've seen the module, so register with conflict resolver.
             checkForModuleConflicts(resolveState, module);
         }
+
+        ComponentState newSelection = module.getSelected();
+        if (metadataPrefetcher != null && newSelection != null && newSelection != currentSelection && newSelection.isSelected()) {
+            // Start fetching the metadata of the new selection and its dependencies, unless it has been deselected by a conflict
+            metadataPrefetcher.prefetch(newSelection);
+        }
     }
 
     private static void checkForModuleConflicts(ResolveState resolveState, ModuleResolveState module) {
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentGraphResolveState;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.GraphSelectionCandidates;
+import org.gradle.internal.component.model.VariantGraphResolveState;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Speculatively resolves the metadata of selected components ahead of the traversal of the graph.
+ *
+ * As soon as a component whose metadata is expensive to fetch is selected, its metadata is resolved on a background thread.
+ * Once it is available, the metadata of the components it depends on with a fixed version is resolved in turn,
+ * so that the downloads for the whole frontier of the traversal are in flight at the same time instead of one level at a time.
+ * The results are not used directly: they populate the caches of the repositories, so that the traversal finds them cheaply.
+ * <p>
+ * Every speculative resolution is attributed to the selected component that started it, and is skipped once conflict resolution deselects that component.
+ * Resolving a component that is being prefetched waits for the prefetch instead of downloading the metadata a second time,
+ * while a prefetch that has not started yet is skipped.
+ */
+class MetadataPrefetcher implements ComponentMetaDataResolver, Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataPrefetcher.class);
+
+    private final ComponentMetaDataResolver delegate;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ManagedExecutor executor;
+    @Nullable
+    private final BuildOperationRef parentOperation;
+    private final ConcurrentMap<ModuleComponentIdentifier, Prefetch> prefetches = new ConcurrentHashMap<>();
+
+    MetadataPrefetcher(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme, ExecutorFactory executorFactory, int threads) {
+        this.delegate = delegate;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.executor = executorFactory.create("Dependency metadata prefetch", threads);
+        this.parentOperation = CurrentBuildOperationRef.instance().get();
+    }
+
+    /**
+     * Starts resolving the metadata of the given newly selected component and of its transitive dependencies.
+     */
+    void prefetch(ComponentState selected) {
+        ComponentIdentifier componentId = selected.getComponentId();
+        if (!(componentId instanceof ModuleComponentIdentifier)
+            || selected.getModule().isVirtualPlatform()
+            || selected.getComponentOverrideMetadata() != DefaultComponentOverrideMetadata.EMPTY) {
+            // Only metadata resolved without overrides can be shared with the traversal
+            return;
+        }
+        maybePrefetch((ModuleComponentIdentifier) componentId, selected);
+    }
+
+    private void maybePrefetch(ModuleComponentIdentifier componentId, ComponentState origin) {
+        if (prefetches.containsKey(componentId) || delegate.isFetchingMetadataCheap(componentId)) {
+            return;
+        }
+        Prefetch prefetch = new Prefetch(() -> CurrentBuildOperationRef.instance().with(parentOperation, () -> resolveAndExpand(componentId, origin)));
+        if (prefetches.putIfAbsent(componentId, prefetch) == null) {
+            executor.execute(prefetch.future);
+        }
+    }
+
+    private void resolveAndExpand(ModuleComponentIdentifier componentId, ComponentState origin) {
+        if (!origin.isSelected()) {
+            return;
+        }
+        try {
+            DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+            delegate.resolve(componentId, DefaultComponentOverrideMetadata.EMPTY, result);
+            if (result.getFailure() != null || !origin.isSelected()) {
+                return;
+            }
+            GraphSelectionCandidates candidates = result.getState().getCandidatesForGraphVariantSelection();
+            List<? extends VariantGraphResolveState> variants = candidates.getVariantsForAttributeMatching();
+            if (!variants.isEmpty()) {
+                for (VariantGraphResolveState variant : variants) {
+                    expand(variant, origin);
+                }
+            } else {
+                VariantGraphResolveState legacyVariant = candidates.getLegacyVariant();
+                if (legacyVariant != null) {
+                    expand(legacyVariant, origin);
+                }
+            }
+        } catch (Exception e) {
+            // The traversal resolves the component again and reports the failure
+            LOGGER.debug("Could not prefetch metadata for {}", componentId, e);
+        }
+    }
+
+    private void expand(VariantGraphResolveState variant, ComponentState origin) {
+        for (DependencyMetadata dependency : variant.getDependencies()) {
+            if (dependency.isConstraint() || dependency.isChanging() || !dependency.getArtifacts().isEmpty()) {
+                continue;
+            }
+            ComponentSelector selector = dependency.getSelector();
+            if (selector instanceof ModuleComponentSelector) {
+                String version = fixedVersionOf(((ModuleComponentSelector) selector).getVersionConstraint());
+                if (version != null) {
+                    maybePrefetch(DefaultModuleComponentIdentifier.newId(((ModuleComponentSelector) selector).getModuleIdentifier(), version), origin);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private String fixedVersionOf(VersionConstraint versionConstraint) {
+        String version = versionConstraint.getStrictVersion().isEmpty()
+            ? versionConstraint.getRequiredVersion()
+            : versionConstraint.getStrictVersion();
+        if (version.isEmpty() || versionSelectorScheme.parseSelector(version).isDynamic()) {
+            return null;
+        }
+        return version;
+    }
+
+    @Override
+    public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+        if (identifier instanceof ModuleComponentIdentifier) {
+            awaitPrefetch((ModuleComponentIdentifier) identifier);
+        }
+        delegate.resolve(identifier, componentOverrideMetadata, result);
+    }
+
+    private void awaitPrefetch(ModuleComponentIdentifier identifier) {
+        Prefetch prefetch = prefetches.get(identifier);
+        if (prefetch == null || prefetch.started.compareAndSet(false, true)) {
+            // Not prefetched, or not started yet: skip the prefetch and resolve it right away
+            return;
+        }
+        try {
+            prefetch.future.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            // Failures are reported by the resolution itself
+        }
+    }
+
+    @Override
+    public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+        return delegate.isFetchingMetadataCheap(identifier);
+    }
+
+    @Override
+    public void stop() {
+        for (Prefetch prefetch : prefetches.values()) {
+            if (prefetch.started.compareAndSet(false, true)) {
+                prefetch.future.cancel(false);
+            }
+        }
+        executor.stop();
+    }
+
+    private static class Prefetch {
+        /**
+         * Set by the thread running the prefetch, or by a thread resolving the component to skip the prefetch.
+         */
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final FutureTask<Void> future;
+
+        Prefetch(Runnable action) {
+            this.future = new FutureTask<>(() -> {
+                if (started.compareAndSet(false, true)) {
+                    action.run();
+                }
+            }, null);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang.StringUtils;
@@ -60,7 +61,6 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -101,9 +101,9 @@ public class NodeState implements DependencyGraphNode {
     private Set<EdgeState> edgesToRecompute;
     private Multimap<ModuleIdentifier, DependencyState> potentiallyActivatedConstraints;
 
-    // caches
-    private final Map<DependencyMetadata, DependencyState> dependencyStateCache = new HashMap<>();
-    private final Map<DependencyState, EdgeState> edgesCache = new HashMap<>();
+    // caches, created on first use and sized for the dependencies of the node, as most nodes of a large graph are leaves
+    private Map<DependencyMetadata, DependencyState> dependencyStateCache;
+    private Map<DependencyState, EdgeState> edgesCache;
 
     // Caches the list of dependency states for dependencies
     private List<DependencyState> cachedDependencyStates;
@@ -511,6 +511,9 @@ private List<DependencyState> cacheDependencyStates(List<? extends DependencyMet
         if (dependencies.isEmpty()) {
             return Collections.emptyList();
         }
+        if (dependencyStateCache == null) {
+            dependencyStateCache = Maps.newHashMapWithExpectedSize(dependencies.size());
+        }
         List<DependencyState> tmp = new ArrayList<>(dependencies.size());
         for (DependencyMetadata dependency : dependencies) {
             tmp.add(cachedDependencyStateFor(dependency));
@@ -522,11 +525,18 @@ private DependencyState cachedDependencyStateFor(DependencyMetadata md) {
         return dependencyStateCache.computeIfAbsent(md, this::createDependencyState);
     }
 
+    private Map<DependencyState, EdgeState> getEdgesCache() {
+        if (edgesCache == null) {
+            edgesCache = Maps.newHashMapWithExpectedSize(cachedDependencyStates == null ? 1 : cachedDependencyStates.size());
+        }
+        return edgesCache;
+    }
+
     /**
      * Creates an edge and add it to this node as an outgoing edge.
      */
     private void createAndLinkEdgeState(DependencyState dependencyState, Collection<EdgeState> discoveredEdges, ExcludeSpec resolutionFilter, boolean deferSelection) {
-        EdgeState dependencyEdge = edgesCache.computeIfAbsent(dependencyState, ds -> new EdgeState(this, ds, resolutionFilter, resolveState));
+        EdgeState dependencyEdge = getEdgesCache().computeIfAbsent(dependencyState, ds -> new EdgeState(this, ds, resolutionFilter, resolveState));
         dependencyEdge.computeSelector(); // the selector changes, if the 'versionProvidedByAncestors' state changes
         outgoingEdges.add(dependencyEdge);
         dependencyEdge.markUsed();
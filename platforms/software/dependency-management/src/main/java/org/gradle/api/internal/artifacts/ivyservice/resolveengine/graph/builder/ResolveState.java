@@ -23,8 +23,6 @@
 import org.gradle.api.artifacts.component.ComponentSelector;
 import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.internal.artifacts.ComponentSelectorConverter;
-import org.gradle.api.internal.artifacts.ComponentVariantNodeIdentifier;
-import org.gradle.api.internal.artifacts.NodeIdentifier;
 import org.gradle.api.internal.artifacts.ResolvedVersionConstraint;
 import org.gradle.api.internal.artifacts.configurations.ConflictResolution;
 import org.gradle.api.internal.artifacts.dependencies.DefaultResolvedVersionConstraint;
@@ -56,6 +54,7 @@
 
 import javax.annotation.Nullable;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
@@ -63,7 +62,6 @@
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  * Global resolution state.
@@ -71,8 +69,9 @@
 public class ResolveState implements ComponentStateFactory<ComponentState> {
     private final Spec<? super DependencyMetadata> edgeFilter;
     private final Map<ModuleIdentifier, ModuleResolveState> modules;
-    private final Map<NodeIdentifier, NodeState> nodes;
-    private final Map<SelectorCacheKey, SelectorState> selectors;
+    private final List<NodeState> nodes;
+    private final Map<ComponentSelector, SelectorState[]> selectorsByRequested;
+    private final List<SelectorState> selectors;
     private final RootNode root;
     private final ComponentIdGenerator idGenerator;
     private final DependencyToComponentIdResolver idResolver;
@@ -147,8 +146,9 @@ public ResolveState(
 
         int graphSize = estimateGraphSize(rootVariant);
         this.modules = new LinkedHashMap<>(graphSize);
-        this.nodes = new LinkedHashMap<>(3 * graphSize / 2);
-        this.selectors = new LinkedHashMap<>(5 * graphSize / 2);
+        this.nodes = new ArrayList<>(3 * graphSize / 2);
+        this.selectorsByRequested = new HashMap<>(5 * graphSize / 2);
+        this.selectors = new ArrayList<>(5 * graphSize / 2);
         this.queue = new ArrayDeque<>(graphSize);
 
         // Create root component and module
@@ -164,8 +164,7 @@ public ResolveState(
         // Create root node
         this.root = new RootNode(idGenerator.nextGraphNodeId(), rootComponent, this, syntheticDependencies, rootVariant);
         rootComponent.addNode(this.root);
-        ComponentVariantNodeIdentifier rootNodeId = new ComponentVariantNodeIdentifier(rootComponentId, rootVariant.getName());
-        nodes.put(rootNodeId, this.root);
+        nodes.add(this.root);
     }
 
     public ComponentIdGenerator getIdGenerator() {
@@ -214,28 +213,45 @@ public ComponentState getRevision(ComponentIdentifier componentIdentifier, Modul
     }
 
     public Collection<NodeState> getNodes() {
-        return nodes.values();
+        return nodes;
     }
 
+    /**
+     * Returns the node for the given variant of the given component, creating it if required.
+     *
+     * Nodes are looked up through the component that owns them, which has very few of them, so that no key needs to be created for each lookup.
+     */
     public NodeState getNode(ComponentState component, VariantGraphResolveState variant, boolean selectedByVariantAwareResolution) {
-        ComponentVariantNodeIdentifier id = new ComponentVariantNodeIdentifier(component.getComponentId(), variant.getName());
-        return nodes.computeIfAbsent(id, rci -> {
-            NodeState node = new NodeState(idGenerator.nextGraphNodeId(), component, this, variant, selectedByVariantAwareResolution);
+        NodeState node = component.getNode(variant.getName());
+        if (node == null) {
+            node = new NodeState(idGenerator.nextGraphNodeId(), component, this, variant, selectedByVariantAwareResolution);
             component.addNode(node);
-            return node;
-        });
+            nodes.add(node);
+        }
+        return node;
     }
 
     public Collection<SelectorState> getSelectors() {
-        return selectors.values();
+        return selectors;
     }
 
+    /**
+     * Returns the selector for the given dependency, creating it if required.
+     *
+     * There is at most one selector per combination of requested selector, {@code ignoreVersion} and virtual platform edge.
+     * The selectors for the same requested selector share a small array indexed by the two flags, so that no key needs to be created for each lookup.
+     */
     public SelectorState computeSelectorFor(DependencyState dependencyState, boolean ignoreVersion) {
         boolean isVirtualPlatformEdge = dependencyState.getDependency() instanceof LenientPlatformDependencyMetadata;
-        SelectorState selectorState = selectors.computeIfAbsent(new SelectorCacheKey(dependencyState.getRequested(), ignoreVersion, isVirtualPlatformEdge), req -> {
+        int slot = (ignoreVersion ? 1 : 0) | (isVirtualPlatformEdge ? 2 : 0);
+        SelectorState[] selectorsForRequested = selectorsByRequested.computeIfAbsent(dependencyState.getRequested(), requested -> new SelectorState[4]);
+        SelectorState selectorState = selectorsForRequested[slot];
+        if (selectorState == null) {
             ModuleIdentifier moduleIdentifier = dependencyState.getModuleIdentifier();
-            return new SelectorState(idGenerator.nextGraphNodeId(), dependencyState, idResolver, this, moduleIdentifier, ignoreVersion);
-        });
+            selectorState = new SelectorState(idGenerator.nextGraphNodeId(), dependencyState, idResolver, this, moduleIdentifier, ignoreVersion);
+            selectorsForRequested[slot] = selectorState;
+            selectors.add(selectorState);
+        }
         selectorState.update(dependencyState);
         return selectorState;
     }
@@ -335,37 +351,6 @@ public GraphVariantSelector getVariantSelector() {
         return variantSelector;
     }
 
-    private static class SelectorCacheKey {
-        private final ComponentSelector componentSelector;
-        private final boolean ignoreVersion;
-        private final boolean virtualPlatformEdge;
-
-        private SelectorCacheKey(ComponentSelector componentSelector, boolean ignoreVersion, boolean virtualPlatformEdge) {
-            this.componentSelector = componentSelector;
-            this.ignoreVersion = ignoreVersion;
-            this.virtualPlatformEdge = virtualPlatformEdge;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-            SelectorCacheKey that = (SelectorCacheKey) o;
-            return ignoreVersion == that.ignoreVersion &&
-                virtualPlatformEdge == that.virtualPlatformEdge &&
-                componentSelector.equals(that.componentSelector);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(componentSelector, ignoreVersion, virtualPlatformEdge);
-        }
-    }
-
     /**
      * This method is a heuristic that gives an idea of the "size" of the graph. The larger
      * the graph is, the higher the risk of internal resizes exists, so we try to estimate
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result;
+
+import org.gradle.api.internal.cache.CacheConfigurationsInternal;
+import org.gradle.cache.CacheCleanupStrategy;
+import org.gradle.cache.CacheCleanupStrategyFactory;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.cache.scopes.GlobalScopedCacheBuilderFactory;
+import org.gradle.internal.buildoption.InternalFlag;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.file.FileAccessTracker;
+import org.gradle.internal.file.impl.SingleDepthFileAccessTracker;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A {@link ResolvedGraphCache} backed by a cache in the Gradle user home, shared by all builds using the same Gradle version.
+ * <p>
+ * Each graph is stored in its own file, so that graphs which have not been used for a while are removed by the least recently used cleanup,
+ * using the retention period of created resources.
+ */
+public class CrossBuildResolvedGraphCache implements ResolvedGraphCache, Closeable {
+    public static final InternalFlag RESOLVED_GRAPH_CACHE = new InternalFlag("org.gradle.internal.dependency-resolution.resolved-graph-cache");
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrossBuildResolvedGraphCache.class);
+    private static final String CACHE_NAME = "resolved-graphs";
+    private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
+
+    private final PersistentCache cache;
+    private final FileAccessTracker fileAccessTracker;
+    private final AttributeContainerSerializer attributeContainerSerializer;
+
+    public CrossBuildResolvedGraphCache(
+        GlobalScopedCacheBuilderFactory cacheBuilderFactory,
+        AttributeContainerSerializer attributeContainerSerializer,
+        FileAccessTimeJournal fileAccessTimeJournal,
+        CacheConfigurationsInternal cacheConfigurations,
+        CacheCleanupStrategyFactory cacheCleanupStrategyFactory
+    ) {
+        this.cache = cacheBuilderFactory
+            .createCacheBuilder(CACHE_NAME)
+            .withDisplayName("resolved dependency graphs")
+            .withInitialLockMode(FileLockManager.LockMode.OnDemand)
+            .withCleanupStrategy(createCleanupStrategy(fileAccessTimeJournal, cacheConfigurations, cacheCleanupStrategyFactory))
+            .open();
+        this.fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, cache.getBaseDir(), FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        this.attributeContainerSerializer = attributeContainerSerializer;
+    }
+
+    private static CacheCleanupStrategy createCleanupStrategy(FileAccessTimeJournal fileAccessTimeJournal, CacheConfigurationsInternal cacheConfigurations, CacheCleanupStrategyFactory cacheCleanupStrategyFactory) {
+        return cacheCleanupStrategyFactory.create(
+            new LeastRecentlyUsedCacheCleanup(
+                new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP),
+                fileAccessTimeJournal,
+                cacheConfigurations.getCreatedResources().getEntryRetentionTimestampSupplier()
+            ),
+            cacheConfigurations.getCleanupFrequency()::get
+        );
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Entry load(HashCode key) {
+        File file = entryFile(key);
+        return cache.withFileLock(() -> {
+            try (InputStream inputStream = Files.newInputStream(file.toPath()); KryoBackedDecoder decoder = new KryoBackedDecoder(inputStream)) {
+                long rootVariantId = decoder.readSmallLong();
+                boolean artifactsQueried = decoder.readBoolean();
+                Entry entry = new Entry(rootVariantId, attributeContainerSerializer.read(decoder), decoder.readBinary(), artifactsQueried);
+                fileAccessTracker.markAccessed(file);
+                return entry;
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (Exception e) {
+                // The graph is resolved and stored again
+                LOGGER.debug("Could not read resolved graph from {}", file, e);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void store(HashCode key, Entry entry) {
+        File file = entryFile(key);
+        cache.withFileLock(() -> {
+            try {
+                // Readers never see a partially written entry
+                Path tempFile = Files.createTempFile(cache.getBaseDir().toPath(), file.getName(), ".tmp");
+                try {
+                    try (OutputStream outputStream = Files.newOutputStream(tempFile); KryoBackedEncoder encoder = new KryoBackedEncoder(outputStream)) {
+                        encoder.writeSmallLong(entry.getRootVariantId());
+                        encoder.writeBoolean(entry.isArtifactsQueried());
+                        attributeContainerSerializer.write(encoder, entry.getRootAttributes());
+                        encoder.writeBinary(entry.getGraph());
+                    }
+                    Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            fileAccessTracker.markAccessed(file);
+        });
+    }
+
+    private File entryFile(HashCode key) {
+        return new File(cache.getBaseDir(), key.toString() + ".bin");
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result;
+
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stores resolved dependency graphs across builds, keyed by a fingerprint of the inputs of the resolution.
+ *
+ * @see ResolvedGraphRecorder
+ */
+@ServiceScope(Scope.Build.class)
+public interface ResolvedGraphCache {
+    ResolvedGraphCache NONE = new ResolvedGraphCache() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public Entry load(HashCode key) {
+            return null;
+        }
+
+        @Override
+        public void store(HashCode key, Entry entry) {
+        }
+    };
+
+    /**
+     * Whether graphs are stored at all. When not, there is no need to fingerprint or record graphs.
+     */
+    boolean isEnabled();
+
+    @Nullable
+    Entry load(HashCode key);
+
+    void store(HashCode key, Entry entry);
+
+    /**
+     * A resolved graph, as written by {@link StreamingResolutionResultBuilder} using {@link CompleteComponentResultSerializer}.
+     */
+    final class Entry {
+        private final long rootVariantId;
+        private final ImmutableAttributes rootAttributes;
+        private final byte[] graph;
+        private final boolean artifactsQueried;
+
+        public Entry(long rootVariantId, ImmutableAttributes rootAttributes, byte[] graph) {
+            this(rootVariantId, rootAttributes, graph, false);
+        }
+
+        public Entry(long rootVariantId, ImmutableAttributes rootAttributes, byte[] graph, boolean artifactsQueried) {
+            this.rootVariantId = rootVariantId;
+            this.rootAttributes = rootAttributes;
+            this.graph = graph;
+            this.artifactsQueried = artifactsQueried;
+        }
+
+        /**
+         * Returns a copy of this entry that records that the artifacts of the graph were queried after it was restored.
+         */
+        public Entry withArtifactsQueried() {
+            return new Entry(rootVariantId, rootAttributes, graph, true);
+        }
+
+        public long getRootVariantId() {
+            return rootVariantId;
+        }
+
+        public ImmutableAttributes getRootAttributes() {
+            return rootAttributes;
+        }
+
+        public byte[] getGraph() {
+            return graph;
+        }
+
+        /**
+         * Whether the artifacts of the graph were queried after it was restored.
+         * The artifacts are not part of the cached graph, so restoring such a graph only adds to the cost of the full resolution.
+         */
+        public boolean isArtifactsQueried() {
+            return artifactsQueried;
+        }
+    }
+}
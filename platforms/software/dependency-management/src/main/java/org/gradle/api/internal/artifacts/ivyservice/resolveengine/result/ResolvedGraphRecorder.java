@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result;
+
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ByteArrayBinaryStore;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * Records a resolved graph so that it can be stored in a {@link ResolvedGraphCache}.
+ * <p>
+ * Only graphs whose result depends solely on the inputs that make up the cache key are recorded:
+ * graphs that contain dynamic versions, changing modules, components other than the root that are not modules,
+ * external variants, components selected by conflict resolution or failures are not.
+ * Recording stops as soon as the graph is known not to qualify.
+ */
+public class ResolvedGraphRecorder implements DependencyGraphVisitor {
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ByteArrayBinaryStore store = new ByteArrayBinaryStore();
+    private final StreamingResolutionResultBuilder builder;
+    private boolean cacheable = true;
+    private long rootVariantId;
+    private ImmutableAttributes rootAttributes;
+
+    public ResolvedGraphRecorder(
+        VersionSelectorScheme versionSelectorScheme,
+        AttributeContainerSerializer attributeContainerSerializer,
+        CapabilitySelectorSerializer capabilitySelectorSerializer,
+        CompleteComponentResultSerializer componentResultSerializer,
+        ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory
+    ) {
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.builder = new StreamingResolutionResultBuilder(store, Supplier::get, attributeContainerSerializer, capabilitySelectorSerializer, componentResultSerializer, componentSelectionDescriptorFactory, false);
+    }
+
+    @Override
+    public void start(RootGraphNode root) {
+        rootVariantId = root.getNodeId();
+        rootAttributes = root.getMetadata().getAttributes();
+        builder.start(root);
+    }
+
+    @Override
+    public void visitNode(DependencyGraphNode node) {
+        if (cacheable && !node.isRoot()) {
+            cacheable = isCacheable(node);
+        }
+        if (cacheable) {
+            builder.visitNode(node);
+        }
+    }
+
+    @Override
+    public void visitSelector(DependencyGraphSelector selector) {
+        if (cacheable) {
+            cacheable = isCacheable(selector.getRequested());
+        }
+        if (cacheable) {
+            builder.visitSelector(selector);
+        }
+    }
+
+    @Override
+    public void visitEdges(DependencyGraphNode node) {
+        if (cacheable) {
+            for (DependencyGraphEdge edge : node.getOutgoingEdges()) {
+                if (edge.getFailure() != null) {
+                    cacheable = false;
+                    return;
+                }
+            }
+            builder.visitEdges(node);
+        }
+    }
+
+    @Override
+    public void finish(RootGraphNode root) {
+        if (cacheable) {
+            builder.finish(root);
+        }
+    }
+
+    /**
+     * Returns the recorded graph, or null when the graph cannot be cached.
+     */
+    @Nullable
+    public ResolvedGraphCache.Entry complete() {
+        if (!cacheable) {
+            return null;
+        }
+        return new ResolvedGraphCache.Entry(rootVariantId, rootAttributes, store.toByteArray());
+    }
+
+    private static boolean isCacheable(DependencyGraphNode node) {
+        DependencyGraphComponent component = node.getOwner();
+        return component.getComponentId() instanceof ModuleComponentIdentifier
+            && !component.getResolveState().getMetadata().isChanging()
+            && !component.getSelectionReason().isConflictResolution()
+            && node.getExternalVariant() == null;
+    }
+
+    private boolean isCacheable(ComponentSelector requested) {
+        if (!(requested instanceof ModuleComponentSelector)) {
+            return false;
+        }
+        VersionConstraint versionConstraint = ((ModuleComponentSelector) requested).getVersionConstraint();
+        return versionConstraint.getBranch() == null
+            && isFixed(versionConstraint.getStrictVersion())
+            && isFixed(versionConstraint.getRequiredVersion())
+            && isFixed(versionConstraint.getPreferredVersion());
+    }
+
+    private boolean isFixed(String version) {
+        return version.isEmpty() || !versionSelectorScheme.parseSelector(version).isDynamic();
+    }
+}
@@ -42,6 +42,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -59,7 +60,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
 
     private final Map<ComponentSelector, ModuleVersionResolveException> failures = new HashMap<>();
     private final BinaryStore store;
-    private final AdhocHandlingComponentResultSerializer componentResultSerializer;
+    private final ComponentResultSerializer componentResultSerializer;
     private final Store<ResolvedComponentResultInternal> cache;
     private final ComponentSelectorSerializer componentSelectorSerializer;
     private final boolean includeAllSelectableVariantResults;
@@ -75,7 +76,7 @@ public StreamingResolutionResultBuilder(
         Store<ResolvedComponentResultInternal> cache,
         AttributeContainerSerializer attributeContainerSerializer,
         CapabilitySelectorSerializer capabilitySelectorSerializer,
-        AdhocHandlingComponentResultSerializer componentResultSerializer,
+        ComponentResultSerializer componentResultSerializer,
         ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory,
         boolean includeAllSelectableVariantResults
     ) {
@@ -93,6 +94,25 @@ public MinimalResolutionResult getResolutionResult(Set<UnresolvedDependency> dep
         return new MinimalResolutionResult(rootVariantId, rootSource::create, rootAttributes);
     }
 
+    /**
+     * Creates the resolution result of a graph without failures, from data written by a builder that used the given serializers.
+     */
+    public static MinimalResolutionResult resolutionResultFrom(
+        BinaryStore.BinaryData data,
+        long rootVariantId,
+        ImmutableAttributes rootAttributes,
+        Store<ResolvedComponentResultInternal> cache,
+        AttributeContainerSerializer attributeContainerSerializer,
+        CapabilitySelectorSerializer capabilitySelectorSerializer,
+        ComponentResultSerializer componentResultSerializer,
+        ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory
+    ) {
+        ComponentSelectorSerializer componentSelectorSerializer = new ComponentSelectorSerializer(attributeContainerSerializer, capabilitySelectorSerializer);
+        DependencyResultSerializer dependencyResultSerializer = new DependencyResultSerializer(componentSelectionDescriptorFactory);
+        RootFactory rootSource = new RootFactory(data, Collections.emptyMap(), cache, componentSelectorSerializer, dependencyResultSerializer, componentResultSerializer, Collections.emptySet());
+        return new MinimalResolutionResult(rootVariantId, rootSource::create, rootAttributes);
+    }
+
     @Override
     public void start(final RootGraphNode root) {
         this.rootVariantId = root.getNodeId();
@@ -156,7 +176,7 @@ public void visitEdges(DependencyGraphNode node) {
     private static class RootFactory implements Factory<ResolvedComponentResultInternal> {
 
         private final static Logger LOG = Logging.getLogger(RootFactory.class);
-        private final AdhocHandlingComponentResultSerializer componentResultSerializer;
+        private final ComponentResultSerializer componentResultSerializer;
 
         private final BinaryStore.BinaryData data;
         private final Map<ComponentSelector, ModuleVersionResolveException> failures;
@@ -166,7 +186,7 @@ private static class RootFactory implements Factory<ResolvedComponentResultInter
         private final DependencyResultSerializer dependencyResultSerializer;
         private final Set<UnresolvedDependency> dependencyLockingFailures;
 
-        RootFactory(BinaryStore.BinaryData data, Map<ComponentSelector, ModuleVersionResolveException> failures, Store<ResolvedComponentResultInternal> cache, ComponentSelectorSerializer componentSelectorSerializer, DependencyResultSerializer dependencyResultSerializer, AdhocHandlingComponentResultSerializer componentResultSerializer, Set<UnresolvedDependency> dependencyLockingFailures) {
+        RootFactory(BinaryStore.BinaryData data, Map<ComponentSelector, ModuleVersionResolveException> failures, Store<ResolvedComponentResultInternal> cache, ComponentSelectorSerializer componentSelectorSerializer, DependencyResultSerializer dependencyResultSerializer, ComponentResultSerializer componentResultSerializer, Set<UnresolvedDependency> dependencyLockingFailures) {
             this.data = data;
             this.failures = failures;
             this.cache = cache;
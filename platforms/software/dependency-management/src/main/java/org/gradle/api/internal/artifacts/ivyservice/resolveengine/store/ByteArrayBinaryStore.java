@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.cache.internal.BinaryStore;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link BinaryStore} that keeps its content in memory, so that the content can be persisted elsewhere.
+ */
+public class ByteArrayBinaryStore implements BinaryStore {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final StringDeduplicatingKryoBackedEncoder encoder = new StringDeduplicatingKryoBackedEncoder(output);
+
+    @Override
+    public void write(WriteAction write) {
+        try {
+            write.write(encoder);
+        } catch (Exception e) {
+            throw new RuntimeException("Problems writing to " + this, e);
+        }
+    }
+
+    @Override
+    public BinaryData done() {
+        return dataOf(toByteArray());
+    }
+
+    /**
+     * Returns the content written so far.
+     */
+    public byte[] toByteArray() {
+        encoder.done();
+        encoder.flush();
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns data for the given content, as returned by {@link #toByteArray()}.
+     */
+    public static BinaryData dataOf(byte[] content) {
+        return new ByteArrayBinaryData(content);
+    }
+
+    @Override
+    public String toString() {
+        return "In-memory binary store";
+    }
+
+    private static class ByteArrayBinaryData implements BinaryData {
+        private final byte[] content;
+        private StringDeduplicatingKryoBackedDecoder decoder;
+
+        ByteArrayBinaryData(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public <T> T read(ReadAction<T> readAction) {
+            try {
+                if (decoder == null) {
+                    decoder = new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(content));
+                }
+                return readAction.read(decoder);
+            } catch (Exception e) {
+                throw new RuntimeException("Problems reading data from " + this, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoder != null) {
+                decoder.close();
+                decoder = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "In-memory binary data of " + content.length + " bytes";
+        }
+    }
+}
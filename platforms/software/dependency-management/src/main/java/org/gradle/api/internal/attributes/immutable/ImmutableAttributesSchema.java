@@ -117,6 +117,28 @@ public <T> CompatibilityRule<T> compatibilityRules(Attribute<T> attribute) {
         return CompatibilityRule.doNothing();
     }
 
+    /**
+     * Get the actions making up the compatibility rule for the given attribute, in the order they are applied.
+     */
+    public <T> ImmutableList<Action<? super CompatibilityCheckDetails<T>>> compatibilityRuleActions(Attribute<T> attribute) {
+        ImmutableAttributeMatchingStrategy<T> matchingStrategy = getStrategy(attribute);
+        if (matchingStrategy != null) {
+            return matchingStrategy.compatibilityRules.rules;
+        }
+        return ImmutableList.of();
+    }
+
+    /**
+     * Get the actions making up the disambiguation rule for the given attribute, in the order they are applied.
+     */
+    public <T> ImmutableList<Action<? super MultipleCandidatesDetails<T>>> disambiguationRuleActions(Attribute<T> attribute) {
+        ImmutableAttributeMatchingStrategy<T> matchingStrategy = getStrategy(attribute);
+        if (matchingStrategy != null) {
+            return matchingStrategy.disambiguationRules.rules;
+        }
+        return ImmutableList.of();
+    }
+
     /**
      * Get an attribute by name.
      */
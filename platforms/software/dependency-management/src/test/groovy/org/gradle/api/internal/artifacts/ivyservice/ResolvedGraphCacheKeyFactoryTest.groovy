@@ -0,0 +1,312 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import com.google.common.collect.Ordering
+import org.gradle.api.attributes.Attribute
+import org.gradle.api.attributes.AttributeCompatibilityRule
+import org.gradle.api.attributes.CompatibilityCheckDetails
+import org.gradle.api.internal.artifacts.ComponentMetadataProcessorFactory
+import org.gradle.api.internal.artifacts.ComponentModuleMetadataProcessor
+import org.gradle.api.internal.artifacts.ComponentSelectionRulesInternal
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.dsl.ComponentModuleMetadataContainer
+import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.RootComponentMetadataBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.CapabilitiesResolutionInternal
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository
+import org.gradle.api.internal.artifacts.repositories.descriptor.FlatDirRepositoryDescriptor
+import org.gradle.api.internal.artifacts.repositories.descriptor.IvyRepositoryDescriptor
+import org.gradle.api.internal.artifacts.repositories.descriptor.MavenRepositoryDescriptor
+import org.gradle.api.internal.artifacts.repositories.descriptor.RepositoryDescriptor
+import org.gradle.api.internal.attributes.ImmutableAttributes
+import org.gradle.api.internal.attributes.immutable.ImmutableAttributesSchema
+import org.gradle.internal.ImmutableActionSet
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.external.model.ImmutableCapabilities
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveMetadata
+import org.gradle.internal.component.local.model.LocalComponentGraphResolveState
+import org.gradle.internal.component.local.model.LocalVariantGraphResolveState
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.TestUtil
+import spock.lang.Specification
+
+class ResolvedGraphCacheKeyFactoryTest extends Specification {
+    def processorFactory = Stub(ComponentMetadataProcessorFactory) {
+        getStableProcessingDescription() >> "no rules"
+    }
+    def metadataHandler = Stub(GlobalDependencyResolutionRules) {
+        getComponentMetadataProcessorFactory() >> processorFactory
+    }
+    def componentSelection = Stub(ComponentSelectionRulesInternal) {
+        getRules() >> []
+    }
+    def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+        getDependencySubstitutionRule() >> ImmutableActionSet.empty()
+        getComponentSelection() >> componentSelection
+        getConflictResolution() >> ConflictResolution.latest
+    }
+    def classLoaderHierarchyHasher = Stub(ClassLoaderHierarchyHasher) {
+        getClassLoaderHash(_) >> TestHashCodes.hashCodeFrom(123)
+    }
+    def factory = new ResolvedGraphCacheKeyFactory(
+        metadataHandler,
+        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+        new CapabilitySelectorSerializer(),
+        classLoaderHierarchyHasher
+    )
+
+    def "same resolution has same key"() {
+        expect:
+        def key = factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        key != null
+        key == factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+    }
+
+    def "key changes when dependencies change"() {
+        def key = factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+
+        expect:
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.1")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        key != factory.keyFor(rootComponent(dependency("org", "bar", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.0"), dependency("org", "bar", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [dependency("org", "bar", "1.0")], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+    }
+
+    def "key changes when repositories change"() {
+        def key = factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+
+        expect:
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://other.example.com/maven")])
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven"), mavenRepo("https://other.example.com/maven")])
+    }
+
+    def "key changes when conflict resolution changes"() {
+        def key = factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        def strictResolutionStrategy = Stub(ResolutionStrategyInternal) {
+            getDependencySubstitutionRule() >> ImmutableActionSet.empty()
+            getComponentSelection() >> componentSelection
+            getConflictResolution() >> ConflictResolution.strict
+        }
+
+        expect:
+        key != factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], strictResolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+    }
+
+    def "has no key when a repository is backed by local files"() {
+        expect:
+        factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven"), repository]) == null
+
+        where:
+        repository << [
+            mavenRepo("file:/home/user/.m2/repository"),
+            mavenRepo("FILE:/home/user/repo"),
+            flatDirRepo()
+        ]
+    }
+
+    def "has no key when dependency locking is enabled"() {
+        def lockingResolutionStrategy = Stub(ResolutionStrategyInternal) {
+            getDependencySubstitutionRule() >> ImmutableActionSet.empty()
+            getComponentSelection() >> componentSelection
+            isDependencyLockingEnabled() >> true
+        }
+
+        expect:
+        factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], lockingResolutionStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+    }
+
+    def "has no key when dependency substitution rules are used"() {
+        def substitutingResolutionStrategy = Stub(ResolutionStrategyInternal) {
+            getDependencySubstitutionRule() >> ImmutableActionSet.empty().add({})
+            getComponentSelection() >> componentSelection
+        }
+
+        expect:
+        factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], substitutingResolutionStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+    }
+
+    def "has no key when component metadata rules cannot be fingerprinted"() {
+        def nonStableFactory = new ResolvedGraphCacheKeyFactory(
+            Stub(GlobalDependencyResolutionRules) {
+                getComponentMetadataProcessorFactory() >> Stub(ComponentMetadataProcessorFactory) {
+                    getStableProcessingDescription() >> null
+                }
+            },
+            new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+            new CapabilitySelectorSerializer(),
+            classLoaderHierarchyHasher
+        )
+
+        expect:
+        nonStableFactory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+    }
+
+    def "key changes when attribute rules change"() {
+        def usage = Attribute.of("usage", String)
+        def key = factory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage)
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        def keyWithRuleClass = factory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage).compatibilityRules.add(CompatibleRule)
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        def keyWithOrderedRule = factory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage).compatibilityRules.ordered(Ordering.natural())
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        def keyWithOrderedDisambiguationRule = factory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage).disambiguationRules.pickFirst(Ordering.natural())
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+
+        expect:
+        [key, keyWithRuleClass, keyWithOrderedRule, keyWithOrderedDisambiguationRule].every { it != null }
+        [key, keyWithRuleClass, keyWithOrderedRule, keyWithOrderedDisambiguationRule].toSet().size() == 4
+    }
+
+    def "has no key when attribute rules cannot be fingerprinted"() {
+        def usage = Attribute.of("usage", String)
+        def statefulComparator = { String a, String b -> a <=> b } as Comparator<String>
+        def unknownClassLoaderFactory = new ResolvedGraphCacheKeyFactory(
+            metadataHandler,
+            new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+            new CapabilitySelectorSerializer(),
+            Stub(ClassLoaderHierarchyHasher) {
+                getClassLoaderHash(_) >> null
+            }
+        )
+
+        expect:
+        factory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage).compatibilityRules.ordered(statefulComparator)
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+        unknownClassLoaderFactory.keyFor(rootComponent(AttributeTestUtil.immutableSchema {
+            attribute(usage).compatibilityRules.add(CompatibleRule)
+        }, dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+    }
+
+    def "key changes when module replacements change"() {
+        def replacements = new ComponentModuleMetadataContainer(new DefaultImmutableModuleIdentifierFactory())
+        def replacingFactory = new ResolvedGraphCacheKeyFactory(
+            Stub(GlobalDependencyResolutionRules) {
+                getComponentMetadataProcessorFactory() >> processorFactory
+                getModuleMetadataProcessor() >> Stub(ComponentModuleMetadataProcessor) {
+                    getModuleReplacements() >> replacements
+                }
+            },
+            new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+            new CapabilitySelectorSerializer(),
+            classLoaderHierarchyHasher
+        )
+        def key = replacingFactory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+
+        when:
+        replacements.module("org:foo").replacedBy("org:bar")
+
+        then:
+        key != null
+        key == factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+        key != replacingFactory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], resolutionStrategy, [mavenRepo("https://repo.example.com/maven")])
+    }
+
+    def "has no key when capability resolution rules are declared"() {
+        def capabilityResolvingStrategy = Stub(ResolutionStrategyInternal) {
+            getDependencySubstitutionRule() >> ImmutableActionSet.empty()
+            getComponentSelection() >> componentSelection
+            getCapabilitiesResolutionRules() >> Stub(CapabilitiesResolutionInternal) {
+                hasRules() >> true
+            }
+        }
+
+        expect:
+        factory.keyFor(rootComponent(dependency("org", "foo", "1.0")), [], capabilityResolvingStrategy, [mavenRepo("https://repo.example.com/maven")]) == null
+    }
+
+    static class CompatibleRule implements AttributeCompatibilityRule<String> {
+        @Override
+        void execute(CompatibilityCheckDetails<String> details) {
+            details.compatible()
+        }
+    }
+
+    private RootComponentMetadataBuilder.RootComponentState rootComponent(DependencyMetadata... dependencies) {
+        return rootComponent(ImmutableAttributesSchema.EMPTY, dependencies)
+    }
+
+    private RootComponentMetadataBuilder.RootComponentState rootComponent(ImmutableAttributesSchema schema, DependencyMetadata... dependencies) {
+        def metadata = new LocalComponentGraphResolveMetadata(
+            DefaultModuleVersionIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0"),
+            DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0"),
+            "integration",
+            schema
+        )
+        def component = Stub(LocalComponentGraphResolveState) {
+            getMetadata() >> metadata
+        }
+        def variant = Stub(LocalVariantGraphResolveState) {
+            getName() >> "runtimeClasspath"
+            getAttributes() >> ImmutableAttributes.EMPTY
+            getCapabilities() >> ImmutableCapabilities.EMPTY
+            getDependencies() >> (dependencies as List)
+            getExcludes() >> []
+        }
+        return Stub(RootComponentMetadataBuilder.RootComponentState) {
+            getRootComponent() >> component
+            getRootVariant() >> variant
+        }
+    }
+
+    private DependencyMetadata dependency(String group, String module, String version) {
+        return Stub(DependencyMetadata) {
+            getSelector() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(group, module), new DefaultMutableVersionConstraint(version))
+            isTransitive() >> true
+            getReason() >> null
+            getExcludes() >> []
+            getArtifacts() >> []
+        }
+    }
+
+    private ResolutionAwareRepository mavenRepo(String url) {
+        def builder = new MavenRepositoryDescriptor.Builder("maven", new URI(url))
+        builder.metadataSources = []
+        builder.authenticated = false
+        builder.authenticationSchemes = []
+        builder.artifactUrls = []
+        return repository(builder.create())
+    }
+
+    private ResolutionAwareRepository flatDirRepo() {
+        return repository(new FlatDirRepositoryDescriptor("libs", [new File("libs")], Stub(IvyRepositoryDescriptor) {
+            getId() >> "libs"
+        }))
+    }
+
+    private ResolutionAwareRepository repository(RepositoryDescriptor descriptor) {
+        return Stub(ResolutionAwareRepository) {
+            getDescriptor() >> descriptor
+        }
+    }
+}
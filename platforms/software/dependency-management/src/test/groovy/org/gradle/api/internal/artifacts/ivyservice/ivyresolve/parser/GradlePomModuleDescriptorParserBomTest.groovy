@@ -483,4 +483,101 @@ class GradlePomModuleDescriptorParserBomTest extends AbstractGradlePomModuleDesc
         dep.constraint
 
     }
+
+    def "an imported bom is parsed once until it changes"() {
+        given:
+        def parent = tmpDir.file('parent.xml') << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-a</groupId>
+    <artifactId>parent</artifactId>
+    <version>1.0</version>
+    <packaging>pom</packaging>
+
+    <properties>
+        <module-b.version>1.0</module-b.version>
+    </properties>
+</project>
+"""
+        def bomFile = tmpDir.file('bom.xml')
+        bomFile.text = bom('${module-b.version}')
+        def otherPomFile = tmpDir.file('other-pom.xml')
+        [pomFile, otherPomFile].eachWithIndex { file, i ->
+            file << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-a</groupId>
+    <artifactId>module-${i}</artifactId>
+    <version>1.0</version>
+
+    <dependencyManagement>
+        <dependencies>
+            <dependency>
+                <groupId>group-a</groupId>
+                <artifactId>bom</artifactId>
+                <version>1.0</version>
+                <scope>import</scope>
+                <type>pom</type>
+            </dependency>
+        </dependencies>
+    </dependencyManagement>
+
+    <dependencies>
+        <dependency>
+            <groupId>group-b</groupId>
+            <artifactId>module-b</artifactId>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        }
+
+        when:
+        def first = parseMetaData()
+        def second = parser.parseMetaData(parseContext, otherPomFile, true).result
+
+        then:
+        2 * parseContext.getMetaDataArtifact({ it.selector.module == 'bom' }, _, MAVEN_POM) >> asResource(bomFile)
+        1 * parseContext.getMetaDataArtifact({ it.selector.module == 'parent' }, _, MAVEN_POM) >> asResource(parent)
+        0 * parseContext._
+        single(first.dependencies).selector == moduleId('group-b', 'module-b', '1.0')
+        single(second.dependencies).selector == moduleId('group-b', 'module-b', '1.0')
+
+        when:
+        bomFile.text = bom('2.0-changed')
+        def third = parseMetaData()
+
+        then:
+        1 * parseContext.getMetaDataArtifact({ it.selector.module == 'bom' }, _, MAVEN_POM) >> asResource(bomFile)
+        1 * parseContext.getMetaDataArtifact({ it.selector.module == 'parent' }, _, MAVEN_POM) >> asResource(parent)
+        single(third.dependencies).selector == moduleId('group-b', 'module-b', '2.0-changed')
+    }
+
+    private static String bom(String version) {
+        """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-a</groupId>
+    <artifactId>bom</artifactId>
+    <version>1.0</version>
+    <packaging>pom</packaging>
+
+    <parent>
+        <groupId>group-a</groupId>
+        <artifactId>parent</artifactId>
+        <version>1.0</version>
+    </parent>
+
+    <dependencyManagement>
+        <dependencies>
+            <dependency>
+                <groupId>group-b</groupId>
+                <artifactId>module-b</artifactId>
+                <version>${version}</version>
+            </dependency>
+        </dependencies>
+    </dependencyManagement>
+</project>
+"""
+    }
 }
@@ -2647,4 +2647,67 @@ class GradlePomModuleDescriptorParserTest extends AbstractGradlePomModuleDescrip
         metadata.id == componentId('group-one', 'artifact-one', 'version-one')
 
     }
+
+    def "parent pom shared by several poms is interpolated with the properties of each pom until it changes"() {
+        given:
+        def parent = tmpDir.file("parent.xml")
+        parent.text = parentPom('${library.version}')
+        def otherPomFile = tmpDir.file("other-pom.xml")
+        [pomFile, otherPomFile].eachWithIndex { file, i ->
+            file << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <artifactId>module-${i}</artifactId>
+
+    <parent>
+        <groupId>group-one</groupId>
+        <artifactId>parent</artifactId>
+        <version>version-one</version>
+    </parent>
+
+    <properties>
+        <library.version>${i + 1}.0</library.version>
+    </properties>
+</project>
+"""
+        }
+        parseContext.getMetaDataArtifact(_, _, MAVEN_POM) >> asResource(parent)
+
+        when:
+        def first = parseMetaData()
+        def second = parser.parseMetaData(parseContext, otherPomFile, true).result
+
+        then:
+        first.id == componentId('group-one', 'module-0', 'version-one')
+        firstDependency(first.dependencies).selector == moduleId('group-two', 'artifact-two', '1.0')
+        second.id == componentId('group-one', 'module-1', 'version-one')
+        firstDependency(second.dependencies).selector == moduleId('group-two', 'artifact-two', '2.0')
+
+        when:
+        parent.text = parentPom('3.0-changed')
+        def third = parseMetaData()
+
+        then:
+        firstDependency(third.dependencies).selector == moduleId('group-two', 'artifact-two', '3.0-changed')
+    }
+
+    private static String parentPom(String libraryVersion) {
+        """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-one</groupId>
+    <artifactId>parent</artifactId>
+    <version>version-one</version>
+    <packaging>pom</packaging>
+
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>${libraryVersion}</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+    }
 }
@@ -16,13 +16,16 @@
 
 package org.gradle.api.internal.artifacts.ivyservice.modulecache
 
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
 import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
 import org.gradle.api.internal.artifacts.DependencyManagementTestUtil
-import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.cache.IndexedCache
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
-import org.gradle.internal.resource.local.LocallyAvailableResource
-import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.TestUtil
 import org.gradle.util.internal.SimpleMapInterner
 import org.junit.Rule
 import spock.lang.Specification
@@ -31,42 +34,152 @@ import spock.lang.Subject
 class ModuleMetadataStoreTest extends Specification {
 
     @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
-    def pathKeyFileStore = Mock(PathKeyFileStore)
     def repository = "repositoryId"
-    def fileStoreEntry = Mock(LocallyAvailableResource)
-    def moduleIdentifierFactory = Mock(ImmutableModuleIdentifierFactory) {
-        module(_,_) >> { args -> DefaultModuleIdentifier.newId(*args)}
-    }
     def moduleComponentIdentifier = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org.test", "testArtifact"), "1.0")
-    def serializer = Mock(ModuleMetadataSerializer)
-    @Subject ModuleMetadataStore store = new ModuleMetadataStore(pathKeyFileStore, serializer, moduleIdentifierFactory, SimpleMapInterner.notThreadSafe())
+    def otherComponentIdentifier = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org.test", "otherArtifact"), "2.0")
     def mavenMetadataFactory = DependencyManagementTestUtil.mavenMetadataFactory()
+    def serializer = new ModuleMetadataSerializer(
+        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+        new CapabilitySelectorSerializer(),
+        mavenMetadataFactory,
+        DependencyManagementTestUtil.ivyMetadataFactory(),
+        new ModuleSourcesSerializer([:])
+    )
+    def storeDir = temporaryFolder.file("descriptors")
+    @Subject ModuleMetadataStore store = newStore()
+    def entry = new ModuleMetadataCacheEntry(ModuleMetadataCacheEntry.TYPE_PRESENT, false, 0)
+
+    def "returns null for descriptors that are not in the store"() {
+        expect:
+        null == store.getModuleDescriptor(new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier), entry.withDescriptorAt(0, 10))
+    }
+
+    def "writes the descriptors of a repository to a single file"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
+        def descriptor = mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable()
+        def otherDescriptor = mavenMetadataFactory.create(otherComponentIdentifier, []).asImmutable()
 
-    def "getModuleDescriptorFile returns null for not cached descriptors"() {
         when:
-        pathKeyFileStore.get("org.test/testArtifact/1.0/repositoryId/descriptor.bin") >> null
+        def stored = store.putModuleDescriptor(key, descriptor, entry)
+        def otherStored = store.putModuleDescriptor(otherKey, otherDescriptor, entry)
+
         then:
-        null == store.getModuleDescriptor(new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier))
+        stored.descriptorOffset == 0
+        otherStored.descriptorOffset == stored.descriptorLength
+        storeDir.file("repositoryId/descriptors.bin").length() == stored.descriptorLength + otherStored.descriptorLength
+
+        and:
+        store.getModuleDescriptor(key, stored).asImmutable() == descriptor
+        store.getModuleDescriptor(otherKey, otherStored).asImmutable() == otherDescriptor
+
+        and:
+        def reopened = newStore()
+        reopened.getModuleDescriptor(otherKey, otherStored).asImmutable() == otherDescriptor
+    }
+
+    def "reads descriptors written after the file was first read"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
+        def otherDescriptor = mavenMetadataFactory.create(otherComponentIdentifier, []).asImmutable()
+        def stored = store.putModuleDescriptor(key, mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable(), entry)
+        store.getModuleDescriptor(key, stored)
+
+        when:
+        def otherStored = newStore().putModuleDescriptor(otherKey, otherDescriptor, entry)
+
+        then:
+        store.getModuleDescriptor(otherKey, otherStored).asImmutable() == otherDescriptor
+    }
+
+    def "returns null when the entry points at the descriptor of another component"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
+        def stored = store.putModuleDescriptor(key, mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable(), entry)
+
+        expect:
+        null == store.getModuleDescriptor(otherKey, stored)
     }
 
-    def "getModuleDescriptorFile uses PathKeyFileStore to get file"() {
+    def "returns null when the entry does not point at the start of a descriptor"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def stored = store.putModuleDescriptor(key, mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable(), entry)
+
+        expect:
+        null == store.getModuleDescriptor(key, stored.withDescriptorAt(stored.descriptorOffset + 1, stored.descriptorLength - 1))
+        null == store.getModuleDescriptor(key, stored.withDescriptorAt(stored.descriptorOffset, stored.descriptorLength + 1))
+    }
+
+    def "reads descriptors from the new file when the file is replaced"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
+        def otherDescriptor = mavenMetadataFactory.create(otherComponentIdentifier, []).asImmutable()
+        def stored = store.putModuleDescriptor(key, mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable(), entry)
+        store.getModuleDescriptor(key, stored)
+
         when:
-        store.getModuleDescriptor(new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier))
+        def packFile = storeDir.file("repositoryId/descriptors.bin")
+        packFile.renameTo(storeDir.file("repositoryId/descriptors.bin.old"))
+        def otherStored = newStore().putModuleDescriptor(otherKey, otherDescriptor, entry)
+
         then:
-        1 * pathKeyFileStore.get("org.test", "testArtifact", "1.0", "repositoryId", "descriptor.bin") >> null
+        otherStored.descriptorOffset == 0
+        store.getModuleDescriptor(otherKey, otherStored).asImmutable() == otherDescriptor
+        null == store.getModuleDescriptor(key, stored)
     }
 
-    def "putModuleDescriptor uses PathKeyFileStore to write file"() {
-        setup:
-        File descriptorFile = temporaryFolder.createFile("fileStoreEntry")
+    def "compaction removes the descriptors that are not in the index and relocates the others"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
         def descriptor = mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable()
+        def otherDescriptor = mavenMetadataFactory.create(otherComponentIdentifier, []).asImmutable()
+        def entries = [:]
+        def index = indexOf(entries)
+        3.times { store.putModuleDescriptor(key, descriptor, entry) }
+        entries[otherKey] = store.putModuleDescriptor(otherKey, otherDescriptor, entry)
+        entries[key] = store.putModuleDescriptor(key, descriptor, entry)
+        def packFile = storeDir.file("repositoryId/descriptors.bin")
 
         when:
-        store.putModuleDescriptor(new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier), descriptor)
+        store.compact(repository, index)
+
         then:
-        1 * pathKeyFileStore.add("org.test/testArtifact/1.0/repositoryId/descriptor.bin", _) >> { path, action ->
-            action.execute(descriptorFile); fileStoreEntry
-        };
-        1 * serializer.write(_, descriptor, _)
+        packFile.length() == entries[key].descriptorLength + entries[otherKey].descriptorLength
+        entries[otherKey].descriptorOffset == 0
+        entries[key].descriptorOffset == entries[otherKey].descriptorLength
+
+        and:
+        store.getModuleDescriptor(key, entries[key]).asImmutable() == descriptor
+        store.getModuleDescriptor(otherKey, entries[otherKey]).asImmutable() == otherDescriptor
+        newStore().getModuleDescriptor(key, entries[key]).asImmutable() == descriptor
+    }
+
+    def "compaction keeps the file when most descriptors are in the index"() {
+        def key = new ModuleComponentAtRepositoryKey(repository, moduleComponentIdentifier)
+        def otherKey = new ModuleComponentAtRepositoryKey(repository, otherComponentIdentifier)
+        def entries = [:]
+        def index = indexOf(entries)
+        entries[key] = store.putModuleDescriptor(key, mavenMetadataFactory.create(moduleComponentIdentifier, []).asImmutable(), entry)
+        entries[otherKey] = store.putModuleDescriptor(otherKey, mavenMetadataFactory.create(otherComponentIdentifier, []).asImmutable(), entry)
+        def packFile = storeDir.file("repositoryId/descriptors.bin")
+        def length = packFile.length()
+
+        when:
+        store.compact(repository, index)
+
+        then:
+        packFile.length() == length
+        entries[otherKey].descriptorOffset == entries[key].descriptorLength
+    }
+
+    private IndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> indexOf(Map<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> entries) {
+        return Stub(IndexedCache) {
+            getIfPresent(_) >> { ModuleComponentAtRepositoryKey key -> entries[key] }
+            put(_, _) >> { ModuleComponentAtRepositoryKey key, ModuleMetadataCacheEntry value -> entries[key] = value }
+        }
+    }
+
+    private ModuleMetadataStore newStore() {
+        new ModuleMetadataStore(storeDir, serializer, new DefaultImmutableModuleIdentifierFactory(), SimpleMapInterner.notThreadSafe())
     }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.model.ComponentGraphResolveState
+import org.gradle.internal.component.model.ComponentGraphSpecificResolveState
+import org.gradle.internal.component.model.ComponentOverrideMetadata
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.component.model.GraphSelectionCandidates
+import org.gradle.internal.component.model.VariantGraphResolveState
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+import static org.gradle.internal.component.external.model.DefaultModuleComponentSelector.newSelector
+
+class MetadataPrefetcherTest extends Specification {
+    def executorFactory = new DefaultExecutorFactory()
+    def resolver = new RecordingResolver()
+    def versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser())
+    def prefetcher = new MetadataPrefetcher(resolver, versionSelectorScheme, executorFactory, 4)
+    def conditions = new PollingConditions(timeout: 10)
+
+    def cleanup() {
+        prefetcher.stop()
+        executorFactory.stop()
+    }
+
+    def "prefetches metadata of selected component and of its dependencies with fixed versions"() {
+        resolver.dependencies["a:1"] = [dependency("b", "1"), dependency("c", "[1,2)")]
+        resolver.dependencies["b:1"] = [dependency("d", "2")]
+
+        when:
+        prefetcher.prefetch(selected("a", "1"))
+
+        then:
+        conditions.eventually {
+            assert resolver.resolved as Set == ["a:1", "b:1", "d:2"] as Set
+        }
+    }
+
+    def "does not prefetch metadata that is cheap to fetch"() {
+        resolver.dependencies["a:1"] = [dependency("b", "1")]
+        resolver.cheap << "b:1"
+
+        when:
+        prefetcher.prefetch(selected("a", "1"))
+        conditions.eventually {
+            assert resolver.resolved == ["a:1"]
+        }
+        prefetcher.stop()
+
+        then:
+        resolver.resolved == ["a:1"]
+    }
+
+    def "does not prefetch metadata for deselected component"() {
+        def component = Stub(ComponentState) {
+            getComponentId() >> id("a", "1")
+            getModule() >> Stub(ModuleResolveState)
+            getComponentOverrideMetadata() >> DefaultComponentOverrideMetadata.EMPTY
+            isSelected() >> false
+        }
+
+        when:
+        prefetcher.prefetch(component)
+        prefetcher.stop()
+
+        then:
+        resolver.resolved.empty
+    }
+
+    def "resolving prefetched component delegates to resolver"() {
+        def result = Mock(BuildableComponentResolveResult)
+        prefetcher.prefetch(selected("a", "1"))
+        conditions.eventually {
+            assert resolver.resolved == ["a:1"]
+        }
+
+        when:
+        prefetcher.resolve(id("a", "1"), DefaultComponentOverrideMetadata.EMPTY, result)
+
+        then:
+        resolver.resolved == ["a:1", "a:1"]
+        1 * result.resolved(_, _)
+    }
+
+    def "resolving component waits for prefetch in progress"() {
+        def release = new CountDownLatch(1)
+        resolver.blocked["a:1"] = release
+        def result = Mock(BuildableComponentResolveResult)
+        prefetcher.prefetch(selected("a", "1"))
+        conditions.eventually {
+            assert resolver.started == ["a:1"]
+        }
+
+        when:
+        def resolving = Thread.start {
+            prefetcher.resolve(id("a", "1"), DefaultComponentOverrideMetadata.EMPTY, result)
+        }
+        conditions.eventually {
+            assert resolving.state == Thread.State.WAITING
+        }
+
+        then:
+        resolver.started == ["a:1"]
+        resolver.resolved.empty
+
+        when:
+        release.countDown()
+        resolving.join()
+
+        then:
+        resolver.started == ["a:1", "a:1"]
+        resolver.resolved == ["a:1", "a:1"]
+        1 * result.resolved(_, _)
+    }
+
+    def "resolving component skips prefetch that has not started"() {
+        def prefetcher = new MetadataPrefetcher(resolver, versionSelectorScheme, executorFactory, 1)
+        def release = new CountDownLatch(1)
+        resolver.blocked["a:1"] = release
+        def result = Mock(BuildableComponentResolveResult)
+        prefetcher.prefetch(selected("a", "1"))
+        conditions.eventually {
+            assert resolver.started == ["a:1"]
+        }
+        prefetcher.prefetch(selected("b", "1"))
+
+        when:
+        prefetcher.resolve(id("b", "1"), DefaultComponentOverrideMetadata.EMPTY, result)
+
+        then:
+        resolver.resolved == ["b:1"]
+        1 * result.resolved(_, _)
+
+        when:
+        release.countDown()
+        prefetcher.stop()
+
+        then:
+        resolver.resolved == ["b:1", "a:1"]
+    }
+
+    private ComponentState selected(String name, String version) {
+        Stub(ComponentState) {
+            getComponentId() >> id(name, version)
+            getModule() >> Stub(ModuleResolveState)
+            getComponentOverrideMetadata() >> DefaultComponentOverrideMetadata.EMPTY
+            isSelected() >> true
+        }
+    }
+
+    private static ModuleComponentIdentifier id(String name, String version) {
+        DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+    }
+
+    private DependencyMetadata dependency(String name, String version) {
+        Stub(DependencyMetadata) {
+            getSelector() >> newSelector(DefaultModuleIdentifier.newId("org", name), version)
+            getArtifacts() >> []
+        }
+    }
+
+    private class RecordingResolver implements ComponentMetaDataResolver {
+        final Map<String, List<DependencyMetadata>> dependencies = [:]
+        final Set<String> cheap = []
+        final Map<String, CountDownLatch> blocked = [:]
+        final List<String> started = new CopyOnWriteArrayList<>()
+        final List<String> resolved = new CopyOnWriteArrayList<>()
+
+        @Override
+        void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+            def key = "${identifier.module}:${identifier.version}".toString()
+            started << key
+            blocked[key]?.await()
+            resolved << key
+            def variant = Stub(VariantGraphResolveState) {
+                getDependencies() >> (dependencies[key] ?: [])
+            }
+            def state = Stub(ComponentGraphResolveState) {
+                getCandidatesForGraphVariantSelection() >> Stub(GraphSelectionCandidates) {
+                    getVariantsForAttributeMatching() >> [variant]
+                }
+            }
+            result.resolved(state, Stub(ComponentGraphSpecificResolveState))
+        }
+
+        @Override
+        boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+            cheap.contains("${identifier.module}:${identifier.version}".toString())
+        }
+    }
+}
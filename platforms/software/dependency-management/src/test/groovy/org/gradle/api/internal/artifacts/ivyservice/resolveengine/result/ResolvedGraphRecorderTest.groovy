@@ -0,0 +1,261 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result
+
+import org.gradle.api.artifacts.result.ComponentSelectionReason
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil
+import org.gradle.api.internal.artifacts.capability.CapabilitySelectorSerializer
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ResolvedGraphVariant
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ByteArrayBinaryStore
+import org.gradle.api.internal.artifacts.result.DefaultResolvedVariantResult
+import org.gradle.api.internal.artifacts.result.ResolvedComponentResultInternal
+import org.gradle.api.internal.attributes.ImmutableAttributes
+import org.gradle.cache.internal.Store
+import org.gradle.internal.Describables
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.external.model.ImmutableCapabilities
+import org.gradle.internal.component.local.model.LocalVariantGraphResolveMetadata
+import org.gradle.internal.component.model.ComponentGraphResolveMetadata
+import org.gradle.internal.component.model.ComponentGraphResolveState
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.TestUtil
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.CONFLICT_RESOLUTION
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.of
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.requested
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.root
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultPrinter.printGraph
+
+class ResolvedGraphRecorderTest extends Specification {
+    def attributeContainerSerializer = new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator())
+    def componentResultSerializer = new CompleteComponentResultSerializer(
+        DependencyManagementTestUtil.componentSelectionDescriptorFactory(),
+        new DefaultImmutableModuleIdentifierFactory(),
+        AttributeTestUtil.attributesFactory(),
+        TestUtil.objectInstantiator()
+    )
+    def recorder = new ResolvedGraphRecorder(
+        new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()),
+        attributeContainerSerializer,
+        new CapabilitySelectorSerializer(),
+        componentResultSerializer,
+        DependencyManagementTestUtil.componentSelectionDescriptorFactory()
+    )
+
+    def "recorded graph can be restored"() {
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", "2.0")
+        def selector2 = selector(11, "org", "dep2", "3.0")
+        def dep1 = node(2, "org", "dep1", "2.0")
+        def dep2 = node(3, "org", "dep2", "3.0")
+        root.outgoingEdges >> [dep(selector1, 1, 2)]
+        dep1.outgoingEdges >> [dep(selector2, 2, 3)]
+
+        when:
+        visit(root, [dep1, dep2], [selector1, selector2])
+        def entry = recorder.complete()
+
+        then:
+        entry != null
+        entry.rootVariantId == 1
+        entry.rootAttributes == root.metadata.attributes
+        !entry.artifactsQueried
+
+        when:
+        def result = restore(entry)
+
+        then:
+        result.rootVariantId == 1
+        printGraph(result.rootSource.get()) == """org:root:1.0
+  org:dep1:2.0 [root]
+    org:dep2:3.0 [dep1]
+"""
+    }
+
+    def "does not record graph with component selected by conflict resolution"() {
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", "2.0")
+        def dep1 = node(2, "org", "dep1", "2.0", of(CONFLICT_RESOLUTION))
+        root.outgoingEdges >> [dep(selector1, 1, 2)]
+
+        when:
+        visit(root, [dep1], [selector1])
+
+        then:
+        recorder.complete() == null
+    }
+
+    def "does not record graph with changing component"() {
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", "2.0")
+        def dep1 = node(2, "org", "dep1", "2.0", requested(), true)
+        root.outgoingEdges >> [dep(selector1, 1, 2)]
+
+        when:
+        visit(root, [dep1], [selector1])
+
+        then:
+        recorder.complete() == null
+    }
+
+    def "does not record graph with dynamic version"() {
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", version)
+        def dep1 = node(2, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector1, 1, 2)]
+
+        when:
+        visit(root, [dep1], [selector1])
+
+        then:
+        recorder.complete() == null
+
+        where:
+        version << ["2.+", "[1.0,3.0)", "latest.release"]
+    }
+
+    def "does not record graph with failed dependency"() {
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector1, 1, new RuntimeException("Boo!"))]
+
+        when:
+        visit(root, [], [selector1])
+
+        then:
+        recorder.complete() == null
+    }
+
+    private void visit(RootGraphNode root, List<DependencyGraphNode> nodes, List<DependencyGraphSelector> selectors) {
+        recorder.start(root)
+        recorder.visitNode(root)
+        nodes.each { recorder.visitNode(it) }
+        selectors.each { recorder.visitSelector(it) }
+        recorder.visitEdges(root)
+        nodes.each { recorder.visitEdges(it) }
+        recorder.finish(root)
+    }
+
+    private MinimalResolutionResult restore(ResolvedGraphCache.Entry entry) {
+        return StreamingResolutionResultBuilder.resolutionResultFrom(
+            ByteArrayBinaryStore.dataOf(entry.graph),
+            entry.rootVariantId,
+            entry.rootAttributes,
+            { Supplier<ResolvedComponentResultInternal> supplier -> supplier.get() } as Store<ResolvedComponentResultInternal>,
+            attributeContainerSerializer,
+            new CapabilitySelectorSerializer(),
+            componentResultSerializer,
+            DependencyManagementTestUtil.componentSelectionDescriptorFactory()
+        )
+    }
+
+    private DependencyGraphEdge dep(DependencyGraphSelector selector, Long fromVariant, Long selectedId) {
+        def edge = Stub(DependencyGraphEdge)
+        _ * edge.selector >> selector
+        _ * edge.requested >> selector.requested
+        _ * edge.reason >> requested()
+        _ * edge.selected >> selectedId
+        _ * edge.failure >> null
+        _ * edge.fromVariant >> fromVariant
+        _ * edge.selectedVariant >> selectedId
+        return edge
+    }
+
+    private DependencyGraphEdge dep(DependencyGraphSelector selector, Long fromVariant, Throwable failure) {
+        def edge = Stub(DependencyGraphEdge)
+        _ * edge.selector >> selector
+        _ * edge.requested >> selector.requested
+        _ * edge.reason >> requested()
+        _ * edge.failure >> new ModuleVersionResolveException(selector.requested, failure)
+        _ * edge.fromVariant >> fromVariant
+        _ * edge.selectedVariant >> null
+        return edge
+    }
+
+    private DependencyGraphNode node(Long componentId, String org, String name, String ver, ComponentSelectionReason reason = requested(), boolean changing = false) {
+        def component = component(componentId, org, name, ver, reason, changing)
+        def node = Stub(DependencyGraphNode)
+        _ * node.nodeId >> componentId
+        _ * node.owner >> component
+        _ * node.root >> false
+        _ * node.externalVariant >> null
+        return node
+    }
+
+    private RootGraphNode rootNode(Long componentId, String org, String name, String ver) {
+        def component = component(componentId, org, name, ver, root(), false)
+        def node = Stub(RootGraphNode)
+        _ * node.nodeId >> componentId
+        _ * node.owner >> component
+        _ * node.root >> true
+        _ * node.externalVariant >> null
+        _ * node.metadata >> Stub(LocalVariantGraphResolveMetadata) {
+            getAttributes() >> AttributeTestUtil.attributes(["org.foo": "v1"])
+        }
+        return node
+    }
+
+    private DependencyGraphComponent component(Long componentId, String org, String name, String ver, ComponentSelectionReason reason, boolean changing) {
+        def id = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(org, name), ver)
+
+        def componentMetadata = Stub(ComponentGraphResolveMetadata)
+        _ * componentMetadata.moduleVersionId >> DefaultModuleVersionIdentifier.newId(DefaultModuleIdentifier.newId(org, name), ver)
+        _ * componentMetadata.changing >> changing
+
+        def componentState = Stub(ComponentGraphResolveState)
+        _ * componentState.instanceId >> componentId
+        _ * componentState.id >> id
+        _ * componentState.metadata >> componentMetadata
+        _ * componentState.getPublicViewFor(_, _) >> new DefaultResolvedVariantResult(id, Describables.of("runtime"), ImmutableAttributes.EMPTY, ImmutableCapabilities.EMPTY, null)
+
+        def variant = Stub(ResolvedGraphVariant)
+        variant.nodeId >> componentId
+
+        def component = Stub(DependencyGraphComponent)
+        _ * component.resultId >> componentId
+        _ * component.componentId >> id
+        _ * component.selectionReason >> reason
+        _ * component.repositoryName >> "repo"
+        _ * component.resolveState >> componentState
+        _ * component.selectedVariants >> [variant]
+        return component
+    }
+
+    private DependencyGraphSelector selector(Long resultId, String org, String name, String ver) {
+        def selector = Stub(DependencyGraphSelector)
+        selector.resultId >> resultId
+        selector.requested >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(org, name), new DefaultMutableVersionConstraint(ver))
+        return selector
+    }
+}
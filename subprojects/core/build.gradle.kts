@@ -140,6 +140,7 @@ dependencies {
     implementation(libs.commonsLang3)
     implementation(libs.errorProneAnnotations)
     implementation(libs.fastutil)
+    implementation(libs.gson)
     implementation(libs.groovyAnt)
     implementation(libs.groovyJson)
     implementation(libs.groovyXml)
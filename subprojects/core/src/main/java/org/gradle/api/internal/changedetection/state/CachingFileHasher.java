@@ -49,11 +49,26 @@ public CachingFileHasher(
         FileSystem fileSystem,
         int inMemorySize,
         FileHasherStatistics.Collector statisticsCollector
+    ) {
+        this(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem, inMemorySize, statisticsCollector, IndexedCacheParameters.StorageType.BTREE);
+    }
+
+    public CachingFileHasher(
+        FileHasher delegate,
+        CrossBuildFileHashCache store,
+        StringInterner stringInterner,
+        FileTimeStampInspector timestampInspector,
+        String cacheName,
+        FileSystem fileSystem,
+        int inMemorySize,
+        FileHasherStatistics.Collector statisticsCollector,
+        IndexedCacheParameters.StorageType storageType
     ) {
         this.delegate = delegate;
         this.fileSystem = fileSystem;
         this.cache = store.createIndexedCache(
-            IndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
+            IndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer())
+                .withStorageType(storageType),
             inMemorySize,
             true);
         this.stringInterner = stringInterner;
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.internal.buildoption.DefaultInternalOptions;
+import org.gradle.internal.buildoption.IntegerInternalOption;
+import org.gradle.internal.buildoption.InternalFlag;
+import org.gradle.internal.buildoption.InternalOptions;
+import org.gradle.internal.buildoption.StringInternalOption;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.hash.ChunkedFileHasher;
+import org.gradle.internal.hash.ChunkedStreamHasher;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashFunction;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.hash.StreamHasher;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Locale;
+
+/**
+ * Creates the {@link FileHasher} that reads file content, based on the configured hashing mode.
+ *
+ * By default files are streamed through the {@link StreamHasher} and hashed with MD5.
+ * When {@code org.gradle.internal.file-hashing.chunked} is enabled, files larger than {@link ChunkedFileHasher#CHUNK_SIZE} are hashed as a sequence of chunks,
+ * see {@link ChunkedFileHasher}, and file contents that are not read from the file, like the files unpacked from a build cache entry, are hashed the same way.
+ * When {@code org.gradle.internal.file-hashing.parallel-chunks} is enabled as well, the chunks of such a file are hashed in parallel, which produces the same hash.
+ * When {@code org.gradle.internal.file-hashing.function} is set, file contents are hashed with the given algorithm instead (for example {@code MURMUR3-128}).
+ * Such hashes are only fit for local use, see {@link #hasLocalOnlyHashes()}.
+ * When {@code org.gradle.internal.vfs.parallel-snapshotting} is set to a positive number, unfiltered directory trees are snapshotted concurrently with that parallelism.
+ */
+@ServiceScope(Scope.Global.class)
+public class FileContentHasherFactory implements Closeable {
+    public static final StringInternalOption HASH_FUNCTION = new StringInternalOption("org.gradle.internal.file-hashing.function", null);
+    public static final InternalFlag CHUNKED_HASHING = new InternalFlag("org.gradle.internal.file-hashing.chunked");
+    public static final InternalFlag PARALLEL_CHUNK_HASHING = new InternalFlag("org.gradle.internal.file-hashing.parallel-chunks");
+    public static final IntegerInternalOption PARALLEL_SNAPSHOTTING = new IntegerInternalOption("org.gradle.internal.vfs.parallel-snapshotting", 0);
+
+    private final ExecutorFactory executorFactory;
+    private final HashFunction hashFunction;
+    private final boolean chunkedHashing;
+    private final boolean parallelChunkHashing;
+    private final int snapshottingParallelism;
+    private ManagedExecutor executor;
+    private ManagedExecutor snapshottingExecutor;
+
+    public FileContentHasherFactory(ExecutorFactory executorFactory) {
+        // Content hashing is set up once per process, so only system properties of the process are taken into account
+        this(executorFactory, new DefaultInternalOptions(Collections.emptyMap()));
+    }
+
+    public FileContentHasherFactory(ExecutorFactory executorFactory, InternalOptions options) {
+        this(
+            executorFactory,
+            contentHashFunction(options),
+            options.getOption(CHUNKED_HASHING).get(),
+            options.getOption(PARALLEL_CHUNK_HASHING).get(),
+            options.getOption(PARALLEL_SNAPSHOTTING).get()
+        );
+    }
+
+    private FileContentHasherFactory(ExecutorFactory executorFactory, HashFunction hashFunction, boolean chunkedHashing, boolean parallelChunkHashing, int snapshottingParallelism) {
+        this.executorFactory = executorFactory;
+        this.hashFunction = hashFunction;
+        this.chunkedHashing = chunkedHashing;
+        this.parallelChunkHashing = parallelChunkHashing;
+        this.snapshottingParallelism = snapshottingParallelism;
+    }
+
+    /**
+     * The hash function to use for file contents, as configured by the system properties of the process.
+     */
+    public static HashFunction contentHashFunction() {
+        return contentHashFunction(new DefaultInternalOptions(Collections.emptyMap()));
+    }
+
+    private static HashFunction contentHashFunction(InternalOptions options) {
+        String algorithm = options.getOption(HASH_FUNCTION).get();
+        return algorithm == null ? Hashing.defaultFunction() : Hashing.forAlgorithm(algorithm);
+    }
+
+    /**
+     * Whether file contents are hashed with a function that is not cryptographically secure, like {@code MURMUR3-128}.
+     *
+     * File content hashes end up in build cache keys. With a non-cryptographic function, whoever can write the inputs of a build
+     * can craft contents with colliding hashes, and so make a build store wrong results under the key of other inputs.
+     * Such keys must not leave the machine, so the remote build cache is not used in that case.
+     */
+    public boolean hasLocalOnlyHashes() {
+        return hashFunction == Hashing.murmur3();
+    }
+
+    public FileHasher createContentHasher(StreamHasher streamHasher) {
+        DefaultFileHasher fileHasher = new DefaultFileHasher(streamHasher);
+        if (!chunkedHashing) {
+            return fileHasher;
+        }
+        return new ChunkedFileHasher(fileHasher, hashFunction, parallelChunkHashing ? getExecutor() : null);
+    }
+
+    /**
+     * Returns the hasher to use for file contents that are not read from the file, so that they get the same hash as the file would get from {@link #createContentHasher(StreamHasher)}.
+     */
+    public StreamHasher createContentStreamHasher(StreamHasher streamHasher) {
+        return chunkedHashing ? new ChunkedStreamHasher(streamHasher, hashFunction) : streamHasher;
+    }
+
+    /**
+     * Returns the name to use for a persistent cache that contains file content hashes.
+     *
+     * Hashes created in different modes differ for the same content, so each mode uses a separate cache.
+     */
+    public String getVersionedCacheName(String cacheName) {
+        StringBuilder builder = new StringBuilder(cacheName);
+        if (hashFunction != Hashing.defaultFunction()) {
+            builder.append('-').append(hashFunction.getAlgorithm().toLowerCase(Locale.ROOT));
+        }
+        if (chunkedHashing) {
+            builder.append("-chunked");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the executor to snapshot directory trees with, or {@code null} when directory trees should be snapshotted sequentially.
+     */
+    @Nullable
+    public synchronized ManagedExecutor getSnapshottingExecutor() {
+        if (snapshottingParallelism <= 0) {
+            return null;
+        }
+        if (snapshottingExecutor == null) {
+            snapshottingExecutor = executorFactory.create("Directory snapshotter", snapshottingParallelism);
+        }
+        return snapshottingExecutor;
+    }
+
+    private synchronized ManagedExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Chunked file hasher", Runtime.getRuntime().availableProcessors());
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void close() {
+        CompositeStoppable.stoppable(executor, snapshottingExecutor).stop();
+        executor = null;
+        snapshottingExecutor = null;
+    }
+}
@@ -124,6 +124,8 @@ private static CachingDisabledReasonCategory convertNoCacheReasonCategory(org.gr
                 return CachingDisabledReasonCategory.OVERLAPPING_OUTPUTS;
             case VALIDATION_FAILURE:
                 return CachingDisabledReasonCategory.VALIDATION_FAILURE;
+            case CHEAPER_TO_REBUILD:
+                return CachingDisabledReasonCategory.CHEAPER_TO_REBUILD;
             default:
                 throw new AssertionError();
         }
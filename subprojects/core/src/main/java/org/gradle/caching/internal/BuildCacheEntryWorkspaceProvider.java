@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.api.internal.cache.CacheConfigurationsInternal;
+import org.gradle.cache.CacheCleanupStrategyFactory;
+import org.gradle.cache.scopes.GlobalScopedCacheBuilderFactory;
+import org.gradle.caching.internal.packaging.impl.WorkspaceBuildCacheEntryRestorer;
+import org.gradle.internal.execution.workspace.impl.CacheBasedImmutableWorkspaceProvider;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Provides the immutable workspaces holding the unpacked trees of local build cache entries.
+ *
+ * The workspaces are only opened when they are first used, since restoring entries from workspaces is opt-in.
+ */
+@ServiceScope(Scope.UserHome.class)
+public class BuildCacheEntryWorkspaceProvider implements WorkspaceBuildCacheEntryRestorer.WorkspaceProvider, Closeable {
+
+    private final GlobalScopedCacheBuilderFactory cacheBuilderFactory;
+    private final FileAccessTimeJournal fileAccessTimeJournal;
+    private final CacheConfigurationsInternal cacheConfigurations;
+    private final CacheCleanupStrategyFactory cacheCleanupStrategyFactory;
+
+    @Nullable
+    private CacheBasedImmutableWorkspaceProvider workspaceProvider;
+
+    public BuildCacheEntryWorkspaceProvider(
+        GlobalScopedCacheBuilderFactory cacheBuilderFactory,
+        FileAccessTimeJournal fileAccessTimeJournal,
+        CacheConfigurationsInternal cacheConfigurations,
+        CacheCleanupStrategyFactory cacheCleanupStrategyFactory
+    ) {
+        this.cacheBuilderFactory = cacheBuilderFactory;
+        this.fileAccessTimeJournal = fileAccessTimeJournal;
+        this.cacheConfigurations = cacheConfigurations;
+        this.cacheCleanupStrategyFactory = cacheCleanupStrategyFactory;
+    }
+
+    @Override
+    public File getWorkspace(String cacheKey) {
+        return getWorkspaceProvider().getWorkspace(cacheKey).getImmutableLocation();
+    }
+
+    @Override
+    public File getTemporaryWorkspace(String cacheKey) {
+        return getWorkspaceProvider().getWorkspace(cacheKey).withTemporaryWorkspace(location -> location);
+    }
+
+    private synchronized CacheBasedImmutableWorkspaceProvider getWorkspaceProvider() {
+        if (workspaceProvider == null) {
+            workspaceProvider = CacheBasedImmutableWorkspaceProvider.createWorkspaceProvider(
+                cacheBuilderFactory
+                    .createCacheBuilder("build-cache-workspaces")
+                    .withDisplayName("Build cache workspaces"),
+                fileAccessTimeJournal,
+                cacheConfigurations,
+                cacheCleanupStrategyFactory
+            );
+        }
+        return workspaceProvider;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (workspaceProvider != null) {
+            workspaceProvider.close();
+            workspaceProvider = null;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import com.google.gson.stream.JsonWriter;
+import org.gradle.StartParameter;
+import org.gradle.caching.internal.operations.BuildCacheArchivePackBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheArchiveUnpackBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheLocalLoadBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheLocalStoreBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheMemoryLoadBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheMemoryStoreBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheRemoteLoadBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreBuildOperationType;
+import org.gradle.internal.buildoption.InternalOptions;
+import org.gradle.internal.buildoption.StringInternalOption;
+import org.gradle.internal.buildtree.BuildTreeLifecycleListener;
+import org.gradle.internal.execution.steps.AbstractCaptureStateBeforeExecutionStep;
+import org.gradle.internal.execution.steps.CaptureOutputsAfterExecutionStep;
+import org.gradle.internal.operations.BuildOperationAncestryTracker;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.BuildOperationListenerManager;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+import org.gradle.operations.execution.ExecuteWorkBuildOperationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the cost of loading and storing each build cache entry of the build, and writes a summary as JSON when the build tree finishes.
+ *
+ * The cost of loading an entry is compared with the execution time of the work in the build that stored the entry,
+ * so that entries that are slower to load than to rebuild stand out.
+ * Metrics are only recorded when {@code org.gradle.caching.metrics.file} is set.
+ */
+@ServiceScope(Scope.BuildTree.class)
+public class BuildCacheMetricsRecorder implements BuildTreeLifecycleListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheMetricsRecorder.class);
+
+    /**
+     * The file to write the build cache metrics to, relative to the current directory.
+     */
+    private static final StringInternalOption METRICS_FILE_OPTION = new StringInternalOption("org.gradle.caching.metrics.file", null);
+
+    private static final String MEMORY = "memory";
+    private static final String LOCAL = "local";
+    private static final String REMOTE = "remote";
+
+    @Nullable
+    private final File metricsFile;
+    private final BuildOperationListenerManager buildOperationListenerManager;
+    private final OperationListener operationListener;
+
+    @Inject
+    public BuildCacheMetricsRecorder(
+        InternalOptions internalOptions,
+        StartParameter startParameter,
+        BuildOperationListenerManager buildOperationListenerManager,
+        BuildOperationAncestryTracker buildOperationAncestryTracker
+    ) {
+        String path = internalOptions.getOption(METRICS_FILE_OPTION).get();
+        this.metricsFile = path == null ? null : resolve(startParameter.getCurrentDir(), path);
+        this.buildOperationListenerManager = buildOperationListenerManager;
+        this.operationListener = new OperationListener(buildOperationAncestryTracker);
+    }
+
+    private static File resolve(File currentDir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(currentDir, path);
+    }
+
+    @Override
+    public void afterStart() {
+        if (metricsFile != null) {
+            buildOperationListenerManager.addListener(operationListener);
+        }
+    }
+
+    @Override
+    public void beforeStop() {
+        if (metricsFile != null) {
+            buildOperationListenerManager.removeListener(operationListener);
+            try {
+                write(metricsFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write build cache metrics to " + metricsFile, e);
+            }
+            LOGGER.info("Build cache metrics written to {}", metricsFile);
+        }
+    }
+
+    private void write(File file) throws IOException {
+        List<EntryMetrics> entries = new ArrayList<>(operationListener.entries.values());
+        entries.sort(Comparator.comparing(entry -> entry.cacheKey));
+
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginObject();
+            writeSummary(entries, json);
+            json.name("entries").beginArray();
+            for (EntryMetrics entry : entries) {
+                entry.write(json);
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    private static void writeSummary(List<EntryMetrics> entries, JsonWriter json) throws IOException {
+        long hits = 0;
+        long loadCost = 0;
+        long storeCost = 0;
+        long savedTime = 0;
+        List<EntryMetrics> slowerToLoadThanToExecute = new ArrayList<>();
+        for (EntryMetrics entry : entries) {
+            synchronized (entry) {
+                if (entry.unpackTime != null) {
+                    hits++;
+                    loadCost += entry.getLoadCost();
+                }
+                storeCost += entry.getStoreCost();
+                Long entrySavedTime = entry.getSavedTime();
+                if (entrySavedTime != null) {
+                    savedTime += entrySavedTime;
+                    if (entrySavedTime < 0) {
+                        slowerToLoadThanToExecute.add(entry);
+                    }
+                }
+            }
+        }
+        json.name("summary").beginObject();
+        json.name("entries").value(entries.size());
+        json.name("hits").value(hits);
+        json.name("loadCost").value(loadCost);
+        json.name("storeCost").value(storeCost);
+        json.name("savedTime").value(savedTime);
+        json.name("slowerToLoadThanToExecute").beginArray();
+        for (EntryMetrics entry : slowerToLoadThanToExecute) {
+            json.value(entry.identity != null ? entry.identity : entry.cacheKey);
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private static class OperationListener implements BuildOperationListener {
+        private final BuildOperationAncestryTracker ancestryTracker;
+        private final Map<OperationIdentifier, Work> runningWork = new ConcurrentHashMap<>();
+        private final Map<OperationIdentifier, String> runningLoads = new ConcurrentHashMap<>();
+        private final Map<String, EntryMetrics> entries = new ConcurrentHashMap<>();
+
+        public OperationListener(BuildOperationAncestryTracker ancestryTracker) {
+            this.ancestryTracker = ancestryTracker;
+        }
+
+        @Override
+        public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+            Object details = buildOperation.getDetails();
+            if (details instanceof ExecuteWorkBuildOperationType.Details) {
+                ExecuteWorkBuildOperationType.Details workDetails = (ExecuteWorkBuildOperationType.Details) details;
+                runningWork.put(buildOperation.getId(), new Work(workDetails.getIdentity(), workDetails.getWorkType()));
+            } else if (details instanceof BuildCacheMemoryLoadBuildOperationType.Details) {
+                // Entries loaded from memory and from the local cache are unpacked while loading
+                runningLoads.put(buildOperation.getId(), MEMORY);
+            } else if (details instanceof BuildCacheLocalLoadBuildOperationType.Details) {
+                runningLoads.put(buildOperation.getId(), LOCAL);
+            }
+        }
+
+        @Override
+        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+        }
+
+        @Override
+        public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+            Object details = buildOperation.getDetails();
+            Object result = finishEvent.getResult();
+            long duration = finishEvent.getEndTime() - finishEvent.getStartTime();
+            if (details instanceof ExecuteWorkBuildOperationType.Details) {
+                Work work = runningWork.remove(buildOperation.getId());
+                if (work != null && work.entry != null) {
+                    work.entry.workFinished(work, duration, (ExecuteWorkBuildOperationType.Result) result);
+                }
+            } else if (details instanceof AbstractCaptureStateBeforeExecutionStep.Operation.Details || details instanceof CaptureOutputsAfterExecutionStep.Operation.Details) {
+                findWork(buildOperation).ifPresent(work -> work.addSnapshotTime(duration));
+            } else if (details instanceof BuildCacheArchiveUnpackBuildOperationType.Details) {
+                BuildCacheArchiveUnpackBuildOperationType.Details unpackDetails = (BuildCacheArchiveUnpackBuildOperationType.Details) details;
+                EntryMetrics entry = entryFor(buildOperation, unpackDetails.getCacheKey());
+                String enclosingLoad = buildOperation.getParentId() == null ? null : runningLoads.get(buildOperation.getParentId());
+                entry.unpacked(duration, enclosingLoad, unpackDetails.getArchiveSize(), result == null ? null : ((BuildCacheArchiveUnpackBuildOperationType.Result) result).getUncompressedSize());
+            } else if (details instanceof BuildCacheArchivePackBuildOperationType.Details) {
+                BuildCacheArchivePackBuildOperationType.Result packResult = (BuildCacheArchivePackBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheArchivePackBuildOperationType.Details) details).getCacheKey())
+                    .packed(duration, packResult == null ? null : packResult.getArchiveSize(), packResult == null ? null : packResult.getUncompressedSize());
+            } else if (details instanceof BuildCacheMemoryLoadBuildOperationType.Details) {
+                runningLoads.remove(buildOperation.getId());
+                BuildCacheMemoryLoadBuildOperationType.Result loadResult = (BuildCacheMemoryLoadBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheMemoryLoadBuildOperationType.Details) details).getCacheKey())
+                    .loaded(MEMORY, duration, loadResult != null && loadResult.isHit());
+            } else if (details instanceof BuildCacheLocalLoadBuildOperationType.Details) {
+                runningLoads.remove(buildOperation.getId());
+                BuildCacheLocalLoadBuildOperationType.Result loadResult = (BuildCacheLocalLoadBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheLocalLoadBuildOperationType.Details) details).getCacheKey())
+                    .loaded(LOCAL, duration, loadResult != null && loadResult.isHit());
+            } else if (details instanceof BuildCacheRemoteLoadBuildOperationType.Details) {
+                BuildCacheRemoteLoadBuildOperationType.Result loadResult = (BuildCacheRemoteLoadBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheRemoteLoadBuildOperationType.Details) details).getCacheKey())
+                    .loaded(REMOTE, duration, loadResult != null && loadResult.isHit());
+            } else if (details instanceof BuildCacheMemoryStoreBuildOperationType.Details) {
+                BuildCacheMemoryStoreBuildOperationType.Result storeResult = (BuildCacheMemoryStoreBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheMemoryStoreBuildOperationType.Details) details).getCacheKey())
+                    .stored(MEMORY, duration, storeResult != null && storeResult.isStored());
+            } else if (details instanceof BuildCacheLocalStoreBuildOperationType.Details) {
+                BuildCacheLocalStoreBuildOperationType.Result storeResult = (BuildCacheLocalStoreBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheLocalStoreBuildOperationType.Details) details).getCacheKey())
+                    .stored(LOCAL, duration, storeResult != null && storeResult.isStored());
+            } else if (details instanceof BuildCacheRemoteStoreBuildOperationType.Details) {
+                BuildCacheRemoteStoreBuildOperationType.Result storeResult = (BuildCacheRemoteStoreBuildOperationType.Result) result;
+                entryFor(buildOperation, ((BuildCacheRemoteStoreBuildOperationType.Details) details).getCacheKey())
+                    .stored(REMOTE, duration, storeResult != null && storeResult.isStored());
+            }
+        }
+
+        private Optional<Work> findWork(BuildOperationDescriptor buildOperation) {
+            return ancestryTracker.findClosestExistingAncestor(buildOperation.getParentId(), runningWork::get);
+        }
+
+        /**
+         * Returns the metrics of the entry with the given key, attributing it to the enclosing work.
+         * Operations not running as part of a work, like stores to the remote cache that finish after the work, only contribute to the metrics of the entry.
+         */
+        private EntryMetrics entryFor(BuildOperationDescriptor buildOperation, String cacheKey) {
+            EntryMetrics entry = entries.computeIfAbsent(cacheKey, EntryMetrics::new);
+            findWork(buildOperation).ifPresent(work -> work.entry = entry);
+            return entry;
+        }
+    }
+
+    private static class Work {
+        private final String identity;
+        @Nullable
+        private final String workType;
+        private long snapshotTime;
+        @Nullable
+        private volatile EntryMetrics entry;
+
+        public Work(String identity, @Nullable String workType) {
+            this.identity = identity;
+            this.workType = workType;
+        }
+
+        public synchronized void addSnapshotTime(long duration) {
+            snapshotTime += duration;
+        }
+    }
+
+    private static class EntryMetrics {
+        private final String cacheKey;
+        private String identity;
+        private String workType;
+        private String outcome;
+        private Long executionTime;
+        private Long originExecutionTime;
+        private long snapshotTime;
+        private final Map<String, Long> loadTimes = new LinkedHashMap<>();
+        private final Set<String> hits = new HashSet<>();
+        private Long unpackTime;
+        private String unpackedWhileLoadingFrom;
+        private Long packTime;
+        private final Map<String, Long> storeTimes = new LinkedHashMap<>();
+        private final Set<String> stores = new HashSet<>();
+        private Long archiveSize;
+        private Long uncompressedSize;
+
+        public EntryMetrics(String cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        public synchronized void workFinished(Work work, long duration, @Nullable ExecuteWorkBuildOperationType.Result result) {
+            identity = work.identity;
+            workType = work.workType;
+            executionTime = duration;
+            synchronized (work) {
+                snapshotTime += work.snapshotTime;
+            }
+            if (result != null) {
+                outcome = result.getSkipMessage() == null ? "EXECUTED" : result.getSkipMessage();
+                originExecutionTime = result.getOriginExecutionTime();
+            }
+        }
+
+        public synchronized void loaded(String source, long duration, boolean hit) {
+            loadTimes.merge(source, duration, Long::sum);
+            if (hit) {
+                hits.add(source);
+            }
+        }
+
+        public synchronized void unpacked(long duration, @Nullable String enclosingLoad, long archiveSize, @Nullable Long uncompressedSize) {
+            unpackTime = duration;
+            unpackedWhileLoadingFrom = enclosingLoad;
+            this.archiveSize = archiveSize;
+            this.uncompressedSize = uncompressedSize;
+        }
+
+        public synchronized void packed(long duration, @Nullable Long archiveSize, @Nullable Long uncompressedSize) {
+            packTime = duration;
+            this.archiveSize = archiveSize;
+            this.uncompressedSize = uncompressedSize;
+        }
+
+        public synchronized void stored(String target, long duration, boolean stored) {
+            storeTimes.merge(target, duration, Long::sum);
+            if (stored) {
+                stores.add(target);
+            }
+        }
+
+        /**
+         * The time spent loading from the given source, excluding the time spent unpacking the entry while loading.
+         */
+        private long getLoadTime(String source) {
+            long loadTime = loadTimes.get(source);
+            return source.equals(unpackedWhileLoadingFrom) ? loadTime - unpackTime : loadTime;
+        }
+
+        private long getLoadCost() {
+            long loadCost = unpackTime == null ? 0 : unpackTime;
+            for (String source : loadTimes.keySet()) {
+                loadCost += getLoadTime(source);
+            }
+            return loadCost;
+        }
+
+        private long getStoreCost() {
+            long storeCost = packTime == null ? 0 : packTime;
+            for (Long storeTime : storeTimes.values()) {
+                storeCost += storeTime;
+            }
+            return storeCost;
+        }
+
+        /**
+         * The execution time in the build that stored the entry minus the cost of loading the entry, negative when loading the entry is slower than executing the work.
+         */
+        @Nullable
+        private Long getSavedTime() {
+            if (unpackTime == null || originExecutionTime == null) {
+                return null;
+            }
+            return originExecutionTime - getLoadCost();
+        }
+
+        public synchronized void write(JsonWriter json) throws IOException {
+            json.beginObject();
+            json.name("cacheKey").value(cacheKey);
+            if (identity != null) {
+                json.name("identity").value(identity);
+            }
+            if (workType != null) {
+                json.name("workType").value(workType);
+            }
+            if (outcome != null) {
+                json.name("outcome").value(outcome);
+            }
+            if (executionTime != null) {
+                json.name("executionTime").value(executionTime);
+            }
+            if (originExecutionTime != null) {
+                json.name("originExecutionTime").value(originExecutionTime);
+            }
+            json.name("snapshotTime").value(snapshotTime);
+            if (!loadTimes.isEmpty()) {
+                json.name("load").beginObject();
+                for (String source : loadTimes.keySet()) {
+                    json.name(source).beginObject();
+                    json.name("time").value(getLoadTime(source));
+                    json.name("hit").value(hits.contains(source));
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            if (unpackTime != null) {
+                json.name("unpackTime").value(unpackTime);
+            }
+            if (packTime != null) {
+                json.name("packTime").value(packTime);
+            }
+            if (!storeTimes.isEmpty()) {
+                json.name("store").beginObject();
+                for (Map.Entry<String, Long> store : storeTimes.entrySet()) {
+                    json.name(store.getKey()).beginObject();
+                    json.name("time").value(store.getValue());
+                    json.name("stored").value(stores.contains(store.getKey()));
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            if (archiveSize != null) {
+                json.name("archiveSize").value(archiveSize);
+            }
+            if (uncompressedSize != null) {
+                json.name("uncompressedSize").value(uncompressedSize);
+                if (archiveSize != null && archiveSize > 0) {
+                    json.name("compressionRatio").value((double) uncompressedSize / archiveSize);
+                }
+            }
+            if (unpackTime != null) {
+                json.name("loadCost").value(getLoadCost());
+            }
+            if (packTime != null || !storeTimes.isEmpty()) {
+                json.name("storeCost").value(getStoreCost());
+            }
+            Long savedTime = getSavedTime();
+            if (savedTime != null) {
+                json.name("savedTime").value(savedTime);
+            }
+            json.endObject();
+        }
+    }
+}
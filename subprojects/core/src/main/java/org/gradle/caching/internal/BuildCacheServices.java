@@ -18,7 +18,9 @@
 
 import org.gradle.api.internal.StartParameterInternal;
 import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.changedetection.state.FileContentHasherFactory;
 import org.gradle.api.internal.file.temp.TemporaryFileProvider;
+import org.gradle.cache.internal.HeapProportionalCacheSizer;
 import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal;
 import org.gradle.caching.configuration.internal.BuildCacheServiceRegistration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration;
@@ -27,17 +29,25 @@
 import org.gradle.caching.internal.controller.impl.LifecycleAwareBuildCacheControllerFactory;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.DefaultTarPackerFileSystemSupport;
 import org.gradle.caching.internal.packaging.impl.FilePermissionAccess;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarPackerFileSystemSupport;
+import org.gradle.caching.internal.packaging.impl.WorkspaceBuildCacheEntryRestorer;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory;
 import org.gradle.caching.internal.services.DefaultBuildCacheControllerFactory;
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
+import org.gradle.caching.local.internal.InMemoryBuildCache;
 import org.gradle.internal.build.BuildState;
 import org.gradle.internal.build.RootBuildState;
+import org.gradle.internal.buildoption.IntegerInternalOption;
+import org.gradle.internal.buildoption.InternalOptions;
+import org.gradle.internal.buildoption.StringInternalOption;
+import org.gradle.internal.buildtree.BuildTreeBuildOperationRef;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.BufferProvider;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.FileException;
@@ -64,6 +74,35 @@
  * Build scoped services for build cache usage.
  */
 public final class BuildCacheServices extends AbstractGradleModuleServices {
+    /**
+     * The compression used to pack build cache entries, {@code gzip}, {@code lz4} or {@code none}.
+     * Entries packed with any compression can be loaded regardless of this option, but only {@code gzip} entries can be loaded by older Gradle versions.
+     */
+    private static final StringInternalOption COMPRESSION_OPTION = new StringInternalOption("org.gradle.caching.compression", "gzip");
+
+    /**
+     * The compression level used to pack build cache entries, from 1 (fastest) to 9 (smallest entries).
+     */
+    private static final IntegerInternalOption COMPRESSION_LEVEL_OPTION = new IntegerInternalOption("org.gradle.caching.compression.level", BuildCacheEntryCompression.DEFAULT_LEVEL);
+
+    /**
+     * The number of threads writing the files of large output directories when unpacking build cache entries.
+     * Entries are unpacked sequentially by default, as whether more threads help depends on the file system and on how many tasks already load entries in parallel.
+     */
+    private static final IntegerInternalOption UNPACK_THREADS_OPTION = new IntegerInternalOption("org.gradle.caching.unpack.threads", 1);
+
+    /**
+     * How entries loaded from the local build cache are restored: {@code unpack} unpacks their archive every time,
+     * {@code copy} and {@code link} unpack it once into a workspace and then copy or hard link the files from there.
+     * Outputs restored with {@code link} are read-only, so it only suits work which never rewrites its outputs in place.
+     */
+    private static final StringInternalOption LOCAL_RESTORE_OPTION = new StringInternalOption("org.gradle.caching.local.restore", "unpack");
+
+    /**
+     * The size of the in-memory build cache with the default heap size, scaled to the actual heap size.
+     */
+    private static final int MEMORY_CACHE_REFERENCE_SIZE_KB = 64 * 1024;
+
     @Override
     public void registerGlobalServices(ServiceRegistration registration) {
         registration.addProvider(new ServiceRegistrationProvider() {
@@ -75,8 +114,20 @@ BufferProvider createBufferProvider() {
         });
     }
 
+    @Override
+    public void registerGradleUserHomeServices(ServiceRegistration registration) {
+        registration.add(BuildCacheEntryWorkspaceProvider.class);
+        registration.addProvider(new ServiceRegistrationProvider() {
+            @Provides
+            InMemoryBuildCache createInMemoryBuildCache() {
+                return new InMemoryBuildCache(new HeapProportionalCacheSizer().scaleCacheSize(MEMORY_CACHE_REFERENCE_SIZE_KB) * 1024L);
+            }
+        });
+    }
+
     @Override
     public void registerBuildTreeServices(ServiceRegistration registration) {
+        registration.add(BuildCacheMetricsRecorder.class);
         registration.addProvider(new ServiceRegistrationProvider() {
             private static final String GRADLE_VERSION_KEY = "gradleVersion";
 
@@ -124,15 +175,30 @@ TarPackerFileSystemSupport createPackerFileSystemSupport(Deleter deleter) {
             }
 
             @Provides
-            BuildCacheEntryPacker createResultPacker(
+            TarBuildCacheEntryPacker createTarPacker(
                 TarPackerFileSystemSupport fileSystemSupport,
                 FileSystem fileSystem,
                 StreamHasher fileHasher,
+                FileContentHasherFactory contentHasherFactory,
                 StringInterner stringInterner,
-                BufferProvider bufferProvider
+                BufferProvider bufferProvider,
+                ExecutorFactory executorFactory,
+                InternalOptions internalOptions
             ) {
-                return new GZipBuildCacheEntryPacker(
-                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner, bufferProvider));
+                // Registered as a service of its own, so that its unpacking threads, if any, are stopped when the build finishes
+                return new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), contentHasherFactory.createContentStreamHasher(fileHasher), stringInterner, bufferProvider, executorFactory, internalOptions.getOption(UNPACK_THREADS_OPTION).get());
+            }
+
+            @Provides
+            BuildCacheEntryPacker createResultPacker(
+                TarBuildCacheEntryPacker tarPacker,
+                InternalOptions internalOptions
+            ) {
+                return new CompressingBuildCacheEntryPacker(
+                    tarPacker,
+                    BuildCacheEntryCompression.forName(internalOptions.getOption(COMPRESSION_OPTION).get()),
+                    internalOptions.getOption(COMPRESSION_LEVEL_OPTION).get()
+                );
             }
 
             @Provides
@@ -159,8 +225,21 @@ BuildCacheControllerFactory createBuildCacheControllerFactory(
                 TemporaryFileProvider temporaryFileProvider,
                 BuildCacheEntryPacker packer,
                 OriginMetadataFactory originMetadataFactory,
-                StringInterner stringInterner
+                StringInterner stringInterner,
+                ExecutorFactory executorFactory,
+                InMemoryBuildCache memoryCache,
+                BuildCacheEntryWorkspaceProvider workspaceProvider,
+                TarPackerFileSystemSupport fileSystemSupport,
+                FileSystem fileSystem,
+                InternalOptions internalOptions,
+                FileContentHasherFactory contentHasherFactory,
+                StreamHasher fileHasher,
+                BuildTreeBuildOperationRef buildTreeOperation
             ) {
+                String restore = internalOptions.getOption(LOCAL_RESTORE_OPTION).get();
+                WorkspaceBuildCacheEntryRestorer workspaceRestorer = "unpack".equals(restore)
+                    ? null
+                    : new WorkspaceBuildCacheEntryRestorer(workspaceProvider, packer, fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), contentHasherFactory.createContentStreamHasher(fileHasher), stringInterner, WorkspaceBuildCacheEntryRestorer.Mode.forName(restore));
                 return new DefaultBuildCacheControllerFactory(
                     startParameter,
                     buildOperationRunner,
@@ -168,7 +247,13 @@ BuildCacheControllerFactory createBuildCacheControllerFactory(
                     originMetadataFactory,
                     stringInterner,
                     temporaryFileProvider,
-                    packer
+                    packer,
+                    executorFactory,
+                    memoryCache,
+                    internalOptions,
+                    workspaceRestorer,
+                    contentHasherFactory.hasLocalOnlyHashes(),
+                    buildTreeOperation.get()
                 );
             }
         });
@@ -77,6 +77,26 @@ public Optional<BuildCacheLoadResult> load(BuildCacheKey cacheKey, CacheableEnti
             return getDelegate().load(cacheKey, cacheableEntity);
         }
 
+        @Override
+        public Optional<BuildCacheLoadResult> loadLocally(BuildCacheKey cacheKey, CacheableEntity cacheableEntity) {
+            return getDelegate().loadLocally(cacheKey, cacheableEntity);
+        }
+
+        @Override
+        public Optional<BuildCacheLoadResult> loadRemotely(BuildCacheKey cacheKey, CacheableEntity cacheableEntity) {
+            return getDelegate().loadRemotely(cacheKey, cacheableEntity);
+        }
+
+        @Override
+        public boolean containsLocally(BuildCacheKey cacheKey) {
+            return getDelegate().containsLocally(cacheKey);
+        }
+
+        @Override
+        public void prefetchContains(BuildCacheKey cacheKey) {
+            getDelegate().prefetchContains(cacheKey);
+        }
+
         @Override
         public void store(BuildCacheKey cacheKey, CacheableEntity entity, Map<String, FileSystemSnapshot> snapshots, Duration executionTime) {
             getDelegate().store(cacheKey, entity, snapshots, executionTime);
@@ -54,6 +54,7 @@
     protected final StringInterner stringInterner;
     protected final BuildOperationRunner buildOperationRunner;
     protected final OriginMetadataFactory originMetadataFactory;
+    private final boolean localOnlyCacheKeys;
 
     public enum BuildCacheMode {
         ENABLED, DISABLED
@@ -67,12 +68,14 @@ public AbstractBuildCacheControllerFactory(
         StartParameter startParameter,
         BuildOperationRunner buildOperationRunner,
         OriginMetadataFactory originMetadataFactory,
-        StringInterner stringInterner
+        StringInterner stringInterner,
+        boolean localOnlyCacheKeys
     ) {
         this.startParameter = startParameter;
         this.buildOperationRunner = buildOperationRunner;
         this.originMetadataFactory = originMetadataFactory;
         this.stringInterner = stringInterner;
+        this.localOnlyCacheKeys = localOnlyCacheKeys;
     }
 
     abstract protected BuildCacheController doCreateController(
@@ -104,6 +107,10 @@ public BuildCacheController call(BuildOperationContext context) {
                     remoteEnabled = false;
                     LOGGER.warn("Remote build cache is disabled when running with --offline.");
                 }
+                if (remoteEnabled && localOnlyCacheKeys) {
+                    remoteEnabled = false;
+                    LOGGER.warn("Remote build cache is disabled when file contents are hashed with a non-cryptographic hash function.");
+                }
 
                 DescribedBuildCacheService<DirectoryBuildCache, L> localDescribedService = localEnabled
                     ? createBuildCacheService(local, BuildCacheServiceRole.LOCAL, buildIdentityPath, buildCacheConfiguration, instanceGenerator)
@@ -116,7 +123,7 @@ public BuildCacheController call(BuildOperationContext context) {
                 context.setResult(new ResultImpl(
                     true,
                     local.isEnabled(),
-                    remote != null && remote.isEnabled() && remoteAccessMode == RemoteAccessMode.ONLINE,
+                    remoteEnabled,
                     localDescribedService == null ? null : localDescribedService.description,
                     remoteDescribedService == null ? null : remoteDescribedService.description
                 ));
@@ -18,6 +18,7 @@
 
 import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal;
 import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.internal.buildoption.InternalFlag;
 import org.gradle.internal.instantiation.InstanceGenerator;
 import org.gradle.internal.service.scopes.Scope;
 import org.gradle.internal.service.scopes.ServiceScope;
@@ -27,5 +28,20 @@
 public interface BuildCacheControllerFactory {
     String REMOTE_CONTINUE_ON_ERROR_PROPERTY = "org.gradle.unsafe.build-cache.remote-continue-on-error";
 
+    /**
+     * When enabled, entries are uploaded to the remote cache on background threads instead of on the thread storing the entry.
+     */
+    InternalFlag REMOTE_ASYNC_STORE = new InternalFlag("org.gradle.internal.build-cache.remote-async-store");
+
+    /**
+     * When enabled, the existence of entries missing from the local cache is checked in the remote cache in batches, before the entries are loaded.
+     */
+    InternalFlag REMOTE_PREFETCH_CONTAINS = new InternalFlag("org.gradle.internal.build-cache.remote-prefetch-contains");
+
+    /**
+     * When enabled, recently used entries of the local cache are kept uncompressed in memory for the lifetime of the daemon.
+     */
+    InternalFlag LOCAL_MEMORY_CACHE = new InternalFlag("org.gradle.internal.build-cache.local-memory-cache");
+
     BuildCacheController createController(Path buildIdentityPath, BuildCacheConfigurationInternal buildCacheConfiguration, InstanceGenerator instanceGenerator);
 }
@@ -27,9 +27,14 @@
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.WorkspaceBuildCacheEntryRestorer;
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheService;
+import org.gradle.caching.local.internal.InMemoryBuildCache;
+import org.gradle.internal.buildoption.InternalOptions;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationProgressEventEmitter;
+import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.operations.BuildOperationRunner;
 import org.gradle.util.Path;
 
@@ -40,6 +45,13 @@ public class DefaultBuildCacheControllerFactory extends AbstractBuildCacheContro
     private final TemporaryFileProvider temporaryFileProvider;
     private final BuildCacheEntryPacker packer;
     private final BuildOperationProgressEventEmitter buildOperationProgressEmitter;
+    private final ExecutorFactory executorFactory;
+    private final InMemoryBuildCache memoryCache;
+    private final InternalOptions internalOptions;
+    @Nullable
+    private final WorkspaceBuildCacheEntryRestorer workspaceRestorer;
+    @Nullable
+    private final BuildOperationRef backgroundOperationParent;
 
     public DefaultBuildCacheControllerFactory(
         StartParameter startParameter,
@@ -48,17 +60,29 @@ public DefaultBuildCacheControllerFactory(
         OriginMetadataFactory originMetadataFactory,
         StringInterner stringInterner,
         TemporaryFileProvider temporaryFileProvider,
-        BuildCacheEntryPacker packer
+        BuildCacheEntryPacker packer,
+        ExecutorFactory executorFactory,
+        InMemoryBuildCache memoryCache,
+        InternalOptions internalOptions,
+        @Nullable WorkspaceBuildCacheEntryRestorer workspaceRestorer,
+        boolean localOnlyCacheKeys,
+        @Nullable BuildOperationRef backgroundOperationParent
     ) {
         super(
             startParameter,
             buildOperationRunner,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            localOnlyCacheKeys
         );
         this.temporaryFileProvider = temporaryFileProvider;
         this.packer = packer;
         this.buildOperationProgressEmitter = buildOperationProgressEmitter;
+        this.executorFactory = executorFactory;
+        this.memoryCache = memoryCache;
+        this.internalOptions = internalOptions;
+        this.workspaceRestorer = workspaceRestorer;
+        this.backgroundOperationParent = backgroundOperationParent;
     }
 
     @Override
@@ -84,7 +108,13 @@ protected BuildCacheController doCreateController(
             !Boolean.getBoolean(REMOTE_CONTINUE_ON_ERROR_PROPERTY),
             packer,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            executorFactory,
+            internalOptions.getOption(REMOTE_ASYNC_STORE).get(),
+            internalOptions.getOption(REMOTE_PREFETCH_CONTAINS).get(),
+            internalOptions.getOption(LOCAL_MEMORY_CACHE).get() ? memoryCache : null,
+            workspaceRestorer,
+            backgroundOperationParent
         );
     }
 
@@ -16,11 +16,13 @@
 
 package org.gradle.execution.plan;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.SetMultimap;
 import org.gradle.api.Action;
 import org.gradle.api.BuildCancelledException;
 import org.gradle.api.NonNullApi;
+import org.gradle.api.internal.TaskInternal;
 import org.gradle.internal.MutableBoolean;
 import org.gradle.internal.Pair;
 import org.gradle.internal.resources.ResourceLock;
@@ -40,6 +42,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
@@ -67,7 +70,7 @@ public int compare(Node node1, Node node2) {
     };
 
     private final Set<Node> waitingToStartNodes = new HashSet<>();
-    private final ExecutionQueue readyNodes = new ExecutionQueue();
+    private final ExecutionQueue readyNodes;
     private final List<Throwable> failures = new ArrayList<>();
     private final List<DiagnosticEvent> diagnosticEvents = new ArrayList<>();
     private final String displayName;
@@ -84,6 +87,10 @@ public int compare(Node node1, Node node2) {
     private final Map<Pair<Node, Node>, Boolean> reachableCache = new HashMap<>();
     private final OrdinalNodeAccess ordinalNodeAccess;
     private final Consumer<LocalTaskNode> completionHandler;
+    private final TaskDurationHistory durationHistory;
+    private final Map<Node, CriticalPath> criticalPaths = new HashMap<>();
+    private final Map<Node, Long> startTimes = new HashMap<>();
+    private final Map<String, Long> executedDurations = new HashMap<>();
 
     // When true, there may be nodes that are both ready and "selectable", which means their project and resources are able to be locked
     // When false, there are definitely no nodes that are "selectable"
@@ -100,7 +107,9 @@ public DefaultFinalizedExecutionPlan(
         List<Node> scheduledNodes,
         boolean continueOnFailure,
         QueryableExecutionPlan contents,
-        Consumer<LocalTaskNode> completionHandler
+        Consumer<LocalTaskNode> completionHandler,
+        TaskDurationHistory durationHistory,
+        Map<String, Long> previousDurations
     ) {
         this.displayName = displayName;
         this.outputHierarchy = outputHierarchy;
@@ -110,6 +119,13 @@ public DefaultFinalizedExecutionPlan(
         this.continueOnFailure = continueOnFailure;
         this.contents = contents;
         this.completionHandler = completionHandler;
+        this.durationHistory = durationHistory;
+        if (durationHistory.isEnabled()) {
+            estimateCriticalPaths(scheduledNodes, previousDurations);
+            this.readyNodes = new ExecutionQueue(Comparator.comparing((Node node) -> !node.isPriority()).thenComparing(this::criticalPathOf).thenComparing(NODE_EXECUTION_ORDER));
+        } else {
+            this.readyNodes = new ExecutionQueue(NODE_EXECUTION_ORDER);
+        }
 
         SetMultimap<FinalizerGroup, FinalizerGroup> reachableGroups = LinkedHashMultimap.create();
         for (Node node : scheduledNodes) {
@@ -129,6 +145,54 @@ public DefaultFinalizedExecutionPlan(
         lockCoordinator.addLockReleaseListener(resourceUnlockListener);
     }
 
+    /**
+     * Estimates for each scheduled node the duration of the longest chain of work that can only start once the node has completed, including the node itself.
+     * Nodes are visited in reverse execution order, so that the nodes depending on a node are usually visited before the node.
+     */
+    private void estimateCriticalPaths(List<Node> scheduledNodes, Map<String, Long> previousDurations) {
+        Map<Node, Long> durations = new HashMap<>();
+        long totalKnownDuration = 0;
+        for (Node node : scheduledNodes) {
+            if (node instanceof LocalTaskNode) {
+                Long duration = previousDurations.get(((LocalTaskNode) node).getTask().getIdentityPath().toString());
+                if (duration != null) {
+                    durations.put(node, duration);
+                    totalKnownDuration += duration;
+                }
+            }
+        }
+        // Tasks without history are assumed to take as long as an average task with history
+        long defaultTaskDuration = durations.isEmpty() ? 1 : Math.max(1, totalKnownDuration / durations.size());
+
+        for (int i = scheduledNodes.size() - 1; i >= 0; i--) {
+            Node node = scheduledNodes.get(i);
+            long duration = node instanceof LocalTaskNode ? durations.getOrDefault(node, defaultTaskDuration) : 0;
+            long longestDownstreamPath = 0;
+            int fanOut = 0;
+            for (Node predecessor : node.getDependencyPredecessors()) {
+                CriticalPath downstream = criticalPaths.get(predecessor);
+                if (downstream != null) {
+                    longestDownstreamPath = Math.max(longestDownstreamPath, downstream.duration);
+                }
+                fanOut++;
+            }
+            criticalPaths.put(node, new CriticalPath(duration + longestDownstreamPath, fanOut));
+        }
+    }
+
+    private CriticalPath criticalPathOf(Node node) {
+        return criticalPaths.getOrDefault(node, CriticalPath.UNKNOWN);
+    }
+
+    /**
+     * Nodes added to the plan while it executes are started with the same urgency as the node they were added for.
+     */
+    private void inheritCriticalPath(Node addedNode, Node node) {
+        if (durationHistory.isEnabled()) {
+            criticalPaths.put(addedNode, criticalPathOf(node));
+        }
+    }
+
     @Override
     public String getDisplayName() {
         return displayName;
@@ -151,6 +215,10 @@ public void close() {
         readyNodes.clear();
         runningNodes.clear();
         reachableCache.clear();
+        // Persist the durations once the plan has finished, rather than each time a task completes while the state lock is held
+        Map<String, Long> durations = ImmutableMap.copyOf(executedDurations);
+        executedDurations.clear();
+        durationHistory.recordDurations(durations);
     }
 
     private void resourceUnlocked(ResourceLock resourceLock) {
@@ -262,6 +330,7 @@ public Selection<Node> selectNext() {
                     // The node is ready to execute and its pre-execution nodes have not been scheduled, so do this now
                     node.visitPreExecutionNodes(prepareNode -> {
                         prepareNode.setIndex(node.getIndex());
+                        inheritCriticalPath(prepareNode, node);
                         prepareNode.require();
                         prepareNode.updateAllDependenciesComplete();
                         node.addDependencySuccessor(prepareNode);
@@ -280,6 +349,9 @@ public Selection<Node> selectNext() {
                     readyNodes.remove();
                     waitingToStartNodes.remove(node);
                     node.getMutationInfo().started();
+                    if (durationHistory.isEnabled()) {
+                        startTimes.put(node, System.nanoTime());
+                    }
                     return Selection.of(node);
                 }
             }
@@ -560,6 +632,7 @@ public void finishedExecuting(Node node, @Nullable Throwable failure) {
             }
 
             node.finishExecution(this::recordNodeCompleted);
+            maybeRecordDuration(node);
             if (node.isFailed()) {
                 LOGGER.debug("Node {} failed", node);
                 handleFailure(node);
@@ -567,6 +640,7 @@ public void finishedExecuting(Node node, @Nullable Throwable failure) {
                 LOGGER.debug("Node {} finished executing", node);
                 node.visitPostExecutionNodes(postNode -> {
                     postNode.setIndex(node.getIndex());
+                    inheritCriticalPath(postNode, node);
                     postNode.require();
                     postNode.updateAllDependenciesComplete();
                     addNodeToPlan(postNode);
@@ -586,6 +660,18 @@ public void finishedExecuting(Node node, @Nullable Throwable failure) {
         }
     }
 
+    private void maybeRecordDuration(Node node) {
+        Long startTime = startTimes.remove(node);
+        if (startTime == null || !(node instanceof LocalTaskNode) || node.isFailed()) {
+            return;
+        }
+        TaskInternal task = ((LocalTaskNode) node).getTask();
+        // Only record tasks that did their work, so that up-to-date and cached executions do not hide the cost of the task
+        if (!task.getState().getSkipped()) {
+            executedDurations.put(task.getIdentityPath().toString(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+    }
+
     private void maybeNodeReady(Node node) {
         if (node.allDependenciesComplete()) {
             maybeNodesSelectable = true;
@@ -679,12 +765,16 @@ public boolean allExecutionComplete() {
     }
 
     /**
-     * An ordered queue of nodes, sorted by {@link #NODE_EXECUTION_ORDER}.
+     * An ordered queue of nodes, sorted by {@link #NODE_EXECUTION_ORDER} or by critical path.
      */
     static class ExecutionQueue {
-        private final Set<Node> nodes = new TreeSet<>(NODE_EXECUTION_ORDER);
+        private final Set<Node> nodes;
         private Iterator<Node> current;
 
+        ExecutionQueue(Comparator<Node> order) {
+            this.nodes = new TreeSet<>(order);
+        }
+
         public void clear() {
             nodes.clear();
             current = null;
@@ -738,6 +828,27 @@ public void insert(Node node) {
         }
     }
 
+    /**
+     * The estimated remaining critical path of a node. Nodes with a longer path, and then nodes with more dependents, are ordered first.
+     */
+    private static class CriticalPath implements Comparable<CriticalPath> {
+        static final CriticalPath UNKNOWN = new CriticalPath(0, 0);
+
+        final long duration;
+        final int fanOut;
+
+        CriticalPath(long duration, int fanOut) {
+            this.duration = duration;
+            this.fanOut = fanOut;
+        }
+
+        @Override
+        public int compareTo(CriticalPath other) {
+            int result = Long.compare(other.duration, duration);
+            return result != 0 ? result : Integer.compare(other.fanOut, fanOut);
+        }
+    }
+
     private interface DiagnosticEvent {
         String message();
     }
@@ -50,6 +50,8 @@
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -442,6 +444,7 @@ private WorkItem getNextItem(final WorkerLease workerLease) {
                     }
 
                     selected.set(workItem.getItem());
+                    stats.selected(workItem.getItem().selection.getItem());
                     return FINISHED;
                 });
             } finally {
@@ -512,6 +515,11 @@ private interface WorkerStats extends WorkerState {
 
         void finishSelect();
 
+        /**
+         * Called with the state lock held, so the calls across all workers happen in the order in which the items were selected.
+         */
+        void selected(Object item);
+
         void startExecute();
 
         void finishExecute();
@@ -610,6 +618,10 @@ public void startSelect() {
             public void finishSelect() {
             }
 
+            @Override
+            public void selected(Object item) {
+            }
+
             @Override
             public void startExecute() {
             }
@@ -650,6 +662,7 @@ public void finishWaitingForNextItem() {
 
     private static class CollectingExecutorStats implements ExecutorStats {
         private final List<CollectingWorkerStats> completedWorkers = new CopyOnWriteArrayList<>();
+        private final Queue<String> selectionOrder = new ConcurrentLinkedQueue<>();
         private final ExecutorState delegate;
 
         public CollectingExecutorStats(ExecutorState delegate) {
@@ -661,6 +674,10 @@ public WorkerStats startWorker() {
             return new CollectingWorkerStats(this, delegate.startWorker());
         }
 
+        void selected(Object item) {
+            selectionOrder.add(item.toString());
+        }
+
         void workerFinished(CollectingWorkerStats stats) {
             completedWorkers.add(stats);
         }
@@ -675,7 +692,13 @@ public void report() {
                 LOGGER.lifecycle("average execute time: " + format(stats -> stats.totalExecuteTime));
                 LOGGER.lifecycle("average finish time: " + format(stats -> stats.totalMarkFinishedTime));
             }
+            LOGGER.lifecycle("selection order:");
+            int index = 1;
+            for (String item : selectionOrder) {
+                LOGGER.lifecycle("  " + index++ + ". " + item);
+            }
             completedWorkers.clear();
+            selectionOrder.clear();
         }
 
         private String format(ToLongFunction<CollectingWorkerStats> statsProperty) {
@@ -719,6 +742,11 @@ public void finishSelect() {
             }
         }
 
+        @Override
+        public void selected(Object item) {
+            owner.selected(item);
+        }
+
         @Override
         public void startExecute() {
             startCurrentOperation = System.nanoTime();
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableMap;
+import org.gradle.cache.IndexedCache;
+import org.gradle.cache.IndexedCacheParameters;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.MapSerializer;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A {@link TaskDurationHistory} persisted in the execution history cache.
+ *
+ * All durations are stored as a single entry, so that they can be loaded with one read before the plan is built and written back with one write once the plan has finished.
+ * The estimate for a task is a moving average of its previous durations, so that a single unusually slow or fast execution does not reorder the plan.
+ */
+public class DefaultTaskDurationHistory implements TaskDurationHistory {
+    private static final String DURATIONS_KEY = "durations";
+
+    private final PersistentCache cache;
+    private final IndexedCache<String, Map<String, Long>> store;
+    private volatile Map<String, Long> durations;
+
+    public DefaultTaskDurationHistory(Supplier<PersistentCache> cache) {
+        this.cache = cache.get();
+        this.store = this.cache.createIndexedCache(
+            IndexedCacheParameters.of("taskDurations", BaseSerializerFactory.STRING_SERIALIZER, new MapSerializer<>(BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.LONG_SERIALIZER))
+        );
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Long> getDurationsMillis() {
+        Map<String, Long> loaded = durations;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = durations;
+                if (loaded == null) {
+                    loaded = ImmutableMap.copyOf(orEmpty(cache.useCache(() -> store.getIfPresent(DURATIONS_KEY))));
+                    durations = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public void recordDurations(Map<String, Long> durationsMillis) {
+        if (durationsMillis.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            // Merge with the stored durations rather than the ones loaded earlier, so that durations recorded by other builds in the meantime are kept
+            durations = cache.useCache(() -> {
+                Map<String, Long> merged = new HashMap<>(orEmpty(store.getIfPresent(DURATIONS_KEY)));
+                durationsMillis.forEach((taskPath, duration) -> merged.merge(taskPath, duration, (previousDuration, newDuration) -> (previousDuration + newDuration) / 2));
+                store.put(DURATIONS_KEY, merged);
+                return ImmutableMap.copyOf(merged);
+            });
+        }
+    }
+
+    private static Map<String, Long> orEmpty(@Nullable Map<String, Long> durations) {
+        return durations == null ? ImmutableMap.of() : durations;
+    }
+}
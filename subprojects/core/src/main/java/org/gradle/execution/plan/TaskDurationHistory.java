@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableMap;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import java.util.Map;
+
+/**
+ * Durations of previous executions of tasks, used to start the tasks on the critical path of an execution plan first.
+ */
+@ServiceScope(Scope.Build.class)
+public interface TaskDurationHistory {
+    /**
+     * A history which knows no durations, used when the execution plan is not ordered by critical path.
+     */
+    TaskDurationHistory NONE = new TaskDurationHistory() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Long> getDurationsMillis() {
+            return ImmutableMap.of();
+        }
+
+        @Override
+        public void recordDurations(Map<String, Long> durationsMillis) {
+        }
+    };
+
+    /**
+     * Whether ready nodes should be ordered by the estimated duration of the remaining critical path.
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the estimated durations of the tasks executed before, keyed by task identity path.
+     * The durations are loaded once, so this can be called while a plan is built.
+     */
+    Map<String, Long> getDurationsMillis();
+
+    /**
+     * Records the durations of the tasks executed by a plan, keyed by task identity path.
+     * Called once the plan has finished, so that the durations are persisted together.
+     */
+    void recordDurations(Map<String, Long> durationsMillis);
+}
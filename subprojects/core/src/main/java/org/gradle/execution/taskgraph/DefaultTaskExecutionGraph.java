@@ -40,6 +40,7 @@
 import org.gradle.internal.InternalListener;
 import org.gradle.internal.build.ExecutionResult;
 import org.gradle.internal.event.ListenerBroadcast;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationRef;
@@ -56,6 +57,7 @@
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.function.BiConsumer;
 
 @SuppressWarnings("deprecation")
@@ -70,6 +72,7 @@ public class DefaultTaskExecutionGraph implements TaskExecutionGraphInternal {
     private final ListenerBroadcast<org.gradle.api.execution.TaskExecutionListener> taskListeners;
     private final BuildScopeListenerRegistrationListener buildScopeListenerRegistrationListener;
     private final ServiceRegistry globalServices;
+    private final ExecutionHistoryStore executionHistoryStore;
     private final BuildOperationRunner buildOperationRunner;
     private final ListenerBuildOperationDecorator listenerBuildOperationDecorator;
     private FinalizedExecutionPlan executionPlan;
@@ -85,7 +88,8 @@ public DefaultTaskExecutionGraph(
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ListenerBroadcast<org.gradle.api.execution.TaskExecutionListener> taskListeners,
         BuildScopeListenerRegistrationListener buildScopeListenerRegistrationListener,
-        ServiceRegistry globalServices
+        ServiceRegistry globalServices,
+        ExecutionHistoryStore executionHistoryStore
     ) {
         this.planExecutor = planExecutor;
         this.nodeExecutors = nodeExecutors;
@@ -96,6 +100,7 @@ public DefaultTaskExecutionGraph(
         this.taskListeners = taskListeners;
         this.buildScopeListenerRegistrationListener = buildScopeListenerRegistrationListener;
         this.globalServices = globalServices;
+        this.executionHistoryStore = executionHistoryStore;
         this.executionPlan = FinalizedExecutionPlan.EMPTY;
     }
 
@@ -135,11 +140,12 @@ private void assertIsThisGraphsPlan(FinalizedExecutionPlan plan) {
     }
 
     private ExecutionResult<Void> executeWithServices(ProjectExecutionServiceRegistry projectExecutionServices) {
+        executionHistoryStore.prefetch(allTasks.stream().map(Task::getPath).collect(Collectors.toList()));
         return planExecutor.process(
             executionPlan.asWorkSource(),
             new BuildOperationAwareExecutionAction(
                 buildOperationRunner.getCurrentOperation(),
-                new InvokeNodeExecutorsAction(nodeExecutors, projectExecutionServices)
+                new InvokeNodeExecutorsAction(nodeExecutors, projectExecutionServices, executionHistoryStore)
             )
         );
     }
@@ -318,14 +324,27 @@ public void execute(Node node) {
     private static class InvokeNodeExecutorsAction implements Action<Node> {
         private final List<NodeExecutor> nodeExecutors;
         private final ProjectExecutionServiceRegistry projectExecutionServices;
+        private final ExecutionHistoryStore executionHistoryStore;
 
-        public InvokeNodeExecutorsAction(List<NodeExecutor> nodeExecutors, ProjectExecutionServiceRegistry projectExecutionServices) {
+        public InvokeNodeExecutorsAction(List<NodeExecutor> nodeExecutors, ProjectExecutionServiceRegistry projectExecutionServices, ExecutionHistoryStore executionHistoryStore) {
             this.nodeExecutors = nodeExecutors;
             this.projectExecutionServices = projectExecutionServices;
+            this.executionHistoryStore = executionHistoryStore;
         }
 
         @Override
         public void execute(Node node) {
+            try {
+                executeWithNodeExecutors(node);
+            } finally {
+                if (node instanceof TaskNode) {
+                    // The task did not necessarily load its history, for example when it was skipped
+                    executionHistoryStore.discardPrefetched(((TaskNode) node).getTask().getPath());
+                }
+            }
+        }
+
+        private void executeWithNodeExecutors(Node node) {
             NodeExecutionContext context = projectExecutionServices.forProject(node.getOwningProject());
             for (NodeExecutor nodeExecutor : nodeExecutors) {
                 if (nodeExecutor.execute(node, context)) {
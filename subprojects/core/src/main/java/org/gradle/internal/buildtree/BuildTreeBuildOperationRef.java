@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.buildtree;
+
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+
+/**
+ * The build operation which was running when the build tree was created, and which keeps running until the build tree is closed.
+ *
+ * Work that outlives the build operation which started it, such as background uploads, can run its own operations under this one.
+ */
+@ServiceScope(Scope.BuildTree.class)
+public class BuildTreeBuildOperationRef {
+    @Nullable
+    private final BuildOperationRef operation;
+
+    public BuildTreeBuildOperationRef(@Nullable BuildOperationRef operation) {
+        this.operation = operation;
+    }
+
+    @Nullable
+    public BuildOperationRef get() {
+        return operation;
+    }
+}
@@ -65,6 +65,7 @@
 import org.gradle.internal.instrumentation.reporting.MethodInterceptionReportCollector;
 import org.gradle.internal.instrumentation.reporting.PropertyUpgradeReportConfig;
 import org.gradle.internal.model.BuildTreeObjectFactory;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
 import org.gradle.internal.problems.DefaultProblemDiagnosticsFactory;
 import org.gradle.internal.problems.DefaultProblemLocationAnalyzer;
 import org.gradle.internal.scopeids.id.BuildInvocationScopeId;
@@ -97,6 +98,7 @@ protected void configure(ServiceRegistration registration, List<GradleModuleServ
         }
         registration.add(BuildInvocationScopeId.class, buildInvocationScopeId);
         registration.add(BuildTreeState.class, buildTree);
+        registration.add(BuildTreeBuildOperationRef.class, new BuildTreeBuildOperationRef(CurrentBuildOperationRef.instance().get()));
         registration.add(GradleEnterprisePluginManager.class);
         registration.add(DefaultBuildLifecycleControllerFactory.class);
         registration.add(BuildOptionBuildOperationProgressEventsEmitter.class);
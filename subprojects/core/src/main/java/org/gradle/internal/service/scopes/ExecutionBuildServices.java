@@ -19,17 +19,22 @@
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.state.DefaultExecutionHistoryCacheAccess;
 import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCacheParameters;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.scopes.BuildScopedCacheBuilderFactory;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.initialization.BuildCancellationToken;
+import org.gradle.internal.buildoption.InternalFlag;
+import org.gradle.internal.buildoption.InternalOptions;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.BuildOutputCleanupRegistry;
 import org.gradle.internal.execution.ExecutionEngine;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.execution.OutputSnapshotter;
 import org.gradle.internal.execution.WorkInputListeners;
+import org.gradle.internal.execution.history.BuildCacheCostHistory;
 import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
 import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.execution.history.ImmutableWorkspaceMetadataStore;
@@ -37,8 +42,11 @@
 import org.gradle.internal.execution.history.OutputsCleaner;
 import org.gradle.internal.execution.history.OverlappingOutputDetector;
 import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetector;
+import org.gradle.internal.execution.history.impl.DefaultBuildCacheCostHistory;
 import org.gradle.internal.execution.history.impl.DefaultExecutionHistoryStore;
 import org.gradle.internal.execution.history.impl.DefaultOutputFilesRepository;
+import org.gradle.internal.execution.history.impl.PrefetchingExecutionHistoryStore;
+import org.gradle.internal.execution.history.impl.WriteBehindExecutionHistoryStore;
 import org.gradle.internal.execution.impl.DefaultExecutionEngine;
 import org.gradle.internal.execution.steps.AssignImmutableWorkspaceStep;
 import org.gradle.internal.execution.steps.AssignMutableWorkspaceStep;
@@ -96,6 +104,26 @@
 import static org.gradle.internal.execution.steps.AfterExecutionOutputFilter.NO_FILTER;
 
 public class ExecutionBuildServices implements ServiceRegistrationProvider {
+    /**
+     * When enabled, the execution history of units of work is written to the cache on a dedicated thread.
+     */
+    public static final InternalFlag EXECUTION_HISTORY_WRITE_BEHIND = new InternalFlag("org.gradle.internal.execution-history.write-behind");
+
+    /**
+     * When enabled, the execution history of scheduled tasks is loaded ahead of their execution on a dedicated thread.
+     */
+    public static final InternalFlag EXECUTION_HISTORY_PREFETCH = new InternalFlag("org.gradle.internal.execution-history.prefetch");
+
+    /**
+     * When enabled, the execution history is stored in an append-only log instead of a B-tree.
+     */
+    public static final InternalFlag EXECUTION_HISTORY_LOG_STRUCTURED = new InternalFlag("org.gradle.internal.execution-history.log-structured");
+
+    /**
+     * When enabled, results of types of work that previously executed faster than their results were loaded from the remote cache are not loaded from it.
+     */
+    public static final InternalFlag SKIP_REMOTE_LOAD_WHEN_CHEAPER_TO_REBUILD = new InternalFlag("org.gradle.internal.caching.skip-remote-load-when-cheaper-to-rebuild");
+
     @Provides
     ExecutionHistoryCacheAccess createCacheAccess(BuildScopedCacheBuilderFactory cacheBuilderFactory) {
         return new DefaultExecutionHistoryCacheAccess(cacheBuilderFactory);
@@ -106,14 +134,44 @@ ExecutionHistoryStore createExecutionHistoryStore(
         ExecutionHistoryCacheAccess executionHistoryCacheAccess,
         InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
         StringInterner stringInterner,
-        ClassLoaderHierarchyHasher classLoaderHasher
+        ClassLoaderHierarchyHasher classLoaderHasher,
+        InternalOptions internalOptions,
+        ExecutorFactory executorFactory
     ) {
-        return new DefaultExecutionHistoryStore(
+        ExecutionHistoryStore store = new DefaultExecutionHistoryStore(
             executionHistoryCacheAccess,
             inMemoryCacheDecoratorFactory,
             stringInterner,
-            classLoaderHasher
+            classLoaderHasher,
+            executionHistoryStorageType(internalOptions)
         );
+        if (internalOptions.getOption(EXECUTION_HISTORY_WRITE_BEHIND).get()) {
+            store = new WriteBehindExecutionHistoryStore(store, executorFactory);
+        }
+        if (internalOptions.getOption(EXECUTION_HISTORY_PREFETCH).get()) {
+            store = new PrefetchingExecutionHistoryStore(store, executorFactory);
+        }
+        return store;
+    }
+
+    private static IndexedCacheParameters.StorageType executionHistoryStorageType(InternalOptions internalOptions) {
+        if (internalOptions.getOption(EXECUTION_HISTORY_LOG_STRUCTURED).get()) {
+            return IndexedCacheParameters.StorageType.LOG_STRUCTURED;
+        }
+        return internalOptions.getOption(VirtualFileSystemServices.MEMORY_MAPPED_CACHES).get()
+            ? IndexedCacheParameters.StorageType.MEMORY_MAPPED_BTREE
+            : IndexedCacheParameters.StorageType.BTREE;
+    }
+
+    @Provides
+    BuildCacheCostHistory createBuildCacheCostHistory(
+        InternalOptions internalOptions,
+        ExecutionHistoryCacheAccess executionHistoryCacheAccess
+    ) {
+        if (internalOptions.getOption(SKIP_REMOTE_LOAD_WHEN_CHEAPER_TO_REBUILD).get()) {
+            return new DefaultBuildCacheCostHistory(executionHistoryCacheAccess);
+        }
+        return BuildCacheCostHistory.NONE;
     }
 
     @Provides
@@ -135,6 +193,7 @@ OutputChangeListener createOutputChangeListener(ListenerManager listenerManager)
     @Provides
     public ExecutionEngine createExecutionEngine(
         BuildCacheController buildCacheController,
+        BuildCacheCostHistory buildCacheCostHistory,
         BuildCancellationToken cancellationToken,
         BuildInvocationScopeId buildInvocationScopeId,
         BuildOperationRunner buildOperationRunner,
@@ -173,10 +232,10 @@ public ExecutionEngine createExecutionEngine(
             new MarkSnapshottingInputsStartedStep<>(
             new CaptureNonIncrementalStateBeforeExecutionStep<>(buildOperationRunner, classLoaderHierarchyHasher,
             new ValidateStep<>(virtualFileSystem, validationWarningRecorder,
-            new ResolveNonIncrementalCachingStateStep<>(buildCacheController, emitBuildCacheDebugLogging,
+            new ResolveNonIncrementalCachingStateStep<>(buildCacheController, buildCacheCostHistory, emitBuildCacheDebugLogging,
             new MarkSnapshottingInputsFinishedStep<>(
             new NeverUpToDateStep<>(
-            new BuildCacheStep<>(buildCacheController, deleter, fileSystemAccess, outputChangeListener,
+            new BuildCacheStep<>(buildCacheController, buildCacheCostHistory, deleter, fileSystemAccess, outputChangeListener,
             new CaptureOutputsAfterExecutionStep<>(buildOperationRunner, buildId, outputSnapshotter, NO_FILTER,
             new NoInputChangesStep<>(
             new BroadcastChangingOutputsStep<>(outputChangeListener,
@@ -192,11 +251,11 @@ public ExecutionEngine createExecutionEngine(
             new CaptureIncrementalStateBeforeExecutionStep<>(buildOperationRunner, classLoaderHierarchyHasher, outputSnapshotter, overlappingOutputDetector,
             new ValidateStep<>(virtualFileSystem, validationWarningRecorder,
             new ResolveChangesStep<>(changeDetector,
-            new ResolveIncrementalCachingStateStep<>(buildCacheController, emitBuildCacheDebugLogging,
+            new ResolveIncrementalCachingStateStep<>(buildCacheController, buildCacheCostHistory, emitBuildCacheDebugLogging,
             new MarkSnapshottingInputsFinishedStep<>(
             new SkipUpToDateStep<>(
             new StoreExecutionStateStep<>(
-            new BuildCacheStep<>(buildCacheController, deleter, fileSystemAccess, outputChangeListener,
+            new BuildCacheStep<>(buildCacheController, buildCacheCostHistory, deleter, fileSystemAccess, outputChangeListener,
             new ResolveInputChangesStep<>(
             new CaptureOutputsAfterExecutionStep<>(buildOperationRunner, buildId, outputSnapshotter, new OverlappingOutputsFilter(),
             new BroadcastChangingOutputsStep<>(outputChangeListener,
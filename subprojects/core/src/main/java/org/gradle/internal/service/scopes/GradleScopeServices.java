@@ -63,6 +63,7 @@
 import org.gradle.internal.code.UserCodeApplicationContext;
 import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.internal.event.ListenerManager;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.instantiation.InstantiatorFactory;
 import org.gradle.internal.logging.text.StyledTextOutputFactory;
 import org.gradle.internal.operations.BuildOperationRunner;
@@ -153,7 +154,8 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
         ListenerBroadcast<org.gradle.api.execution.TaskExecutionListener> taskListeners,
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ListenerManager listenerManager,
-        ServiceRegistry gradleScopedServices
+        ServiceRegistry gradleScopedServices,
+        ExecutionHistoryStore executionHistoryStore
     ) {
         return new DefaultTaskExecutionGraph(
             planExecutor,
@@ -164,7 +166,8 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
             graphListeners,
             taskListeners,
             listenerManager.getBroadcaster(BuildScopeListenerRegistrationListener.class),
-            gradleScopedServices
+            gradleScopedServices,
+            executionHistoryStore
         );
     }
 
@@ -26,6 +26,7 @@
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache;
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService;
+import org.gradle.api.internal.changedetection.state.FileContentHasherFactory;
 import org.gradle.api.internal.changedetection.state.FileHasherStatistics;
 import org.gradle.api.internal.changedetection.state.GradleUserHomeScopeFileTimeStampInspector;
 import org.gradle.api.internal.changedetection.state.PropertiesFileFilter;
@@ -44,10 +45,12 @@
 import org.gradle.cache.scopes.GlobalScopedCacheBuilderFactory;
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.internal.build.BuildAddedListener;
+import org.gradle.internal.buildoption.DefaultInternalOptions;
 import org.gradle.internal.buildoption.IntegerInternalOption;
 import org.gradle.internal.buildoption.InternalFlag;
 import org.gradle.internal.buildoption.InternalOptions;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.FileCollectionFingerprinterRegistry;
 import org.gradle.internal.execution.FileCollectionSnapshotter;
@@ -66,7 +69,6 @@
 import org.gradle.internal.fingerprint.classpath.impl.DefaultClasspathFingerprinter;
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionSnapshotter;
 import org.gradle.internal.fingerprint.impl.FileCollectionFingerprinterRegistrations;
-import org.gradle.internal.hash.DefaultFileHasher;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
@@ -87,6 +89,7 @@
 import org.gradle.internal.vfs.VirtualFileSystem;
 import org.gradle.internal.vfs.impl.DefaultFileSystemAccess;
 import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy;
+import org.gradle.internal.vfs.impl.PersistentVirtualFileSystemState;
 import org.gradle.internal.watch.registry.FileWatcherRegistryFactory;
 import org.gradle.internal.watch.registry.impl.DarwinFileWatcherRegistryFactory;
 import org.gradle.internal.watch.registry.impl.LinuxFileWatcherRegistryFactory;
@@ -102,6 +105,7 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.function.Predicate;
 
@@ -118,6 +122,20 @@ public class VirtualFileSystemServices extends AbstractGradleModuleServices {
      * @see org.gradle.initialization.StartParameterBuildOptions.WatchFileSystemOption
      */
     public static final InternalFlag VFS_DROP_PROPERTY = new InternalFlag("org.gradle.vfs.drop");
+    /**
+     * When enabled, the hashes of the files in the build are stored in the project cache directory at the end of the build,
+     * and used to avoid re-hashing unchanged files after the daemon has been restarted.
+     */
+    public static final InternalFlag VFS_PERSIST_PROPERTY = new InternalFlag("org.gradle.vfs.persist");
+    /**
+     * When set, snapshots are stored in the virtual file system by compare-and-set on its root instead of under a lock,
+     * as long as file system watching is not active.
+     */
+    public static final InternalFlag VFS_LOCK_FREE_STORES_PROPERTY = new InternalFlag("org.gradle.internal.vfs.lock-free-stores");
+    /**
+     * When enabled, the hot indexed caches, the file hashes and the execution history, are accessed via memory-mapped files.
+     */
+    public static final InternalFlag MEMORY_MAPPED_CACHES = new InternalFlag("org.gradle.internal.cache.memory-mapped");
     private static final int DEFAULT_MAX_HIERARCHIES_TO_WATCH = 50;
     public static final IntegerInternalOption MAX_HIERARCHIES_TO_WATCH_PROPERTY = new IntegerInternalOption("org.gradle.vfs.watch.hierarchies.max", DEFAULT_MAX_HIERARCHIES_TO_WATCH);
     private static final int FILE_HASHER_MEMORY_CACHE_SIZE = 400000;
@@ -126,6 +144,17 @@ public static boolean isDropVfs(InternalOptions options) {
         return options.getOption(VFS_DROP_PROPERTY).get();
     }
 
+    private static IndexedCacheParameters.StorageType fileHashesStorageType() {
+        // File hashes are cached as long as the daemon lives, so only system properties of the process are taken into account
+        return new DefaultInternalOptions(Collections.emptyMap()).getOption(MEMORY_MAPPED_CACHES).get()
+            ? IndexedCacheParameters.StorageType.MEMORY_MAPPED_BTREE
+            : IndexedCacheParameters.StorageType.BTREE;
+    }
+
+    public static boolean isPersistVfs(InternalOptions options) {
+        return options.getOption(VFS_PERSIST_PROPERTY).get();
+    }
+
     public static int getMaximumNumberOfWatchedHierarchies(InternalOptions options) {
         return options.getOption(MAX_HIERARCHIES_TO_WATCH_PROPERTY).get();
     }
@@ -155,6 +184,11 @@ FileHasherStatistics.Collector createCachingFileHasherStatisticsCollector() {
         DirectorySnapshotterStatistics.Collector createDirectorySnapshotterStatisticsCollector() {
             return new DirectorySnapshotterStatistics.Collector();
         }
+
+        @Provides
+        FileContentHasherFactory createFileContentHasherFactory(ExecutorFactory executorFactory) {
+            return new FileContentHasherFactory(executorFactory);
+        }
     }
 
     @VisibleForTesting
@@ -173,9 +207,10 @@ FileHasher createCachingFileHasher(
             FileSystem fileSystem,
             GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector,
             StreamHasher streamHasher,
-            StringInterner stringInterner
+            StringInterner stringInterner,
+            FileContentHasherFactory contentHasherFactory
         ) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher fileHasher = new CachingFileHasher(contentHasherFactory.createContentHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, contentHasherFactory.getVersionedCacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector, fileHashesStorageType());
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
@@ -216,6 +251,8 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
         ) {
             CaseSensitivity caseSensitivity = fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE;
             SnapshotHierarchy root = DefaultSnapshotHierarchy.empty(caseSensitivity);
+            // The virtual file system lives as long as the daemon, so only system properties of the process are taken into account
+            boolean lockFreeStores = new DefaultInternalOptions(Collections.emptyMap()).getOption(VFS_LOCK_FREE_STORES_PROPERTY).get();
 
             BuildLifecycleAwareVirtualFileSystem virtualFileSystem = determineWatcherRegistryFactory(
                 OperatingSystem.current(),
@@ -227,9 +264,10 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
                     sectionId -> documentationRegistry.getDocumentationRecommendationFor("details", "file_system_watching", sectionId),
                     fileWatchingFilter,
                     watchableFileSystemDetector,
-                    fileChangeListeners
+                    fileChangeListeners,
+                    lockFreeStores
                 ))
-                .orElse(new WatchingNotSupportedVirtualFileSystem(root));
+                .orElse(new WatchingNotSupportedVirtualFileSystem(root, lockFreeStores));
             listenerManager.addListener((BuildAddedListener) buildState -> {
                     File buildRootDir = buildState.getBuildRootDir();
                     virtualFileSystem.registerWatchableHierarchy(buildRootDir);
@@ -238,6 +276,11 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
             return virtualFileSystem;
         }
 
+        @Provides
+        PersistentVirtualFileSystemState createPersistentVirtualFileSystemState() {
+            return new PersistentVirtualFileSystemState();
+        }
+
         @Provides
         FileSystemAccess createFileSystemAccess(
             FileHasher hasher,
@@ -246,7 +289,8 @@ FileSystemAccess createFileSystemAccess(
             StringInterner stringInterner,
             FileSystemAccess.WriteListener writeListener,
             DirectorySnapshotterStatistics.Collector statisticsCollector,
-            ListenerManager listenerManager
+            ListenerManager listenerManager,
+            FileContentHasherFactory contentHasherFactory
         ) {
             DefaultFileSystemAccess defaultFileSystemAccess = new DefaultFileSystemAccess(
                 hasher,
@@ -255,6 +299,7 @@ FileSystemAccess createFileSystemAccess(
                 virtualFileSystem,
                 writeListener,
                 statisticsCollector,
+                contentHasherFactory.getSnapshottingExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
             listenerManager.addListener(defaultFileSystemAccess);
@@ -289,9 +334,9 @@ FileCollectionSnapshotter createFileCollectionSnapshotter(FileSystemAccess fileS
         }
 
         @Provides
-        ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildFileHashCache store) {
+        ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildFileHashCache store, FileContentHasherFactory contentHasherFactory) {
             IndexedCache<HashCode, HashCode> resourceHashesCache = store.createIndexedCache(
-                IndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()),
+                IndexedCacheParameters.of(contentHasherFactory.getVersionedCacheName("resourceHashesCache"), HashCode.class, new HashCodeSerializer()),
                 400000,
                 true);
             return new DefaultResourceSnapshotterCacheService(resourceHashesCache);
@@ -336,9 +381,10 @@ FileHasher createFileHasher(
             FileSystem fileSystem,
             StreamHasher streamHasher,
             StringInterner stringInterner,
-            FileHasherStatistics.Collector statisticsCollector
+            FileHasherStatistics.Collector statisticsCollector,
+            FileContentHasherFactory contentHasherFactory
         ) {
-            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher localHasher = new CachingFileHasher(contentHasherFactory.createContentHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, contentHasherFactory.getVersionedCacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector, fileHashesStorageType());
             return new SplitFileHasher(globalHasher, localHasher, globalCacheLocations);
         }
 
@@ -350,15 +396,18 @@ FileSystemAccess createFileSystemAccess(
             StringInterner stringInterner,
             VirtualFileSystem root,
             FileSystemAccess.WriteListener writeListener,
-            DirectorySnapshotterStatistics.Collector statisticsCollector
+            DirectorySnapshotterStatistics.Collector statisticsCollector,
+            FileContentHasherFactory contentHasherFactory,
+            PersistentVirtualFileSystemState persistentState
         ) {
             DefaultFileSystemAccess buildSessionsScopedVirtualFileSystem = new DefaultFileSystemAccess(
-                hasher,
+                persistentState.decorate(hasher),
                 stringInterner,
                 stat,
                 root,
                 writeListener,
                 statisticsCollector,
+                contentHasherFactory.getSnapshottingExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
 
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.service.scopes;
 
+import org.gradle.api.internal.changedetection.state.FileContentHasherFactory;
 import org.gradle.api.internal.classpath.DefaultModuleRegistry;
 import org.gradle.api.internal.classpath.GlobalCacheRootsProvider;
 import org.gradle.api.internal.classpath.ModuleRegistry;
@@ -136,7 +137,7 @@ DefaultFilePropertyFactory createFilePropertyFactory(PropertyHost propertyHost,
 
     @Provides
     StreamHasher createStreamHasher() {
-        return new DefaultStreamHasher();
+        return new DefaultStreamHasher(FileContentHasherFactory.contentHashFunction());
     }
 
     @Provides
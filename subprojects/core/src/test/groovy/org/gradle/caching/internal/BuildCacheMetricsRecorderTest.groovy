@@ -0,0 +1,184 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal
+
+import groovy.json.JsonSlurper
+import org.gradle.api.internal.StartParameterInternal
+import org.gradle.caching.internal.operations.BuildCacheArchivePackBuildOperationType
+import org.gradle.caching.internal.operations.BuildCacheArchiveUnpackBuildOperationType
+import org.gradle.caching.internal.operations.BuildCacheLocalLoadBuildOperationType
+import org.gradle.caching.internal.operations.BuildCacheRemoteLoadBuildOperationType
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreBuildOperationType
+import org.gradle.internal.buildoption.DefaultInternalOptions
+import org.gradle.internal.execution.steps.AbstractCaptureStateBeforeExecutionStep
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.DefaultBuildOperationAncestryTracker
+import org.gradle.internal.operations.DefaultBuildOperationListenerManager
+import org.gradle.internal.operations.OperationFinishEvent
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationStartEvent
+import org.gradle.operations.execution.ExecuteWorkBuildOperationType
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class BuildCacheMetricsRecorderTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def buildOperationListenerManager = new DefaultBuildOperationListenerManager()
+    def ancestryTracker = new DefaultBuildOperationAncestryTracker()
+    def broadcast = buildOperationListenerManager.broadcaster
+    def metricsFile = temporaryFolder.file("metrics.json")
+    def startTimes = [:]
+
+    def setup() {
+        buildOperationListenerManager.addListener(ancestryTracker)
+    }
+
+    def "records cost of loading entry from local cache"() {
+        def recorder = recorder(metricsFile.absolutePath)
+        recorder.afterStart()
+
+        when:
+        def work = start(1, null, workDetails(":loaded"), 0)
+        finish(start(2, 1, AbstractCaptureStateBeforeExecutionStep.Operation.Details.INSTANCE, 0), 5, null)
+        def load = start(3, 1, Stub(BuildCacheLocalLoadBuildOperationType.Details) { getCacheKey() >> "key" }, 5)
+        def unpack = start(4, 3, Stub(BuildCacheArchiveUnpackBuildOperationType.Details) { getCacheKey() >> "key"; getArchiveSize() >> 100 }, 10)
+        finish(unpack, 30, Stub(BuildCacheArchiveUnpackBuildOperationType.Result) { getUncompressedSize() >> 400 })
+        finish(load, 35, Stub(BuildCacheLocalLoadBuildOperationType.Result) { isHit() >> true; getArchiveSize() >> 100 })
+        finish(work, 40, workResult("FROM-CACHE", 100))
+        recorder.beforeStop()
+        def metrics = new JsonSlurper().parse(metricsFile)
+
+        then:
+        metrics.entries.size() == 1
+        with(metrics.entries[0]) {
+            cacheKey == "key"
+            identity == ":loaded"
+            outcome == "FROM-CACHE"
+            executionTime == 40
+            originExecutionTime == 100
+            snapshotTime == 5
+            load == [local: [time: 10, hit: true]]
+            unpackTime == 20
+            archiveSize == 100
+            uncompressedSize == 400
+            compressionRatio == 4.0
+            loadCost == 30
+            savedTime == 70
+        }
+        metrics.summary.hits == 1
+        metrics.summary.savedTime == 70
+        metrics.summary.slowerToLoadThanToExecute == []
+    }
+
+    def "reports entries slower to load than to execute"() {
+        def recorder = recorder(metricsFile.absolutePath)
+        recorder.afterStart()
+
+        when:
+        def work = start(1, null, workDetails(":slow"), 0)
+        def load = start(2, 1, Stub(BuildCacheRemoteLoadBuildOperationType.Details) { getCacheKey() >> "key" }, 0)
+        finish(load, 50, Stub(BuildCacheRemoteLoadBuildOperationType.Result) { isHit() >> true; getArchiveSize() >> 100 })
+        def unpack = start(3, 1, Stub(BuildCacheArchiveUnpackBuildOperationType.Details) { getCacheKey() >> "key"; getArchiveSize() >> 100 }, 50)
+        finish(unpack, 60, Stub(BuildCacheArchiveUnpackBuildOperationType.Result) { getUncompressedSize() >> 200 })
+        finish(work, 60, workResult("FROM-CACHE", 20))
+        recorder.beforeStop()
+        def metrics = new JsonSlurper().parse(metricsFile)
+
+        then:
+        with(metrics.entries[0]) {
+            load == [remote: [time: 50, hit: true]]
+            loadCost == 60
+            savedTime == -40
+        }
+        metrics.summary.slowerToLoadThanToExecute == [":slow"]
+    }
+
+    def "records cost of storing entry"() {
+        def recorder = recorder(metricsFile.absolutePath)
+        recorder.afterStart()
+
+        when:
+        def work = start(1, null, workDetails(":stored"), 0)
+        def pack = start(2, 1, Stub(BuildCacheArchivePackBuildOperationType.Details) { getCacheKey() >> "key" }, 50)
+        finish(pack, 60, Stub(BuildCacheArchivePackBuildOperationType.Result) { getArchiveSize() >> 50; getUncompressedSize() >> 100 })
+        finish(work, 70, workResult(null, null))
+        // Stores to the remote cache can finish after the work
+        def store = start(3, null, Stub(BuildCacheRemoteStoreBuildOperationType.Details) { getCacheKey() >> "key"; getArchiveSize() >> 50 }, 70)
+        finish(store, 90, Stub(BuildCacheRemoteStoreBuildOperationType.Result) { isStored() >> true })
+        recorder.beforeStop()
+        def metrics = new JsonSlurper().parse(metricsFile)
+
+        then:
+        with(metrics.entries[0]) {
+            identity == ":stored"
+            outcome == "EXECUTED"
+            executionTime == 70
+            packTime == 10
+            store == [remote: [time: 20, stored: true]]
+            storeCost == 30
+            compressionRatio == 2.0
+            savedTime == null
+        }
+        metrics.summary.storeCost == 30
+    }
+
+    def "does not record metrics when no file is configured"() {
+        def recorder = recorder(null)
+
+        when:
+        recorder.afterStart()
+        recorder.beforeStop()
+
+        then:
+        !metricsFile.exists()
+    }
+
+    private BuildCacheMetricsRecorder recorder(String path) {
+        def internalOptions = new DefaultInternalOptions(path == null ? [:] : ["org.gradle.caching.metrics.file": path])
+        new BuildCacheMetricsRecorder(internalOptions, new StartParameterInternal(), buildOperationListenerManager, ancestryTracker)
+    }
+
+    private BuildOperationDescriptor start(long id, Long parentId, Object details, long startTime) {
+        def descriptor = BuildOperationDescriptor.displayName("operation " + id).details(details).build(
+            new OperationIdentifier(id),
+            parentId == null ? null : new OperationIdentifier(parentId)
+        )
+        startTimes[descriptor.id] = startTime
+        broadcast.started(descriptor, new OperationStartEvent(startTime))
+        return descriptor
+    }
+
+    private void finish(BuildOperationDescriptor descriptor, long endTime, Object result) {
+        broadcast.finished(descriptor, new OperationFinishEvent(startTimes[descriptor.id], endTime, null, result))
+    }
+
+    private ExecuteWorkBuildOperationType.Details workDetails(String identity) {
+        Stub(ExecuteWorkBuildOperationType.Details) {
+            getIdentity() >> identity
+        }
+    }
+
+    private ExecuteWorkBuildOperationType.Result workResult(String skipMessage, Long originExecutionTime) {
+        Stub(ExecuteWorkBuildOperationType.Result) {
+            getSkipMessage() >> skipMessage
+            getOriginExecutionTime() >> originExecutionTime
+        }
+    }
+}
@@ -33,7 +33,10 @@ import org.gradle.caching.internal.origin.OriginMetadataFactory
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
 import org.gradle.caching.internal.services.DefaultBuildCacheControllerFactory
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.caching.local.internal.InMemoryBuildCache
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.buildoption.DefaultInternalOptions
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.hash.HashCode
 import org.gradle.internal.operations.NoOpBuildOperationProgressEventEmitter
 import org.gradle.internal.operations.TestBuildOperationRunner
@@ -46,6 +49,7 @@ import java.util.function.Consumer
 class DefaultBuildCacheControllerFactoryTest extends Specification {
 
     def buildCacheEnabled = true
+    def localOnlyCacheKeys = false
     def buildOperationRunner = new TestBuildOperationRunner()
     def buildOperationProgressEmitter = new NoOpBuildOperationProgressEventEmitter()
     def config = new DefaultBuildCacheConfiguration(TestUtil.instantiatorFactory().inject(), [
@@ -68,7 +72,13 @@ class DefaultBuildCacheControllerFactoryTest extends Specification {
             Stub(OriginMetadataFactory),
             Stub(StringInterner),
             Stub(TemporaryFileProvider),
-            Stub(BuildCacheEntryPacker)
+            Stub(BuildCacheEntryPacker),
+            Stub(ExecutorFactory),
+            new InMemoryBuildCache(1024),
+            new DefaultInternalOptions([:]),
+            null,
+            localOnlyCacheKeys,
+            null
         ).createController(Path.path("test"), config, TestUtil.instantiatorFactory().inject())
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
@@ -142,6 +152,22 @@ class DefaultBuildCacheControllerFactoryTest extends Specification {
         }
     }
 
+    def 'remote cache service is not created when cache keys are local only'() {
+        config.remote(TestRemoteBuildCache)
+        localOnlyCacheKeys = true
+
+        when:
+        def c = createController()
+
+        then:
+        c.local.service != null
+        c.remote.service == null
+        with(buildOpResult()) {
+            local.type == "directory"
+            remote == null
+        }
+    }
+
     def 'when caching is disabled no services are created'() {
         buildCacheEnabled = false
 
@@ -1051,6 +1051,59 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         secondTask == b
     }
 
+    def "starts tasks on the longest critical path first when scheduling by critical path"() {
+        given:
+        def durationHistory = useCriticalPathScheduling(short: 10L, head: 5L, tail: 100L)
+        Task shortTask = task("short", type: Async)
+        Task head = task("head", type: Async)
+        Task tail = task("tail", type: Async, dependsOn: [head])
+
+        when:
+        addToGraphAndPopulate(shortTask, tail)
+
+        then:
+        executionPlan.tasks as List == [shortTask, head, tail]
+
+        when:
+        def firstTaskNode = selectNextTaskNode()
+        def secondTaskNode = selectNextTaskNode()
+
+        then:
+        firstTaskNode.task == head
+        secondTaskNode.task == shortTask
+
+        when:
+        finishedExecuting(firstTaskNode)
+
+        then:
+        0 * durationHistory.recordDurations(_)
+        selectNextTask() == tail
+
+        when:
+        executionPlan.close()
+
+        then:
+        1 * durationHistory.recordDurations({ it.keySet() == [":head"] as Set })
+    }
+
+    def "starts tasks with more dependents first when critical paths are equally long"() {
+        given:
+        useCriticalPathScheduling([:])
+        Task a = task("a", type: Async)
+        Task b = task("b", type: Async)
+        Task c = task("c", type: Async, dependsOn: [a])
+        Task d = task("d", type: Async, dependsOn: [b])
+        Task e = task("e", type: Async, dependsOn: [b])
+
+        when:
+        addToGraphAndPopulate(c, d, e)
+
+        then:
+        executionPlan.tasks as List == [a, c, b, d, e]
+        selectNextTask() == b
+        selectNextTask() == a
+    }
+
     def "task is not available for execution until all of its dependencies that are executed in parallel complete"() {
         given:
         Task a = task("a", type: Async)
@@ -2083,6 +2136,15 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         assert tasks as Set == [first, second] as Set
     }
 
+    private TaskDurationHistory useCriticalPathScheduling(Map<String, Long> durations) {
+        TaskDurationHistory durationHistory = Mock()
+        _ * durationHistory.enabled >> true
+        _ * durationHistory.durationsMillis >> durations.collectEntries { path, duration -> [":" + path, duration] }
+        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, new OrdinalGroupFactory(), dependencyResolver, accessHierarchies.outputHierarchy, accessHierarchies.destroyableHierarchy, coordinator, durationHistory)
+        return durationHistory
+    }
+
     private void addToGraph(Task... tasks) {
         for (final def task in tasks) {
             executionPlan.addEntryTask(task)
@@ -60,6 +60,7 @@ import org.gradle.internal.buildoption.DefaultInternalOptions
 import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.concurrent.ManagedExecutor
 import org.gradle.internal.event.DefaultListenerManager
+import org.gradle.internal.execution.history.ExecutionHistoryStore
 import org.gradle.internal.file.Stat
 import org.gradle.internal.operations.TestBuildOperationRunner
 import org.gradle.internal.service.ServiceRegistry
@@ -99,7 +100,8 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
         listenerRegistrationListener,
         Stub(ServiceRegistry) {
             get(TaskDependencyFactory) >> TestFiles.taskDependencyFactory()
-        }
+        },
+        Stub(ExecutionHistoryStore)
     )
     WorkerLeaseRegistry.WorkerLeaseCompletion parentWorkerLease
     def executedTasks = []
@@ -380,7 +382,8 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
             graphListeners,
             taskExecutionListeners,
             listenerRegistrationListener,
-            Stub(ServiceRegistry)
+            Stub(ServiceRegistry),
+            Stub(ExecutionHistoryStore)
         )
         TaskExecutionGraphListener listener = Mock(TaskExecutionGraphListener)
 
@@ -415,7 +418,8 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
             graphListeners,
             taskExecutionListeners,
             listenerRegistrationListener,
-            Stub(ServiceRegistry)
+            Stub(ServiceRegistry),
+            Stub(ExecutionHistoryStore)
         )
         def closure = Mock(Closure)
         def action = Mock(Action)
@@ -185,6 +185,7 @@ dependencies {
         api(libs.httpmime)              { version { strictly("4.5.10") }}
         api(libs.javaParser)            { version { strictly("3.17.0") }}
         api(libs.jetty)                 { version { strictly(jettyVersion) }}
+        api(libs.jettyHttp2Server)      { version { strictly(jettyVersion) }}
         api(libs.jettySecurity)         { version { strictly(jettyVersion) }}
         api(libs.jettyServer)           { version { strictly(jettyVersion) }}
         api(libs.jettyServlet)          { version { strictly(jettyVersion) }}
@@ -35,6 +35,9 @@ import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 
 class HttpBuildCacheServer extends ExternalResource implements HttpServerFixture {
+    private static final String KEYS_CONTENT_TYPE = "application/vnd.gradle.build-cache-keys.v1"
+    private static final String BITMAP_CONTENT_TYPE = "application/vnd.gradle.build-cache-bitmap.v1"
+
     private final TestDirectoryProvider provider
     private final WebAppContext webapp
     private TestFile cacheDir
@@ -92,11 +95,47 @@ class HttpBuildCacheServer extends ExternalResource implements HttpServerFixture
             }
         }
         webapp.addFilter(new FilterHolder(filter), "/*", EnumSet.of(DispatcherType.REQUEST))
+        webapp.addFilter(new FilterHolder(new ContainsAllFilter()), "/*", EnumSet.of(DispatcherType.REQUEST))
 
         // TODO: Find Jetty 9 idiomatic way to get rid of this filter
         this.webapp.addFilter(RestFilter, "/*", EnumSet.of(DispatcherType.REQUEST))
     }
 
+    /**
+     * Checks the existence of multiple entries, returning a bitmap with a bit set for each existing entry.
+     */
+    private class ContainsAllFilter implements Filter {
+        @Override
+        void init(FilterConfig filterConfig) throws ServletException {
+
+        }
+
+        @Override
+        void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+            def httpRequest = request as HttpServletRequest
+            if (httpRequest.method != "POST" || httpRequest.contentType != KEYS_CONTENT_TYPE) {
+                chain.doFilter(request, response)
+                return
+            }
+            def dir = new File(cacheDir, httpRequest.requestURI)
+            def keys = httpRequest.inputStream.getText("US-ASCII").readLines().findAll { !it.empty }
+            def bitmap = new byte[(keys.size() + 7).intdiv(8)]
+            keys.eachWithIndex { String key, int index ->
+                if (new File(dir, key).file) {
+                    bitmap[index >> 3] = (byte) (bitmap[index >> 3] | (1 << (index & 7)))
+                }
+            }
+            response.contentType = BITMAP_CONTENT_TYPE
+            response.contentLength = bitmap.length
+            response.outputStream.write(bitmap)
+        }
+
+        @Override
+        void destroy() {
+
+        }
+    }
+
     interface Responder {
         /**
          * Return false to prevent further processing.
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.performance.experiment.java
+
+import org.gradle.performance.AbstractCrossBuildPerformanceTest
+import org.gradle.performance.annotations.RunFor
+import org.gradle.performance.annotations.Scenario
+import org.gradle.performance.fixture.GradleBuildExperimentSpec
+
+import static org.gradle.performance.annotations.ScenarioType.PER_WEEK
+import static org.gradle.performance.results.OperatingSystem.LINUX
+
+@RunFor(
+    @Scenario(type = PER_WEEK, operatingSystems = [LINUX], testProjects = ["largeJavaMultiProject"])
+)
+class CriticalPathSchedulingPerformanceTest extends AbstractCrossBuildPerformanceTest {
+
+    def "clean assemble with tasks ordered by critical path"() {
+        given:
+        runner.testGroup = "parallel builds"
+        runner.buildSpec {
+            displayName("critical path order")
+            invocation {
+                args("-Dorg.gradle.internal.scheduler.critical-path=true")
+            }
+        }
+        runner.baseline {
+            displayName("execution plan order")
+            invocation {
+                args("-Dorg.gradle.internal.scheduler.critical-path=false")
+            }
+        }
+
+        when:
+        def results = runner.run()
+
+        then:
+        results
+    }
+
+    @Override
+    protected void defaultSpec(GradleBuildExperimentSpec.GradleBuilder builder) {
+        super.defaultSpec(builder)
+        // The warm-up builds record the task durations used to order the measured builds
+        builder.warmUpCount = 2
+        builder.invocationCount = 5
+        builder.invocation {
+            args("-Dorg.gradle.parallel=true", "--max-workers=4")
+            tasksToRun("clean", "assemble")
+        }
+    }
+}